@@ -1,13 +1,37 @@
 package com.thibclnt.chessgame;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 /**
  * Entry point of the package. When creating an application, it is possible to choose what {@link AppInterface} to use.
  * The application also allow to choose, via its appInterface, what game to play.
  * An application must be created and launched like this :
  * <code> new Application(appInterface).init(); </code>
+ * <p>
+ *     The results of the chess games are recorded in a {@link ScoreStore} when the players are named by the system
+ *     properties {@value #WHITE_PLAYER_PROPERTY} and {@value #BLACK_PLAYER_PROPERTY} : the players of the games have no
+ *     name of their own, so their results could not be told apart otherwise. The store is in the directory given by the
+ *     system property {@value #SCORES_PROPERTY} ({@value #DEFAULT_SCORES_DIRECTORY} by default), for example
+ *     {@code java -Dchessgame.player.white=Alice -Dchessgame.player.black=Bob -jar ...}.
+ * </p> <p>
+ *     The chess games read the end of the endings they know from the {@link Tablebase} of the directory given by the
+ *     system property {@value #TABLEBASE_PROPERTY}, if it is set.
+ * </p>
  */
 public class Application {
 
+    /** System property giving the name of the white player */
+    public static final String WHITE_PLAYER_PROPERTY = "chessgame.player.white";
+    /** System property giving the name of the black player */
+    public static final String BLACK_PLAYER_PROPERTY = "chessgame.player.black";
+    /** System property giving the directory of the {@link ScoreStore} */
+    public static final String SCORES_PROPERTY = "chessgame.scores";
+    /** Default directory of the {@link ScoreStore} */
+    public static final String DEFAULT_SCORES_DIRECTORY = "scores";
+    /** System property giving the directory of the {@link Tablebase} */
+    public static final String TABLEBASE_PROPERTY = "chessgame.tablebase";
+
     /**
      * The current game that is played. null if no game is currently played.
      */
@@ -16,6 +40,17 @@ public class Application {
      * The human machine interface to use, which must allow to choose the game to play.
      */
     private final AppInterface appInterface;
+    /**
+     * The store where the results of the chess games are recorded, opened with the first named game. null until then,
+     * or if it can't be opened.
+     */
+    private ScoreStore scoreStore = null;
+    /**
+     * The endgame tablebase of the chess games, opened with the first chess game. null until then, if the property
+     * isn't set, or if it can't be opened.
+     */
+    private Tablebase tablebase = null;
+    private boolean tablebaseOpened = false;
 
     /**
      * Construct the application and attach an {@link AppInterface} to it.
@@ -48,12 +83,74 @@ public class Application {
     }
 
     /**
-     * Change the {@link Game} currently played (stop the old one if it exists).
+     * @return The {@link ScoreStore} where the results of the chess games are recorded, or null if the players aren't
+     * named or if it can't be opened
+     */
+    public ScoreStore getScoreStore() {
+        return scoreStore;
+    }
+
+    /**
+     * Change the {@link Game} currently played (stop the old one if it exists). The results of a {@link ChessGame} are
+     * recorded in the {@link ScoreStore} if the players are named.
      * @param currentGame The {@link Game} to play
      */
     public void setCurrentGame(Game currentGame) {
         if (this.currentGame != null)
-            currentGame.stop();
+            this.currentGame.stop();
         this.currentGame = currentGame;
+        if (currentGame instanceof ChessGame chessGame) {
+            chessGame.setTablebase(this.openTablebase());
+            this.recordResults(chessGame);
+        }
+    }
+
+    /**
+     * Open the {@link Tablebase} of the directory given by the system property, the first time.
+     * @return The tablebase, or null if the property isn't set or if the tablebase can't be opened
+     */
+    private Tablebase openTablebase() {
+        if (this.tablebaseOpened)
+            return this.tablebase;
+        this.tablebaseOpened = true;
+        String directory = System.getProperty(TABLEBASE_PROPERTY);
+        if (directory == null || directory.isBlank())
+            return null;
+        try {
+            this.tablebase = new Tablebase(Path.of(directory));
+        } catch (IOException e) {
+            System.err.println("The tablebase can't be opened, the endings will be computed : " + e.getMessage());
+        }
+        return this.tablebase;
+    }
+
+    /**
+     * Name the players of a chess game from the system properties, and record its result in the {@link ScoreStore},
+     * opened the first time. The store is closed when the JVM stops, so that the last results are written.
+     * @param chessGame The {@link ChessGame} whose result is recorded
+     */
+    private void recordResults(ChessGame chessGame) {
+        String white = System.getProperty(WHITE_PLAYER_PROPERTY), black = System.getProperty(BLACK_PLAYER_PROPERTY);
+        if (white == null || black == null || white.isBlank() || black.isBlank() || white.equals(black))
+            return;
+        if (this.scoreStore == null) {
+            try {
+                ScoreStore store = new ScoreStore(Path.of(System.getProperty(SCORES_PROPERTY, DEFAULT_SCORES_DIRECTORY)));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        store.close();
+                    } catch (IOException e) {
+                        System.err.println("The scores can't be written : " + e.getMessage());
+                    }
+                }, "score-store-close"));
+                this.scoreStore = store;
+            } catch (IOException e) {
+                System.err.println("The scores can't be opened, the results won't be recorded : " + e.getMessage());
+                return;
+            }
+        }
+        chessGame.getJ1().setName(white);
+        chessGame.getJ2().setName(black);
+        chessGame.setScoreStore(this.scoreStore);
     }
 }
@@ -0,0 +1,359 @@
+package com.thibclnt.chessgame;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Offline tool analysing the games of a {@link GameArchive} : every position of every game is searched with a fixed
+ * budget of nodes, which gives the loss of each move, the accuracy of each player and the blunders.
+ * <p>
+ *     Games are read one after the other from the archive, and each of their positions is a job of a work-stealing
+ *     {@link ForkJoinPool}. At most {@link #getMaxGamesInFlight()} games are read and not written yet : the reading
+ *     waits for a game to be written, so the memory used doesn't depend on the size of the archive. Games are written
+ *     in the order of the archive, as soon as all their positions and the games before them are analysed.
+ * </p> <p>
+ *     Each thread of the pool has its own {@link Search}, whose transposition table is cleared before each position :
+ *     with a budget of nodes instead of time, the analysis of a position doesn't depend on the other positions, on the
+ *     number of threads or on the load of the machine.
+ * </p> <p>
+ *     The annotations are written as text, one line by ply then one line by game, fields separated by tabulations :
+ * </p>
+ * <ul>
+ *     <li> {@code P game ply move best score loss accuracy flag} : the move played at this ply, the best move found,
+ *     the score of the position for the player to move, the loss of the move in centipawns, its accuracy from 0 to 100
+ *     and its {@link Flag} </li>
+ *     <li> {@code G game whiteAccuracy blackAccuracy whiteBlunders blackBlunders} </li>
+ * </ul>
+ * <p>
+ *     Usage : {@code BatchAnalyzer [-nodes n] [-threads n] archive annotations.txt}
+ * </p>
+ */
+public class BatchAnalyzer {
+
+    /** Default number of nodes searched in each position */
+    public static final long DEFAULT_NODES = 50000;
+    /** Size of the transposition table of each thread, in megabytes */
+    public static final int TABLE_SIZE_MB = 2;
+    /** Score a mate is counted for when computing the loss of a move, in centipawns */
+    private static final int MATE_SCORE = 1000;
+
+    /**
+     * Classification of a move, from the drop of the winning chances of the player it caused (see {@link #winChance(int)}).
+     */
+    public enum Flag {
+        NONE(0), INACCURACY(10), MISTAKE(20), BLUNDER(30);
+
+        /** Minimum drop of the winning chances, in percents */
+        private final double drop;
+
+        Flag(double drop) {
+            this.drop = drop;
+        }
+
+        /**
+         * @param drop Drop of the winning chances of a move, in percents
+         * @return The flag of the move
+         */
+        public static Flag of(double drop) {
+            Flag flag = NONE;
+            for (Flag candidate : values()) {
+                if (drop >= candidate.drop)
+                    flag = candidate;
+            }
+            return flag;
+        }
+    }
+
+    /**
+     * Struct-like class to store the statistics of an analysis.
+     */
+    public static class Summary {
+        /** Number of games analysed */
+        public long games;
+        /** Number of positions searched */
+        public long positions;
+        /** Total number of nodes searched */
+        public long nodes;
+        /** Number of moves flagged as blunders */
+        public long blunders;
+        /** Duration of the analysis, in milliseconds */
+        public long timeMillis;
+
+        @Override
+        public String toString() {
+            return games + " games, " + positions + " positions, " + blunders + " blunders, " + nodes + " nodes in "
+                    + timeMillis + " ms (" + positions * 1000 / Math.max(1, timeMillis) + " positions/s, "
+                    + nodes * 1000 / Math.max(1, timeMillis) + " nodes/s)";
+        }
+    }
+
+    /**
+     * A game being analysed : its positions, and the results of their searches.
+     */
+    private static class Work {
+        final int game;
+        /** Color of the player of the first move */
+        final int firstPlayer;
+        final int[] moves;
+        final Position[] positions;
+        final int[] scores;
+        final int[] bestMoves;
+        final AtomicInteger remaining;
+
+        Work(int game, Position start, int[] moves) {
+            this.game = game;
+            this.firstPlayer = start.sideToMove;
+            this.moves = moves;
+            this.positions = new Position[moves.length + 1];
+            this.scores = new int[moves.length + 1];
+            this.bestMoves = new int[moves.length + 1];
+            this.remaining = new AtomicInteger(moves.length + 1);
+
+            Position position = new Position(start);
+            for (int ply = 0 ; ply <= moves.length ; ply++) {
+                this.positions[ply] = new Position(position);
+                if (ply < moves.length && !position.make(moves[ply]))
+                    throw new IllegalArgumentException("Illegal move " + Position.moveToString(moves[ply])
+                            + " at ply " + ply + " of game " + game);
+            }
+        }
+    }
+
+    private final long nodesByPosition;
+    private final int threads;
+    private final int maxGamesInFlight;
+
+    private ForkJoinPool pool;
+    private ThreadLocal<Search> searches;
+    private Semaphore inFlight;
+    private BufferedWriter out;
+    /** Games analysed but not written yet, as a game before them is not analysed yet */
+    private final Map<Integer, Work> finished = new HashMap<>();
+    private int nextToWrite;
+    private volatile Throwable failure;
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder blunders = new LongAdder();
+
+    /**
+     * Create an analyzer.
+     *
+     * @param nodesByPosition Number of nodes searched in each position
+     * @param threads Number of threads of the pool
+     * @param maxGamesInFlight Maximum number of games read and not written yet
+     */
+    public BatchAnalyzer(long nodesByPosition, int threads, int maxGamesInFlight) {
+        if (nodesByPosition <= 0 || threads <= 0 || maxGamesInFlight <= 0)
+            throw new IllegalArgumentException("The number of nodes, threads and games in flight must be positive");
+        this.nodesByPosition = nodesByPosition;
+        this.threads = threads;
+        this.maxGamesInFlight = maxGamesInFlight;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long nodes = DEFAULT_NODES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        while (args.length - first > 2 && args[first].startsWith("-")) {
+            switch (args[first]) {
+                case "-nodes" -> nodes = Long.parseLong(args[first + 1]);
+                case "-threads" -> threads = Integer.parseInt(args[first + 1]);
+                default -> {
+                    System.err.println("Unknown option : " + args[first]);
+                    System.exit(1);
+                }
+            }
+            first += 2;
+        }
+        if (args.length - first != 2) {
+            System.err.println("Usage : BatchAnalyzer [-nodes n] [-threads n] archive annotations.txt");
+            System.exit(1);
+        }
+
+        GameArchive archive = new GameArchive(Path.of(args[first]));
+        try (Writer out = Files.newBufferedWriter(Path.of(args[first + 1]), StandardCharsets.UTF_8)) {
+            Summary summary = new BatchAnalyzer(nodes, threads, 4 * threads).analyze(archive, out);
+            System.out.println(summary);
+        }
+    }
+
+    /**
+     * Analyse every game of an archive and write the annotations.
+     *
+     * @param archive {@link GameArchive} to analyse
+     * @param out Where the annotations are written. It is flushed after each game, and not closed.
+     * @return The statistics of the analysis
+     * @throws IOException If the annotations can't be written
+     * @throws InterruptedException If the thread is interrupted while waiting for the analysis
+     */
+    public synchronized Summary analyze(GameArchive archive, Writer out) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        this.out = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out);
+        this.pool = new ForkJoinPool(this.threads);
+        this.searches = ThreadLocal.withInitial(() -> new Search(new Evaluation(),
+                new TranspositionTable(TABLE_SIZE_MB), new Search.Options()));
+        this.inFlight = new Semaphore(this.maxGamesInFlight);
+        this.nextToWrite = 0;
+        this.failure = null;
+        this.nodes.reset();
+        this.blunders.reset();
+
+        Summary summary = new Summary();
+        try {
+            for (int game = 0 ; game < archive.getSize() && this.failure == null ; game++) {
+                // Backpressure : a game is read only when a game in flight is written
+                this.inFlight.acquire();
+                Work work = new Work(game, archive.getHeader(game).getStartPosition(), archive.getMoves(game));
+                for (int ply = 0 ; ply < work.positions.length ; ply++) {
+                    int analysedPly = ply;
+                    this.pool.execute(() -> this.analysePosition(work, analysedPly));
+                }
+                summary.games++;
+                summary.positions += work.positions.length;
+            }
+            // Every permit is given back once the last game is written
+            this.inFlight.acquire(this.maxGamesInFlight);
+        } finally {
+            this.pool.shutdownNow();
+        }
+
+        if (this.failure instanceof IOException)
+            throw (IOException) this.failure;
+        if (this.failure instanceof UncheckedIOException)
+            throw ((UncheckedIOException) this.failure).getCause();
+        if (this.failure != null)
+            throw new RuntimeException("Analysis failed", this.failure);
+
+        summary.nodes = this.nodes.sum();
+        summary.blunders = this.blunders.sum();
+        summary.timeMillis = System.currentTimeMillis() - start;
+        return summary;
+    }
+
+    /**
+     * Job of the pool : search a position of a game, and write the game once all its positions are searched.
+     */
+    private void analysePosition(Work work, int ply) {
+        try {
+            Position position = work.positions[ply];
+            if (position.legalMoves().length == 0) {
+                work.scores[ply] = position.isInCheck() ? -Search.MATE : 0;
+                work.bestMoves[ply] = Position.NO_MOVE;
+            } else {
+                Search search = this.searches.get();
+                search.getTranspositionTable().clear();
+                Search.Result result = search.search(position, Search.MAX_PLY, TimeManager.forNodes(this.nodesByPosition));
+                work.scores[ply] = result.score;
+                work.bestMoves[ply] = result.bestMove;
+                this.nodes.add(result.nodes);
+            }
+            // The position is not needed anymore
+            work.positions[ply] = null;
+
+            if (work.remaining.decrementAndGet() == 0)
+                this.finish(work);
+        } catch (Throwable e) {
+            this.fail(e);
+        }
+    }
+
+    /**
+     * Write the games which can be written, in the order of the archive.
+     */
+    private void finish(Work work) throws IOException {
+        synchronized (this.finished) {
+            this.finished.put(work.game, work);
+            Work next;
+            int written = 0;
+            while ((next = this.finished.remove(this.nextToWrite)) != null) {
+                this.write(next);
+                this.nextToWrite++;
+                written++;
+            }
+            // The games are given back once they are really written, so that the analysis ends after them
+            this.out.flush();
+            this.inFlight.release(written);
+        }
+    }
+
+    private void write(Work work) throws IOException {
+        double[] accuracy = new double[2];
+        int[] moves = new int[2];
+        int[] blunders = new int[2];
+
+        for (int ply = 0 ; ply < work.moves.length ; ply++) {
+            // Scores are for the player to move : the score after the move is the opposite of the next one
+            int before = clampMate(work.scores[ply]);
+            int after = -clampMate(work.scores[ply + 1]);
+            int loss = Math.max(0, before - after);
+            double drop = Math.max(0, winChance(before) - winChance(after));
+            double moveAccuracy = Math.max(0, Math.min(100, 103.1668 * Math.exp(-0.04354 * drop) - 3.1669));
+            Flag flag = Flag.of(drop);
+
+            int player = work.firstPlayer ^ (ply & 1);
+            accuracy[player] += moveAccuracy;
+            moves[player]++;
+            if (flag == Flag.BLUNDER) {
+                blunders[player]++;
+                this.blunders.increment();
+            }
+
+            this.out.write("P\t" + work.game + "\t" + ply + "\t" + Position.moveToString(work.moves[ply]) + "\t"
+                    + Position.moveToString(work.bestMoves[ply]) + "\t" + work.scores[ply] + "\t" + loss + "\t"
+                    + String.format("%.1f", moveAccuracy) + "\t" + flag);
+            this.out.newLine();
+        }
+
+        this.out.write("G\t" + work.game + "\t" + String.format("%.1f", accuracy[Position.WHITE] / Math.max(1, moves[Position.WHITE]))
+                + "\t" + String.format("%.1f", accuracy[Position.BLACK] / Math.max(1, moves[Position.BLACK])) + "\t"
+                + blunders[Position.WHITE] + "\t" + blunders[Position.BLACK]);
+        this.out.newLine();
+    }
+
+    /**
+     * Stop the analysis after an error : the reading stops and the games in flight are dropped.
+     */
+    private void fail(Throwable e) {
+        if (this.failure == null)
+            this.failure = e;
+        // Wakes up the reading, which then sees the failure
+        this.inFlight.release(this.maxGamesInFlight);
+    }
+
+    private static int clampMate(int score) {
+        return Math.max(-MATE_SCORE, Math.min(MATE_SCORE, score));
+    }
+
+    /**
+     * @param score Score of a position for a player, in centipawns
+     * @return The chances of the player to win the game from this position, from 0 to 100
+     */
+    public static double winChance(int score) {
+        return 50 + 50 * (2 / (1 + Math.exp(-0.00368208 * score)) - 1);
+    }
+
+    /** @return The number of nodes searched in each position */
+    public long getNodesByPosition() {
+        return this.nodesByPosition;
+    }
+
+    /** @return The number of threads of the pool */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /** @return The maximum number of games read and not written yet */
+    public int getMaxGamesInFlight() {
+        return this.maxGamesInFlight;
+    }
+}
@@ -76,13 +76,22 @@ public class ChessBoard extends Board<ChessPiece>{
      * @return true if the pos is under attack, false elsewhere
      */
     public boolean isInCheck(Pos pos, Player enemy){
+        EngineEvents.CheckTest event = new EngineEvents.CheckTest();
+        event.begin();
         Set<Pos> threatened = new HashSet<>();
 
         for (ChessPiece piece: getPiecesByState(getPiecesByPlayer(enemy), Piece.PieceState.ALIVE)) {
             threatened.addAll(piece.getAttacked());
         }
 
-        return threatened.contains(pos);
+        boolean attacked = threatened.contains(pos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.square = ChessGame.intToLettersMap.get(pos.getX()) + pos.getY();
+            event.attacked = attacked;
+            event.commit();
+        }
+        return attacked;
     }
 
     /**
@@ -1,5 +1,9 @@
 package com.thibclnt.chessgame;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -42,6 +46,55 @@ public class ChessGame implements Game {
     private final Player j1;
     private final Player j2;
     private Move lastMove = null;
+    /** The last move, filled again from the undo record of each move played, taken back or played again */
+    private final Move playedMove = new Move(null, new Pos(1, 1), new Pos(1, 1));
+    /** Last move before the first move of the history : the double push of a game loaded with {@link #load(Position)}, or null */
+    private Move startMove = null;
+    /** Endgame tablebase used to detect the end of the game in the endings it knows, or null */
+    private Tablebase tablebase = null;
+    /** Moves played since the start of the game, with random access to the position at any ply */
+    private GameReplay history;
+    /** Position after the last move, for the threads reading the game while it is played */
+    private volatile PositionSnapshot snapshot;
+    /** Events of the game, for the subscribers which must not slow it (spectators, logs...) */
+    private final GameEventPublisher events = new GameEventPublisher();
+
+    /** Number of moves played (which can be undone), and number of moves which can be replayed by {@link #redo()} */
+    private int historyLength = 0, historyEnd = 0;
+    /**
+     * Undo record of each move played, {@link #RECORD_SIZE} ints by ply : the move encoded for {@link Position} (or
+     * NO_MOVE), the piece moved and its squares, the captured piece and its square, the rook moved by a castling and its
+     * squares, the piece a pawn was promoted to, if the piece had already moved before, and the scores of both players.
+     * The pieces are given by their index in {@link #pieces} (-1 for none), and the squares as encoded by
+     * {@link Position#square(Pos)}.
+     */
+    private int[] historyRecords = new int[64 * RECORD_SIZE];
+    /** Offsets of the fields of an undo record in {@link #historyRecords} */
+    private static final int CODE = 0, PIECE = 1, FROM = 2, TO = 3, CAPTURED = 4, CAPTURED_SQUARE = 5, ROOK = 6,
+            ROOK_FROM = 7, ROOK_TO = 8, PROMOTED = 9, ALREADY_MOVED = 10, SCORE_J1 = 11, SCORE_J2 = 12, RECORD_SIZE = 13;
+    /**
+     * Snapshot published after each ply, from 0 (start position) to {@link #historyEnd} : a position taken back or played
+     * again is the one published when the move was played, so it is published again as is.
+     */
+    private PositionSnapshot[] historySnapshots = new PositionSnapshot[64 + 1];
+    /** Pieces of the undo records, by index, in the order they were first recorded */
+    private ChessPiece[] pieces = new ChessPiece[48];
+    private int pieceCount = 0;
+    /** {@link Pos} of each square, given to the pieces put back by {@link #undo()} and {@link #redo()} */
+    private final Pos[] squares = new Pos[64];
+    /** Store where the results of the players are recorded at the end of the game, or null */
+    private ScoreStore scoreStore = null;
+    /** true once the result of the game was recorded, so that undoing the last move and ending again records nothing */
+    private boolean resultRecorded = false;
+    /**
+     * Legal moves of each alive piece of {@link #legalMovesPlayer}, computed once per ply and shared by
+     * {@link #checkWinCondition()}, {@link #posChosen(Pos)} and the game interface, or null once the board changed
+     */
+    private Map<ChessPiece, Set<Pos>> legalMoves = null;
+    private Player legalMovesPlayer = null;
+
+    /** Value of the pieces of a player at the start of the game */
+    private static final int INITIAL_MATERIAL = 39;
 
     /** Map to get letters (for columns) from integer */
     public final static Map<Integer, String> intToLettersMap = Stream.of(
@@ -76,6 +129,8 @@ public class ChessGame implements Game {
 
         // Initialisation of board and players
         this.board = new ChessBoard(this);
+        for (int square = 0 ; square < this.squares.length ; square++)
+            this.squares[square] = Position.toPos(square);
 
         this.j1 = new Player("Joueur 1", Player.COLOR.WHITE);
         this.j1.setPlayedMoves(0);
@@ -165,6 +220,10 @@ public class ChessGame implements Game {
     public void start() {
         this.createPieces();
         this.playerTurn = j1;
+        this.legalMoves = null;
+        this.resultRecorded = false;
+        this.history = new GameReplay(Position.fromGame(this), new int[0]);
+        this.publishSnapshot();
     }
 
     /**
@@ -180,13 +239,106 @@ public class ChessGame implements Game {
      */
     @Override
     public void reset() {
+        this.clear();
+        this.start();
+    }
+
+    /**
+     * Replace the game by a position, for example to resume a game from a {@link GameJournal}. The history of the game
+     * starts from the position, and the moves played before it are unknown : the score of each player is the value of
+     * the enemy pieces missing from the initial ones, and the number of moves played is deduced from the move number.
+     *
+     * @param position Position of the game, in progress. It is copied.
+     */
+    public void load(Position position) {
+        this.clear();
+        Player white = this.j1.getColor() == Player.COLOR.WHITE ? this.j1 : this.j2;
+        int[] material = new int[2];
+        King[] kings = new King[2];
+        for (int square = 0 ; square < 64 ; square++) {
+            int code = position.pieceAt(square);
+            if (code == Position.EMPTY)
+                continue;
+            int color = Position.color(code);
+            Player player = color == Position.WHITE ? white : white.getEnemy();
+            int x = Position.file(square) + 1, y = Position.rank(square) + 1;
+            ChessPiece piece = switch (Position.type(code)) {
+                case Position.PAWN -> new Pawn(this.board, player, x, y);
+                case Position.KNIGHT -> new Knight(this.board, player, x, y);
+                case Position.BISHOP -> new Bishop(this.board, player, x, y);
+                case Position.ROOK -> new Rook(this.board, player, x, y);
+                case Position.QUEEN -> new Queen(this.board, player, x, y);
+                default -> kings[color] = new King(this.board, player, x, y);
+            };
+            material[color] += piece.getType().getValue();
+
+            // The pieces which may still castle, and the pawns on their initial rank, never moved
+            if (piece instanceof Pawn)
+                setAlreadyMoved(piece, y != (color == Position.WHITE ? 2 : 7));
+            else if (piece instanceof Rook)
+                setAlreadyMoved(piece, (position.getCastling() & castlingRight(square)) == 0);
+        }
+        for (int color = Position.WHITE ; color <= Position.BLACK ; color++) {
+            int rights = color == Position.WHITE ? Position.WHITE_SHORT | Position.WHITE_LONG
+                    : Position.BLACK_SHORT | Position.BLACK_LONG;
+            if (kings[color] != null)
+                kings[color].setAlreadyMoved((position.getCastling() & rights) == 0);
+        }
+
+        Player black = white.getEnemy();
+        white.setScore(Math.max(0, INITIAL_MATERIAL - material[Position.BLACK]));
+        black.setScore(Math.max(0, INITIAL_MATERIAL - material[Position.WHITE]));
+        boolean whiteToMove = position.getSideToMove() == Position.WHITE;
+        white.setPlayedMoves(position.getFullmoveNumber() - (whiteToMove ? 1 : 0));
+        black.setPlayedMoves(position.getFullmoveNumber() - 1);
+        this.playerTurn = whiteToMove ? white : black;
+
+        // En passant is only possible right after a double push : it is the last move of the game
+        int enPassant = position.getEnPassant();
+        if (enPassant >= 0) {
+            int direction = whiteToMove ? -8 : 8;
+            ChessPiece pawn = this.board.getPieceAt(Position.toPos(enPassant + direction));
+            this.startMove = new Move(pawn, Position.toPos(enPassant - direction), Position.toPos(enPassant + direction));
+            this.lastMove = this.startMove;
+        }
+
+        this.resultRecorded = false;
+        this.history = new GameReplay(position, new int[0]);
+        this.publishSnapshot();
+        this.draw();
+    }
+
+    /**
+     * @return The castling right lost when the rook of a square moves, or 0 if the square is not a corner
+     */
+    private static int castlingRight(int square) {
+        return switch (square) {
+            case 0 -> Position.WHITE_LONG;
+            case 7 -> Position.WHITE_SHORT;
+            case 56 -> Position.BLACK_LONG;
+            case 63 -> Position.BLACK_SHORT;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Remove the pieces and the history of the game, and reset the players.
+     */
+    private void clear() {
         this.board.clear();
         this.j1.setScore(0);
         this.j2.setScore(0);
         this.j1.setPlayedMoves(0);
         this.j2.setPlayedMoves(0);
-
-        this.start();
+        this.lastMove = null;
+        this.startMove = null;
+        this.legalMoves = null;
+
+        // The references to the pieces of the previous game are released
+        this.historyLength = this.historyEnd = 0;
+        Arrays.fill(this.historySnapshots, null);
+        Arrays.fill(this.pieces, null);
+        this.pieceCount = 0;
     }
 
     /**
@@ -203,15 +355,118 @@ public class ChessGame implements Game {
      */
     @Override
     public void checkWinCondition() {
-        if (this.board.isCheckMate(this.playerTurn.getEnemy())) {
-            this.gameInterface.declareWinner(playerTurn);
-        } else if (this.board.isStaleMate(this.playerTurn.getEnemy())) {
-            this.gameInterface.declareNull();
-        } else if (this.board.isInCheck(this.playerTurn.getEnemy())) {
-            this.gameInterface.tellCheck();
+        EngineEvents.GameEnd event = new EngineEvents.GameEnd();
+        event.begin();
+        long start = System.nanoTime();
+        Player enemy = this.playerTurn.getEnemy();
+        boolean cannotMove, inCheck;
+
+        // In the endings of the tablebase, the checkmate and the stalemate are read instead of being computed
+        Position position = null;
+        int value = Tablebase.NOT_FOUND;
+        if (this.tablebase != null && this.board.getPiecesByState(Piece.PieceState.ALIVE).size() <= 3) {
+            position = Position.fromGame(this);
+            position.sideToMove = enemy.getColor() == Player.COLOR.WHITE ? Position.WHITE : Position.BLACK;
+            value = this.tablebase.probe(position);
+        }
+        if (value != Tablebase.NOT_FOUND) {
+            cannotMove = value == Tablebase.CHECKMATED || value == Tablebase.STALEMATE;
+            inCheck = value == Tablebase.CHECKMATED || (!cannotMove && position.isInCheck());
+        } else {
+            // The legal moves of the enemy are computed once, and kept for its move
+            cannotMove = this.getLegalMoves(enemy).values().stream().allMatch(Set::isEmpty);
+            inCheck = this.board.isInCheck(enemy);
+        }
+
+        EngineMetrics.get().gameEndChecked(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.ply = this.historyLength;
+            event.result = cannotMove ? (inCheck ? "CHECKMATE" : "STALEMATE") : (inCheck ? "CHECK" : "NONE");
+            event.tablebase = value != Tablebase.NOT_FOUND;
+            event.commit();
+        }
+
+        if (cannotMove && inCheck) {
+            this.declareWinner(playerTurn);
+        } else if (cannotMove) {
+            this.declareNull();
+        } else if (inCheck) {
+            this.tellCheck();
         }
     }
 
+    /**
+     * The legal moves are computed once per ply, at the first call (usually by {@link #checkWinCondition()} after the
+     * previous move), and shared until the next move, undo or redo.
+     *
+     * @return The legal moves of each alive piece of the player whose turn it is. The map and its sets must not be
+     * modified
+     */
+    public Map<ChessPiece, Set<Pos>> getLegalMoves() {
+        return this.getLegalMoves(this.playerTurn);
+    }
+
+    /**
+     * @param piece A piece of the board
+     * @return The legal moves of the piece, shared with {@link #getLegalMoves()} for the pieces of the player whose turn
+     * it is. The set must not be modified
+     */
+    public Set<Pos> getLegalMoves(ChessPiece piece) {
+        if (piece.getPlayer() != this.playerTurn)
+            return piece.getLegalMoves();
+        return this.getLegalMoves(this.playerTurn).getOrDefault(piece, Collections.emptySet());
+    }
+
+    private Map<ChessPiece, Set<Pos>> getLegalMoves(Player player) {
+        if (this.legalMoves == null || this.legalMovesPlayer != player) {
+            long start = System.nanoTime();
+            Map<ChessPiece, Set<Pos>> legalMoves = new HashMap<>();
+            for (ChessPiece piece : ChessBoard.getPiecesByState(this.board.getPiecesByPlayer(player), Piece.PieceState.ALIVE))
+                legalMoves.put(piece, Collections.unmodifiableSet(piece.getLegalMoves()));
+            this.legalMoves = Collections.unmodifiableMap(legalMoves);
+            this.legalMovesPlayer = player;
+            EngineMetrics.get().legalMovesGenerated(System.nanoTime() - start);
+        }
+        return this.legalMoves;
+    }
+
+    /**
+     * Update the display of the game interface, and tell the subscribers of the events.
+     */
+    private void draw() {
+        this.gameInterface.draw();
+        if (this.events.hasSubscribers())
+            this.events.publish(new GameEvent(GameEvent.Type.POSITION, this.snapshot, this.snapshot.getSideToMove(),
+                    Position.EMPTY));
+    }
+
+    private void declareWinner(Player player) {
+        this.recordResult(player);
+        this.gameInterface.declareWinner(player);
+        if (this.events.hasSubscribers())
+            this.events.publish(new GameEvent(GameEvent.Type.WIN, this.snapshot, color(player), Position.EMPTY));
+    }
+
+    private void declareNull() {
+        this.recordResult(null);
+        this.gameInterface.declareNull();
+        if (this.events.hasSubscribers())
+            this.events.publish(new GameEvent(GameEvent.Type.DRAW, this.snapshot, this.snapshot.getSideToMove(),
+                    Position.EMPTY));
+    }
+
+    private void tellCheck() {
+        this.gameInterface.tellCheck();
+        if (this.events.hasSubscribers())
+            this.events.publish(new GameEvent(GameEvent.Type.CHECK, this.snapshot, color(this.playerTurn.getEnemy()),
+                    Position.EMPTY));
+    }
+
+    private static int color(Player player) {
+        return player.getColor() == Player.COLOR.WHITE ? Position.WHITE : Position.BLACK;
+    }
+
     /**
      *  This method must be used by the game interface in its {@link ChessGameInterface#draw()} method, to know what
      *  pieces must be drawn.
@@ -235,7 +490,7 @@ public class ChessGame implements Game {
         if (this.board.isOnBoard(pos) && pieceAtPos != null && pieceAtPos.getPlayer() == this.playerTurn) {
             // If the pos is valid, then display legalMoves and ask for where to move
             this.lastPieceTouched = pieceAtPos;
-            this.gameInterface.displayLegalMove(pieceAtPos.getLegalMoves());
+            this.gameInterface.displayLegalMove(this.getLegalMoves(pieceAtPos));
 
         } else {
             // If the pos is not valid, then ask again for what piece to move
@@ -250,14 +505,349 @@ public class ChessGame implements Game {
      * @param pos position where the piece must move
      */
     public void confirmPos(Pos pos) {
-        this.lastMove = new Move(lastPieceTouched, lastPieceTouched.getPos(), pos);
-        lastPieceTouched.move(pos);
+        ChessPiece piece = lastPieceTouched;
+        int ply = this.historyLength, record = ply * RECORD_SIZE;
+        this.ensureHistoryCapacity();
+
+        // Undo information, taken before the move
+        ChessPiece captured = this.board.getPieceAt(pos);
+        if (captured == null && piece.getType() == ChessPiece.ChessPieceType.PAWN && piece.getPos().getX() != pos.getX())
+            captured = this.board.getPieceAt(new Pos(pos.getX(), piece.getPos().getY()));
+        ChessPiece rook = null;
+        if (piece.getType() == ChessPiece.ChessPieceType.KING && Math.abs(pos.getX() - piece.getPos().getX()) == 2)
+            rook = this.board.getPieceAt(new Pos(pos.getX() > piece.getPos().getX() ? 8 : 1, pos.getY()));
+        int[] records = this.historyRecords;
+        records[record + PIECE] = this.pieceIndex(piece);
+        records[record + FROM] = Position.square(piece.getPos());
+        records[record + TO] = Position.square(pos);
+        records[record + CAPTURED] = this.pieceIndex(captured);
+        records[record + CAPTURED_SQUARE] = captured != null ? Position.square(captured.getPos()) : 0;
+        records[record + ROOK] = this.pieceIndex(rook);
+        records[record + ROOK_FROM] = rook != null ? Position.square(rook.getPos()) : 0;
+        records[record + ALREADY_MOVED] = hasAlreadyMoved(piece) ? 1 : 0;
+        records[record + SCORE_J1] = this.j1.getScore();
+        records[record + SCORE_J2] = this.j2.getScore();
+
+        this.lastMove = this.moveOf(ply);
+        piece.move(pos);
+        this.legalMoves = null;
+
+        ChessPiece promoted = piece.getState() == Piece.PieceState.PROMOTED ? this.board.getPieceAt(pos) : null;
+        records[record + ROOK_TO] = rook != null ? Position.square(rook.getPos()) : 0;
+        records[record + PROMOTED] = this.pieceIndex(promoted);
+        records[record + CODE] = this.recordMove(this.lastMove);
+        this.historyLength = this.historyEnd = ply + 1;
+        this.publishSnapshot();
+
         this.playerTurn.setPlayedMoves(playerTurn.getPlayedMoves() + 1);
-        this.gameInterface.draw();
+        EngineMetrics.get().moveApplied();
+        if (this.events.hasSubscribers()) {
+            int color = color(this.playerTurn);
+            this.events.publish(new GameEvent(GameEvent.Type.MOVE, this.snapshot, color, Position.EMPTY));
+            if (promoted != null)
+                this.events.publish(new GameEvent(GameEvent.Type.PROMOTION, this.snapshot, color,
+                        Position.type(Position.pieceCode(promoted.getType(), promoted.getPlayer().getColor()))));
+        }
+        this.draw();
         this.checkWinCondition();
         this.playerTurn = this.playerTurn.getEnemy();
     }
 
+    /**
+     * Add a move to the {@link #getHistory() history}, once it is done on the board. The move is encoded from its squares
+     * in the last position of the history, which is the position before the move : neither the position of the board nor
+     * its legal moves are computed.
+     *
+     * @param move {@link Move} done
+     * @return The move encoded for {@link Position}, or NO_MOVE if it is unknown to its rules
+     */
+    private int recordMove(Move move) {
+        int from = Position.square(move.from), to = Position.square(move.to);
+        ChessPiece moved = this.board.getPieceAt(move.to);
+        // A promoted pawn is replaced on the board by a piece of another type
+        int promotion = moved.getType() == move.piece.getType() ? Position.EMPTY
+                : Position.type(Position.pieceCode(moved.getType(), moved.getPlayer().getColor()));
+
+        int code = this.history.encodeMove(from, to, promotion);
+        if (code != Position.NO_MOVE) {
+            try {
+                this.history.append(code);
+                return code;
+            } catch (IllegalArgumentException e) {
+                // The move leaves the king in check for the Position rules
+            }
+        }
+        // The board allowed a move unknown to the Position rules : the history starts again from the current position
+        this.history = new GameReplay(Position.fromGame(this), new int[0]);
+        return Position.NO_MOVE;
+    }
+
+    /**
+     * Take back the last move played. The pieces are put back from the undo record of the move : the board is neither
+     * reset nor replayed, and nothing is allocated, as the position is published again from the snapshot kept when it
+     * was first reached. Only a move unknown to the {@link Position} rules rebuilds the history from the board. The move
+     * can be played again with {@link #redo()}, until another move is played.
+     *
+     * @return true if a move was taken back, false if no move was played
+     */
+    public boolean undo() {
+        if (this.historyLength == 0)
+            return false;
+
+        int ply = --this.historyLength, record = ply * RECORD_SIZE;
+        int[] records = this.historyRecords;
+        ChessPiece moved = this.piece(records[record + PIECE]);
+        ChessPiece promoted = this.piece(records[record + PROMOTED]);
+        ChessPiece rook = this.piece(records[record + ROOK]);
+        ChessPiece captured = this.piece(records[record + CAPTURED]);
+
+        if (promoted != null) {
+            promoted.setState(Piece.PieceState.PROMOTED);
+            moved.setState(Piece.PieceState.ALIVE);
+        }
+        moved.setPos(this.squares[records[record + FROM]]);
+        setAlreadyMoved(moved, records[record + ALREADY_MOVED] != 0);
+        if (rook != null) {
+            rook.setPos(this.squares[records[record + ROOK_FROM]]);
+            setAlreadyMoved(rook, false);
+        }
+        if (captured != null) {
+            captured.setState(Piece.PieceState.ALIVE);
+            captured.setPos(this.squares[records[record + CAPTURED_SQUARE]]);
+        }
+
+        this.j1.setScore(records[record + SCORE_J1]);
+        this.j2.setScore(records[record + SCORE_J2]);
+        Player player = moved.getPlayer();
+        player.setPlayedMoves(player.getPlayedMoves() - 1);
+        this.playerTurn = player;
+        this.lastMove = ply > 0 ? this.moveOf(ply - 1) : this.startMove;
+        this.legalMoves = null;
+
+        // The history is only rebuilt when it doesn't follow the board, after a move unknown to the Position rules
+        if (records[record + CODE] != Position.NO_MOVE && this.history.getPlies() == ply + 1)
+            this.history.truncate(ply);
+        else
+            this.history = new GameReplay(Position.fromGame(this), new int[0]);
+        this.snapshot = this.historySnapshots[ply];
+
+        this.draw();
+        return true;
+    }
+
+    /**
+     * Play again the last move taken back by {@link #undo()}, from its undo record : as with {@link #undo()}, the move
+     * is played again without allocating. The end of the game is then detected as after a move, by
+     * {@link #checkWinCondition()}, which computes the legal moves of the next player and may announce a check, a
+     * checkmate or a stalemate to the game interface.
+     *
+     * @return true if a move was played again, false if there was no move to play again
+     */
+    public boolean redo() {
+        if (this.historyLength == this.historyEnd)
+            return false;
+
+        int ply = this.historyLength++, record = ply * RECORD_SIZE;
+        int[] records = this.historyRecords;
+        ChessPiece moved = this.piece(records[record + PIECE]);
+        Pos to = this.squares[records[record + TO]];
+        ChessPiece promoted = this.piece(records[record + PROMOTED]);
+        ChessPiece rook = this.piece(records[record + ROOK]);
+        ChessPiece captured = this.piece(records[record + CAPTURED]);
+
+        // Killing the captured piece gives its value to the player, as when the move was played
+        if (captured != null)
+            captured.setState(Piece.PieceState.DEAD);
+        if (rook != null) {
+            rook.setPos(this.squares[records[record + ROOK_TO]]);
+            setAlreadyMoved(rook, true);
+        }
+        if (promoted != null) {
+            moved.setState(Piece.PieceState.PROMOTED);
+            promoted.setState(Piece.PieceState.ALIVE);
+            promoted.setPos(to);
+        } else {
+            moved.setPos(to);
+        }
+        setAlreadyMoved(moved, true);
+
+        Player player = moved.getPlayer();
+        player.setPlayedMoves(player.getPlayedMoves() + 1);
+        this.playerTurn = player;
+        this.lastMove = this.moveOf(ply);
+        this.legalMoves = null;
+
+        if (records[record + CODE] != Position.NO_MOVE && this.history.getPlies() == ply)
+            this.history.append(records[record + CODE]);
+        else
+            this.history = new GameReplay(Position.fromGame(this), new int[0]);
+        this.snapshot = this.historySnapshots[ply + 1];
+
+        this.draw();
+        this.checkWinCondition();
+        this.playerTurn = player.getEnemy();
+        return true;
+    }
+
+    /**
+     * Publish the position after the last move, read from the history : this costs a copy of
+     * {@link Position#SNAPSHOT_SIZE} bytes and a {@link PositionSnapshot}, which is kept for {@link #undo()} and
+     * {@link #redo()}. The snapshot is read by other threads without lock, so it can't be built when it is read.
+     */
+    private void publishSnapshot() {
+        byte[] data = new byte[Position.SNAPSHOT_SIZE];
+        this.history.writeLastSnapshot(ByteBuffer.wrap(data));
+        int lastMove = this.historyLength > 0 ? this.historyRecords[(this.historyLength - 1) * RECORD_SIZE + CODE]
+                : Position.NO_MOVE;
+        Player white = this.j1.getColor() == Player.COLOR.WHITE ? this.j1 : this.j2;
+        this.snapshot = new PositionSnapshot(data, this.historyLength, lastMove, white.getScore(), white.getEnemy().getScore());
+        this.historySnapshots[this.historyLength] = this.snapshot;
+    }
+
+    /**
+     * The events are published after the calls of the game interface, and delivered asynchronously : unlike the game
+     * interface, which plays the game, a subscriber never delays the moves.
+     *
+     * @return The publisher of the events of the game
+     */
+    public GameEventPublisher getEvents() {
+        return this.events;
+    }
+
+    /**
+     * The snapshot is immutable, and replaced after each move : it can be read by any thread without lock while the
+     * game is played, unlike the pieces of the board.
+     *
+     * @return The position after the last move
+     */
+    public PositionSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    /** @return true if a move can be taken back with {@link #undo()} */
+    public boolean canUndo() {
+        return this.historyLength > 0;
+    }
+
+    /** @return true if a move can be played again with {@link #redo()} */
+    public boolean canRedo() {
+        return this.historyLength < this.historyEnd;
+    }
+
+    private void ensureHistoryCapacity() {
+        if ((this.historyLength + 1) * RECORD_SIZE <= this.historyRecords.length)
+            return;
+
+        int capacity = this.historyRecords.length / RECORD_SIZE * 2;
+        this.historyRecords = Arrays.copyOf(this.historyRecords, capacity * RECORD_SIZE);
+        this.historySnapshots = Arrays.copyOf(this.historySnapshots, capacity + 1);
+    }
+
+    /**
+     * Fill the last move with a move of the history : the same {@link Move} is reused for every ply, and its squares are
+     * the {@link Pos} of {@link #squares}.
+     *
+     * @param ply Ply of the move, whose piece and squares are recorded
+     * @return The last move
+     */
+    private Move moveOf(int ply) {
+        int record = ply * RECORD_SIZE;
+        this.playedMove.piece = this.piece(this.historyRecords[record + PIECE]);
+        this.playedMove.from = this.squares[this.historyRecords[record + FROM]];
+        this.playedMove.to = this.squares[this.historyRecords[record + TO]];
+        return this.playedMove;
+    }
+
+    /**
+     * Give an index to a piece of an undo record, the first time it is recorded.
+     *
+     * @return The index of the piece in {@link #pieces}, or -1 for null
+     */
+    private int pieceIndex(ChessPiece piece) {
+        if (piece == null)
+            return -1;
+        for (int i = 0 ; i < this.pieceCount ; i++) {
+            if (this.pieces[i] == piece)
+                return i;
+        }
+        if (this.pieceCount == this.pieces.length)
+            this.pieces = Arrays.copyOf(this.pieces, this.pieceCount * 2);
+        this.pieces[this.pieceCount] = piece;
+        return this.pieceCount++;
+    }
+
+    /** @return The piece of an index of an undo record, or null for -1 */
+    private ChessPiece piece(int index) {
+        return index < 0 ? null : this.pieces[index];
+    }
+
+    /** @return If a pawn, a king or a rook has already moved (always false for the other pieces) */
+    private static boolean hasAlreadyMoved(ChessPiece piece) {
+        if (piece instanceof Pawn)
+            return ((Pawn) piece).hasAlreadyMoved();
+        if (piece instanceof King)
+            return ((King) piece).hasAlreadyMoved();
+        if (piece instanceof Rook)
+            return ((Rook) piece).hasAlreadyMoved();
+        return false;
+    }
+
+    private static void setAlreadyMoved(ChessPiece piece, boolean alreadyMoved) {
+        if (piece instanceof Pawn)
+            ((Pawn) piece).setAlreadyMoved(alreadyMoved);
+        else if (piece instanceof King)
+            ((King) piece).setAlreadyMoved(alreadyMoved);
+        else if (piece instanceof Rook)
+            ((Rook) piece).setAlreadyMoved(alreadyMoved);
+    }
+
+    /**
+     * The history gives the moves played since the start of the game, and the position at any ply. It can be used to
+     * browse the game, as the history scrubbing of {@link ChessGui}.
+     *
+     * @return The history of the game
+     */
+    public GameReplay getHistory() {
+        return this.history;
+    }
+
+    /**
+     * Set the endgame tablebase of the game. In the endings it knows, {@link #checkWinCondition()} reads the checkmate or
+     * the stalemate from the tablebase instead of computing the legal moves of every piece.
+     *
+     * @param tablebase {@link Tablebase} to use, or null
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Set the store where the results of the players are recorded when the game ends, under their names : the players
+     * must be named first ({@link Player#setName(String)}). Recording never blocks the game.
+     *
+     * @param scoreStore {@link ScoreStore} to use, or null
+     */
+    public void setScoreStore(ScoreStore scoreStore) {
+        this.scoreStore = scoreStore;
+    }
+
+    /**
+     * Record the result of the game for both players, if a {@link ScoreStore} is set. Only the first result of a game
+     * is recorded, until it is reset.
+     *
+     * @param winner {@link Player} who won, or null for a draw
+     */
+    private void recordResult(Player winner) {
+        if (this.scoreStore == null || this.resultRecorded)
+            return;
+        this.resultRecorded = true;
+        for (Player player : new Player[] {this.j1, this.j2}) {
+            ScoreStore.Outcome outcome = winner == null ? ScoreStore.Outcome.DRAW
+                    : winner == player ? ScoreStore.Outcome.WIN : ScoreStore.Outcome.LOSS;
+            this.scoreStore.record(player, outcome);
+        }
+    }
+
     /**
      * The last piece touched by a player may sometimes be retrieved by the GameInterface, for example in order to create
      * a history.
@@ -271,7 +861,8 @@ public class ChessGame implements Game {
      * This method can be called in order to get the last {@link Move}. The last moved can be useful to create a history,
      * and is used by the pawn for checking for en-passant moves.
      *
-     * @return The last move
+     * @return The last move, or null before the first move. The same {@link Move} is filled again after each move, undo
+     * or redo : it must not be kept nor modified
      */
     public Move getLastMove() { return this.lastMove; }
 
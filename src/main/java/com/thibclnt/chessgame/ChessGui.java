@@ -6,6 +6,7 @@ import javax.swing.border.TitledBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
 import java.util.Set;
 
 /**
@@ -33,10 +34,23 @@ public class ChessGui extends JFrame implements ChessGameInterface, ActionListen
     final private JLabel nomJoueur2 = new JLabel("Joueur 2");
     final private JLabel legendeJoueur2 = new JLabel("<html>Score: 0<br>Coups jouer: 0<br>Pieces perdu: 0</html>");
     final private JTextArea historiqueCoups = new JTextArea(20,20);
+    /** Slider to browse the positions of the game, from the start to the last move */
+    final private JSlider historySlider = new JSlider(0, 0, 0);
+    /** true when the slider shows a past position of the game */
+    private boolean scrubbing = false;
+    /** Types of the pieces, by type in {@link Position} */
+    private static final ChessPiece.ChessPieceType[] POSITION_TYPES = {null, ChessPiece.ChessPieceType.PAWN,
+            ChessPiece.ChessPieceType.KNIGHT, ChessPiece.ChessPieceType.BISHOP, ChessPiece.ChessPieceType.ROOK,
+            ChessPiece.ChessPieceType.QUEEN, ChessPiece.ChessPieceType.KING};
     final private JLabel controlButtons = new JLabel();
     final private JButton pauseButton = new JButton(" Pause ");
     final private JButton rematchButton = new JButton(" Rejouer ");
     final private JButton quitButton = new JButton(" Quitter ");
+    final private JButton undoButton = new JButton(" Annuler ");
+    final private JButton redoButton = new JButton(" Refaire ");
+    /** Length of the history text before each move, and text of the moves taken back, to be displayed again */
+    final private ArrayDeque<Integer> historiqueLengths = new ArrayDeque<>();
+    final private ArrayDeque<String> historiqueUndone = new ArrayDeque<>();
     final private JButton resumeButton = new JButton();
     final ChessGame chessGame;
 
@@ -147,25 +161,39 @@ public class ChessGui extends JFrame implements ChessGameInterface, ActionListen
         pannel_coups.add(scroll_barre);
         //----------------------------
 
+        //Navigation dans l'historique ----------------
+        historySlider.setLocation(1150, 722);
+        historySlider.setSize(450, 26);
+        historySlider.setBackground(Color.decode("#95b798"));
+        historySlider.setFocusable(false);
+        historySlider.addChangeListener(e -> scrubTo(historySlider.getValue()));
+        //----------------------------
+
         //Boutons de contrôle sur la partie ---------------
         controlButtons.setLayout(new GridLayout(1,2));
         controlButtons.setLocation(1150, 750);
         controlButtons.setSize(450, 169);
         controlButtons.setFont(new Font(maFont, Font.PLAIN, 30));
         controlButtons.setVerticalAlignment(SwingConstants.TOP);
-        controlButtons.setLayout(new GridLayout(2, 2));
+        controlButtons.setLayout(new GridLayout(2, 3));
 
         rematchButton.setFont(new Font(maFont, Font.PLAIN, 20));
         pauseButton.setFont(new Font(maFont, Font.PLAIN, 20));
         quitButton.setFont(new Font(maFont, Font.PLAIN, 20));
+        undoButton.setFont(new Font(maFont, Font.PLAIN, 20));
+        redoButton.setFont(new Font(maFont, Font.PLAIN, 20));
 
         rematchButton.addActionListener(this);
         pauseButton.addActionListener(this);
         quitButton.addActionListener(this);
+        undoButton.addActionListener(this);
+        redoButton.addActionListener(this);
 
         controlButtons.add(rematchButton);
         controlButtons.add(pauseButton);
         controlButtons.add(quitButton);
+        controlButtons.add(undoButton);
+        controlButtons.add(redoButton);
         //----------------------------
 
         //----------------------------------------------------
@@ -185,6 +213,7 @@ public class ChessGui extends JFrame implements ChessGameInterface, ActionListen
 
         //Ajout partie droite
         internFrame.add(pannel_coups);
+        internFrame.add(historySlider);
         internFrame.add(controlButtons);
 
         add(internFrame);
@@ -231,6 +260,9 @@ public class ChessGui extends JFrame implements ChessGameInterface, ActionListen
      */
     @Override
     public void draw() {
+        EngineEvents.GuiDraw event = new EngineEvents.GuiDraw();
+        event.begin();
+        this.scrubbing = false;
 
         Set<ChessPiece> pieces_to_draw = chessGame.getPiecesToDraw();
         int posX, posY = 0;
@@ -260,6 +292,57 @@ public class ChessGui extends JFrame implements ChessGameInterface, ActionListen
         }
 
         refreshPlayersData();
+
+        // The slider follows the last move
+        int plies = chessGame.getHistory().getPlies();
+        historySlider.setMaximum(plies);
+        historySlider.setValue(plies);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.pieces = pieces_to_draw.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Display the position of the game at a ply, read from {@link ChessGame#getHistory()}. The pieces can't be played
+     * until the last ply is displayed again.
+     * @param ply Number of moves played, from 0 to the number of moves of the game
+     */
+    public void scrubTo(int ply) {
+        GameReplay history = chessGame.getHistory();
+        if (ply < history.getPlies()) {
+            this.scrubbing = true;
+            this.pendingSelection = false;
+            drawPosition(history.positionAt(ply));
+        } else if (this.scrubbing) {
+            draw();
+        }
+    }
+
+    /**
+     * @return true if a past position of the game is displayed
+     */
+    public boolean isScrubbing() {
+        return this.scrubbing;
+    }
+
+    /**
+     * Draw the pieces of a {@link Position} on the board, instead of the pieces of the game.
+     * @param position Position to draw
+     */
+    private void drawPosition(Position position) {
+        for (int square = 0; square < 64; square++) {
+            int piece = position.pieceAt(square);
+            ChessSquare chessSquare = matricePlateau[Position.file(square)][Position.rank(square)];
+            if (piece == Position.EMPTY) {
+                chessSquare.setIcon(new ImageIcon(""));
+            } else {
+                String color = (Position.color(piece) == Position.WHITE ? Player.COLOR.WHITE : Player.COLOR.BLACK).toString();
+                chessSquare.setIcon(new ImageIcon("Assets/" + POSITION_TYPES[Position.type(piece)].getLetter() + "_" + color + ".png"));
+            }
+        }
     }
 
     /**
@@ -277,9 +360,47 @@ public class ChessGui extends JFrame implements ChessGameInterface, ActionListen
             move += " killed "+pieceKilled.getType()+" ";
         }
         move += ChessGame.intToLettersMap.get(newPosition.getX())+newPosition.getY();
+
+        // A new move replaces the moves taken back
+        historiqueLengths.push(historiqueCoups.getText().length());
+        historiqueUndone.clear();
         historiqueCoups.setText(historiqueCoups.getText()+"\n"+move);
     }
 
+    /**
+     * Take back the last move with {@link ChessGame#undo()}, and remove it from the movement's historic.
+     */
+    private void undoMove() {
+        this.pendingSelection = false;
+        if (!chessGame.undo())
+            return;
+
+        if (!historiqueLengths.isEmpty()) {
+            String text = historiqueCoups.getText();
+            int length = historiqueLengths.pop();
+            // Only the move is kept : the check or the end of the game is announced again by the game on redo
+            int end = text.indexOf('\n', length + 1);
+            historiqueUndone.push(text.substring(length, end < 0 ? text.length() : end));
+            historiqueCoups.setText(text.substring(0, length));
+        }
+    }
+
+    /**
+     * Play again the last move taken back with {@link ChessGame#redo()}, and add it again to the movement's historic.
+     */
+    private void redoMove() {
+        this.pendingSelection = false;
+        if (!chessGame.canRedo())
+            return;
+
+        // The move is written before the game announces the check or the end of the game, as after a move
+        if (!historiqueUndone.isEmpty()) {
+            historiqueLengths.push(historiqueCoups.getText().length());
+            historiqueCoups.setText(historiqueCoups.getText() + historiqueUndone.pop());
+        }
+        chessGame.redo();
+    }
+
     /**
      * Simply refreshes the data just under player's names, about theirs scores, loosed pieces and the movements count.
      */
@@ -398,7 +519,8 @@ public class ChessGui extends JFrame implements ChessGameInterface, ActionListen
 
     /**
      * this function in due the implementation of {@link ActionListener} class, it enables the GUI app to be control,
-     * if needed, by three buttons, one to pause the game, another to rematch and a last to quite the application.
+     * if needed, by five buttons, one to pause the game, another to rematch, one to quite the application, and two to
+     * take back a move and play it again.
      * @param e will represent the action [a click], this action will have an object, the class of the object, his name etc ...
      */
     @Override
@@ -406,8 +528,16 @@ public class ChessGui extends JFrame implements ChessGameInterface, ActionListen
         if (e.getSource() == this.rematchButton){
             chessGame.reset();
             historiqueCoups.setText("");
+            historiqueLengths.clear();
+            historiqueUndone.clear();
             draw();
         }
+        if (e.getSource() == this.undoButton){
+            undoMove();
+        }
+        if (e.getSource() == this.redoButton){
+            redoMove();
+        }
         if (e.getSource() == this.pauseButton){
 
             JFrame frame = null;
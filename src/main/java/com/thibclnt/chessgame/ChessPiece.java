@@ -79,7 +79,17 @@ public abstract class ChessPiece extends Piece {
 
     @Override
     public Set<Pos> getLegalMoves() {
-        return getLegalMoves(false);
+        EngineEvents.MoveGeneration event = new EngineEvents.MoveGeneration();
+        event.begin();
+        Set<Pos> legalMoves = getLegalMoves(false);
+        event.end();
+        if (event.shouldCommit()) {
+            event.piece = getType().name();
+            event.square = getPos() != null ? ChessGame.intToLettersMap.get(getPos().getX()) + getPos().getY() : null;
+            event.moves = legalMoves.size();
+            event.commit();
+        }
+        return legalMoves;
     }
 
     /** This method is used in order to factorise {@link ChessPiece#getLegalMoves()} and {@link ChessPiece#getAttacked()}
@@ -0,0 +1,747 @@
+package com.thibclnt.chessgame;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.thibclnt.chessgame.ChessGame.lettersToIntMap;
+
+/**
+ * Server hosting many {@link ChessGame} at the same time, played through a line based protocol over TCP on localhost.
+ * <p>
+ *     Each connection is served by its own virtual thread, and may play any number of games. The games don't belong to
+ *     a connection : they are known by their id, so the two players of a game may use different connections. The
+ *     commands, and their answers, are :
+ * </p>
+ * <ul>
+ *     <li> {@code NEW} : create a game. {@code OK id} </li>
+ *     <li> {@code MOVE id from to [promotion]}, for example {@code MOVE 1 E2 E4} or {@code MOVE 1 A7 A8 KNIGHT} : play
+ *     a move (a queen by default for a promotion). {@code OK}, followed by {@code CHECK}, {@code WIN player} or
+ *     {@code DRAW} if needed </li>
+ *     <li> {@code LEGAL id square} : the squares the piece of the square can move to. {@code OK E3 E4} </li>
+ *     <li> {@code BOARD id} : the position of the game. {@code OK fen} </li>
+ *     <li> {@code UNDO id}, {@code REDO id} : take back a move, or play it again. {@code OK}, followed by {@code WIN player}
+ *     or {@code DRAW} if the move played again ends the game </li>
+ *     <li> {@code CLOSE id} : end a game. {@code OK} </li>
+ *     <li> {@code WATCH id} : receive the events of a game, until it is closed. {@code OK}, then a line
+ *     {@code EVENT id event} for each {@link GameEvent} (see {@link GameEvent#toString()}), and {@code EVENT id CLOSED}
+ *     at the end. The events are sent between the answers of the other commands of the connection. </li>
+ *     <li> {@code VALIDATE move position}, for example {@code VALIDATE e2e4 fen} or {@code VALIDATE e7e5 key} : check
+ *     a move of a position given by its FEN, or by the key answered by a previous validation, without any game (see
+ *     {@link MoveValidationService}). {@code OK LEGAL key status} (the key of the position after the move, and its
+ *     {@link MoveValidationService.Status}) or {@code OK ILLEGAL key} </li>
+ *     <li> {@code STATS [RESET]} : the number of games and the latencies of the moves, which are then forgotten if
+ *     asked. {@code OK games=... moves=... p99=...} </li>
+ *     <li> {@code QUIT} : close the connection. </li>
+ * </ul>
+ * <p>
+ *     An error is answered by {@code ERR message}. Each game has its own single thread executor (on a virtual thread),
+ *     which runs all its commands one after the other : a {@link ChessGame} is never used by two threads at the same
+ *     time, and needs no lock. {@code BOARD} is the exception : it reads the last {@link PositionSnapshot} published by
+ *     the game, directly on the thread of the connection, and isn't delayed by the moves being played. The latency of
+ *     a move is measured from the reading of the command to its answer, including the wait for the commands of the same
+ *     game sent before it.
+ * </p> <p>
+ *     The games are kept by a {@link GameRegistry} : with a spill directory, the games idle for some time, or beyond the
+ *     memory budget, are written to the disk as their moves (compressed by {@link LegalIndexMoveCodec#ENTROPY}), and
+ *     played again on the board when they are used. The moves which could be played again by {@code REDO} are lost
+ *     then, and a watched game is never spilled.
+ * </p> <p>
+ *     With a journal directory, the games are written to a {@link GameJournal} : a move, an undo or a redo is only
+ *     answered once it is on the disk. When the server starts again after it stopped or crashed, the games which were
+ *     not closed are resumed from the journal, under the same ids, from their last position : the moves which could be
+ *     taken back are lost.
+ * </p> <p>
+ *     The events of a watched game are sent by the {@link GameEventPublisher} of the game : a spectator which doesn't
+ *     read them fast enough misses the oldest ones, but never slows the game.
+ * </p> <p>
+ *     Usage : {@code ChessServer [port] [spill-directory memory-MB idle-seconds [LRU | TINY_LFU [journal-directory]]]},
+ *     the default port being {@link #DEFAULT_PORT}. Without a spill directory, all the games stay in memory, and without
+ *     a journal directory, they are lost when the server stops.
+ * </p>
+ * @see ServerBenchmark
+ */
+public class ChessServer implements Closeable {
+
+    /** Default port of the server */
+    public static final int DEFAULT_PORT = 7878;
+    /** Interval between two logs of the statistics by {@link #main(String[])}, in seconds */
+    private static final int STATS_INTERVAL = 10;
+    /** Memory used by a game in progress, in bytes, measured with {@link ServerBenchmark} : used for the memory budget */
+    public static final int GAME_BYTES = 20 << 10;
+    /** Types of the pieces a pawn is promoted to, indexed by their {@link Position} type */
+    private static final ChessPiece.ChessPieceType[] PROMOTION_TYPES = {null, null, ChessPiece.ChessPieceType.KNIGHT,
+            ChessPiece.ChessPieceType.BISHOP, ChessPiece.ChessPieceType.ROOK, ChessPiece.ChessPieceType.QUEEN};
+
+    /**
+     * The {@link ChessGameInterface} of a game of the server : the calls of the game are kept for the answer of the
+     * command being run.
+     */
+    private static class RemoteInterface implements ChessGameInterface {
+        /** Squares the chosen piece can move to, or null if no piece of the player is chosen */
+        Set<Pos> legalMoves;
+        /** Piece a pawn is promoted to by the move being played */
+        ChessPiece.ChessPieceType promotion = ChessPiece.ChessPieceType.QUEEN;
+        /** Events of the move being played, added to its answer */
+        final StringBuilder events = new StringBuilder();
+        boolean over = false;
+
+        @Override
+        public ChessPiece.ChessPieceType askForPromotion(Pawn pawn) {
+            return this.promotion;
+        }
+
+        @Override
+        public void tellCheck() {
+            this.events.append(" CHECK");
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public void draw() {
+        }
+
+        @Override
+        public void askForMove() {
+            this.legalMoves = null;
+        }
+
+        @Override
+        public void declareWinner(Player player) {
+            this.events.append(" WIN ").append(player.getColor());
+            this.over = true;
+        }
+
+        @Override
+        public void declareNull() {
+            this.events.append(" DRAW");
+            this.over = true;
+        }
+
+        @Override
+        public void displayLegalMove(Set<Pos> legalMoves) {
+            this.legalMoves = legalMoves;
+        }
+    }
+
+    /**
+     * A game of the server, with the executor running its commands.
+     */
+    private static class Session {
+        final ChessGame game;
+        final RemoteInterface gameInterface;
+        final ThreadPoolExecutor executor;
+
+        Session(long id) {
+            this.gameInterface = new RemoteInterface();
+            this.game = new ChessGame(this.gameInterface);
+            this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    Thread.ofVirtual().name("game-" + id).factory());
+            // The thread is started with the game, so that the first move doesn't wait for it to be scheduled
+            this.executor.prestartCoreThread();
+        }
+
+        /**
+         * Create a session for a game starting from a position, resumed or read back.
+         */
+        Session(long id, Position start) {
+            this(id);
+            this.game.load(start);
+        }
+    }
+
+    /**
+     * Compact form of the games spilled by the {@link GameRegistry} : their number of moves (int), the position they
+     * start from ({@link Position#writeSnapshot(ByteBuffer)}), then their moves compressed by
+     * {@link LegalIndexMoveCodec#ENTROPY}.
+     */
+    private static class SessionSerializer implements GameRegistry.Serializer<Session> {
+        @Override
+        public byte[] write(Session session) {
+            ChessGame game = session.game;
+            GameReplay history = game.getHistory();
+            // A game whose history doesn't follow the board, after a move unknown to the Position rules, can't be played again
+            if (game.getEvents().hasSubscribers() || history.getPlies() != game.getSnapshot().getPly())
+                return null;
+            Position start = history.positionAt(0);
+            byte[] moves = LegalIndexMoveCodec.ENTROPY.encode(start, history.getMoves());
+            ByteBuffer buffer = ByteBuffer.allocate(4 + Position.SNAPSHOT_SIZE + moves.length).putInt(history.getPlies());
+            start.writeSnapshot(buffer);
+            return buffer.put(moves).array();
+        }
+
+        @Override
+        public Session read(long id, byte[] data) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            int plies = buffer.getInt();
+            Position start = Position.readSnapshot(buffer);
+            byte[] encoded = new byte[buffer.remaining()];
+            buffer.get(encoded);
+            int[] moves = LegalIndexMoveCodec.ENTROPY.decode(start, encoded, plies);
+
+            Session session = new Session(id, start);
+            for (int move : moves) {
+                ChessPiece.ChessPieceType promotion = Position.promotion(move) != Position.EMPTY
+                        ? PROMOTION_TYPES[Position.promotion(move)] : ChessPiece.ChessPieceType.QUEEN;
+                try {
+                    ChessServer.move(session, Position.toPos(Position.from(move)), Position.toPos(Position.to(move)), promotion);
+                } catch (CommandException e) {
+                    session.executor.shutdownNow();
+                    throw new IllegalArgumentException("Game " + id + " can't be played again : " + e.getMessage());
+                }
+            }
+            return session;
+        }
+
+        @Override
+        public void spilled(Session session) {
+            session.executor.shutdown();
+        }
+    }
+
+    /**
+     * A connection of a client : its answers, and the games it watches.
+     */
+    private static class Connection {
+        final BufferedWriter out;
+        final List<Spectator> spectators = new ArrayList<>();
+
+        Connection(BufferedWriter out) {
+            this.out = out;
+        }
+    }
+
+    /**
+     * Subscriber sending the events of a game to a connection watching it.
+     */
+    private static class Spectator implements Flow.Subscriber<GameEvent> {
+        final long id;
+        final BufferedWriter out;
+        volatile Flow.Subscription subscription;
+
+        Spectator(long id, BufferedWriter out) {
+            this.id = id;
+            this.out = out;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(GameEvent event) {
+            this.send(event.toString());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.send("CLOSED");
+        }
+
+        @Override
+        public void onComplete() {
+            this.send("CLOSED");
+        }
+
+        private void send(String event) {
+            // The answers of the commands of the connection are written by another thread
+            synchronized (this.out) {
+                try {
+                    this.out.write("EVENT " + this.id + " " + event);
+                    this.out.newLine();
+                    this.out.flush();
+                } catch (IOException e) {
+                    this.subscription.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * A command which failed, answered by {@code ERR message}.
+     */
+    private static class CommandException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        CommandException(String message) {
+            super(message);
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final GameRegistry<Session> sessions;
+    /** Directory created for a server keeping its games in memory, deleted when it is closed, or null */
+    private final Path temporaryDirectory;
+    /** Journal of the games, to resume them when the server starts again, or null */
+    private final GameJournal journal;
+    private final MoveValidationService validator = new MoveValidationService();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final LatencyRecorder moveLatencies = new LatencyRecorder();
+    private volatile boolean closed = false;
+
+    /**
+     * Start a server on localhost, keeping all its games in memory.
+     *
+     * @param port Port of the server, or 0 for any free port
+     * @throws IOException If the port can't be opened
+     */
+    public ChessServer(int port) throws IOException {
+        this(port, null, Integer.MAX_VALUE, 0, GameRegistry.Policy.LRU);
+    }
+
+    /**
+     * Start a server on localhost.
+     *
+     * @param port Port of the server, or 0 for any free port
+     * @param spillDirectory Directory where the games are spilled, or null to keep them in memory
+     * @param maxResidentGames Maximum number of games in memory
+     * @param idleMillis Time after which a game not played is spilled, in milliseconds, or 0 to spill them only beyond
+     *                   the maximum number of games in memory
+     * @param policy Choice of the games spilled beyond the maximum number of games in memory
+     * @throws IOException If the port can't be opened, or the spill directory created
+     */
+    public ChessServer(int port, Path spillDirectory, int maxResidentGames, long idleMillis, GameRegistry.Policy policy)
+            throws IOException {
+        this(port, spillDirectory, maxResidentGames, idleMillis, policy, null);
+    }
+
+    /**
+     * Start a server on localhost, resuming the games of its journal.
+     *
+     * @param port Port of the server, or 0 for any free port
+     * @param spillDirectory Directory where the games are spilled, or null to keep them in memory
+     * @param maxResidentGames Maximum number of games in memory
+     * @param idleMillis Time after which a game not played is spilled, in milliseconds, or 0 to spill them only beyond
+     *                   the maximum number of games in memory
+     * @param policy Choice of the games spilled beyond the maximum number of games in memory
+     * @param journalDirectory Directory of the {@link GameJournal} of the games, or null to lose them when the server
+     *                         stops
+     * @throws IOException If the port can't be opened, the spill directory created, or the journal read
+     */
+    public ChessServer(int port, Path spillDirectory, int maxResidentGames, long idleMillis, GameRegistry.Policy policy,
+                       Path journalDirectory) throws IOException {
+        if (spillDirectory == null) {
+            // Nothing is ever spilled, but the registry needs a directory
+            spillDirectory = Files.createTempDirectory("chess-server");
+            maxResidentGames = Integer.MAX_VALUE;
+            idleMillis = 0;
+            policy = GameRegistry.Policy.LRU;
+            this.temporaryDirectory = spillDirectory;
+        } else {
+            this.temporaryDirectory = null;
+        }
+        this.sessions = new GameRegistry<>(spillDirectory, new SessionSerializer(), policy, maxResidentGames, idleMillis);
+
+        this.journal = journalDirectory != null ? new GameJournal(journalDirectory) : null;
+        if (this.journal != null) {
+            // The games not closed before the server stopped are resumed, and the new games numbered after them
+            for (Map.Entry<Long, Position> game : this.journal.getGames().entrySet()) {
+                this.sessions.put(game.getKey(), new Session(game.getKey(), game.getValue()));
+                this.nextId.accumulateAndGet(game.getKey() + 1, Math::max);
+                EngineMetrics.get().gameStarted();
+            }
+        }
+        this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        Thread.ofPlatform().name("chess-server-acceptor").daemon().start(this::acceptLoop);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ChessServer server;
+        if (args.length > 3) {
+            int maxResidentGames = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Long.parseLong(args[2]) * (1 << 20) / GAME_BYTES));
+            GameRegistry.Policy policy = args.length > 4 ? GameRegistry.Policy.valueOf(args[4].toUpperCase()) : GameRegistry.Policy.LRU;
+            Path journalDirectory = args.length > 5 ? Path.of(args[5]) : null;
+            server = new ChessServer(port, Path.of(args[1]), maxResidentGames, Long.parseLong(args[3]) * 1000, policy,
+                    journalDirectory);
+        } else if (args.length > 1) {
+            System.err.println("Usage : ChessServer [port] [spill-directory memory-MB idle-seconds [LRU | TINY_LFU [journal-directory]]]");
+            System.exit(1);
+            return;
+        } else {
+            server = new ChessServer(port);
+        }
+        System.out.println("Chess server listening on port " + server.getPort() + ", " + server.getSessionCount()
+                + " games resumed");
+        while (true) {
+            Thread.sleep(STATS_INTERVAL * 1000);
+            System.out.println(server.getSessionCount() + " games (" + server.sessions.getResidentCount() + " in memory, "
+                    + server.sessions.getSpillCount() + " spilled, " + server.sessions.getHydrationCount()
+                    + " read back), moves : " + server.getMoveLatencies());
+        }
+    }
+
+    private void acceptLoop() {
+        while (!this.closed) {
+            try {
+                Socket socket = this.serverSocket.accept();
+                this.connections.execute(() -> this.serve(socket));
+            } catch (IOException e) {
+                if (!this.closed)
+                    System.err.println("Chess server : " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read the commands of a connection and answer them, until the connection is closed.
+     */
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            Connection connection = new Connection(out);
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] words = line.trim().split("\\s+");
+                    if (words[0].equalsIgnoreCase("QUIT"))
+                        break;
+
+                    String answer;
+                    try {
+                        answer = "OK" + this.execute(words, connection);
+                    } catch (CommandException e) {
+                        answer = "ERR " + e.getMessage();
+                    }
+                    synchronized (out) {
+                        out.write(answer);
+                        out.newLine();
+                        // Commands sent together are answered together
+                        if (!in.ready())
+                            out.flush();
+                    }
+                }
+                synchronized (out) {
+                    out.flush();
+                }
+            } finally {
+                for (Spectator spectator : connection.spectators)
+                    spectator.subscription.cancel();
+            }
+        } catch (SocketException ignored) {
+            // The client closed the connection
+        } catch (IOException e) {
+            if (!this.closed)
+                System.err.println("Chess server : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run a command.
+     *
+     * @param words Words of the command
+     * @param connection Connection which sent the command
+     * @return The answer of the command, after "OK"
+     * @throws CommandException If the command failed
+     */
+    private String execute(String[] words, Connection connection) throws CommandException {
+        String command = words[0].toUpperCase();
+        switch (command) {
+            case "NEW" -> {
+                long id = this.nextId.getAndIncrement();
+                Session session = new Session(id);
+                if (this.journal != null)
+                    awaitJournal(this.journal.begin(id, session.game.getHistory().positionAt(0)));
+                this.sessions.put(id, session);
+                EngineMetrics.get().gameStarted();
+                return " " + id;
+            }
+            case "VALIDATE" -> {
+                if (words.length < 3)
+                    throw new CommandException("Usage : VALIDATE move fen | key");
+                try {
+                    MoveValidationService.Validation validation = words.length == 3
+                            ? this.validator.validate(Long.parseUnsignedLong(words[2], 16), words[1])
+                            : this.validator.validate(String.join(" ", List.of(words).subList(2, words.length)), words[1]);
+                    return " " + validation;
+                } catch (IllegalArgumentException e) {
+                    throw new CommandException(e.getMessage());
+                }
+            }
+            case "STATS" -> {
+                String answer = " games=" + this.sessions.size() + " resident=" + this.sessions.getResidentCount()
+                        + " spills=" + this.sessions.getSpillCount() + " spillFailures=" + this.sessions.getSpillFailureCount()
+                        + " hydrations=" + this.sessions.getHydrationCount()
+                        + " moves=" + this.moveLatencies.getCount() + " p50="
+                        + this.moveLatencies.getPercentileMicros(50) + "us p99=" + this.moveLatencies.getPercentileMicros(99)
+                        + "us max=" + this.moveLatencies.getPercentileMicros(100) + "us";
+                if (words.length > 1 && words[1].equalsIgnoreCase("RESET"))
+                    this.moveLatencies.reset();
+                return answer;
+            }
+            case "MOVE", "LEGAL", "BOARD", "UNDO", "REDO", "CLOSE", "WATCH" -> {}
+            default -> throw new CommandException("Unknown command : " + command);
+        }
+
+        if (words.length < 2)
+            throw new CommandException("Usage : " + command + " id ...");
+        long id;
+        try {
+            id = Long.parseLong(words[1]);
+        } catch (NumberFormatException e) {
+            throw new CommandException("Invalid game id : " + words[1]);
+        }
+        Session session;
+        try {
+            session = this.sessions.acquire(id);
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            throw new CommandException("Game " + id + " can't be read back : " + e.getMessage());
+        }
+        if (session == null)
+            throw new CommandException("Unknown game : " + id);
+        try {
+            return this.execute(command, words, id, session, connection);
+        } finally {
+            this.sessions.release(id);
+        }
+    }
+
+    /**
+     * Run a command of a game, which is not spilled meanwhile.
+     */
+    private String execute(String command, String[] words, long id, Session session, Connection connection)
+            throws CommandException {
+        return switch (command) {
+            case "MOVE" -> {
+                if (words.length < 4)
+                    throw new CommandException("Usage : MOVE id from to [promotion]");
+                long start = System.nanoTime();
+                Pos from = parseSquare(words[2]), to = parseSquare(words[3]);
+                ChessPiece.ChessPieceType promotion = words.length > 4 ? parsePromotion(words[4]) : ChessPiece.ChessPieceType.QUEEN;
+                String answer = this.run(session, () -> {
+                    String events = move(session, from, to, promotion);
+                    this.journalLastMove(id, session);
+                    return events;
+                });
+                this.moveLatencies.record(System.nanoTime() - start);
+                yield answer;
+            }
+            case "LEGAL" -> {
+                if (words.length < 3)
+                    throw new CommandException("Usage : LEGAL id square");
+                Pos square = parseSquare(words[2]);
+                yield this.run(session, () -> legalMoves(session, square));
+            }
+            // The snapshot is published by the game after each move : it is read without waiting for the executor
+            case "BOARD" -> " " + session.game.getSnapshot().toFen();
+            case "UNDO" -> this.run(session, () -> {
+                if (!session.game.undo())
+                    throw new CommandException("No move to take back");
+                session.gameInterface.over = false;
+                // The journal has no record to take back a move : the position after the undo is written instead
+                if (this.journal != null) {
+                    GameReplay history = session.game.getHistory();
+                    try {
+                        awaitJournal(this.journal.begin(id, history.positionAt(history.getPlies())));
+                    } catch (CommandException e) {
+                        // The move taken back is played again, as the journal still has it
+                        session.game.redo();
+                        throw e;
+                    }
+                }
+                return "";
+            });
+            case "REDO" -> this.run(session, () -> {
+                // The game announces the check or the end of the game again, as after the move
+                session.gameInterface.events.setLength(0);
+                if (!session.game.redo())
+                    throw new CommandException("No move to play again");
+                this.journalLastMove(id, session);
+                return session.gameInterface.events.toString();
+            });
+            case "CLOSE" -> {
+                if (this.journal != null)
+                    awaitJournal(this.journal.end(id));
+                if (this.sessions.remove(id) != null)
+                    EngineMetrics.get().gamesEnded(1);
+                session.executor.shutdown();
+                session.game.getEvents().close();
+                yield "";
+            }
+            case "WATCH" -> {
+                Spectator spectator = new Spectator(id, connection.out);
+                session.game.getEvents().subscribe(spectator);
+                connection.spectators.add(spectator);
+                yield "";
+            }
+            default -> "";
+        };
+    }
+
+    /**
+     * A command run by the executor of a game.
+     */
+    private interface GameCommand {
+        String run() throws CommandException;
+    }
+
+    /**
+     * Run a command on the executor of a game, and wait for its answer.
+     */
+    private String run(Session session, GameCommand command) throws CommandException {
+        try {
+            return session.executor.submit(command::run).get();
+        } catch (RejectedExecutionException e) {
+            throw new CommandException("Unknown game");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CommandException)
+                throw (CommandException) e.getCause();
+            throw new CommandException(String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandException("Interrupted");
+        }
+    }
+
+    /**
+     * Journal the last move of a game, once it is played. A move unknown to the {@link Position} rules can't be
+     * replayed from the journal : the position after it is written instead. If the move can't be journaled, it is
+     * taken back, so that the game stays at the position of the journal, and its next moves can be journaled.
+     */
+    private void journalLastMove(long id, Session session) throws CommandException {
+        if (this.journal == null)
+            return;
+        int move = session.game.getSnapshot().getLastMove();
+        GameReplay history = session.game.getHistory();
+        try {
+            awaitJournal(move != Position.NO_MOVE ? this.journal.move(id, move)
+                    : this.journal.begin(id, history.positionAt(history.getPlies())));
+        } catch (CommandException e) {
+            session.game.undo();
+            session.gameInterface.over = false;
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for a record of the journal to be on the disk, so that the command is only answered once it would survive
+     * a crash.
+     */
+    private static void awaitJournal(CompletableFuture<Void> written) throws CommandException {
+        try {
+            written.get();
+        } catch (ExecutionException e) {
+            throw new CommandException("The game can't be journaled : " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandException("Interrupted");
+        }
+    }
+
+    private static String move(Session session, Pos from, Pos to, ChessPiece.ChessPieceType promotion)
+            throws CommandException {
+        RemoteInterface gameInterface = session.gameInterface;
+        if (gameInterface.over)
+            throw new CommandException("The game is over");
+
+        gameInterface.legalMoves = null;
+        session.game.posChosen(from);
+        if (gameInterface.legalMoves == null || !gameInterface.legalMoves.contains(to))
+            throw new CommandException("Illegal move");
+
+        gameInterface.promotion = promotion;
+        gameInterface.events.setLength(0);
+        session.game.confirmPos(to);
+        gameInterface.legalMoves = null;
+        return gameInterface.events.toString();
+    }
+
+    private static String legalMoves(Session session, Pos square) {
+        ChessPiece piece = session.game.getBoard().getPieceAt(square);
+        StringJoiner answer = new StringJoiner(" ", " ", "").setEmptyValue("");
+        if (piece != null && !session.gameInterface.over && piece.getPlayer() == session.game.getPlayerTurn()) {
+            for (Pos pos : session.game.getLegalMoves(piece))
+                answer.add(ChessGame.intToLettersMap.get(pos.getX()) + pos.getY());
+        }
+        return answer.toString();
+    }
+
+    private static Pos parseSquare(String text) throws CommandException {
+        String square = text.toUpperCase();
+        if (square.length() != 2 || !lettersToIntMap.containsKey(square.substring(0, 1))
+                || square.charAt(1) < '1' || square.charAt(1) > '8')
+            throw new CommandException("Invalid square : " + text);
+        return new Pos(lettersToIntMap.get(square.substring(0, 1)), square.charAt(1) - '0');
+    }
+
+    private static ChessPiece.ChessPieceType parsePromotion(String text) throws CommandException {
+        try {
+            ChessPiece.ChessPieceType type = ChessPiece.ChessPieceType.valueOf(text.toUpperCase());
+            if (type != ChessPiece.ChessPieceType.PAWN && type != ChessPiece.ChessPieceType.KING)
+                return type;
+        } catch (IllegalArgumentException ignored) {}
+        throw new CommandException("Invalid promotion : " + text);
+    }
+
+    /**
+     * Stop the server : the connections are closed and the games are dropped. The games of the journal are resumed
+     * when the server starts again.
+     *
+     * @throws IOException If the server socket can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.serverSocket.close();
+        this.connections.shutdownNow();
+        this.sessions.forEachResident(session -> {
+            session.executor.shutdownNow();
+            session.game.getEvents().close();
+        });
+        EngineMetrics.get().gamesEnded(this.sessions.size());
+        this.sessions.close();
+        if (this.journal != null)
+            this.journal.close();
+        if (this.temporaryDirectory != null)
+            Files.deleteIfExists(this.temporaryDirectory);
+    }
+
+    /** @return The port of the server */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /** @return The number of games of the server */
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    /** @return The latencies of the moves played since the server started */
+    public LatencyRecorder getMoveLatencies() {
+        return this.moveLatencies;
+    }
+}
@@ -61,6 +61,9 @@ public class ChessSquare extends JButton implements ActionListener {
      */
     @Override
     public void actionPerformed(ActionEvent e) {
+        // A past position of the game is displayed : the pieces can't be played
+        if (chessGui.isScrubbing())
+            return;
 
         String iconOfTheSquare = this.getIcon().toString();
 
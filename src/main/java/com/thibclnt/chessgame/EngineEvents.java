@@ -0,0 +1,117 @@
+package com.thibclnt.chessgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Events of the JDK Flight Recorder timing the hot paths of the rules and of the engine, which a sampling profiler
+ * can't tell apart : the generation of the legal moves of a piece, the check tests, the detection of the end of the
+ * game after a move, the searches and the drawing of {@link ChessGui}.
+ * <p>
+ *     Each event is used as {@code begin()}, then {@code commit()} : when no recording asks for it, {@code commit()}
+ *     does nothing and the JIT removes the event, so the rules are as fast as without it. The events shorter than their
+ *     {@link Threshold} are not recorded, so that a recording in production only keeps the slow ones. The thresholds
+ *     may be changed in the settings of the recording.
+ * </p> <p>
+ *     Usage : {@code java -XX:StartFlightRecording:filename=chess.jfr ...}, then for example
+ *     {@code jfr print --events com.thibclnt.chessgame.Search chess.jfr}, or open the recording in JDK Mission Control.
+ * </p>
+ */
+public final class EngineEvents {
+
+    private EngineEvents() {
+    }
+
+    /**
+     * Generation of the legal moves of a piece, by {@link ChessPiece#getLegalMoves()}.
+     */
+    @Name("com.thibclnt.chessgame.MoveGeneration")
+    @Label("Move Generation")
+    @Category({"Chess", "Rules"})
+    @Description("Generation of the legal moves of a piece")
+    @Threshold("1 ms")
+    public static class MoveGeneration extends Event {
+        @Label("Piece")
+        public String piece;
+        @Label("Square")
+        public String square;
+        @Label("Legal Moves")
+        public int moves;
+    }
+
+    /**
+     * Test if a square is attacked, by {@link ChessBoard#isInCheck(Pos, Player)} : it is done for each move of a piece
+     * by {@link ChessBoard#isStillInCheck(Player, ChessPiece, Pos)}.
+     */
+    @Name("com.thibclnt.chessgame.CheckTest")
+    @Label("Check Test")
+    @Category({"Chess", "Rules"})
+    @Description("Test if a square is attacked by a player")
+    @Threshold("100 us")
+    public static class CheckTest extends Event {
+        @Label("Square")
+        public String square;
+        @Label("Attacked")
+        public boolean attacked;
+    }
+
+    /**
+     * Detection of check, checkmate and stalemate after a move, by {@link ChessGame#checkWinCondition()}, including the
+     * generation of the legal moves of the player to move.
+     */
+    @Name("com.thibclnt.chessgame.GameEnd")
+    @Label("Game End Evaluation")
+    @Category({"Chess", "Rules"})
+    @Description("Detection of check, checkmate and stalemate after a move")
+    @Threshold("5 ms")
+    public static class GameEnd extends Event {
+        @Label("Ply")
+        public int ply;
+        @Label("Result")
+        @Description("NONE, CHECK, CHECKMATE or STALEMATE")
+        public String result;
+        @Label("Tablebase")
+        @Description("The result was read from the endgame tablebase")
+        public boolean tablebase;
+    }
+
+    /**
+     * Search of the engine, by {@link Search#search(Position, int, TimeManager)}.
+     */
+    @Name("com.thibclnt.chessgame.Search")
+    @Label("Search")
+    @Category({"Chess", "Engine"})
+    @Description("Search of the best move of a position")
+    @Threshold("10 ms")
+    public static class SearchEvent extends Event {
+        @Label("Position")
+        public String fen;
+        @Label("Depth")
+        public int depth;
+        @Label("Nodes")
+        public long nodes;
+        @Label("Transposition Table Hits")
+        public long ttHits;
+        @Label("Best Move")
+        public String bestMove;
+        @Label("Score")
+        public int score;
+    }
+
+    /**
+     * Drawing of the board by {@link ChessGui#draw()}.
+     */
+    @Name("com.thibclnt.chessgame.GuiDraw")
+    @Label("GUI Draw")
+    @Category({"Chess", "GUI"})
+    @Description("Drawing of the board and of the pieces by the GUI")
+    @Threshold("10 ms")
+    public static class GuiDraw extends Event {
+        @Label("Pieces")
+        public int pieces;
+    }
+}
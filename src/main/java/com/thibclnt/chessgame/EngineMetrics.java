@@ -0,0 +1,252 @@
+package com.thibclnt.chessgame;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the rules and of the engine, for all the games of the process : moves played, time to generate the legal
+ * moves and to detect the end of the game, games in progress, and speed of the search.
+ * <p>
+ *     The metrics are recorded by any number of threads without locks : the counters are {@link LongAdder}, and the
+ *     times are recorded by {@link LatencyRecorder}, whose buckets give the percentiles with a fixed memory. Recording
+ *     a time costs two reads of the clock and a few atomic additions.
+ * </p> <p>
+ *     The metrics are registered as an MBean named {@link #OBJECT_NAME} when they are first used, and may be written
+ *     regularly to a file, a line each time, by {@link #startDump(Path, long)} or by setting the system properties
+ *     {@value #DUMP_FILE_PROPERTY} (the file) and {@value #DUMP_INTERVAL_PROPERTY} (the interval, in seconds, 10 by
+ *     default), for example {@code java -Dchessgame.metrics.file=metrics.log -jar ... --server}.
+ * </p>
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+
+    /** Name of the MBean of the metrics */
+    public static final String OBJECT_NAME = "com.thibclnt.chessgame:type=EngineMetrics";
+    /** System property giving the file where the metrics are written regularly */
+    public static final String DUMP_FILE_PROPERTY = "chessgame.metrics.file";
+    /** System property giving the interval between two writings of the metrics, in seconds */
+    public static final String DUMP_INTERVAL_PROPERTY = "chessgame.metrics.interval";
+
+    private static final EngineMetrics INSTANCE = new EngineMetrics();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("The engine metrics can't be registered : " + e.getMessage());
+        }
+        String file = System.getProperty(DUMP_FILE_PROPERTY);
+        if (file != null)
+            INSTANCE.startDump(Path.of(file), Long.getLong(DUMP_INTERVAL_PROPERTY, 10) * 1000);
+    }
+
+    private final LongAdder movesApplied = new LongAdder();
+    private final LongAdder activeGames = new LongAdder();
+    private final LatencyRecorder legalMoves = new LatencyRecorder();
+    private final LatencyRecorder gameEnd = new LatencyRecorder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchNodes = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private ScheduledExecutorService dumper = null;
+    private ScheduledFuture<?> dump = null;
+
+    private EngineMetrics() {
+    }
+
+    /** @return The metrics of the process */
+    public static EngineMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Count a move played in a game.
+     */
+    public void moveApplied() {
+        this.movesApplied.increment();
+    }
+
+    /**
+     * Count a game started on a server.
+     */
+    public void gameStarted() {
+        this.activeGames.increment();
+    }
+
+    /**
+     * Count games ended on a server.
+     *
+     * @param games Number of games ended
+     */
+    public void gamesEnded(int games) {
+        this.activeGames.add(-games);
+    }
+
+    /**
+     * Record a generation of the legal moves of a position.
+     *
+     * @param nanos Time of the generation, in nanoseconds
+     */
+    public void legalMovesGenerated(long nanos) {
+        this.legalMoves.record(nanos);
+    }
+
+    /**
+     * Record a detection of check, checkmate and stalemate after a move.
+     *
+     * @param nanos Time of the detection, in nanoseconds
+     */
+    public void gameEndChecked(long nanos) {
+        this.gameEnd.record(nanos);
+    }
+
+    /**
+     * Record a search of the engine.
+     *
+     * @param nodes Number of nodes searched
+     * @param nanos Time of the search, in nanoseconds
+     */
+    public void searchDone(long nodes, long nanos) {
+        this.searches.increment();
+        this.searchNodes.add(nodes);
+        this.searchNanos.add(nanos);
+    }
+
+    @Override
+    public long getMovesApplied() {
+        return this.movesApplied.sum();
+    }
+
+    @Override
+    public long getActiveGames() {
+        return this.activeGames.sum();
+    }
+
+    @Override
+    public long getLegalMoveGenerations() {
+        return this.legalMoves.getCount();
+    }
+
+    @Override
+    public long getLegalMoveP50Micros() {
+        return this.legalMoves.getPercentileMicros(50);
+    }
+
+    @Override
+    public long getLegalMoveP99Micros() {
+        return this.legalMoves.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getLegalMoveMaxMicros() {
+        return this.legalMoves.getPercentileMicros(100);
+    }
+
+    @Override
+    public long getGameEndChecks() {
+        return this.gameEnd.getCount();
+    }
+
+    @Override
+    public long getGameEndP50Micros() {
+        return this.gameEnd.getPercentileMicros(50);
+    }
+
+    @Override
+    public long getGameEndP99Micros() {
+        return this.gameEnd.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getGameEndMaxMicros() {
+        return this.gameEnd.getPercentileMicros(100);
+    }
+
+    @Override
+    public long getSearches() {
+        return this.searches.sum();
+    }
+
+    @Override
+    public long getSearchNodes() {
+        return this.searchNodes.sum();
+    }
+
+    /**
+     * The searches running at the same time count separately : this is the speed of a search thread.
+     *
+     * @return The number of nodes searched per second of search, by all the searches
+     */
+    @Override
+    public long getSearchNodesPerSecond() {
+        long nanos = this.searchNanos.sum();
+        return nanos == 0 ? 0 : (long) (this.searchNodes.sum() * 1e9 / nanos);
+    }
+
+    @Override
+    public String getSnapshot() {
+        return "moves=" + this.getMovesApplied() + " games=" + this.getActiveGames()
+                + " legalMoves=" + this.getLegalMoveGenerations() + " p50=" + this.getLegalMoveP50Micros()
+                + "us p99=" + this.getLegalMoveP99Micros() + "us max=" + this.getLegalMoveMaxMicros()
+                + "us gameEnd=" + this.getGameEndChecks() + " p50=" + this.getGameEndP50Micros()
+                + "us p99=" + this.getGameEndP99Micros() + "us max=" + this.getGameEndMaxMicros()
+                + "us searches=" + this.getSearches() + " nodes=" + this.getSearchNodes()
+                + " nps=" + this.getSearchNodesPerSecond();
+    }
+
+    @Override
+    public void reset() {
+        this.movesApplied.reset();
+        this.legalMoves.reset();
+        this.gameEnd.reset();
+        this.searches.reset();
+        this.searchNodes.reset();
+        this.searchNanos.reset();
+    }
+
+    /**
+     * Append the metrics to a file regularly, with the time, on a daemon thread. A previous dump is stopped.
+     *
+     * @param file File where the metrics are written
+     * @param periodMillis Interval between two writings, in milliseconds
+     */
+    public synchronized void startDump(Path file, long periodMillis) {
+        if (periodMillis <= 0)
+            throw new IllegalArgumentException("The interval must be positive");
+        this.stopDump();
+        if (this.dumper == null) {
+            this.dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "engine-metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.dump = this.dumper.scheduleAtFixedRate(() -> {
+            try {
+                Files.writeString(file, Instant.now() + " " + this.getSnapshot() + System.lineSeparator(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("The engine metrics can't be written : " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop writing the metrics to a file.
+     */
+    public synchronized void stopDump() {
+        if (this.dump != null) {
+            this.dump.cancel(false);
+            this.dump = null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.thibclnt.chessgame;
+
+/**
+ * Management interface of {@link EngineMetrics}, read through JMX (for example with JConsole or VisualVM). The latencies
+ * are in microseconds.
+ */
+public interface EngineMetricsMBean {
+
+    /** @return The number of moves played in the games (by {@link ChessGame#confirmPos(Pos)}) */
+    long getMovesApplied();
+
+    /** @return The number of games in progress on the servers */
+    long getActiveGames();
+
+    /** @return The number of generations of the legal moves of a position */
+    long getLegalMoveGenerations();
+
+    /** @return The median time of a generation of the legal moves */
+    long getLegalMoveP50Micros();
+
+    /** @return The 99th percentile of the time of a generation of the legal moves */
+    long getLegalMoveP99Micros();
+
+    /** @return The longest generation of the legal moves */
+    long getLegalMoveMaxMicros();
+
+    /** @return The number of detections of check, checkmate and stalemate after a move */
+    long getGameEndChecks();
+
+    /** @return The median time of a detection of check, checkmate and stalemate */
+    long getGameEndP50Micros();
+
+    /** @return The 99th percentile of the time of a detection of check, checkmate and stalemate */
+    long getGameEndP99Micros();
+
+    /** @return The longest detection of check, checkmate and stalemate */
+    long getGameEndMaxMicros();
+
+    /** @return The number of searches of the engine */
+    long getSearches();
+
+    /** @return The number of nodes searched by the engine */
+    long getSearchNodes();
+
+    /** @return The number of nodes searched per second of search, by all the searches */
+    long getSearchNodesPerSecond();
+
+    /** @return All the metrics, on a single line */
+    String getSnapshot();
+
+    /**
+     * Forget all the metrics, except the number of games in progress.
+     */
+    void reset();
+}
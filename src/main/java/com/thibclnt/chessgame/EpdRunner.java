@@ -0,0 +1,375 @@
+package com.thibclnt.chessgame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runner of test suites in EPD format : each position of the suite is searched, and is solved when the best move found is
+ * one of its best moves ({@code bm}) and none of the moves to avoid ({@code am}).
+ * <p>
+ *     A line of a suite is a position (the first four fields of a FEN) followed by operations separated by semicolons,
+ *     for example {@code r1b2rk1/ppp2ppp/... w - - bm Qxh7+; id "WAC.004";}. The operations {@code bm}, {@code am}
+ *     (moves in standard algebraic or coordinate notation) and {@code id} are read, the others are ignored.
+ * </p> <p>
+ *     Positions are searched in parallel, by a fixed number of threads which each have their own {@link Search}, whose
+ *     transposition table is cleared before each position. Each position is searched for a fixed time or a fixed number
+ *     of nodes. The runner reports the number of positions solved, the distribution of the time to solution (the time
+ *     after which the best move didn't change anymore) and the number of nodes searched per second by all the threads.
+ * </p> <p>
+ *     When a minimum number of positions solved or of nodes per second is given, the program exits with the status 1
+ *     if it is not reached, so that it can be used to detect a regression of the search.
+ * </p> <p>
+ *     Usage : {@code EpdRunner [-time ms | -nodes n] [-threads n] [-min-solved n] [-min-nps n] suite.epd}
+ * </p>
+ * @see SearchBenchmark
+ */
+public class EpdRunner {
+
+    /** Default time of the search of each position, in milliseconds */
+    public static final long DEFAULT_TIME_MILLIS = 1000;
+    /** Upper bounds of the classes of the distribution of the times to solution, in milliseconds */
+    private static final long[] TIME_CLASSES = {10, 100, 1000, 10000};
+
+    /**
+     * Struct-like class to store a position of a test suite.
+     */
+    public static class Entry {
+        /** Identifier of the position, or the number of its line if it has none */
+        public final String id;
+        public final Position position;
+        /** Best moves, and moves to avoid, of the position. Each may be empty, but not both. */
+        public final int[] bestMoves;
+        public final int[] avoidMoves;
+
+        public Entry(String id, Position position, int[] bestMoves, int[] avoidMoves) {
+            this.id = id;
+            this.position = position;
+            this.bestMoves = bestMoves;
+            this.avoidMoves = avoidMoves;
+        }
+
+        /**
+         * @param move Move found by a search
+         * @return true if the move solves the position
+         */
+        public boolean isSolvedBy(int move) {
+            for (int avoid : this.avoidMoves) {
+                if (avoid == move)
+                    return false;
+            }
+            if (this.bestMoves.length == 0)
+                return move != Position.NO_MOVE;
+            for (int best : this.bestMoves) {
+                if (best == move)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return this.id;
+        }
+    }
+
+    /**
+     * Struct-like class to store the search of a position of a test suite.
+     */
+    public static class Solution {
+        public final Entry entry;
+        public final Search.Result result;
+        public final boolean solved;
+        /** Time after which the best move found didn't change anymore, in milliseconds, or -1 if not solved */
+        public final long timeToSolutionMillis;
+
+        public Solution(Entry entry, Search.Result result) {
+            this.entry = entry;
+            this.result = result;
+            this.solved = entry.isSolvedBy(result.bestMove);
+            this.timeToSolutionMillis = this.solved ? result.bestMoveTimeMillis : -1;
+        }
+
+        @Override
+        public String toString() {
+            return (this.solved ? "solved   " : "unsolved ") + this.entry.id + " : " + this.entry.position.toSan(this.result.bestMove)
+                    + " (score " + this.result.score + ", depth " + this.result.depth + ", "
+                    + (this.solved ? this.timeToSolutionMillis + " ms" : this.result.timeMillis + " ms") + ")";
+        }
+    }
+
+    /**
+     * Struct-like class to store the totals of a run of a test suite.
+     */
+    public static class Report {
+        public final List<Solution> solutions;
+        public final int solved;
+        /** Total number of nodes searched */
+        public final long nodes;
+        /** Sum of the times of the searches, and duration of the run, in milliseconds */
+        public final long searchMillis;
+        public final long wallMillis;
+        /** Times to solution of the positions solved, sorted */
+        private final long[] times;
+
+        public Report(List<Solution> solutions, long wallMillis) {
+            this.solutions = solutions;
+            this.wallMillis = wallMillis;
+            int solved = 0;
+            long nodes = 0, searchMillis = 0;
+            long[] times = new long[solutions.size()];
+            for (Solution solution : solutions) {
+                nodes += solution.result.nodes;
+                searchMillis += solution.result.timeMillis;
+                if (solution.solved)
+                    times[solved++] = solution.timeToSolutionMillis;
+            }
+            this.solved = solved;
+            this.nodes = nodes;
+            this.searchMillis = searchMillis;
+            this.times = Arrays.copyOf(times, solved);
+            Arrays.sort(this.times);
+        }
+
+        /** @return The number of nodes searched per second by all the threads together */
+        public long getNodesPerSecond() {
+            return this.nodes * 1000 / Math.max(1, this.wallMillis);
+        }
+
+        /** @return The number of nodes searched per second by a thread */
+        public long getNodesPerSecondByThread() {
+            return this.nodes * 1000 / Math.max(1, this.searchMillis);
+        }
+
+        /**
+         * @param percent Percentile, from 0 to 100
+         * @return The time to solution of this percentile of the positions solved, in milliseconds, or -1 if none is
+         */
+        public long getTimeToSolution(int percent) {
+            if (this.times.length == 0)
+                return -1;
+            return this.times[Math.min(this.times.length - 1, this.times.length * percent / 100)];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append("Solved ").append(this.solved).append(" / ").append(this.solutions.size()).append('\n');
+            text.append("Time to solution : median ").append(this.getTimeToSolution(50)).append(" ms, 90% ")
+                    .append(this.getTimeToSolution(90)).append(" ms, max ").append(this.getTimeToSolution(100)).append(" ms\n");
+
+            int index = 0;
+            for (int i = 0 ; i <= TIME_CLASSES.length ; i++) {
+                int count = 0;
+                while (index < this.times.length && (i == TIME_CLASSES.length || this.times[index] <= TIME_CLASSES[i])) {
+                    index++;
+                    count++;
+                }
+                text.append(i < TIME_CLASSES.length ? String.format("  <= %5d ms : ", TIME_CLASSES[i])
+                        : String.format("   > %5d ms : ", TIME_CLASSES[TIME_CLASSES.length - 1])).append(count).append('\n');
+            }
+
+            text.append(this.nodes).append(" nodes in ").append(this.wallMillis).append(" ms : ")
+                    .append(this.getNodesPerSecond()).append(" nodes/s (").append(this.getNodesPerSecondByThread())
+                    .append(" by thread)");
+            return text.toString();
+        }
+    }
+
+    private final int threads;
+    private final long timeMillis;
+    private final long nodesByPosition;
+
+    /**
+     * Create a runner.
+     *
+     * @param threads Number of positions searched at the same time
+     * @param timeMillis Time of the search of each position, in milliseconds. It is ignored if a number of nodes is given.
+     * @param nodesByPosition Number of nodes searched in each position, or 0 to search for a fixed time
+     */
+    public EpdRunner(int threads, long timeMillis, long nodesByPosition) {
+        if (threads <= 0 || timeMillis <= 0 || nodesByPosition < 0)
+            throw new IllegalArgumentException("The number of threads and the time must be positive");
+        this.threads = threads;
+        this.timeMillis = timeMillis;
+        this.nodesByPosition = nodesByPosition;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long time = DEFAULT_TIME_MILLIS, nodes = 0, minNps = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int minSolved = 0;
+        int first = 0;
+        while (args.length - first > 1 && args[first].startsWith("-")) {
+            switch (args[first]) {
+                case "-time" -> time = Long.parseLong(args[first + 1]);
+                case "-nodes" -> nodes = Long.parseLong(args[first + 1]);
+                case "-threads" -> threads = Integer.parseInt(args[first + 1]);
+                case "-min-solved" -> minSolved = Integer.parseInt(args[first + 1]);
+                case "-min-nps" -> minNps = Long.parseLong(args[first + 1]);
+                default -> {
+                    System.err.println("Unknown option : " + args[first]);
+                    System.exit(1);
+                }
+            }
+            first += 2;
+        }
+        if (args.length - first != 1) {
+            System.err.println("Usage : EpdRunner [-time ms | -nodes n] [-threads n] [-min-solved n] [-min-nps n] suite.epd");
+            System.exit(1);
+        }
+
+        List<Entry> entries = read(Path.of(args[first]));
+        Report report = new EpdRunner(threads, time, nodes).run(entries);
+        for (Solution solution : report.solutions)
+            System.out.println(solution);
+        System.out.println(report);
+
+        boolean regression = false;
+        if (report.solved < minSolved) {
+            System.out.println("Regression : " + report.solved + " positions solved instead of at least " + minSolved);
+            regression = true;
+        }
+        if (report.getNodesPerSecond() < minNps) {
+            System.out.println("Regression : " + report.getNodesPerSecond() + " nodes/s instead of at least " + minNps);
+            regression = true;
+        }
+        if (regression)
+            System.exit(1);
+    }
+
+    /**
+     * Read a test suite. Empty lines and lines starting with # are ignored.
+     *
+     * @param path Path of the EPD file
+     * @return The positions of the suite
+     * @throws IOException If the file can't be read
+     * @throws IllegalArgumentException If a line is not a valid EPD position
+     */
+    public static List<Entry> read(Path path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        for (int i = 0 ; i < lines.size() ; i++) {
+            String line = lines.get(i).trim();
+            if (!line.isEmpty() && !line.startsWith("#"))
+                entries.add(parse(line, String.valueOf(i + 1)));
+        }
+        return entries;
+    }
+
+    /**
+     * Read a position of a test suite.
+     *
+     * @param line Line of the EPD file
+     * @param defaultId Identifier of the position if it has no {@code id} operation
+     * @return The position
+     * @throws IllegalArgumentException If the line is not a valid EPD position
+     */
+    public static Entry parse(String line, String defaultId) {
+        String[] fields = line.trim().split("\\s+", 5);
+        if (fields.length < 4)
+            throw new IllegalArgumentException("Invalid EPD (" + line + ") : at least 4 fields are expected");
+        Position position = Position.fromFen(fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3]);
+
+        String id = defaultId;
+        int[] bestMoves = new int[0], avoidMoves = new int[0];
+        for (String operation : splitOperations(fields.length > 4 ? fields[4] : "")) {
+            String[] operands = operation.split("\\s+", 2);
+            String argument = operands.length > 1 ? operands[1].trim() : "";
+            switch (operands[0]) {
+                case "bm" -> bestMoves = parseMoves(position, argument, line);
+                case "am" -> avoidMoves = parseMoves(position, argument, line);
+                case "id" -> id = argument.replace("\"", "");
+                default -> {}
+            }
+        }
+
+        if (bestMoves.length == 0 && avoidMoves.length == 0)
+            throw new IllegalArgumentException("Invalid EPD (" + line + ") : no bm or am operation");
+        return new Entry(id, position, bestMoves, avoidMoves);
+    }
+
+    /**
+     * Split the operations of an EPD line at the semicolons which are not in a string.
+     */
+    private static List<String> splitOperations(String text) {
+        List<String> operations = new ArrayList<>();
+        StringBuilder operation = new StringBuilder();
+        boolean quoted = false;
+        for (char c : text.toCharArray()) {
+            if (c == '"')
+                quoted = !quoted;
+            if (c == ';' && !quoted) {
+                if (!operation.toString().isBlank())
+                    operations.add(operation.toString().trim());
+                operation.setLength(0);
+            } else {
+                operation.append(c);
+            }
+        }
+        if (!operation.toString().isBlank())
+            operations.add(operation.toString().trim());
+        return operations;
+    }
+
+    private static int[] parseMoves(Position position, String text, String line) {
+        String[] names = text.split("\\s+");
+        int[] moves = new int[names.length];
+        for (int i = 0 ; i < names.length ; i++) {
+            moves[i] = position.parseSan(names[i]);
+            if (moves[i] == Position.NO_MOVE)
+                moves[i] = position.parseMove(names[i]);
+            if (moves[i] == Position.NO_MOVE)
+                throw new IllegalArgumentException("Invalid EPD (" + line + ") : illegal move " + names[i]);
+        }
+        return moves;
+    }
+
+    /**
+     * Search every position of a test suite.
+     *
+     * @param entries Positions of the suite
+     * @return The report of the run, with the solutions in the order of the positions
+     * @throws InterruptedException If the thread is interrupted while waiting for the searches
+     */
+    public Report run(List<Entry> entries) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+
+        List<Solution> solutions = new ArrayList<>();
+        try {
+            List<Future<Solution>> futures = new ArrayList<>();
+            for (Entry entry : entries) {
+                futures.add(executor.submit(() -> {
+                    Search search = searches.get();
+                    // The previous positions must not help the search, or the result would depend on the order
+                    search.getTranspositionTable().clear();
+                    TimeManager timeManager = this.nodesByPosition > 0 ? TimeManager.forNodes(this.nodesByPosition)
+                            : TimeManager.forMoveTime(this.timeMillis);
+                    return new Solution(entry, search.search(new Position(entry.position), Search.MAX_PLY, timeManager));
+                }));
+            }
+            for (Future<Solution> future : futures)
+                solutions.add(future.get());
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Search of a position failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Report(solutions, System.currentTimeMillis() - start);
+    }
+
+    /** @return The number of positions searched at the same time */
+    public int getThreads() {
+        return this.threads;
+    }
+}
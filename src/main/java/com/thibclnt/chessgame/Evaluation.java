@@ -0,0 +1,116 @@
+package com.thibclnt.chessgame;
+
+/**
+ * Static evaluation of a chess {@link Position}, in centipawns (100 = one pawn) and from the point of view of the side to
+ * move. The evaluation counts the material, gives a bonus to centralised pieces and advanced pawns, and adds the pawn
+ * structure terms, which are cached in a {@link PawnHashTable}.
+ * <p>
+ *     An evaluation owns its pawn hash table, so it must not be shared between threads : each search thread creates its
+ *     own {@link Evaluation}.
+ * </p>
+ * @see PawnHashTable
+ * @see Position
+ */
+public class Evaluation {
+
+    /** Default number of entries of the pawn hash table */
+    public static final int DEFAULT_PAWN_TABLE_SIZE = 1 << 14;
+
+    /** Value of each piece type in centipawns, indexed by the type codes of {@link Position}. The king has no value. */
+    static final int[] PIECE_VALUES = {0, 100, 320, 330, 500, 900, 0};
+
+    /** Bonus by rank (seen from the pawn's side) for a pawn, rewarding space */
+    private static final int[] PAWN_ADVANCE = {0, 0, 2, 5, 10, 15, 20, 0};
+
+    private final PawnHashTable pawnTable;
+
+    /**
+     * Create an evaluation with a pawn hash table of the default size ({@link #DEFAULT_PAWN_TABLE_SIZE}).
+     */
+    public Evaluation() {
+        this(DEFAULT_PAWN_TABLE_SIZE);
+    }
+
+    /**
+     * Create an evaluation with a pawn hash table of a given size.
+     *
+     * @param pawnTableSize Number of entries of the pawn hash table
+     */
+    public Evaluation(int pawnTableSize) {
+        this.pawnTable = new PawnHashTable(pawnTableSize);
+    }
+
+    /**
+     * Evaluate a position.
+     *
+     * @param position {@link Position} to evaluate
+     * @return The score of the position in centipawns, positive if the side to move is better
+     */
+    public int evaluate(Position position) {
+        int score = 0;
+
+        // Material and placement of the pieces
+        for (int square = 0 ; square < 64 ; square++) {
+            int piece = position.pieceAt(square);
+            if (piece == Position.EMPTY)
+                continue;
+
+            int type = Position.type(piece);
+            int value = PIECE_VALUES[type];
+            if (type == Position.PAWN)
+                value += PAWN_ADVANCE[PawnHashTable.relativeRank(Position.color(piece), square)];
+            else if (type == Position.KNIGHT || type == Position.BISHOP)
+                value += centralisation(square);
+
+            score += Position.color(piece) == Position.WHITE ? value : -value;
+        }
+
+        // Pawn structure, taken from the pawn hash table when possible
+        PawnHashTable.Entry entry = this.pawnTable.probe(position);
+        score += entry.getScore();
+        score += this.dynamicPawnTerms(position, entry, Position.WHITE);
+        score -= this.dynamicPawnTerms(position, entry, Position.BLACK);
+
+        return position.getSideToMove() == Position.WHITE ? score : -score;
+    }
+
+    /**
+     * Compute the pawn terms which depend on the other pieces, and which therefore can't be cached : the shield in front
+     * of the king (the shield itself is cached, but depends on where the king is), and blocked passed pawns.
+     *
+     * @param position {@link Position} evaluated
+     * @param entry {@link PawnHashTable.Entry} of the pawn structure of the position
+     * @param side Side for which the terms are computed
+     * @return The bonus of side
+     */
+    private int dynamicPawnTerms(Position position, PawnHashTable.Entry entry, int side) {
+        int score = 0;
+
+        int king = position.kingSquare(side);
+        if (king >= 0)
+            score += entry.getShield(side, king);
+
+        // A passed pawn blocked by a piece is worth half as much
+        for (long passed = entry.getPassed(side) ; passed != 0 ; passed &= passed - 1) {
+            int square = Long.numberOfTrailingZeros(passed);
+            int front = square + (side == Position.WHITE ? 8 : -8);
+            if (front >= 0 && front < 64 && position.pieceAt(front) != Position.EMPTY)
+                score -= PawnHashTable.PASSED[PawnHashTable.relativeRank(side, square)] / 2;
+        }
+        return score;
+    }
+
+    /**
+     * @return A bonus between 0 and 15 for a minor piece on a square, higher in the center of the board
+     */
+    private static int centralisation(int square) {
+        int fileDistance = Math.max(3 - Position.file(square), Position.file(square) - 4);
+        int rankDistance = Math.max(3 - Position.rank(square), Position.rank(square) - 4);
+        return 15 - 5 * Math.max(fileDistance, rankDistance);
+    }
+
+    /** @return The {@link PawnHashTable} used by this evaluation, for example to read its hit rate */
+    public PawnHashTable getPawnTable() {
+        return this.pawnTable;
+    }
+}
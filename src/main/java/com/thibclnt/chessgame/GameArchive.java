@@ -0,0 +1,284 @@
+package com.thibclnt.chessgame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reader of a binary game archive, written by {@link GameArchiveWriter}. Any game can be read from its number, without
+ * reading the ones before it.
+ * <p>
+ *     An archive is made of two files :
+ * </p>
+ * <ul>
+ *     <li> The data file (extension {@link #DATA_EXTENSION}) : a header (magic number {@link #DATA_MAGIC}, version
+ *     {@link #VERSION}), then the games one after the other. Each game is its length in bytes (int), then its header
+ *     (white and black players, result, number of plies, starting position, id of the {@link MoveCodec} of the moves)
+ *     and its moves, encoded by this codec </li>
+ *     <li> The index file (extension {@link #INDEX_EXTENSION}) : a header (magic number {@link #INDEX_MAGIC}, version),
+ *     then the offset of each game in the data file (long) </li>
+ * </ul>
+ * <p>
+ *     Both files are mapped in memory with {@link FileChannel#map}, by segments of {@link #SEGMENT_SIZE} bytes so that
+ *     archives larger than 2GB can be read. Reading a game costs a read in the index and a copy of the game from the
+ *     data. Games appended after the archive was opened are not seen : the archive must be opened again.
+ * </p> <p>
+ *     An archive is read only, and may be shared between threads.
+ * </p>
+ * @see GameArchiveWriter
+ */
+public class GameArchive {
+
+    /** Magic number of the data file ("JBGA") */
+    public static final int DATA_MAGIC = 0x4A424741;
+    /** Magic number of the index file ("JBGI") */
+    public static final int INDEX_MAGIC = 0x4A424749;
+    /** Version of the file format */
+    public static final int VERSION = 2;
+    /** Size of the header of both files, in bytes */
+    public static final int HEADER_SIZE = 8;
+    /** Extensions of the files of an archive */
+    public static final String DATA_EXTENSION = ".jga", INDEX_EXTENSION = ".jgi";
+    /** Maximum size of a mapped segment of a file */
+    public static final int SEGMENT_SIZE = 1 << 30;
+
+    /** Results of a game, indexed by their code in the archive */
+    static final String[] RESULTS = {"*", "1-0", "0-1", "1/2-1/2"};
+
+    /**
+     * Struct-like class to store the header of an archived game.
+     */
+    public static class Header {
+        public final String white;
+        public final String black;
+        /** "1-0", "0-1", "1/2-1/2" or "*" */
+        public final String result;
+        /** Number of half moves of the game */
+        public final int plies;
+        /** FEN of the starting position, or null for the initial position */
+        public final String startFen;
+        /** {@link MoveCodec} of the moves */
+        public final MoveCodec codec;
+
+        public Header(String white, String black, String result, int plies, String startFen, MoveCodec codec) {
+            this.white = white;
+            this.black = black;
+            this.result = result;
+            this.plies = plies;
+            this.startFen = startFen;
+            this.codec = codec;
+        }
+
+        /** @return The position the game starts from */
+        public Position getStartPosition() {
+            return Position.fromFen(this.startFen != null ? this.startFen : Position.START_FEN);
+        }
+
+        @Override
+        public String toString() {
+            return white + " - " + black + " " + result + " (" + plies + " plies)";
+        }
+    }
+
+    private final ByteBuffer[] data;
+    private final ByteBuffer[] index;
+    private final long dataSize;
+    private final int size;
+
+    /**
+     * Open an archive.
+     *
+     * @param path Path of the archive, without extension
+     * @throws IOException If the files can't be read or are invalid
+     */
+    public GameArchive(Path path) throws IOException {
+        Path dataPath = dataPath(path);
+        Path indexPath = indexPath(path);
+        this.data = map(dataPath);
+        this.index = map(indexPath);
+
+        long dataSize = 0;
+        for (ByteBuffer segment : this.data)
+            dataSize += segment.capacity();
+        long indexSize = 0;
+        for (ByteBuffer segment : this.index)
+            indexSize += segment.capacity();
+        this.dataSize = dataSize;
+
+        if (dataSize < HEADER_SIZE || this.data[0].getInt(0) != DATA_MAGIC)
+            throw new IOException("Not a game archive : " + dataPath);
+        if (indexSize < HEADER_SIZE || this.index[0].getInt(0) != INDEX_MAGIC)
+            throw new IOException("Not a game archive index : " + indexPath);
+        if (this.data[0].getInt(4) != VERSION || this.index[0].getInt(4) != VERSION)
+            throw new IOException("Unsupported game archive version : " + path);
+
+        // A game whose data was not completely written (the writer stopped in the middle) is ignored
+        int size = (int) Math.min(Integer.MAX_VALUE, (indexSize - HEADER_SIZE) / 8);
+        while (size > 0) {
+            long offset = this.offset(size - 1);
+            if (offset + 4 <= dataSize && offset + 4 + this.readInt(this.data, offset) <= dataSize)
+                break;
+            size--;
+        }
+        this.size = size;
+    }
+
+    /** @return The path of the data file of an archive */
+    public static Path dataPath(Path path) {
+        return path.resolveSibling(path.getFileName() + DATA_EXTENSION);
+    }
+
+    /** @return The path of the index file of an archive */
+    public static Path indexPath(Path path) {
+        return path.resolveSibling(path.getFileName() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Map a file in memory, by segments of {@link #SEGMENT_SIZE} bytes.
+     */
+    private static ByteBuffer[] map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int count = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            ByteBuffer[] segments = new ByteBuffer[count];
+            for (int i = 0 ; i < count ; i++) {
+                long start = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * Read the header of a game.
+     *
+     * @param game Number of the game, from 0 to {@link #getSize()} - 1
+     * @return The header of the game
+     */
+    public Header getHeader(int game) {
+        ByteBuffer record = this.record(game);
+        return readHeader(record);
+    }
+
+    /**
+     * Read the moves of a game.
+     *
+     * @param game Number of the game, from 0 to {@link #getSize()} - 1
+     * @return The moves of the game, encoded as with {@link Position#move(int, int, int, int)}
+     */
+    public int[] getMoves(int game) {
+        ByteBuffer record = this.record(game);
+        Header header = readHeader(record);
+        return decodeMoves(record, header);
+    }
+
+    /**
+     * Read a whole game.
+     *
+     * @param game Number of the game, from 0 to {@link #getSize()} - 1
+     * @return The game, with its moves resolved
+     */
+    public PgnGame getGame(int game) {
+        ByteBuffer record = this.record(game);
+        Header header = readHeader(record);
+        int[] moves = decodeMoves(record, header);
+
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("White", header.white);
+        tags.put("Black", header.black);
+        tags.put("Result", header.result);
+        return new PgnGame(header.getStartPosition(), moves, tags);
+    }
+
+    /**
+     * @return A buffer containing the record of a game, after its length
+     */
+    private ByteBuffer record(int game) {
+        if (game < 0 || game >= this.size)
+            throw new IndexOutOfBoundsException("Game " + game + " out of an archive of " + this.size + " games");
+
+        long offset = this.offset(game);
+        int length = this.readInt(this.data, offset);
+        byte[] bytes = new byte[length];
+        read(this.data, offset + 4, bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    static Header readHeader(ByteBuffer record) {
+        String white = readString(record);
+        String black = readString(record);
+        String result = RESULTS[record.get() & 3];
+        int plies = record.getShort() & 0xFFFF;
+        String fen = readString(record);
+        MoveCodec codec = MoveCodec.forId(record.get() & 0xFF);
+        return new Header(white, black, result, plies, fen.isEmpty() ? null : fen, codec);
+    }
+
+    /**
+     * Decode the moves of a record.
+     *
+     * @param record Buffer positioned after the header of the game
+     * @param header Header of the game
+     * @return The moves of the game
+     */
+    private static int[] decodeMoves(ByteBuffer record, Header header) {
+        byte[] data = new byte[record.remaining()];
+        record.get(data);
+        return header.codec.decode(header.getStartPosition(), data, header.plies);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** @return The offset of a game in the data file */
+    private long offset(int game) {
+        return this.readLong(this.index, HEADER_SIZE + 8L * game);
+    }
+
+    private int readInt(ByteBuffer[] segments, long position) {
+        byte[] bytes = new byte[4];
+        read(segments, position, bytes);
+        return ByteBuffer.wrap(bytes).getInt();
+    }
+
+    private long readLong(ByteBuffer[] segments, long position) {
+        int segment = (int) (position / SEGMENT_SIZE);
+        int offset = (int) (position % SEGMENT_SIZE);
+        // Offsets are aligned on 8 bytes, so they never cross two segments
+        return segments[segment].getLong(offset);
+    }
+
+    /**
+     * Copy bytes of a mapped file, which may be on two segments.
+     */
+    private static void read(ByteBuffer[] segments, long position, byte[] destination) {
+        int done = 0;
+        while (done < destination.length) {
+            long current = position + done;
+            ByteBuffer segment = segments[(int) (current / SEGMENT_SIZE)];
+            int offset = (int) (current % SEGMENT_SIZE);
+            int length = Math.min(destination.length - done, segment.capacity() - offset);
+            segment.get(offset, destination, done, length);
+            done += length;
+        }
+    }
+
+    /** @return The number of games of the archive */
+    public int getSize() {
+        return this.size;
+    }
+
+    /** @return The size of the data file, in bytes */
+    public long getDataSize() {
+        return this.dataSize;
+    }
+}
@@ -0,0 +1,253 @@
+package com.thibclnt.chessgame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer of a binary game archive (see {@link GameArchive} for the format). Games are only appended : an existing
+ * archive is continued, never rewritten.
+ * <p>
+ *     The offsets of the games are kept in memory, and only written to the index by {@link #flush()}, once the data
+ *     file is forced to the disk : as the system may write the pages of the two files in any order, an index entry
+ *     written with its game could reach the disk first, and point to a game lost in a crash. So an index entry never
+ *     points to a game which is not completely written. The offsets are flushed every {@link #MAX_PENDING_GAMES} games,
+ *     and when the writer is closed.
+ * </p> <p>
+ *     A writer is also a {@link GameSink}, so games can be imported from PGN files with a {@link PgnIngest} pipeline.
+ *     It is not thread safe.
+ * </p> <p>
+ *     Usage : {@code GameArchiveWriter [-codec id] archive games1.pgn [games2.pgn ...]}, the ids of the codecs being
+ *     the ones of {@link MoveCodec#forId(int)}
+ * </p>
+ * @see GameArchive
+ */
+public final class GameArchiveWriter implements GameSink, Closeable {
+
+    /** Default {@link MoveCodec} of the games */
+    public static final MoveCodec DEFAULT_CODEC = LegalIndexMoveCodec.ENTROPY;
+    /** Maximum number of games written to the data file and not yet to the index */
+    public static final int MAX_PENDING_GAMES = 1024;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final MoveCodec codec;
+    /** Offsets of the games written to the data file, and not yet to the index */
+    private final ByteBuffer pendingOffsets = ByteBuffer.allocate(8 * MAX_PENDING_GAMES);
+    private long dataSize;
+    /** Number of games of the archive, and number of games written to the index */
+    private int size, indexSize;
+
+    /**
+     * Open an archive to append games to it, creating it if it doesn't exist. Moves are encoded with the
+     * {@link #DEFAULT_CODEC}.
+     *
+     * @param path Path of the archive, without extension
+     * @throws IOException If the files can't be opened or are not an archive
+     */
+    public GameArchiveWriter(Path path) throws IOException {
+        this(path, DEFAULT_CODEC);
+    }
+
+    /**
+     * Open an archive to append games to it, creating it if it doesn't exist. The codec is stored with each game, so
+     * games encoded with different codecs can be in the same archive.
+     *
+     * @param path Path of the archive, without extension
+     * @param codec {@link MoveCodec} of the moves of the games appended
+     * @throws IOException If the files can't be opened or are not an archive
+     */
+    public GameArchiveWriter(Path path, MoveCodec codec) throws IOException {
+        this.codec = codec;
+        this.data = FileChannel.open(GameArchive.dataPath(path),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = FileChannel.open(GameArchive.indexPath(path),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            openFile(this.data, GameArchive.DATA_MAGIC, path);
+            openFile(this.index, GameArchive.INDEX_MAGIC, path);
+        } catch (IOException e) {
+            this.close();
+            throw e;
+        }
+
+        // Games which were not completely written are removed from the index, and their data is overwritten
+        this.size = (int) ((this.index.size() - GameArchive.HEADER_SIZE) / 8);
+        while (this.size > 0 && this.endOfLastGame() > this.data.size())
+            this.size--;
+        this.index.truncate(GameArchive.HEADER_SIZE + 8L * this.size);
+        this.indexSize = this.size;
+        this.dataSize = this.size == 0 ? GameArchive.HEADER_SIZE : this.endOfLastGame();
+        this.data.truncate(this.dataSize);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        MoveCodec codec = DEFAULT_CODEC;
+        int first = 0;
+        if (args.length > 1 && args[0].equals("-codec")) {
+            codec = MoveCodec.forId(Integer.parseInt(args[1]));
+            first = 2;
+        }
+        if (args.length - first < 2) {
+            System.err.println("Usage : GameArchiveWriter [-codec id] archive games1.pgn [games2.pgn ...]");
+            System.exit(1);
+        }
+
+        try (GameArchiveWriter writer = new GameArchiveWriter(Path.of(args[first]), codec)) {
+            for (int i = first + 1 ; i < args.length ; i++) {
+                try (PgnReader reader = PgnReader.open(Path.of(args[i]))) {
+                    System.out.println(args[i] + " : " + new PgnIngest().run(reader, writer));
+                }
+            }
+            System.out.println(writer.getSize() + " games, " + writer.dataSize + " bytes");
+        }
+    }
+
+    /**
+     * Write the header of a new file, or check the header of an existing one.
+     */
+    private static void openFile(FileChannel channel, int magic, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(GameArchive.HEADER_SIZE);
+        if (channel.size() < GameArchive.HEADER_SIZE) {
+            header.putInt(magic).putInt(GameArchive.VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            return;
+        }
+
+        channel.read(header, 0);
+        if (header.getInt(0) != magic || header.getInt(4) != GameArchive.VERSION)
+            throw new IOException("Not a game archive of version " + GameArchive.VERSION + " : " + path);
+    }
+
+    /** @return The offset of the end of the last indexed game in the data file */
+    private long endOfLastGame() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        this.index.read(buffer, GameArchive.HEADER_SIZE + 8L * (this.size - 1));
+        long offset = buffer.getLong(0);
+
+        buffer.clear().limit(4);
+        if (this.data.read(buffer, offset) < 4)
+            return Long.MAX_VALUE;
+        return offset + 4 + buffer.getInt(0);
+    }
+
+    /**
+     * Append a game to the archive. It is only in the index, and found by a {@link GameArchive}, once flushed.
+     *
+     * @param white Name of the white player
+     * @param black Name of the black player
+     * @param result "1-0", "0-1", "1/2-1/2" or "*"
+     * @param start {@link Position} the game starts from
+     * @param moves Moves of the game, encoded as with {@link Position#move(int, int, int, int)}
+     * @return The number of the game in the archive
+     * @throws IOException If the game can't be written
+     */
+    public int append(String white, String black, String result, Position start, int[] moves) throws IOException {
+        if (moves.length > 0xFFFF)
+            throw new IllegalArgumentException("Game too long for the archive : " + moves.length + " plies");
+
+        int resultCode = 0;
+        for (int i = 0 ; i < GameArchive.RESULTS.length ; i++) {
+            if (GameArchive.RESULTS[i].equals(result))
+                resultCode = i;
+        }
+        String fen = start.toFen();
+
+        byte[] encodedMoves = this.codec.encode(start, moves);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + encodedMoves.length);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeInt(0);
+        writeString(record, white);
+        writeString(record, black);
+        record.writeByte(resultCode);
+        record.writeShort(moves.length);
+        writeString(record, fen.equals(Position.START_FEN) ? "" : fen);
+        record.writeByte(this.codec.getId());
+        record.write(encodedMoves);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, buffer.capacity() - 4);
+        writeFully(this.data, buffer, this.dataSize);
+
+        if (!this.pendingOffsets.hasRemaining())
+            this.flush();
+        this.pendingOffsets.putLong(this.dataSize);
+        this.dataSize += buffer.capacity();
+        return this.size++;
+    }
+
+    /**
+     * Append a game to the archive. Its White, Black and Result tags are kept, the others are lost.
+     *
+     * @param game {@link PgnGame} to append
+     * @throws IOException If the game can't be written
+     */
+    @Override
+    public void accept(PgnGame game) throws IOException {
+        this.append(game.getTags().getOrDefault("White", "?"), game.getTags().getOrDefault("Black", "?"),
+                game.getResult(), game.getStartPosition(), game.getMoves());
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, 0xFFFF);
+        // A too long string is cut before a whole character, never in the middle of its bytes
+        while (length < bytes.length && (bytes[length] & 0xC0) == 0x80)
+            length--;
+        output.writeShort(length);
+        output.write(bytes, 0, length);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    /**
+     * Force the games written to the disk, then write their offsets to the index.
+     *
+     * @throws IOException If they can't be written
+     */
+    @Override
+    public void flush() throws IOException {
+        this.data.force(false);
+        // The offsets stay pending until they are written, so a failed flush can be done again
+        ByteBuffer offsets = this.pendingOffsets.duplicate().flip();
+        writeFully(this.index, offsets, GameArchive.HEADER_SIZE + 8L * this.indexSize);
+        this.index.force(false);
+        this.pendingOffsets.clear();
+        this.indexSize = this.size;
+    }
+
+    /** @return The number of games of the archive */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Flush the games, and close the files.
+     *
+     * @throws IOException If the games can't be written, or the files closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (this.pendingOffsets.position() > 0)
+                this.flush();
+        } finally {
+            try {
+                this.data.close();
+            } finally {
+                this.index.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.thibclnt.chessgame;
+
+/**
+ * Struct-like class to store an event of a {@link ChessGame}, published by its {@link GameEventPublisher} (see
+ * {@link ChessGame#getEvents()}). An event is immutable, and shared by all the subscribers.
+ */
+public class GameEvent {
+
+    /**
+     * Type of an event.
+     */
+    public enum Type {
+        /** The display must be updated (a {@link GameInterface#draw()}), after a move, an undo or a redo */
+        POSITION,
+        /** A move was played */
+        MOVE,
+        /** A pawn was promoted by the move played */
+        PROMOTION,
+        /** The player to move is in check */
+        CHECK,
+        /** The game is won by a player */
+        WIN,
+        /** The game ended with a draw */
+        DRAW
+    }
+
+    /** Type of the event */
+    public final Type type;
+    /** Position after the event */
+    public final PositionSnapshot snapshot;
+    /**
+     * Player concerned by the event, {@link Position#WHITE} or {@link Position#BLACK} : the player who moved for
+     * {@link Type#MOVE} and {@link Type#PROMOTION}, the player in check for {@link Type#CHECK}, the winner for
+     * {@link Type#WIN}, the player to move otherwise
+     */
+    public final int color;
+    /** Type of the piece a pawn was promoted to (as {@link Position#QUEEN}) for {@link Type#PROMOTION}, EMPTY otherwise */
+    public final int promotion;
+
+    /**
+     * Create an event.
+     *
+     * @param type Type of the event
+     * @param snapshot Position after the event
+     * @param color Player concerned by the event
+     * @param promotion Type of the piece a pawn was promoted to, or {@link Position#EMPTY}
+     */
+    public GameEvent(Type type, PositionSnapshot snapshot, int color, int promotion) {
+        this.type = type;
+        this.snapshot = snapshot;
+        this.color = color;
+        this.promotion = promotion;
+    }
+
+    /**
+     * @return The move played for {@link Type#MOVE} and {@link Type#PROMOTION} (the last move of the snapshot), encoded
+     * as with {@link Position#move(int, int, int, int)}, or {@link Position#NO_MOVE}
+     */
+    public int getMove() {
+        return this.snapshot.getLastMove();
+    }
+
+    @Override
+    public String toString() {
+        return switch (this.type) {
+            case POSITION -> "POSITION " + this.snapshot.toFen();
+            case MOVE -> "MOVE " + Position.moveToString(getMove());
+            case PROMOTION -> "PROMOTION " + Position.moveToString(getMove());
+            case CHECK -> "CHECK " + (this.color == Position.WHITE ? "WHITE" : "BLACK");
+            case WIN -> "WIN " + (this.color == Position.WHITE ? "WHITE" : "BLACK");
+            case DRAW -> "DRAW";
+        };
+    }
+}
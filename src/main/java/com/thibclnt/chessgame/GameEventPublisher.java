@@ -0,0 +1,285 @@
+package com.thibclnt.chessgame;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of the {@link GameEvent} of a game, to any number of subscribers.
+ * <p>
+ *     Publishing an event never waits for a subscriber : the event is added to the buffer of each subscriber, and
+ *     delivered later by an {@link Executor}, one event at a time and as requested by the subscriber. A slow subscriber
+ *     doesn't slow the game, nor the other subscribers. The buffers are bounded : when the buffer of a subscriber is full,
+ *     its {@link OverflowPolicy} decides which events are lost. The {@link GameEvent.Type#POSITION} events are coalesced :
+ *     a buffer keeps only the last one, as the display only needs to be updated once for all the moves it missed.
+ * </p>
+ */
+public class GameEventPublisher implements Flow.Publisher<GameEvent> {
+
+    /** Default size of the buffer of a subscriber */
+    public static final int DEFAULT_CAPACITY = 64;
+    /** Default executor delivering the events : a virtual thread is started when events are waiting for a subscriber */
+    private static final Executor DEFAULT_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * What to do when an event is published to a subscriber whose buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** The oldest event of the buffer is dropped : the subscriber skips to the newest events */
+        DROP_OLDEST,
+        /** The new event is dropped : the subscriber receives the events it is late on, but misses the next ones */
+        DROP_NEWEST,
+        /** The subscription is cancelled, and the subscriber receives an error */
+        DISCONNECT
+    }
+
+    /**
+     * A subscriber, its buffer and its demand. Its signals are sent by a single task of the executor at a time.
+     */
+    private class Subscription implements Flow.Subscription, Runnable {
+        final Flow.Subscriber<? super GameEvent> subscriber;
+        final int capacity;
+        final OverflowPolicy policy;
+        final ArrayDeque<GameEvent> buffer = new ArrayDeque<>();
+        /** The {@link GameEvent.Type#POSITION} event of the buffer, or null */
+        GameEvent position = null;
+        long demand = 0;
+        boolean running = false;
+        boolean cancelled = false;
+        boolean completed = false;
+        /** Error to send instead of the events of the buffer, or null */
+        Throwable error = null;
+
+        Subscription(Flow.Subscriber<? super GameEvent> subscriber, int capacity, OverflowPolicy policy) {
+            this.subscriber = subscriber;
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+
+        synchronized void offer(GameEvent event) {
+            if (this.cancelled || this.completed || this.error != null)
+                return;
+
+            if (event.type == GameEvent.Type.POSITION && this.position != null) {
+                this.buffer.remove(this.position);
+                dropped.incrementAndGet();
+            } else if (this.buffer.size() >= this.capacity) {
+                switch (this.policy) {
+                    case DROP_OLDEST -> {
+                        if (this.buffer.pollFirst() == this.position)
+                            this.position = null;
+                    }
+                    case DROP_NEWEST -> {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    case DISCONNECT -> {
+                        dropped.addAndGet(this.buffer.size() + 1);
+                        this.buffer.clear();
+                        this.position = null;
+                        this.error = new IllegalStateException("The subscriber is more than " + this.capacity
+                                + " events late");
+                        subscriptions.remove(this);
+                        this.schedule();
+                        return;
+                    }
+                }
+                dropped.incrementAndGet();
+            }
+
+            this.buffer.addLast(event);
+            if (event.type == GameEvent.Type.POSITION)
+                this.position = event;
+            this.schedule();
+        }
+
+        synchronized boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        synchronized void complete() {
+            this.completed = true;
+            this.schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (this.cancelled)
+                    return;
+                if (n <= 0) {
+                    this.error = new IllegalArgumentException("The number of events requested must be positive");
+                    this.buffer.clear();
+                    subscriptions.remove(this);
+                } else {
+                    this.demand = this.demand + n < 0 ? Long.MAX_VALUE : this.demand + n;
+                }
+                this.schedule();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                this.cancelled = true;
+                this.buffer.clear();
+                this.position = null;
+            }
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Start the delivery task if there is something to deliver and it isn't running.
+         */
+        private void schedule() {
+            if (this.running || this.cancelled)
+                return;
+            if (this.error == null && !(this.completed && this.buffer.isEmpty()) && (this.demand == 0 || this.buffer.isEmpty()))
+                return;
+            this.running = true;
+            executor.execute(this);
+        }
+
+        /**
+         * Deliver the events of the buffer, then the end of the subscription once the buffer is empty.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                GameEvent event;
+                Throwable error;
+                boolean complete;
+                synchronized (this) {
+                    event = null;
+                    error = this.error;
+                    complete = error == null && this.completed && this.buffer.isEmpty();
+                    if (this.cancelled || (error == null && !complete && (this.demand == 0 || this.buffer.isEmpty()))) {
+                        this.running = false;
+                        return;
+                    }
+                    if (error != null || complete) {
+                        this.cancelled = true;
+                    } else {
+                        event = this.buffer.pollFirst();
+                        if (event == this.position)
+                            this.position = null;
+                        this.demand--;
+                    }
+                }
+
+                try {
+                    if (event != null) {
+                        this.subscriber.onNext(event);
+                    } else {
+                        if (error != null)
+                            this.subscriber.onError(error);
+                        else
+                            this.subscriber.onComplete();
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    // A subscriber failing to receive an event is not sent anything anymore
+                    this.cancel();
+                    return;
+                }
+            }
+        }
+    }
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Executor executor;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * Create a publisher delivering the events on virtual threads.
+     */
+    public GameEventPublisher() {
+        this(DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Create a publisher.
+     *
+     * @param executor Executor delivering the events to the subscribers
+     */
+    public GameEventPublisher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Add a subscriber, with a buffer of {@link #DEFAULT_CAPACITY} events dropping the oldest ones when it is full.
+     *
+     * @param subscriber Subscriber to add
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super GameEvent> subscriber) {
+        this.subscribe(subscriber, DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Add a subscriber. It receives the events published after its subscription.
+     *
+     * @param subscriber Subscriber to add
+     * @param capacity Maximum number of events waiting to be delivered to the subscriber
+     * @param policy What to do with the events published when the buffer is full
+     */
+    public void subscribe(Flow.Subscriber<? super GameEvent> subscriber, int capacity, OverflowPolicy policy) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The capacity must be positive");
+        Subscription subscription = new Subscription(subscriber, capacity, policy);
+        subscriber.onSubscribe(subscription);
+        this.subscriptions.add(subscription);
+        // The subscriber may have cancelled its subscription in onSubscribe, or the publisher be closed meanwhile
+        if (subscription.isCancelled()) {
+            this.subscriptions.remove(subscription);
+        } else if (this.closed) {
+            this.subscriptions.remove(subscription);
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Publish an event to all the subscribers, without waiting for them.
+     *
+     * @param event Event to publish
+     */
+    public void publish(GameEvent event) {
+        for (Subscription subscription : this.subscriptions)
+            subscription.offer(event);
+    }
+
+    /**
+     * The game may use it to avoid creating the events no one would receive.
+     *
+     * @return true if there is at least one subscriber
+     */
+    public boolean hasSubscribers() {
+        return !this.subscriptions.isEmpty();
+    }
+
+    /** @return The number of subscribers */
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    /** @return The number of events dropped (or coalesced) because a subscriber was too slow, for all subscribers */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    /**
+     * End the publication : the subscribers are completed once they received the events of their buffer, and the next
+     * subscribers are completed immediately.
+     */
+    public void close() {
+        this.closed = true;
+        for (Subscription subscription : this.subscriptions)
+            subscription.complete();
+        this.subscriptions.clear();
+    }
+}
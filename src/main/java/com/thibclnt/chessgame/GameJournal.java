@@ -0,0 +1,433 @@
+package com.thibclnt.chessgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the games in progress, so that they can be resumed after the application stopped or crashed.
+ * One journal is shared by all the games of the application.
+ * <p>
+ *     The journal is a directory of segments ({@code journal-N.wal}), written one after the other. Each record is its
+ *     length (int), the CRC32 of the rest (int), the id of the game (long), its type and its content :
+ * </p>
+ * <ul>
+ *     <li> {@link #SNAPSHOT} : the whole position of the game ({@link Position#writeSnapshot(ByteBuffer)}) </li>
+ *     <li> {@link #MOVE} : a move played from the previous position of the game (int) </li>
+ *     <li> {@link #END} : the game is over and doesn't need to be resumed </li>
+ * </ul>
+ * <p>
+ *     Records are written by a background thread, which writes all the records waiting at once and forces them to the
+ *     disk with a single fsync (group commit) : the future returned by each method is completed once its record is on
+ *     the disk. The journal replays the moves to know the position of each game. When a segment is larger than
+ *     {@link #DEFAULT_SEGMENT_SIZE}, a new segment is started with a snapshot of every game in progress, and the older
+ *     segments are deleted : resuming a game never reads more than a segment of moves.
+ * </p> <p>
+ *     When opened, the journal replays its segments, each one up to its first record which was not completely written :
+ *     the records after it were never acknowledged. Then it starts a new segment the same way. The positions of the games are then given by {@link #getGames()}. The history of the
+ *     moves played before the last snapshot is lost, so a repetition with these moves is not detected.
+ * </p>
+ */
+public class GameJournal implements Closeable {
+
+    /** Types of the records */
+    public static final byte SNAPSHOT = 1, MOVE = 2, END = 3;
+    /** Maximum size of a record, for a snapshot */
+    private static final int RECORD_MAX_SIZE = 17 + Position.SNAPSHOT_SIZE;
+    /** Default size after which a new segment is started */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+    /** Prefix and extension of the segment files */
+    public static final String SEGMENT_PREFIX = "journal-", SEGMENT_EXTENSION = ".wal";
+
+    /**
+     * Struct-like class to store a record waiting to be written.
+     */
+    private static class Entry {
+        final long game;
+        final byte type;
+        final int move;
+        final Position position;
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        Entry(long game, byte type, int move, Position position) {
+            this.game = game;
+            this.type = type;
+            this.move = move;
+            this.position = position;
+        }
+    }
+
+    /** Put in the queue to stop the writer thread */
+    private static final Entry CLOSE = new Entry(0, END, 0, null);
+
+    private final Path directory;
+    private final long segmentSize;
+    /** Positions of the games in progress, only modified by the writer thread once the journal is open */
+    private final Map<Long, Position> games = new ConcurrentHashMap<>();
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final Map<Long, Position> resumed;
+    private FileChannel segment;
+    private int segmentNumber;
+    private volatile boolean closed = false;
+
+    /**
+     * Open a journal with segments of {@link #DEFAULT_SEGMENT_SIZE}, creating it if needed, and replay it.
+     *
+     * @param directory Directory of the journal
+     * @throws IOException If the journal can't be read or written
+     */
+    public GameJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open a journal, creating it if needed, and replay it.
+     *
+     * @param directory Directory of the journal
+     * @param segmentSize Size after which a new segment is started
+     * @throws IOException If the journal can't be read or written
+     */
+    public GameJournal(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+
+        List<Integer> segments = this.segmentNumbers();
+        for (int number : segments)
+            this.replay(this.segmentPath(number));
+        this.segmentNumber = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+
+        Map<Long, Position> resumed = new HashMap<>();
+        for (Map.Entry<Long, Position> game : this.games.entrySet())
+            resumed.put(game.getKey(), new Position(game.getValue()));
+        this.resumed = Collections.unmodifiableMap(resumed);
+        this.roll();
+
+        this.writer = new Thread(this::writeLoop, "game-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Journal the start of a game.
+     *
+     * @param game Id of the game, unique in the journal
+     * @param start {@link Position} the game starts from. It is copied.
+     * @return A future completed once the record is on the disk
+     */
+    public CompletableFuture<Void> begin(long game, Position start) {
+        return this.add(new Entry(game, SNAPSHOT, 0, new Position(start)));
+    }
+
+    /**
+     * Journal a move of a game.
+     *
+     * @param game Id of the game
+     * @param move Legal move played, encoded as with {@link Position#move(int, int, int, int)}
+     * @return A future completed once the record is on the disk
+     */
+    public CompletableFuture<Void> move(long game, int move) {
+        return this.add(new Entry(game, MOVE, move, null));
+    }
+
+    /**
+     * Journal the end of a game : it won't be resumed.
+     *
+     * @param game Id of the game
+     * @return A future completed once the record is on the disk
+     */
+    public CompletableFuture<Void> end(long game) {
+        return this.add(new Entry(game, END, 0, null));
+    }
+
+    private CompletableFuture<Void> add(Entry entry) {
+        if (this.closed)
+            throw new IllegalStateException("The game journal is closed");
+        this.queue.add(entry);
+        return entry.written;
+    }
+
+    /**
+     * @return The positions of the games in progress when the journal was opened, by id
+     */
+    public Map<Long, Position> getGames() {
+        return this.resumed;
+    }
+
+    /**
+     * Write the records waiting, stop the writer thread and close the journal.
+     *
+     * @throws IOException If the journal can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+        this.queue.add(CLOSE);
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.segment.close();
+    }
+
+    /**
+     * Loop of the writer thread : write the records waiting by batches, with one fsync by batch. The positions of the
+     * games are only updated once the batch is on the disk : if it can't be written, the segment is cut back to its
+     * size before the batch, and the journal goes on from the positions it has on the disk. If a new segment can't be
+     * started, the journal goes on in the current one, and tries again after the next batch.
+     */
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        // Positions of the games changed by the batch (null for a game ended), checked before the batch is written
+        Map<Long, Position> changed = new HashMap<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            this.queue.drainTo(batch);
+
+            ByteBuffer buffer = ByteBuffer.allocate(batch.size() * RECORD_MAX_SIZE);
+            for (Entry entry : batch) {
+                if (entry == CLOSE) {
+                    running = false;
+                    continue;
+                }
+                try {
+                    this.check(changed, entry);
+                    writeRecord(buffer, entry.game, entry.type, entry.move, entry.position);
+                } catch (IllegalArgumentException e) {
+                    // Only this record is refused, the others of the batch are written
+                    entry.written.completeExceptionally(e);
+                }
+            }
+
+            long size = -1;
+            try {
+                size = this.segment.size();
+                write(this.segment, buffer.flip());
+                this.segment.force(false);
+            } catch (IOException e) {
+                this.cut(size);
+                for (Entry entry : batch)
+                    entry.written.completeExceptionally(e);
+                changed.clear();
+                batch.clear();
+                continue;
+            }
+
+            for (Map.Entry<Long, Position> game : changed.entrySet()) {
+                if (game.getValue() == null)
+                    this.games.remove(game.getKey());
+                else
+                    this.games.put(game.getKey(), game.getValue());
+            }
+            for (Entry entry : batch)
+                entry.written.complete(null);
+            changed.clear();
+            batch.clear();
+
+            try {
+                if (this.segment.size() >= this.segmentSize)
+                    this.roll();
+            } catch (IOException e) {
+                // The records of the current segment are on the disk : it stays the segment written
+            }
+        }
+    }
+
+    /**
+     * Check a record against the positions of the games, as changed by the records of the batch before it.
+     *
+     * @param changed Positions of the games changed by the batch, null for a game ended. The record is added.
+     * @throws IllegalArgumentException If the record can't be applied
+     */
+    private void check(Map<Long, Position> changed, Entry entry) {
+        switch (entry.type) {
+            case SNAPSHOT -> changed.put(entry.game, entry.position);
+            case MOVE -> {
+                Position current = changed.containsKey(entry.game) ? changed.get(entry.game) : this.games.get(entry.game);
+                if (current == null)
+                    throw new IllegalArgumentException("Move " + Position.moveToString(entry.move) + " in unknown game " + entry.game);
+                // The position on the disk is not modified before the batch is written
+                if (!changed.containsKey(entry.game))
+                    current = new Position(current);
+                if (!current.make(entry.move))
+                    throw new IllegalArgumentException("Move " + Position.moveToString(entry.move) + " illegal in game " + entry.game);
+                changed.put(entry.game, current);
+            }
+            case END -> changed.put(entry.game, null);
+            default -> throw new IllegalArgumentException("Unknown journal record : " + entry.type);
+        }
+    }
+
+    /**
+     * Cut the segment back to its size before a batch which couldn't be written, so that the next records don't follow
+     * a partial one.
+     *
+     * @param size Size of the segment before the batch, or -1 if unknown
+     */
+    private void cut(long size) {
+        try {
+            if (size >= 0) {
+                this.segment.truncate(size);
+                this.segment.position(size);
+            }
+        } catch (IOException e) {
+            // The replay of the segment will stop at the partial record
+        }
+    }
+
+    /**
+     * Update the position of a game with a record.
+     */
+    private void apply(long game, byte type, int move, Position position) {
+        switch (type) {
+            case SNAPSHOT -> this.games.put(game, position);
+            case MOVE -> {
+                Position current = this.games.get(game);
+                if (current == null || !current.make(move))
+                    throw new IllegalArgumentException("Move " + Position.moveToString(move) + " illegal in game " + game);
+            }
+            case END -> this.games.remove(game);
+            default -> throw new IllegalArgumentException("Unknown journal record : " + type);
+        }
+    }
+
+    /**
+     * Start a new segment with a snapshot of every game in progress, then delete the older segments. The new segment
+     * is only used once its snapshots are on the disk : if it can't be written, it is deleted and the current segment
+     * stays the one written.
+     */
+    private void roll() throws IOException {
+        int number = this.segmentNumber + 1;
+        Path path = this.segmentPath(number);
+        // A segment left by a roll which failed is overwritten
+        FileChannel next = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        Map<Long, Position> positions = new HashMap<>();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(this.games.size() * RECORD_MAX_SIZE);
+            for (Map.Entry<Long, Position> game : this.games.entrySet()) {
+                // The copy drops the history of the moves, which is not journaled anymore
+                Position position = new Position(game.getValue());
+                positions.put(game.getKey(), position);
+                writeRecord(buffer, game.getKey(), SNAPSHOT, 0, position);
+            }
+            write(next, buffer.flip());
+            next.force(true);
+        } catch (IOException | RuntimeException e) {
+            // Replayed after the current segment, the snapshots of a partial segment would hide its last moves
+            try {
+                next.close();
+                Files.deleteIfExists(path);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        FileChannel previous = this.segment;
+        this.segment = next;
+        this.segmentNumber = number;
+        this.games.putAll(positions);
+
+        // The older segments are only a waste of room now : they are deleted again by the next roll if they can't be
+        try {
+            if (previous != null)
+                previous.close();
+            for (int older : this.segmentNumbers()) {
+                if (older < number)
+                    Files.delete(this.segmentPath(older));
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Replay the records of a segment, up to the first record which was not completely written : it was written by a
+     * batch which failed or was cut by a crash, and the records after it were never acknowledged.
+     */
+    private void replay(Path path) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (data.remaining() >= 8) {
+            int length = data.getInt(data.position());
+            int crc = data.getInt(data.position() + 4);
+            if (length < 9 || length > data.remaining() - 8 || crc(data, data.position() + 8, length) != crc)
+                break;
+
+            data.position(data.position() + 8);
+            long game = data.getLong();
+            byte type = data.get();
+            int move = type == MOVE ? data.getInt() : 0;
+            Position position = type == SNAPSHOT ? Position.readSnapshot(data) : null;
+            this.apply(game, type, move, position);
+        }
+    }
+
+    private static void writeRecord(ByteBuffer buffer, long game, byte type, int move, Position position) {
+        int start = buffer.position();
+        buffer.position(start + 8);
+        buffer.putLong(game).put(type);
+        if (type == MOVE)
+            buffer.putInt(move);
+        else if (type == SNAPSHOT)
+            position.writeSnapshot(buffer);
+        int length = buffer.position() - start - 8;
+        buffer.putInt(start, length).putInt(start + 4, crc(buffer, start + 8, length));
+    }
+
+    private static int crc(ByteBuffer buffer, int start, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start, length));
+        return (int) crc.getValue();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /** @return The numbers of the segments of the journal, in increasing order */
+    private List<Integer> segmentNumbers() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, SEGMENT_PREFIX + "*" + SEGMENT_EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_EXTENSION.length())));
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private Path segmentPath(int number) {
+        return this.directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_EXTENSION));
+    }
+
+    /** @return The number of games in progress */
+    public int getSize() {
+        return this.games.size();
+    }
+}
@@ -0,0 +1,608 @@
+package com.thibclnt.chessgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Registry of the games of a host playing many games at the same time, most of them idle, within a memory budget.
+ * <p>
+ *     At most a given number of games are kept in memory. The others are spilled to a directory of the local disk, in a
+ *     compact form given by a {@link Serializer}, and read back (hydrated) when they are used again : the users of the
+ *     registry don't see the difference, except for the time of the hydration. A game is spilled when it has not been
+ *     used for a given time, or when a game must be hydrated or added while the budget is full. The game spilled then is
+ *     chosen by the {@link Policy} of the registry.
+ * </p> <p>
+ *     A game is used between {@link #acquire(long)} and {@link #release(long)}, and is never spilled meanwhile. The
+ *     registry may be used by any number of threads : the spills and hydrations of different games happen at the same
+ *     time, outside the lock of the registry.
+ * </p>
+ *
+ * @param <V> Type of the games
+ */
+public final class GameRegistry<V> implements Closeable {
+
+    /** Extension of the files of the spilled games */
+    public static final String SPILL_EXTENSION = ".game";
+
+    /**
+     * Choice of the game spilled when the budget is full.
+     */
+    public enum Policy {
+        /** The least recently used game */
+        LRU,
+        /**
+         * W-TinyLFU : the recently added games go through a small LRU window, then are only kept in memory if they are
+         * used more often than the game they would replace (the frequencies of all the games being estimated by a
+         * count-min sketch). The games used once don't push out the games used regularly.
+         */
+        TINY_LFU
+    }
+
+    /**
+     * Conversion of the games to their compact form, and back.
+     *
+     * @param <V> Type of the games
+     */
+    public interface Serializer<V> {
+        /**
+         * @param game Game to spill
+         * @return The compact form of the game, or null if it can't be spilled now
+         */
+        byte[] write(V game);
+
+        /**
+         * @param id Id of the game
+         * @param data Compact form of the game, returned by {@link #write(Object)}
+         * @return The game
+         */
+        V read(long id, byte[] data);
+
+        /**
+         * Release what the game uses, once it has been spilled.
+         *
+         * @param game Game spilled
+         */
+        default void spilled(V game) {}
+    }
+
+    /**
+     * Struct-like class to store a game of the registry. The value is null while the game is spilled.
+     */
+    private static class Entry<V> {
+        final long id;
+        volatile V value;
+        volatile int pins = 0;
+        volatile long lastUse = System.nanoTime();
+        volatile boolean removed = false;
+
+        Entry(long id, V value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    private final Path directory;
+    private final Serializer<V> serializer;
+    private final int maxResident;
+    private final long idleNanos;
+    private final Map<Long, Entry<V>> entries = new HashMap<>();
+    private final Eviction<V> eviction;
+    private final ScheduledExecutorService sweeper;
+    private long spills = 0, hydrations = 0, spillFailures = 0;
+
+    /**
+     * Create a registry.
+     *
+     * @param directory Directory where the games are spilled. It is created if needed.
+     * @param serializer Conversion of the games to their compact form
+     * @param policy Choice of the game spilled when the budget is full
+     * @param maxResident Maximum number of games kept in memory
+     * @param idleMillis Time after which a game not used is spilled, in milliseconds, or 0 to spill only when the budget
+     *                   is full
+     * @throws IOException If the directory can't be created
+     */
+    public GameRegistry(Path directory, Serializer<V> serializer, Policy policy, int maxResident, long idleMillis)
+            throws IOException {
+        if (maxResident <= 0 || idleMillis < 0)
+            throw new IllegalArgumentException("The number of games in memory must be positive");
+        this.directory = Files.createDirectories(directory);
+        this.serializer = serializer;
+        this.maxResident = maxResident;
+        this.idleNanos = idleMillis * 1_000_000;
+        this.eviction = policy == Policy.LRU ? new Lru<>() : new TinyLfu<>(maxResident);
+
+        if (idleMillis > 0) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "game-registry-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, idleMillis / 2);
+            this.sweeper.scheduleWithFixedDelay(this::spillIdle, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    /**
+     * Add a game, in memory.
+     *
+     * @param id Id of the game, which must not be in the registry
+     * @param game Game
+     */
+    public void put(long id, V game) {
+        Entry<V> entry = new Entry<>(id, game);
+        synchronized (this) {
+            if (this.entries.putIfAbsent(id, entry) != null)
+                throw new IllegalArgumentException("Game " + id + " already registered");
+            this.eviction.added(entry);
+        }
+        this.enforceBudget();
+    }
+
+    /**
+     * Get a game to use it, hydrating it if it was spilled. It is not spilled until {@link #release(long)} is called.
+     *
+     * @param id Id of the game
+     * @return The game, or null if it is not in the registry
+     * @throws UncheckedIOException If the game can't be read from the disk
+     * @throws RuntimeException If the game can't be deserialized. In both cases, the game isn't acquired
+     */
+    public V acquire(long id) {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = this.entries.get(id);
+            if (entry == null)
+                return null;
+            entry.pins++;
+            entry.lastUse = System.nanoTime();
+            if (entry.value != null)
+                this.eviction.accessed(entry);
+        }
+
+        boolean hydrated = false, acquired = false;
+        try {
+            synchronized (entry) {
+                if (entry.value == null && !entry.removed) {
+                    Path file = this.file(id);
+                    entry.value = this.serializer.read(id, Files.readAllBytes(file));
+                    Files.deleteIfExists(file);
+                    hydrated = true;
+                }
+            }
+            acquired = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Game " + id + " can't be read", e);
+        } finally {
+            if (!acquired)
+                this.release(id);
+        }
+        if (hydrated) {
+            synchronized (this) {
+                this.hydrations++;
+                if (!entry.removed)
+                    this.eviction.added(entry);
+            }
+            this.enforceBudget();
+        }
+        return entry.value;
+    }
+
+    /**
+     * Tell the registry a game acquired by {@link #acquire(long)} is not used anymore.
+     *
+     * @param id Id of the game
+     */
+    public synchronized void release(long id) {
+        Entry<V> entry = this.entries.get(id);
+        if (entry != null && entry.pins > 0) {
+            entry.pins--;
+            entry.lastUse = System.nanoTime();
+        }
+    }
+
+    /**
+     * Remove a game, and its file if it is spilled.
+     *
+     * @param id Id of the game
+     * @return The game if it was in memory, or null
+     */
+    public V remove(long id) {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = this.entries.remove(id);
+            if (entry == null)
+                return null;
+            entry.removed = true;
+            this.eviction.removed(entry);
+        }
+        synchronized (entry) {
+            if (entry.value == null) {
+                try {
+                    Files.deleteIfExists(this.file(id));
+                } catch (IOException ignored) {
+                }
+            }
+            return entry.value;
+        }
+    }
+
+    /**
+     * Spill the games not used for longer than the idle time. It is called regularly by the registry.
+     *
+     * @return The number of games spilled
+     */
+    public int spillIdle() {
+        long now = System.nanoTime();
+        int spilled = 0;
+        for (Entry<V> entry : this.residentSnapshot()) {
+            if (entry.pins == 0 && now - entry.lastUse > this.idleNanos && this.spill(entry))
+                spilled++;
+        }
+        return spilled;
+    }
+
+    /**
+     * Spill games, chosen by the policy, until the number of games in memory fits in the budget.
+     */
+    private void enforceBudget() {
+        while (true) {
+            Entry<V> victim;
+            synchronized (this) {
+                if (this.eviction.size() <= this.maxResident)
+                    return;
+                victim = this.eviction.victim();
+                if (victim == null)
+                    return;
+                // The victim is taken out of the policy now, so that another thread doesn't choose it too
+                this.eviction.removed(victim);
+            }
+            if (!this.spill(victim)) {
+                synchronized (this) {
+                    if (!victim.removed && victim.value != null)
+                        this.eviction.added(victim);
+                }
+                // The games of the budget can't be spilled now : the budget is exceeded until they can
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write a game to the disk and drop it from memory, unless it is used or can't be spilled.
+     *
+     * @return true if the game was spilled
+     */
+    private boolean spill(Entry<V> entry) {
+        V game;
+        synchronized (entry) {
+            game = entry.value;
+            if (game == null || entry.removed || entry.pins > 0)
+                return false;
+            byte[] data = this.serializer.write(game);
+            if (data == null)
+                return false;
+            try {
+                Files.write(this.file(entry.id), data);
+            } catch (IOException e) {
+                // The game stays in memory, the failure is counted by getSpillFailureCount()
+                synchronized (this) {
+                    this.spillFailures++;
+                }
+                return false;
+            }
+            entry.value = null;
+        }
+        synchronized (this) {
+            this.spills++;
+            // The game may already be hydrated again, by a thread which was waiting for the spill
+            if (entry.value == null)
+                this.eviction.removed(entry);
+        }
+        this.serializer.spilled(game);
+        return true;
+    }
+
+    private synchronized Iterable<Entry<V>> residentSnapshot() {
+        return this.eviction.snapshot();
+    }
+
+    private Path file(long id) {
+        return this.directory.resolve(id + SPILL_EXTENSION);
+    }
+
+    /**
+     * Call an action for each game in memory.
+     *
+     * @param action Action to call
+     */
+    public void forEachResident(Consumer<V> action) {
+        for (Entry<V> entry : this.residentSnapshot()) {
+            V game = entry.value;
+            if (game != null)
+                action.accept(game);
+        }
+    }
+
+    /** @return The number of games of the registry, in memory or spilled */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /** @return The number of games in memory */
+    public synchronized int getResidentCount() {
+        return this.eviction.size();
+    }
+
+    /** @return The number of games spilled to the disk since the registry was created */
+    public synchronized long getSpillCount() {
+        return this.spills;
+    }
+
+    /** @return The number of games which couldn't be written to the disk, and stayed in memory */
+    public synchronized long getSpillFailureCount() {
+        return this.spillFailures;
+    }
+
+    /** @return The number of games read back from the disk since the registry was created */
+    public synchronized long getHydrationCount() {
+        return this.hydrations;
+    }
+
+    /** @return The maximum number of games kept in memory */
+    public int getMaxResident() {
+        return this.maxResident;
+    }
+
+    /**
+     * Stop spilling the idle games, and delete the files of the spilled games : they are dropped.
+     *
+     * @throws IOException If a file can't be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.sweeper != null)
+            this.sweeper.shutdownNow();
+        synchronized (this) {
+            for (Entry<V> entry : this.entries.values()) {
+                if (entry.value == null)
+                    Files.deleteIfExists(this.file(entry.id));
+            }
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * Order of the games in memory, choosing the game to spill. It is only used with the lock of the registry.
+     */
+    private interface Eviction<V> {
+        /**
+         * A game is now in memory. It may still be known by the policy : a game hydrated while its spill ends is only
+         * removed from the policy after it is added again.
+         */
+        void added(Entry<V> entry);
+
+        /** A game in memory is used */
+        void accessed(Entry<V> entry);
+
+        /** A game is not in memory anymore. It may not be known by the policy. */
+        void removed(Entry<V> entry);
+
+        /** @return The game to spill, which must not be used, or null if every game is used */
+        Entry<V> victim();
+
+        /** @return The number of games in memory */
+        int size();
+
+        /** @return A copy of the games in memory */
+        Iterable<Entry<V>> snapshot();
+    }
+
+    /**
+     * @return The first game of the set, in insertion order, which is not used, or null
+     */
+    private static <V> Entry<V> firstUnused(LinkedHashSet<Entry<V>> set) {
+        for (Entry<V> entry : set) {
+            if (entry.pins == 0)
+                return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Least recently used policy : the games are ordered by their last use.
+     */
+    private static class Lru<V> implements Eviction<V> {
+        private final LinkedHashSet<Entry<V>> order = new LinkedHashSet<>();
+
+        @Override
+        public void added(Entry<V> entry) {
+            this.order.add(entry);
+        }
+
+        @Override
+        public void accessed(Entry<V> entry) {
+            if (this.order.remove(entry))
+                this.order.add(entry);
+        }
+
+        @Override
+        public void removed(Entry<V> entry) {
+            this.order.remove(entry);
+        }
+
+        @Override
+        public Entry<V> victim() {
+            return firstUnused(this.order);
+        }
+
+        @Override
+        public int size() {
+            return this.order.size();
+        }
+
+        @Override
+        public Iterable<Entry<V>> snapshot() {
+            return new ArrayList<>(this.order);
+        }
+    }
+
+    /**
+     * W-TinyLFU policy : a window LRU of 1% of the games in memory, then a segmented LRU of the others, whose probation
+     * segment keeps the games used once and protected segment (80%) the games used again. A game leaving the window
+     * enters probation while the main segments are not full, then only replaces the first game of probation if it is
+     * estimated to be used more often.
+     */
+    private static class TinyLfu<V> implements Eviction<V> {
+        private final LinkedHashSet<Entry<V>> window = new LinkedHashSet<>();
+        private final LinkedHashSet<Entry<V>> probation = new LinkedHashSet<>();
+        private final LinkedHashSet<Entry<V>> protectedSegment = new LinkedHashSet<>();
+        private final int windowSize;
+        /** Number of games of the main segments (probation and protected) */
+        private final int mainSize;
+        private final int protectedSize;
+        private final FrequencySketch sketch;
+
+        TinyLfu(int capacity) {
+            this.windowSize = Math.max(1, capacity / 100);
+            this.mainSize = Math.max(1, capacity - this.windowSize);
+            this.protectedSize = (int) Math.max(1, this.mainSize * 4L / 5);
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        @Override
+        public void added(Entry<V> entry) {
+            this.sketch.increment(entry.id);
+            // A game still in a main segment stays there, so that it is never in two segments
+            if (!this.probation.contains(entry) && !this.protectedSegment.contains(entry))
+                this.window.add(entry);
+
+            // Until the main segments are full, the games leaving the window enter them without admission
+            while (this.window.size() > this.windowSize && this.probation.size() + this.protectedSegment.size() < this.mainSize) {
+                Entry<V> oldest = this.window.iterator().next();
+                this.window.remove(oldest);
+                this.probation.add(oldest);
+            }
+        }
+
+        @Override
+        public void accessed(Entry<V> entry) {
+            this.sketch.increment(entry.id);
+            if (this.window.remove(entry)) {
+                this.window.add(entry);
+            } else if (this.probation.remove(entry)) {
+                // A game used again is protected, the oldest protected game going back to probation
+                this.protectedSegment.add(entry);
+                if (this.protectedSegment.size() > this.protectedSize) {
+                    Entry<V> demoted = this.protectedSegment.iterator().next();
+                    this.protectedSegment.remove(demoted);
+                    this.probation.add(demoted);
+                }
+            } else if (this.protectedSegment.remove(entry)) {
+                this.protectedSegment.add(entry);
+            }
+        }
+
+        @Override
+        public void removed(Entry<V> entry) {
+            if (!this.window.remove(entry) && !this.probation.remove(entry))
+                this.protectedSegment.remove(entry);
+        }
+
+        @Override
+        public Entry<V> victim() {
+            Entry<V> candidate = this.window.size() > this.windowSize ? firstUnused(this.window) : null;
+            Entry<V> mainVictim = firstUnused(this.probation);
+            if (mainVictim == null)
+                mainVictim = firstUnused(this.protectedSegment);
+
+            if (candidate == null)
+                return mainVictim != null ? mainVictim : firstUnused(this.window);
+            if (mainVictim == null)
+                return candidate;
+            // Admission : once the main segments are full, the game leaving the window only enters them if it is used more
+            // often than their victim
+            if (this.sketch.frequency(candidate.id) > this.sketch.frequency(mainVictim.id)) {
+                this.window.remove(candidate);
+                this.probation.add(candidate);
+                return mainVictim;
+            }
+            return candidate;
+        }
+
+        @Override
+        public int size() {
+            return this.window.size() + this.probation.size() + this.protectedSegment.size();
+        }
+
+        @Override
+        public Iterable<Entry<V>> snapshot() {
+            List<Entry<V>> entries = new ArrayList<>(this.window);
+            entries.addAll(this.probation);
+            entries.addAll(this.protectedSegment);
+            return entries;
+        }
+    }
+
+    /**
+     * Count-min sketch estimating how often each game is used, in a fixed memory : 4 rows of counters (up to 15), each
+     * game incrementing a counter per row, and its frequency being the smallest of them. The counters are halved
+     * regularly, so that the old uses count less than the recent ones.
+     */
+    private static class FrequencySketch {
+        private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+        private final byte[][] counters = new byte[SEEDS.length][];
+        private final int mask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        FrequencySketch(int capacity) {
+            // Beyond a million games, the sketch stops growing : the estimates are less precise, but its memory bounded
+            int width = Integer.highestOneBit(Math.max(16, Math.min(capacity, 1 << 20) * 2 - 1)) << 1;
+            for (int i = 0 ; i < SEEDS.length ; i++)
+                this.counters[i] = new byte[width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(long id) {
+            for (int i = 0 ; i < SEEDS.length ; i++) {
+                int index = this.index(id, i);
+                if (this.counters[i][index] < 15)
+                    this.counters[i][index]++;
+            }
+            if (++this.additions >= this.sampleSize) {
+                for (byte[] row : this.counters) {
+                    for (int j = 0 ; j < row.length ; j++)
+                        row[j] >>= 1;
+                }
+                this.additions /= 2;
+            }
+        }
+
+        int frequency(long id) {
+            int frequency = 15;
+            for (int i = 0 ; i < SEEDS.length ; i++)
+                frequency = Math.min(frequency, this.counters[i][this.index(id, i)]);
+            return frequency;
+        }
+
+        private int index(long id, int row) {
+            long hash = (id + 1) * SEEDS[row];
+            return (int) (hash ^ (hash >>> 32)) & this.mask;
+        }
+    }
+}
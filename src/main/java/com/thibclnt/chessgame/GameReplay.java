@@ -0,0 +1,216 @@
+package com.thibclnt.chessgame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Random access to the positions of a game. A snapshot of the position ({@link Position#writeSnapshot(ByteBuffer)}) is
+ * kept every {@link #getInterval()} plies, so the position at any ply is rebuilt from the snapshot before it with less
+ * than {@link #getInterval()} moves, instead of replaying the whole game.
+ * <p>
+ *     The interval is tuned with the length of the game : it is the smallest power of two such that there are at most
+ *     twice as many snapshots as plies between them (about the square root of the number of plies), and at least
+ *     {@link #MIN_INTERVAL}. Moves can be added with {@link #append(int)} as the game goes on : when there are too many
+ *     snapshots, the interval is doubled and every other snapshot is dropped.
+ * </p> <p>
+ *     A replay is not thread safe, but {@link #positionAt(int)} may be called by several threads as long as no move is
+ *     added.
+ * </p>
+ */
+public final class GameReplay {
+
+    /** Minimum number of plies between two snapshots */
+    public static final int MIN_INTERVAL = 4;
+
+    private int[] moves;
+    private int plies = 0;
+    /** Snapshots of the positions at plies 0, interval, 2 * interval... */
+    private byte[] snapshots;
+    /** Buffer over {@link #snapshots}, used by the thread adding the moves so that taking them back doesn't allocate */
+    private ByteBuffer snapshotBuffer;
+    private int snapshotCount = 0;
+    private int interval;
+    /** Position after the last move, where the next moves are played */
+    private Position last;
+
+    /**
+     * Create the replay of a game, with an interval tuned for its length.
+     *
+     * @param start {@link Position} the game starts from. It is not modified.
+     * @param moves Legal moves of the game, encoded as with {@link Position#move(int, int, int, int)}
+     * @throws IllegalArgumentException If a move is illegal
+     */
+    public GameReplay(Position start, int[] moves) {
+        this.interval = intervalFor(moves.length);
+        this.moves = new int[Math.max(16, moves.length)];
+        this.snapshots = new byte[Position.SNAPSHOT_SIZE * (moves.length / this.interval + 2)];
+        this.snapshotBuffer = ByteBuffer.wrap(this.snapshots);
+        this.last = new Position(start);
+        this.addSnapshot();
+        for (int move : moves)
+            this.append(move);
+    }
+
+    /**
+     * Create the replay of a game read from a {@link GameArchive}.
+     *
+     * @param archive Archive containing the game
+     * @param game Number of the game in the archive
+     * @return The replay of the game
+     */
+    public static GameReplay fromArchive(GameArchive archive, int game) {
+        return new GameReplay(archive.getHeader(game).getStartPosition(), archive.getMoves(game));
+    }
+
+    /**
+     * @param plies Number of plies of a game
+     * @return The interval between two snapshots for a game of this length
+     */
+    public static int intervalFor(int plies) {
+        int interval = MIN_INTERVAL;
+        while (plies / interval > 2 * interval)
+            interval *= 2;
+        return interval;
+    }
+
+    /**
+     * Add a move at the end of the game.
+     *
+     * @param move Legal move in the last position
+     * @throws IllegalArgumentException If the move is illegal
+     */
+    public void append(int move) {
+        if (!this.last.make(move))
+            throw new IllegalArgumentException("Illegal move " + Position.moveToString(move) + " at ply " + this.plies);
+
+        if (this.plies == this.moves.length)
+            this.moves = Arrays.copyOf(this.moves, 2 * this.moves.length);
+        this.moves[this.plies++] = move;
+
+        if (this.plies % this.interval == 0) {
+            // The history of the position is only needed to take back the moves since the last snapshot
+            this.last.clearHistory();
+            this.addSnapshot();
+            if (this.snapshotCount > 2 * this.interval + 1)
+                this.doubleInterval();
+        }
+    }
+
+    /**
+     * Encode a move of the last position from its squares, without generating its legal moves (see
+     * {@link Position#encodeMove(int, int, int)}).
+     *
+     * @param from Origin square
+     * @param to Destination square
+     * @param promotion Type of the piece a pawn is promoted to (KNIGHT to QUEEN), or EMPTY
+     * @return The encoded move, or {@link Position#NO_MOVE} if it can't be a move of the last position
+     */
+    public int encodeMove(int from, int to, int promotion) {
+        return this.last.encodeMove(from, to, promotion);
+    }
+
+    /**
+     * Remove the moves after a ply, for example when moves are taken back.
+     *
+     * @param plies Number of moves kept, from 0 to {@link #getPlies()}
+     */
+    public void truncate(int plies) {
+        if (plies < 0 || plies > this.plies)
+            throw new IndexOutOfBoundsException("Ply " + plies + " out of a game of " + this.plies + " plies");
+
+        // Taking back the last move since the last snapshot only needs to undo it, otherwise the last position is
+        // rebuilt in place from the snapshot before the ply
+        if (plies == this.plies - 1 && this.last.getHistoryLength() > 0)
+            this.last.unmake();
+        else if (plies != this.plies)
+            this.load(this.last, plies, this.snapshotBuffer);
+        this.plies = plies;
+        this.snapshotCount = plies / this.interval + 1;
+    }
+
+    /**
+     * Write the snapshot of the position after the last move, as {@link Position#writeSnapshot(ByteBuffer)}.
+     *
+     * @param buffer Buffer where the snapshot is written
+     */
+    public void writeLastSnapshot(ByteBuffer buffer) {
+        this.last.writeSnapshot(buffer);
+    }
+
+    /**
+     * Rebuild the position at a ply.
+     *
+     * @param ply Number of moves played, from 0 (start position) to {@link #getPlies()}
+     * @return A new position, whose history only contains the moves since the snapshot before the ply
+     */
+    public Position positionAt(int ply) {
+        if (ply < 0 || ply > this.plies)
+            throw new IndexOutOfBoundsException("Ply " + ply + " out of a game of " + this.plies + " plies");
+
+        Position position = new Position();
+        this.load(position, ply, ByteBuffer.wrap(this.snapshots));
+        return position;
+    }
+
+    /**
+     * Replace a position by the position at a ply, from the snapshot before it.
+     *
+     * @param buffer Buffer over {@link #snapshots}, whose position is changed
+     */
+    private void load(Position position, int ply, ByteBuffer buffer) {
+        int snapshot = ply / this.interval;
+        buffer.position(snapshot * Position.SNAPSHOT_SIZE);
+        position.loadSnapshot(buffer);
+        for (int i = snapshot * this.interval ; i < ply ; i++)
+            position.make(this.moves[i]);
+    }
+
+    private void addSnapshot() {
+        int offset = this.snapshotCount * Position.SNAPSHOT_SIZE;
+        if (offset + Position.SNAPSHOT_SIZE > this.snapshots.length) {
+            this.snapshots = Arrays.copyOf(this.snapshots, 2 * this.snapshots.length);
+            this.snapshotBuffer = ByteBuffer.wrap(this.snapshots);
+        }
+        this.snapshotBuffer.position(offset);
+        this.last.writeSnapshot(this.snapshotBuffer);
+        this.snapshotCount++;
+    }
+
+    /**
+     * Double the interval, keeping only the snapshots of the plies multiple of the new interval.
+     */
+    private void doubleInterval() {
+        int kept = 0;
+        for (int i = 0 ; i < this.snapshotCount ; i += 2, kept++) {
+            System.arraycopy(this.snapshots, i * Position.SNAPSHOT_SIZE, this.snapshots, kept * Position.SNAPSHOT_SIZE,
+                    Position.SNAPSHOT_SIZE);
+        }
+        this.snapshotCount = kept;
+        this.interval *= 2;
+    }
+
+    /**
+     * @param ply Number of the move, from 0 to {@link #getPlies()} - 1
+     * @return The move played at this ply
+     */
+    public int getMove(int ply) {
+        if (ply < 0 || ply >= this.plies)
+            throw new IndexOutOfBoundsException("Ply " + ply + " out of a game of " + this.plies + " plies");
+        return this.moves[ply];
+    }
+
+    /** @return The moves of the game */
+    public int[] getMoves() {
+        return Arrays.copyOf(this.moves, this.plies);
+    }
+
+    /** @return The number of moves of the game */
+    public int getPlies() {
+        return this.plies;
+    }
+
+    /** @return The number of plies between two snapshots */
+    public int getInterval() {
+        return this.interval;
+    }
+}
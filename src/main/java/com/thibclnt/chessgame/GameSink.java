@@ -0,0 +1,26 @@
+package com.thibclnt.chessgame;
+
+import java.io.IOException;
+
+/**
+ * Interface that must be implemented to receive games, for example at the end of a {@link PgnIngest} pipeline : a PGN
+ * file ({@link PgnWriter}), an archive, an index...
+ * <p>
+ *     A sink is always called from a single thread, so it doesn't have to be thread safe.
+ * </p>
+ */
+public interface GameSink {
+    /**
+     * Receive a game. Its moves are already resolved.
+     * @param game {@link PgnGame} received
+     * @throws IOException If the game can't be stored
+     */
+    void accept(PgnGame game) throws IOException;
+
+    /**
+     * Is called once all the games are received, to store the ones which are still buffered.
+     * @throws IOException If the games can't be stored
+     */
+    default void flush() throws IOException {
+    }
+}
@@ -158,6 +158,15 @@ public class King extends ChessPiece{
         return this.hasAlreadyMoved;
     }
 
+    /**
+     * Set if the piece has already moved, when a move is undone or redone by {@link ChessGame#undo()} and
+     * {@link ChessGame#redo()}.
+     * @param hasAlreadyMoved New value of {@link King#hasAlreadyMoved}
+     */
+    void setAlreadyMoved(boolean hasAlreadyMoved) {
+        this.hasAlreadyMoved = hasAlreadyMoved;
+    }
+
     @Override
     public Set<Pos> getAttacked() {
         Set<Pos> attacked = new HashSet<>(Arrays.asList(
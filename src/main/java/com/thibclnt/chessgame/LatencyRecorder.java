@@ -0,0 +1,105 @@
+package com.thibclnt.chessgame;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies, recorded by any number of threads without locks, from which percentiles are read.
+ * <p>
+ *     Latencies are counted in buckets : a bucket for each of the {@link #SUB_BUCKETS} first microseconds, then
+ *     {@link #SUB_BUCKETS} buckets for each power of two. A percentile is then read with an error of at most
+ *     1 / {@link #SUB_BUCKETS}, whatever the latency, with a fixed memory.
+ * </p> <p>
+ *     Most latencies fall in the same few buckets : each bucket is a {@link LongAdder}, so that the threads recording
+ *     at the same time don't contend on a single counter. Reading a percentile sums the buckets, which is slower, but
+ *     rare.
+ * </p>
+ */
+public class LatencyRecorder {
+
+    /** Number of buckets by power of two. Must be a power of two */
+    public static final int SUB_BUCKETS = 32;
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    private final LongAdder[] buckets = new LongAdder[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyRecorder() {
+        for (int i = 0 ; i < this.buckets.length ; i++)
+            this.buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos Latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        this.buckets[bucket(Math.max(0, nanos / 1000))].increment();
+        this.count.increment();
+        this.total.add(nanos);
+    }
+
+    /**
+     * @param percent Percentile, from 0 to 100
+     * @return The latency of this percentile, in microseconds (the upper bound of its bucket), or 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double percent) {
+        long count = this.count.sum();
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+        long seen = 0;
+        for (int i = 0 ; i < this.buckets.length ; i++) {
+            seen += this.buckets[i].sum();
+            if (seen >= rank)
+                return upperBound(i);
+        }
+        return upperBound(this.buckets.length - 1);
+    }
+
+    /** @return The number of latencies recorded */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /** @return The mean latency, in microseconds */
+    public long getMeanMicros() {
+        return this.total.sum() / 1000 / Math.max(1, this.count.sum());
+    }
+
+    /**
+     * Forget every latency recorded.
+     */
+    public void reset() {
+        for (LongAdder bucket : this.buckets)
+            bucket.reset();
+        this.count.reset();
+        this.total.reset();
+    }
+
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        // The SUB_BITS bits after the highest one give the bucket in its power of two
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift) + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + getMeanMicros() + "us, p50=" + getPercentileMicros(50) + "us, p99="
+                + getPercentileMicros(99) + "us, p99.9=" + getPercentileMicros(99.9) + "us, max=" + getPercentileMicros(100) + "us";
+    }
+}
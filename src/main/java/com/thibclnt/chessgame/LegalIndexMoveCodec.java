@@ -0,0 +1,331 @@
+package com.thibclnt.chessgame;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * {@link MoveCodec} storing each move as its index in the list of the legal moves of the position, which is rebuilt
+ * with the rules when decoding. A position rarely has more than 64 legal moves, so a move takes 5 or 6 bits instead
+ * of the 24 of the {@link RawMoveCodec}.
+ * <p>
+ *     The legal moves are sorted from the most to the least likely to be played (captures of valuable pieces,
+ *     promotions, then moves towards the center), with the same order when encoding and decoding. Two variants exist :
+ * </p>
+ * <ul>
+ *     <li> {@link #FIXED} : each index is written with just enough bits for the number of legal moves (no bit at all
+ *     for a forced move) </li>
+ *     <li> {@link #ENTROPY} : the indexes are compressed by an adaptive range coder. As the likely moves are sorted first,
+ *     small indexes are much more frequent and take less than a bit more often than not. Slower, but smaller. </li>
+ * </ul>
+ * @see MoveCodec
+ */
+public class LegalIndexMoveCodec implements MoveCodec {
+
+    /** Id of the codec writing the indexes on a fixed number of bits */
+    public static final int ID = 1;
+    /** Id of the codec compressing the indexes with a range coder */
+    public static final int ENTROPY_ID = 2;
+
+    /** Codec writing the indexes on a fixed number of bits */
+    public static final LegalIndexMoveCodec FIXED = new LegalIndexMoveCodec(false);
+    /** Codec compressing the indexes with a range coder */
+    public static final LegalIndexMoveCodec ENTROPY = new LegalIndexMoveCodec(true);
+
+    /** Bonus of each square for the pieces moving to it, higher in the center */
+    private static final int[] CENTER = new int[64];
+
+    static {
+        for (int square = 0 ; square < 64 ; square++) {
+            int fileDistance = Math.max(3 - Position.file(square), Position.file(square) - 4);
+            int rankDistance = Math.max(3 - Position.rank(square), Position.rank(square) - 4);
+            CENTER[square] = 3 - Math.max(fileDistance, rankDistance);
+        }
+    }
+
+    private final boolean entropyCoding;
+
+    private LegalIndexMoveCodec(boolean entropyCoding) {
+        this.entropyCoding = entropyCoding;
+    }
+
+    @Override
+    public int getId() {
+        return this.entropyCoding ? ENTROPY_ID : ID;
+    }
+
+    @Override
+    public byte[] encode(Position start, int[] moves) {
+        Position position = new Position(start);
+        BitWriter bits = this.entropyCoding ? null : new BitWriter();
+        RangeEncoder range = this.entropyCoding ? new RangeEncoder() : null;
+        int[] frequencies = this.entropyCoding ? initialFrequencies() : null;
+
+        for (int move : moves) {
+            int[] legalMoves = orderedLegalMoves(position);
+            int index = -1;
+            for (int i = 0 ; i < legalMoves.length && index < 0 ; i++) {
+                if (legalMoves[i] == move)
+                    index = i;
+            }
+            if (index < 0)
+                throw new IllegalArgumentException("Illegal move " + Position.moveToString(move));
+
+            if (this.entropyCoding)
+                range.encode(frequencies, legalMoves.length, index);
+            else
+                bits.write(index, bitsFor(legalMoves.length));
+            position.make(move);
+        }
+        return this.entropyCoding ? range.finish() : bits.finish();
+    }
+
+    @Override
+    public int[] decode(Position start, byte[] data, int plies) {
+        Position position = new Position(start);
+        BitReader bits = this.entropyCoding ? null : new BitReader(data);
+        RangeDecoder range = this.entropyCoding ? new RangeDecoder(data) : null;
+        int[] frequencies = this.entropyCoding ? initialFrequencies() : null;
+
+        int[] moves = new int[plies];
+        for (int i = 0 ; i < plies ; i++) {
+            int[] legalMoves = orderedLegalMoves(position);
+            int index = this.entropyCoding ? range.decode(frequencies, legalMoves.length)
+                    : bits.read(bitsFor(legalMoves.length));
+            if (index >= legalMoves.length)
+                throw new IllegalArgumentException("Corrupted moves at ply " + i);
+
+            moves[i] = legalMoves[index];
+            position.make(moves[i]);
+        }
+        return moves;
+    }
+
+    /**
+     * Generate the legal moves of a position, sorted from the most to the least likely. The order only depends on the
+     * position, so it is the same when encoding and decoding.
+     *
+     * @param position {@link Position} whose moves are generated
+     * @return The sorted legal moves
+     */
+    static int[] orderedLegalMoves(Position position) {
+        int[] moves = position.legalMoves();
+        long[] keys = new long[moves.length];
+        for (int i = 0 ; i < moves.length ; i++) {
+            // Highest score first, then smallest move to break ties
+            keys[i] = (long) (1000 - likelihood(position, moves[i])) << 32 | moves[i];
+        }
+        Arrays.sort(keys);
+        for (int i = 0 ; i < moves.length ; i++)
+            moves[i] = (int) keys[i];
+        return moves;
+    }
+
+    /**
+     * @return A score of how likely a move is to be played, between 0 and 999
+     */
+    private static int likelihood(Position position, int move) {
+        int from = Position.from(move), to = Position.to(move);
+        int piece = Position.type(position.pieceAt(from));
+        int victim = Position.type(position.pieceAt(to));
+
+        if (Position.promotion(move) != Position.EMPTY)
+            return 900 + Position.promotion(move);
+        if (victim != Position.EMPTY)
+            return 700 + 10 * victim - piece;
+        if (Position.flag(move) == Position.EN_PASSANT)
+            return 700 + 10 * Position.PAWN - Position.PAWN;
+        if (Position.flag(move) == Position.CASTLE)
+            return 600;
+        // Quiet moves : towards the center first, and minor pieces and pawns before the others
+        return 500 + 10 * (CENTER[to] - CENTER[from]) + (piece <= Position.BISHOP ? 5 : 0);
+    }
+
+    /** @return The number of bits needed to write an index lower than count */
+    private static int bitsFor(int count) {
+        return count <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(count - 1);
+    }
+
+    /**
+     * @return The frequencies the range coder starts with, giving most of the probability to the first indexes
+     */
+    private static int[] initialFrequencies() {
+        int[] frequencies = new int[Position.MAX_MOVES];
+        for (int i = 0 ; i < frequencies.length ; i++)
+            frequencies[i] = Math.max(1, 256 / (i + 1));
+        return frequencies;
+    }
+
+    /**
+     * Writer of a stream of bits, most significant bit first.
+     */
+    private static class BitWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int current = 0;
+        private int count = 0;
+
+        void write(int value, int length) {
+            for (int bit = length - 1 ; bit >= 0 ; bit--) {
+                this.current = this.current << 1 | ((value >>> bit) & 1);
+                if (++this.count == 8) {
+                    this.bytes.write(this.current);
+                    this.current = 0;
+                    this.count = 0;
+                }
+            }
+        }
+
+        byte[] finish() {
+            if (this.count > 0)
+                this.bytes.write(this.current << (8 - this.count));
+            return this.bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Reader of a stream of bits written by {@link BitWriter}.
+     */
+    private static class BitReader {
+        private final byte[] data;
+        private long position = 0;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        int read(int length) {
+            int value = 0;
+            for (int i = 0 ; i < length ; i++, this.position++) {
+                int index = (int) (this.position >>> 3);
+                int bit = index < this.data.length ? (this.data[index] >>> (7 - (this.position & 7))) & 1 : 0;
+                value = value << 1 | bit;
+            }
+            return value;
+        }
+    }
+
+    /** Parameters of the range coder ("carryless" range coder of D. Subbotin), on 32 bits */
+    private static final long TOP = 1L << 24, BOTTOM = 1L << 16, MASK = 0xFFFFFFFFL;
+    /** Added to the frequency of an index each time it is coded */
+    private static final int INCREMENT = 32;
+    /** Total of the frequencies above which they are halved, so that they adapt and stay under {@link #BOTTOM} */
+    private static final int MAX_TOTAL = 1 << 15;
+
+    /**
+     * Update the frequencies after an index was coded.
+     */
+    private static void update(int[] frequencies, int index) {
+        frequencies[index] += INCREMENT;
+        int total = 0;
+        for (int frequency : frequencies)
+            total += frequency;
+        if (total > MAX_TOTAL) {
+            for (int i = 0 ; i < frequencies.length ; i++)
+                frequencies[i] = Math.max(1, frequencies[i] / 2);
+        }
+    }
+
+    /**
+     * Encoder of indexes with an adaptive range coder. Only the frequencies of the indexes lower than the number of legal
+     * moves are used, so that no probability is wasted on impossible indexes.
+     */
+    private static class RangeEncoder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private long low = 0;
+        private long range = MASK;
+
+        void encode(int[] frequencies, int count, int index) {
+            if (count > 1) {
+                int cumulative = 0, total = 0;
+                for (int i = 0 ; i < count ; i++) {
+                    if (i == index)
+                        cumulative = total;
+                    total += frequencies[i];
+                }
+
+                this.range /= total;
+                this.low += cumulative * this.range;
+                this.range *= frequencies[index];
+                this.normalize();
+            }
+            update(frequencies, index);
+        }
+
+        private void normalize() {
+            while (true) {
+                if ((this.low ^ (this.low + this.range)) >= TOP) {
+                    if (this.range >= BOTTOM)
+                        break;
+                    this.range = -this.low & (BOTTOM - 1);
+                }
+                this.bytes.write((int) (this.low >>> 24));
+                this.low = (this.low << 8) & MASK;
+                this.range = (this.range << 8) & MASK;
+            }
+        }
+
+        byte[] finish() {
+            for (int i = 0 ; i < 4 ; i++) {
+                this.bytes.write((int) (this.low >>> 24));
+                this.low = (this.low << 8) & MASK;
+            }
+            return this.bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Decoder of indexes encoded by {@link RangeEncoder}.
+     */
+    private static class RangeDecoder {
+        private final byte[] data;
+        private int position = 0;
+        private long low = 0;
+        private long range = MASK;
+        private long code = 0;
+
+        RangeDecoder(byte[] data) {
+            this.data = data;
+            for (int i = 0 ; i < 4 ; i++)
+                this.code = this.code << 8 | this.nextByte();
+        }
+
+        int decode(int[] frequencies, int count) {
+            int index = 0;
+            if (count > 1) {
+                int total = 0;
+                for (int i = 0 ; i < count ; i++)
+                    total += frequencies[i];
+
+                this.range /= total;
+                long value = Math.min(total - 1, (this.code - this.low) / this.range);
+                int cumulative = 0;
+                while (cumulative + frequencies[index] <= value) {
+                    cumulative += frequencies[index];
+                    index++;
+                }
+
+                this.low += cumulative * this.range;
+                this.range *= frequencies[index];
+                this.normalize();
+            }
+            update(frequencies, index);
+            return index;
+        }
+
+        private void normalize() {
+            while (true) {
+                if ((this.low ^ (this.low + this.range)) >= TOP) {
+                    if (this.range >= BOTTOM)
+                        break;
+                    this.range = -this.low & (BOTTOM - 1);
+                }
+                this.code = ((this.code << 8) | this.nextByte()) & MASK;
+                this.low = (this.low << 8) & MASK;
+                this.range = (this.range << 8) & MASK;
+            }
+        }
+
+        private int nextByte() {
+            return this.position < this.data.length ? this.data[this.position++] & 0xFF : 0;
+        }
+    }
+}
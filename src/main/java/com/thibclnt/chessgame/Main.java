@@ -1,7 +1,21 @@
 package com.thibclnt.chessgame;
 
+import java.util.Arrays;
+
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // Server mode : many games played through TCP, see ChessServer
+        if (args.length > 0 && args[0].equals("--server")) {
+            ChessServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // UCI mode : the engine played by a chess GUI or a tournament manager, see UciEngine
+        if (args.length > 0 && args[0].equals("--uci")) {
+            UciEngine.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         // new Application(new AppConsole()).init();
         new Application(new AppGui()).init();
     }
@@ -0,0 +1,50 @@
+package com.thibclnt.chessgame;
+
+/**
+ * Interface that must be implemented to encode the moves of a game in bytes, for example to store games in a
+ * {@link GameArchive}. Each codec has an id, stored with the encoded moves, so that the moves can be decoded by the
+ * right codec (see {@link #forId(int)}).
+ * <p>
+ *     Implementations must be thread safe : a codec may encode or decode several games at the same time.
+ * </p>
+ * @see RawMoveCodec
+ * @see LegalIndexMoveCodec
+ */
+public interface MoveCodec {
+    /**
+     * @return The id of the codec, between 0 and 255
+     */
+    int getId();
+
+    /**
+     * Encode the moves of a game.
+     * @param start {@link Position} the game starts from. It must not be modified.
+     * @param moves Legal moves of the game, encoded as with {@link Position#move(int, int, int, int)}
+     * @return The encoded moves
+     */
+    byte[] encode(Position start, int[] moves);
+
+    /**
+     * Decode the moves of a game.
+     * @param start {@link Position} the game starts from. It must not be modified.
+     * @param data Encoded moves, as returned by {@link #encode(Position, int[])}
+     * @param plies Number of moves of the game
+     * @return The moves, encoded as with {@link Position#move(int, int, int, int)}
+     */
+    int[] decode(Position start, byte[] data, int plies);
+
+    /**
+     * Find the codec of an id.
+     * @param id Id of the codec
+     * @return The codec
+     * @throws IllegalArgumentException If no codec has this id
+     */
+    static MoveCodec forId(int id) {
+        return switch (id) {
+            case RawMoveCodec.ID -> RawMoveCodec.INSTANCE;
+            case LegalIndexMoveCodec.ID -> LegalIndexMoveCodec.FIXED;
+            case LegalIndexMoveCodec.ENTROPY_ID -> LegalIndexMoveCodec.ENTROPY;
+            default -> throw new IllegalArgumentException("Unknown move codec : " + id);
+        };
+    }
+}
@@ -0,0 +1,320 @@
+package com.thibclnt.chessgame;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Validation of the moves submitted by the front-ends, without any game : a request gives a position and a move, and
+ * the answer only depends on them.
+ * <p>
+ *     Building a {@link ChessGame} and its pieces for each request would be far too slow, so the positions are parsed
+ *     to a {@link Position}, and kept with their legal moves in a bounded LRU cache, keyed by their Zobrist key
+ *     ({@link Position#getKey()}). The position reached by a legal move is cached too, as its legal moves are needed to
+ *     know if the game ends : a front-end validating the moves of a game one after the other may then give the key of
+ *     the position returned by the previous validation, instead of its FEN.
+ * </p> <p>
+ *     The move counters aren't part of the key, so a position given by its FEN keeps its own counters, only its legal
+ *     moves being read from the cache : the fifty-move rule is decided from the counters of the request. The positions
+ *     don't have any history, so a draw by repetition isn't detected. A position given by its key has the move counters
+ *     of the first request which cached it.
+ * </p> <p>
+ *     Usage : {@code MoveValidationService [requests] [cache size]}, which validates random moves of random games, as
+ *     front-ends would, and prints the hit ratio of the cache and the latencies.
+ * </p>
+ */
+public class MoveValidationService {
+
+    /** Default maximum number of positions in the cache */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * State of the game after a legal move.
+     */
+    public enum Status {
+        /** The game goes on */
+        ONGOING,
+        /** The player to move is in check */
+        CHECK,
+        /** The player to move is checkmated */
+        CHECKMATE,
+        /** The player to move can't move, without being in check */
+        STALEMATE,
+        /** The game is drawn by the fifty-move rule */
+        DRAW
+    }
+
+    /**
+     * Struct-like class to store the answer to a validation.
+     */
+    public static class Validation {
+        /** true if the move is legal */
+        public final boolean legal;
+        /** Legal move, encoded as with {@link Position#move(int, int, int, int)}, or {@link Position#NO_MOVE} */
+        public final int move;
+        /** Key of the position after the move if it is legal, of the position given otherwise */
+        public final long key;
+        /** State of the game after the move, or null if it is illegal */
+        public final Status status;
+        /** Position after the move if it is legal, given otherwise. It must not be modified */
+        private final Position position;
+
+        private Validation(boolean legal, int move, long key, Status status, Position position) {
+            this.legal = legal;
+            this.move = move;
+            this.key = key;
+            this.status = status;
+            this.position = position;
+        }
+
+        /** @return The FEN of the position after the move if it is legal, of the position given otherwise */
+        public String toFen() {
+            return this.position.toFen();
+        }
+
+        @Override
+        public String toString() {
+            return this.legal ? "LEGAL " + Long.toHexString(this.key) + " " + this.status
+                    : "ILLEGAL " + Long.toHexString(this.key);
+        }
+    }
+
+    /**
+     * A cached position, and its legal moves. Neither is modified once cached.
+     */
+    private static class Entry {
+        final Position position;
+        final int[] legalMoves;
+
+        Entry(Position position) {
+            long start = System.nanoTime();
+            this.position = position;
+            this.legalMoves = position.legalMoves();
+            EngineMetrics.get().legalMovesGenerated(System.nanoTime() - start);
+        }
+    }
+
+    private final Map<Long, Entry> cache;
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LatencyRecorder latencies = new LatencyRecorder();
+
+    /**
+     * Create a service with a cache of {@link #DEFAULT_CAPACITY} positions.
+     */
+    public MoveValidationService() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a service.
+     *
+     * @param capacity Maximum number of positions in the cache
+     */
+    public MoveValidationService(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The capacity of the cache must be positive");
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return this.size() > MoveValidationService.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Validate a move of a position given by its FEN.
+     *
+     * @param fen FEN of the position
+     * @param move Move in coordinate notation (see {@link Position#moveToString(int)}), for example "e2e4" or "e7e8q"
+     * @return The validation of the move
+     * @throws IllegalArgumentException If the FEN is invalid
+     */
+    public Validation validate(String fen, String move) {
+        long start = System.nanoTime();
+        Position position = Position.fromFen(fen);
+        Entry entry = this.get(position.getKey());
+        if (entry == null) {
+            entry = new Entry(position);
+            this.put(position.getKey(), entry);
+        }
+        return this.validate(position, entry.legalMoves, move, start);
+    }
+
+    /**
+     * Validate a move of a position given by its key, as returned by a previous validation.
+     *
+     * @param key Key of the position ({@link Validation#key})
+     * @param move Move in coordinate notation (see {@link Position#moveToString(int)}), for example "e2e4" or "e7e8q"
+     * @return The validation of the move
+     * @throws IllegalArgumentException If the position isn't in the cache (anymore) : it must be given by its FEN
+     */
+    public Validation validate(long key, String move) {
+        long start = System.nanoTime();
+        Entry entry = this.get(key);
+        if (entry == null)
+            throw new IllegalArgumentException("Unknown position : " + Long.toHexString(key));
+        return this.validate(entry.position, entry.legalMoves, move, start);
+    }
+
+    /**
+     * Validate a move of a position, whose legal moves were read from the cache. The position after the move keeps the
+     * counters of the position given, whatever the counters of the cached one.
+     */
+    private Validation validate(Position position, int[] legalMoves, String move, long start) {
+        int legal = find(legalMoves, move);
+        Validation validation;
+        if (legal == Position.NO_MOVE) {
+            validation = new Validation(false, Position.NO_MOVE, position.getKey(), null, position);
+        } else {
+            Position next = new Position(position);
+            next.make(legal);
+            Entry nextEntry = this.get(next.getKey());
+            if (nextEntry == null) {
+                nextEntry = new Entry(next);
+                this.put(next.getKey(), nextEntry);
+            }
+            validation = new Validation(true, legal, next.getKey(), status(next, nextEntry.legalMoves), next);
+        }
+        this.latencies.record(System.nanoTime() - start);
+        return validation;
+    }
+
+    /**
+     * Find a legal move from its coordinate notation, without writing the legal moves.
+     *
+     * @return The encoded move, or {@link Position#NO_MOVE} if it isn't legal or can't be parsed
+     */
+    private static int find(int[] legalMoves, String move) {
+        if (move.length() != 4 && move.length() != 5)
+            return Position.NO_MOVE;
+        int from, to, promotion = Position.EMPTY;
+        try {
+            from = Position.parseSquare(move.substring(0, 2));
+            to = Position.parseSquare(move.substring(2, 4));
+        } catch (IllegalArgumentException e) {
+            return Position.NO_MOVE;
+        }
+        if (move.length() == 5) {
+            promotion = "pnbrqk".indexOf(Character.toLowerCase(move.charAt(4)));
+            if (promotion < Position.KNIGHT || promotion > Position.QUEEN)
+                return Position.NO_MOVE;
+        }
+
+        for (int legal : legalMoves) {
+            if (Position.from(legal) == from && Position.to(legal) == to && Position.promotion(legal) == promotion)
+                return legal;
+        }
+        return Position.NO_MOVE;
+    }
+
+    private static Status status(Position position, int[] legalMoves) {
+        if (legalMoves.length == 0)
+            return position.isInCheck() ? Status.CHECKMATE : Status.STALEMATE;
+        if (position.isDrawByRule())
+            return Status.DRAW;
+        return position.isInCheck() ? Status.CHECK : Status.ONGOING;
+    }
+
+    private Entry get(long key) {
+        Entry entry;
+        synchronized (this.cache) {
+            entry = this.cache.get(key);
+        }
+        if (entry == null)
+            this.misses.increment();
+        else
+            this.hits.increment();
+        return entry;
+    }
+
+    private void put(long key, Entry entry) {
+        synchronized (this.cache) {
+            this.cache.put(key, entry);
+        }
+    }
+
+    /** @return The number of positions found in the cache */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /** @return The number of positions not found in the cache */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /** @return The part of the positions found in the cache, between 0 and 1 */
+    public double getHitRatio() {
+        long hits = this.hits.sum(), total = hits + this.misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /** @return The number of positions in the cache */
+    public int size() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+    /** @return The latencies of the validations */
+    public LatencyRecorder getLatencies() {
+        return this.latencies;
+    }
+
+    /**
+     * Forget the statistics, but not the positions of the cache.
+     */
+    public void resetStats() {
+        this.hits.reset();
+        this.misses.reset();
+        this.latencies.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d positions, hits=%.1f%% (%d / %d), validations=%d p50=%dus p99=%dus max=%dus",
+                this.size(), 100 * this.getHitRatio(), this.getHits(), this.getHits() + this.getMisses(),
+                this.latencies.getCount(), this.latencies.getPercentileMicros(50),
+                this.latencies.getPercentileMicros(99), this.latencies.getPercentileMicros(100));
+    }
+
+    /**
+     * Validate the moves of random games : most moves are given by the key of the previous position, and some by
+     * their FEN, with an illegal move from time to time.
+     *
+     * @param args Number of requests, and size of the cache
+     */
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        MoveValidationService service = new MoveValidationService(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CAPACITY);
+        Random random = new Random(1);
+
+        Position position = Position.fromFen(Position.START_FEN);
+        long key = position.getKey();
+        for (int i = 0 ; i < requests ; i++) {
+            int[] legalMoves = position.legalMoves();
+            if (legalMoves.length == 0 || position.isDrawByRule() || position.getFullmoveNumber() > 100) {
+                position = Position.fromFen(Position.START_FEN);
+                key = position.getKey();
+                continue;
+            }
+            String move = random.nextInt(20) == 0 ? "a1a1" : Position.moveToString(legalMoves[random.nextInt(legalMoves.length)]);
+            Validation validation;
+            try {
+                validation = random.nextInt(10) == 0 ? service.validate(position.toFen(), move) : service.validate(key, move);
+            } catch (IllegalArgumentException e) {
+                // The position was evicted from the cache
+                validation = service.validate(position.toFen(), move);
+            }
+            if (validation.legal) {
+                position.make(validation.move);
+                key = validation.key;
+            }
+        }
+        System.out.println(service);
+    }
+}
@@ -0,0 +1,169 @@
+package com.thibclnt.chessgame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Opening book : a file of the moves played in known positions, so that the first moves of a game are played instantly
+ * instead of being searched.
+ * <p>
+ *     The file is a header followed by records of {@link #RECORD_SIZE} bytes (position hash, move, weight), sorted by
+ *     hash. It is mapped in memory with {@link FileChannel#map} and binary searched, so a probe only reads a few pages
+ *     of the file, and the book takes no room in the heap whatever its size. Books are created by
+ *     {@link OpeningBookBuilder}.
+ * </p> <p>
+ *     File format (big endian) :
+ * </p>
+ * <ul>
+ *     <li> Header : magic number {@link #MAGIC} (int), version {@link #VERSION} (int), number of records (long) </li>
+ *     <li> Each record : Zobrist hash of the position ({@link Position#getKey()}, long), move encoded as with
+ *     {@link Position#move(int, int, int, int)} (int), weight (int) </li>
+ * </ul>
+ * <p>
+ *     A book is read only, and may be shared between threads.
+ * </p>
+ * @see OpeningBookBuilder
+ */
+public class OpeningBook {
+
+    /** Magic number at the beginning of a book file ("JBBK") */
+    public static final int MAGIC = 0x4A42424B;
+    /** Version of the file format */
+    public static final int VERSION = 1;
+    /** Size of the header, in bytes */
+    public static final int HEADER_SIZE = 16;
+    /** Size of a record, in bytes */
+    public static final int RECORD_SIZE = 16;
+
+    /**
+     * Struct-like class to store a move of the book.
+     */
+    public static class Entry {
+        /** Move, encoded as with {@link Position#move(int, int, int, int)} */
+        public final int move;
+        /** Weight of the move : the higher it is, the more often the move is chosen */
+        public final int weight;
+
+        public Entry(int move, int weight) {
+            this.move = move;
+            this.weight = weight;
+        }
+
+        @Override
+        public String toString() {
+            return Position.moveToString(this.move) + " (" + this.weight + ")";
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int size;
+
+    /**
+     * Open a book file.
+     *
+     * @param path Path of the book file
+     * @throws IOException If the file can't be read or is not a book
+     */
+    public OpeningBook(Path path) throws IOException {
+        // The mapping stays valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Opening book too large : " + path);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            this.buffer = mapped;
+        }
+
+        if (this.buffer.capacity() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC)
+            throw new IOException("Not an opening book : " + path);
+        if (this.buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported opening book version " + this.buffer.getInt(4) + " : " + path);
+
+        long count = this.buffer.getLong(8);
+        if (count < 0 || HEADER_SIZE + count * RECORD_SIZE > this.buffer.capacity())
+            throw new IOException("Truncated opening book : " + path);
+        this.size = (int) count;
+    }
+
+    /**
+     * Find the moves of the book for a position.
+     *
+     * @param key Hash of the position ({@link Position#getKey()})
+     * @return The moves of the book, empty if the position is not in the book
+     */
+    public List<Entry> probe(long key) {
+        List<Entry> entries = new ArrayList<>();
+        for (int index = this.lowerBound(key) ; index < this.size && this.keyAt(index) == key ; index++) {
+            int offset = HEADER_SIZE + index * RECORD_SIZE;
+            entries.add(new Entry(this.buffer.getInt(offset + 8), this.buffer.getInt(offset + 12)));
+        }
+        return entries;
+    }
+
+    /**
+     * Choose a move of the book for a position, randomly and in proportion to the weights of the moves. Moves which are
+     * not legal in the position (which may happen in case of hash collision) are ignored.
+     *
+     * @param position {@link Position} to play
+     * @param random Random generator used to choose the move
+     * @return The chosen move, or {@link Position#NO_MOVE} if the position is not in the book
+     */
+    public int pickMove(Position position, Random random) {
+        List<Entry> entries = this.probe(position.getKey());
+        if (entries.isEmpty())
+            return Position.NO_MOVE;
+
+        int[] legalMoves = position.legalMoves();
+        long total = 0;
+        List<Entry> candidates = new ArrayList<>();
+        for (Entry entry : entries) {
+            for (int legal : legalMoves) {
+                if (legal == entry.move && entry.weight > 0) {
+                    candidates.add(entry);
+                    total += entry.weight;
+                    break;
+                }
+            }
+        }
+        if (total == 0)
+            return Position.NO_MOVE;
+
+        long target = (long) (random.nextDouble() * total);
+        for (Entry entry : candidates) {
+            target -= entry.weight;
+            if (target < 0)
+                return entry.move;
+        }
+        return candidates.get(candidates.size() - 1).move;
+    }
+
+    /**
+     * @return The index of the first record whose hash is greater or equal to key
+     */
+    private int lowerBound(long key) {
+        int low = 0, high = this.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.keyAt(middle) < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private long keyAt(int index) {
+        return this.buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    /** @return The number of records (position and move) of the book */
+    public int getSize() {
+        return this.size;
+    }
+}
@@ -0,0 +1,163 @@
+package com.thibclnt.chessgame;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline tool creating an {@link OpeningBook} from a collection of games in PGN format.
+ * <p>
+ *     The games are read and checked by a {@link PgnIngest} pipeline. The first moves of each game are replayed, and each
+ *     (position, move) pair met is counted. The weight of a move is twice the number of games it won plus the number of
+ *     games it drew (for the side which played it), so that the book favours the moves which scored well. Moves played
+ *     in less than a minimum number of games are left out.
+ * </p> <p>
+ *     Usage : {@code OpeningBookBuilder [-plies n] [-min n] book.bin games1.pgn [games2.pgn ...]}
+ * </p>
+ * @see OpeningBook
+ */
+public class OpeningBookBuilder implements GameSink {
+
+    /** Default number of plies of each game put in the book */
+    public static final int DEFAULT_MAX_PLIES = 20;
+    /** Default minimum number of games a move must have been played in */
+    public static final int DEFAULT_MIN_GAMES = 2;
+
+    /**
+     * Struct-like class to count the games of a move.
+     */
+    private static class MoveStats {
+        int games;
+        int weight;
+    }
+
+    private final int maxPlies;
+    private final int minGames;
+    /** Moves of each position, by position hash and move */
+    private final Map<Long, Map<Integer, MoveStats>> positions = new HashMap<>();
+    private int games = 0;
+    private long skippedGames = 0;
+
+    /**
+     * Create a builder.
+     *
+     * @param maxPlies Number of plies of each game put in the book
+     * @param minGames Minimum number of games a move must have been played in
+     */
+    public OpeningBookBuilder(int maxPlies, int minGames) {
+        this.maxPlies = maxPlies;
+        this.minGames = minGames;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int maxPlies = DEFAULT_MAX_PLIES;
+        int minGames = DEFAULT_MIN_GAMES;
+        List<String> files = new ArrayList<>();
+        for (int i = 0 ; i < args.length ; i++) {
+            switch (args[i]) {
+                case "-plies" -> maxPlies = Integer.parseInt(args[++i]);
+                case "-min" -> minGames = Integer.parseInt(args[++i]);
+                default -> files.add(args[i]);
+            }
+        }
+        if (files.size() < 2) {
+            System.err.println("Usage : OpeningBookBuilder [-plies n] [-min n] book.bin games1.pgn [games2.pgn ...]");
+            System.exit(1);
+        }
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(maxPlies, minGames);
+        for (String file : files.subList(1, files.size()))
+            builder.addPgn(Path.of(file));
+
+        int records = builder.write(Path.of(files.get(0)));
+        System.out.println(builder.games + " games added (" + builder.skippedGames + " skipped), "
+                + builder.positions.size() + " positions, " + records + " moves written to " + files.get(0));
+    }
+
+    /**
+     * Read all the games of a PGN file, through a {@link PgnIngest} pipeline. Games with an illegal move are skipped.
+     *
+     * @param path Path of the PGN file
+     * @throws IOException If the file can't be read
+     */
+    public void addPgn(Path path) throws IOException {
+        try (PgnReader reader = PgnReader.open(path)) {
+            PgnIngest.Stats stats = new PgnIngest().run(reader, this);
+            this.skippedGames += stats.invalid;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + path, e);
+        }
+    }
+
+    /**
+     * Replay the first moves of a game and count them.
+     *
+     * @param game {@link PgnGame} to add, with its moves resolved
+     */
+    @Override
+    public void accept(PgnGame game) {
+        this.games++;
+        Position position = game.getStartPosition();
+        String result = game.getResult();
+        int[] moves = game.getMoves();
+
+        for (int ply = 0 ; ply < Math.min(moves.length, this.maxPlies) ; ply++) {
+            int move = moves[ply];
+            MoveStats stats = this.positions.computeIfAbsent(position.getKey(), key -> new HashMap<>())
+                    .computeIfAbsent(move, key -> new MoveStats());
+            stats.games++;
+            if (result.equals("1/2-1/2"))
+                stats.weight += 1;
+            else if (result.equals(position.getSideToMove() == Position.WHITE ? "1-0" : "0-1"))
+                stats.weight += 2;
+
+            position.make(move);
+        }
+    }
+
+    /**
+     * Write the book, sorted by position hash.
+     *
+     * @param path Path of the book file
+     * @return The number of records written
+     * @throws IOException If the file can't be written
+     */
+    public int write(Path path) throws IOException {
+        List<long[]> records = new ArrayList<>();
+        for (Map.Entry<Long, Map<Integer, MoveStats>> position : this.positions.entrySet()) {
+            for (Map.Entry<Integer, MoveStats> move : position.getValue().entrySet()) {
+                MoveStats stats = move.getValue();
+                if (stats.games >= this.minGames && stats.weight > 0)
+                    records.add(new long[] {position.getKey(), move.getKey(), stats.weight});
+            }
+        }
+        // Sorted by hash, then by decreasing weight
+        records.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[2], a[2]));
+
+        try (OutputStream file = Files.newOutputStream(path);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file))) {
+            output.writeInt(OpeningBook.MAGIC);
+            output.writeInt(OpeningBook.VERSION);
+            output.writeLong(records.size());
+            for (long[] record : records) {
+                output.writeLong(record[0]);
+                output.writeInt((int) record[1]);
+                output.writeInt((int) record[2]);
+            }
+        }
+        return records.size();
+    }
+
+    /** @return The number of games read */
+    public int getGames() {
+        return this.games;
+    }
+}
@@ -68,6 +68,15 @@ public class Pawn extends ChessPiece{
         return this.hasAlreadyMoved;
     }
 
+    /**
+     * Set if the piece has already moved, when a move is undone or redone by {@link ChessGame#undo()} and
+     * {@link ChessGame#redo()}.
+     * @param hasAlreadyMoved New value of {@link Pawn#hasAlreadyMoved}
+     */
+    void setAlreadyMoved(boolean hasAlreadyMoved) {
+        this.hasAlreadyMoved = hasAlreadyMoved;
+    }
+
     /**
      * Kill en passant while moving from oldPos to newPos. Please check before if this move can be done with {@link Pawn#checkForEnPassantMove()}.
      * If the move can not be done, a Runtime Exception will be thrown.
@@ -163,6 +172,9 @@ public class Pawn extends ChessPiece{
         ChessPiece pieceR = this.board.getPieceAt(new Pos(this.pos.getX() + 1, this.pos.getY()));
         int direction = (this.player.getColor() == Player.COLOR.WHITE) ? 1 : -1;
 
+        // A game loaded from a position has no last move, unless a pawn just moved of two squares
+        if (board.getGame().getLastMove() == null)
+            return enPassantLegalMoves;
         ChessPiece lastMovePiece = board.getGame().getLastMove().piece;
         boolean isLastMoveTwoSquares =
                 abs(board.getGame().getLastMove().to.getY() - board.getGame().getLastMove().from.getY()) == 2;
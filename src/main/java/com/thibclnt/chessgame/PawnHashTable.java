@@ -0,0 +1,240 @@
+package com.thibclnt.chessgame;
+
+/**
+ * Cache of the pawn structure evaluation, indexed by the pawn-only Zobrist hash of a {@link Position}
+ * ({@link Position#getPawnKey()}).
+ * <p>
+ *     Pawn structure terms (doubled, isolated and passed pawns, pawn shields) are expensive to compute but pawns move
+ *     rarely : during a search, most of the evaluated positions share their pawn structure with thousands of others. The
+ *     table stores, for each pawn structure, its score, the bitboards of the passed pawns of each side and the shield of
+ *     each side on each wing, so that the evaluation only has to compute them once.
+ * </p> <p>
+ *     The table has a fixed size (a power of two) and always replaces the old entry on a collision. It is not thread
+ *     safe : each search thread must use its own table (see {@link Evaluation}).
+ * </p>
+ * @see Evaluation
+ */
+public class PawnHashTable {
+
+    /**
+     * Struct-like class to store the pawn structure evaluation of a position. Entries are allocated once when the table
+     * is created, then reused.
+     */
+    public static class Entry {
+        /** Pawn hash of the structure stored in this entry */
+        long key;
+        /** Score of the pawn structure, from white's point of view (doubled, isolated and passed pawns) */
+        int score;
+        /** Bitboards of the passed pawns of each side */
+        final long[] passed = new long[2];
+        /** Shield score of each side, for a king on the queen side (files A-C), the center (D-E) or the king side (F-H) */
+        final int[][] shield = new int[2][3];
+
+        /** @return The score of the pawn structure, from white's point of view */
+        public int getScore() {
+            return score;
+        }
+
+        /** @return The bitboard of the passed pawns of a side */
+        public long getPassed(int side) {
+            return passed[side];
+        }
+
+        /**
+         * Return the shield score of a side, for its king on a given square.
+         *
+         * @param side {@link Position#WHITE} or {@link Position#BLACK}
+         * @param kingSquare Square of the king of side
+         * @return Bonus (or malus) given by the pawns in front of the king
+         */
+        public int getShield(int side, int kingSquare) {
+            int file = Position.file(kingSquare);
+            return shield[side][file <= 2 ? 0 : (file >= 5 ? 2 : 1)];
+        }
+    }
+
+    /** Malus for each pawn on the same file than another pawn of the same side */
+    static final int DOUBLED = -12;
+    /** Malus for a pawn without friendly pawns on the adjacent files */
+    static final int ISOLATED = -14;
+    /** Bonus of a passed pawn, depending on its rank (seen from its side) */
+    static final int[] PASSED = {0, 5, 10, 18, 32, 55, 90, 0};
+    /** Bonus of a shield pawn just in front of the king, one square further, or malus if the file has no shield pawn */
+    static final int SHIELD_NEAR = 12, SHIELD_FAR = 6, SHIELD_MISSING = -10;
+
+    /** Bitboards of the 8 files */
+    static final long[] FILES = new long[8];
+    /** Bitboards of the files adjacent to each file */
+    static final long[] ADJACENT_FILES = new long[8];
+    /** For each side and square, the squares in front of it on its file and on the adjacent files */
+    static final long[][] PASSED_SPAN = new long[2][64];
+
+    static {
+        for (int file = 0 ; file < 8 ; file++) {
+            FILES[file] = 0x0101010101010101L << file;
+        }
+        for (int file = 0 ; file < 8 ; file++) {
+            ADJACENT_FILES[file] = (file > 0 ? FILES[file - 1] : 0) | (file < 7 ? FILES[file + 1] : 0);
+        }
+        for (int square = 0 ; square < 64 ; square++) {
+            long span = FILES[Position.file(square)] | ADJACENT_FILES[Position.file(square)];
+            int rank = Position.rank(square);
+            // Ranks strictly in front of the square, for white (upwards) then for black (downwards)
+            PASSED_SPAN[Position.WHITE][square] = rank == 7 ? 0 : span & (-1L << (8 * (rank + 1)));
+            PASSED_SPAN[Position.BLACK][square] = rank == 0 ? 0 : span & (-1L >>> (8 * (8 - rank)));
+        }
+    }
+
+    private final Entry[] entries;
+    private final int mask;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Create a pawn hash table. As pawn structures change rarely, a few thousands entries are enough to get hit rates
+     * above 95% in middlegames.
+     *
+     * @param size Number of entries, rounded up to a power of two
+     */
+    public PawnHashTable(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0 ; i < capacity ; i++) {
+            this.entries[i] = new Entry();
+            // No structure has this key in practice, so new entries are never hit by mistake
+            this.entries[i].key = ~0L;
+        }
+    }
+
+    /**
+     * Return the pawn structure evaluation of a position. It is taken from the table if the structure was already
+     * evaluated, otherwise it is computed and stored in the table.
+     * NOTE : The returned entry is owned by the table and is overwritten by later probes. Read it before probing again.
+     *
+     * @param position {@link Position} to evaluate
+     * @return The {@link Entry} of the pawn structure of the position
+     */
+    public Entry probe(Position position) {
+        long key = position.getPawnKey();
+        Entry entry = this.entries[(int) key & this.mask];
+
+        if (entry.key == key) {
+            this.hits++;
+            return entry;
+        }
+
+        this.misses++;
+        entry.key = key;
+        evaluatePawns(position.getPawns(Position.WHITE), position.getPawns(Position.BLACK), entry);
+        return entry;
+    }
+
+    /**
+     * Compute the pawn structure terms of a position and store them in an entry.
+     *
+     * @param whitePawns Bitboard of the white pawns
+     * @param blackPawns Bitboard of the black pawns
+     * @param entry {@link Entry} to fill
+     */
+    private static void evaluatePawns(long whitePawns, long blackPawns, Entry entry) {
+        long[] pawns = {whitePawns, blackPawns};
+        int score = 0;
+
+        for (int side = Position.WHITE ; side <= Position.BLACK ; side++) {
+            long own = pawns[side];
+            long enemy = pawns[1 - side];
+            int sideScore = 0;
+            entry.passed[side] = 0;
+
+            // Doubled pawns : every pawn after the first one on a file
+            for (int file = 0 ; file < 8 ; file++) {
+                int onFile = Long.bitCount(own & FILES[file]);
+                if (onFile > 1)
+                    sideScore += DOUBLED * (onFile - 1);
+            }
+
+            for (long bits = own ; bits != 0 ; bits &= bits - 1) {
+                int square = Long.numberOfTrailingZeros(bits);
+                int file = Position.file(square);
+
+                if ((own & ADJACENT_FILES[file]) == 0)
+                    sideScore += ISOLATED;
+
+                // Passed pawn : no enemy pawn in front of it, on its file or on the adjacent ones
+                if ((enemy & PASSED_SPAN[side][square]) == 0) {
+                    entry.passed[side] |= 1L << square;
+                    sideScore += PASSED[relativeRank(side, square)];
+                }
+            }
+
+            // Shield for a king on each wing : the center (1) has no shield
+            entry.shield[side][0] = shield(side, own, 0);
+            entry.shield[side][1] = 0;
+            entry.shield[side][2] = shield(side, own, 5);
+
+            score += (side == Position.WHITE) ? sideScore : -sideScore;
+        }
+        entry.score = score;
+    }
+
+    /**
+     * Compute the shield of a side on three files, i.e. the pawns which are on the second and third ranks (seen from the
+     * side) of these files.
+     *
+     * @param side {@link Position#WHITE} or {@link Position#BLACK}
+     * @param own Bitboard of the pawns of side
+     * @param firstFile First of the three files of the shield
+     * @return The shield score
+     */
+    private static int shield(int side, long own, int firstFile) {
+        int near = (side == Position.WHITE) ? 1 : 6;
+        int far = (side == Position.WHITE) ? 2 : 5;
+        int score = 0;
+
+        for (int file = firstFile ; file < firstFile + 3 ; file++) {
+            if ((own & (1L << (near * 8 + file))) != 0)
+                score += SHIELD_NEAR;
+            else if ((own & (1L << (far * 8 + file))) != 0)
+                score += SHIELD_FAR;
+            else
+                score += SHIELD_MISSING;
+        }
+        return score;
+    }
+
+    /** @return The rank of a square seen from a side, between 0 (its first rank) and 7 (its last rank) */
+    static int relativeRank(int side, int square) {
+        return side == Position.WHITE ? Position.rank(square) : 7 - Position.rank(square);
+    }
+
+    /** Empty the table and reset its statistics. */
+    public void clear() {
+        for (Entry entry : this.entries) {
+            entry.key = ~0L;
+        }
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /** @return The number of probes which found their pawn structure in the table */
+    public long getHits() {
+        return hits;
+    }
+
+    /** @return The number of probes which had to compute their pawn structure */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** @return The ratio of probes which found their pawn structure in the table, between 0 and 1 */
+    public double getHitRate() {
+        long probes = this.hits + this.misses;
+        return probes == 0 ? 0 : (double) this.hits / probes;
+    }
+
+    /** @return The number of entries of the table */
+    public int getSize() {
+        return this.entries.length;
+    }
+}
@@ -0,0 +1,164 @@
+package com.thibclnt.chessgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A game read from or written to a PGN (Portable Game Notation) file : its tags (Event, White, Black, Result...) and its
+ * moves.
+ * <p>
+ *     The moves are first read as text, in standard algebraic notation (see {@link Position#toSan(int)}). They are then
+ *     resolved against the rules with {@link #resolve()}, which checks them and encodes them as with
+ *     {@link Position#move(int, int, int, int)}.
+ * </p>
+ * @see PgnReader
+ * @see PgnWriter
+ */
+public class PgnGame {
+
+    /** Tags of the "seven tag roster", which every PGN game should have, in the order they are written */
+    public static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private final List<String> sanMoves = new ArrayList<>();
+    private int[] moves = null;
+    /** Number of the game in its source, starting at 0 */
+    private long number = 0;
+
+    /**
+     * Create an empty game, without tags or moves.
+     */
+    public PgnGame() {
+    }
+
+    /**
+     * Create a game from encoded moves, played from a position.
+     *
+     * @param start {@link Position} the game starts from. It is not modified.
+     * @param moves Moves of the game, encoded as with {@link Position#move(int, int, int, int)}
+     * @param tags Tags of the game
+     * @throws IllegalArgumentException If a move is not legal
+     */
+    public PgnGame(Position start, int[] moves, Map<String, String> tags) {
+        this.tags.putAll(tags);
+        if (!start.toFen().equals(Position.START_FEN)) {
+            this.tags.put("SetUp", "1");
+            this.tags.put("FEN", start.toFen());
+        }
+
+        Position position = new Position(start);
+        for (int move : moves) {
+            String san = position.toSan(move);
+            if (!position.make(move))
+                throw new IllegalArgumentException("Illegal move " + Position.moveToString(move));
+            this.sanMoves.add(san);
+        }
+        this.moves = Arrays.copyOf(moves, moves.length);
+    }
+
+    /**
+     * Check the moves of the game against the rules, and encode them. Resolving is done once : the next calls do
+     * nothing.
+     *
+     * @throws IllegalArgumentException If the starting position is invalid or a move is not legal
+     */
+    public void resolve() {
+        if (this.moves != null)
+            return;
+
+        Position position = this.getStartPosition();
+        int[] moves = new int[this.sanMoves.size()];
+        for (int i = 0 ; i < moves.length ; i++) {
+            String san = this.sanMoves.get(i);
+            int move = position.parseSan(san);
+            if (move == Position.NO_MOVE) {
+                throw new IllegalArgumentException("Illegal move " + position.getFullmoveNumber()
+                        + (position.getSideToMove() == Position.WHITE ? ". " : "... ") + san);
+            }
+            position.make(move);
+            moves[i] = move;
+        }
+        this.moves = moves;
+    }
+
+    /**
+     * @return The position the game starts from : the one of the FEN tag if there is one, else the initial position
+     * @throws IllegalArgumentException If the FEN tag is invalid
+     */
+    public Position getStartPosition() {
+        return Position.fromFen(this.tags.getOrDefault("FEN", Position.START_FEN));
+    }
+
+    /**
+     * @return The position at the end of the game
+     * @throws IllegalArgumentException If the game can't be resolved
+     */
+    public Position getEndPosition() {
+        this.resolve();
+        Position position = this.getStartPosition();
+        for (int move : this.moves)
+            position.make(move);
+        return position;
+    }
+
+    /** @return The value of a tag, or null if the game doesn't have it */
+    public String getTag(String name) {
+        return this.tags.get(name);
+    }
+
+    /** Set the value of a tag. */
+    public void setTag(String name, String value) {
+        this.tags.put(name, value);
+    }
+
+    /** @return The tags of the game, in the order they were read or set */
+    public Map<String, String> getTags() {
+        return this.tags;
+    }
+
+    /** @return The result of the game ("1-0", "0-1", "1/2-1/2" or "*" if unknown) */
+    public String getResult() {
+        return this.tags.getOrDefault("Result", "*");
+    }
+
+    /** @return The moves of the game, in standard algebraic notation as they were read */
+    public List<String> getSanMoves() {
+        return this.sanMoves;
+    }
+
+    /**
+     * @return The encoded moves of the game
+     * @throws IllegalArgumentException If the game can't be resolved
+     */
+    public int[] getMoves() {
+        this.resolve();
+        return this.moves;
+    }
+
+    /** @return true if the moves of the game are already resolved */
+    public boolean isResolved() {
+        return this.moves != null;
+    }
+
+    /** @return The number of the game in its source, starting at 0 */
+    public long getNumber() {
+        return this.number;
+    }
+
+    void setNumber(long number) {
+        this.number = number;
+    }
+
+    @Override
+    public String toString() {
+        return "PgnGame{" +
+                "white=" + this.tags.get("White") +
+                ", black=" + this.tags.get("Black") +
+                ", result=" + this.getResult() +
+                ", plies=" + this.sanMoves.size() +
+                '}';
+    }
+}
@@ -0,0 +1,241 @@
+package com.thibclnt.chessgame;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pipeline importing the games of a PGN stream into a {@link GameSink}, in three stages running at the same time :
+ * <ol>
+ *     <li> Read : one thread cuts the stream into the texts of the games ({@link PgnReader#readGameText()}) </li>
+ *     <li> Parse and validate : one worker per core parses each text ({@link PgnReader#parse(String)}) and resolves its
+ *     moves against the rules ({@link PgnGame#resolve()}), which is where most of the time is spent </li>
+ *     <li> Sink : the calling thread gives the valid games to the sink, one at a time </li>
+ * </ol>
+ * <p>
+ *     The stages are linked by bounded queues : when a stage is slower than the previous one, the previous one waits,
+ *     so the memory used doesn't depend on the size of the stream. As the workers run in parallel, the games reach the
+ *     sink in any order : {@link PgnGame#getNumber()} gives their order in the stream.
+ * </p> <p>
+ *     Usage : {@code PgnIngest games.pgn [output.pgn]}, which checks every game and writes the valid ones to output.
+ * </p>
+ * @see PgnReader
+ * @see GameSink
+ */
+public class PgnIngest {
+
+    /** Default capacity of the queues between the stages, in games */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    /** Maximum number of error messages kept */
+    public static final int MAX_ERRORS = 100;
+
+    /**
+     * Struct-like class to store the text of a game with its number in the stream.
+     */
+    private static class GameText {
+        final long number;
+        final String text;
+
+        GameText(long number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+    }
+
+    /** Marks the end of the stream in the queue of texts. Compared by identity. */
+    private static final GameText END_OF_TEXTS = new GameText(-1, "");
+    /** Marks the end of the games of a worker in the queue of games. Compared by identity. */
+    private static final PgnGame END_OF_GAMES = new PgnGame();
+
+    /**
+     * Struct-like class to store the statistics of an import.
+     */
+    public static class Stats {
+        /** Number of games read */
+        public long read;
+        /** Number of games given to the sink */
+        public long valid;
+        /** Number of games rejected, because of an illegal move or an invalid position */
+        public long invalid;
+        /** Time of the import, in milliseconds */
+        public long timeMillis;
+        /** First error messages, with the number of the game */
+        public List<String> errors = new ArrayList<>();
+
+        /** @return The number of games read per second */
+        public long getGamesPerSecond() {
+            return this.read * 1000 / Math.max(1, this.timeMillis);
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "read=" + read +
+                    ", valid=" + valid +
+                    ", invalid=" + invalid +
+                    ", time=" + timeMillis + "ms" +
+                    ", gamesPerSecond=" + getGamesPerSecond() +
+                    '}';
+        }
+    }
+
+    private final int workers;
+    private final int queueCapacity;
+
+    /**
+     * Create a pipeline with one worker per core and queues of {@link #DEFAULT_QUEUE_CAPACITY} games.
+     */
+    public PgnIngest() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Create a pipeline.
+     *
+     * @param workers Number of parse and validate workers
+     * @param queueCapacity Capacity of the queues between the stages, in games
+     */
+    public PgnIngest(int workers, int queueCapacity) {
+        if (workers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("The pipeline needs at least one worker and queues of one game");
+        }
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage : PgnIngest games.pgn [output.pgn]");
+            System.exit(1);
+        }
+
+        Stats stats;
+        try (PgnReader reader = PgnReader.open(Path.of(args[0]))) {
+            if (args.length > 1) {
+                try (PgnWriter writer = PgnWriter.create(Path.of(args[1]))) {
+                    stats = new PgnIngest().run(reader, writer);
+                }
+            } else {
+                stats = new PgnIngest().run(reader, game -> {});
+            }
+        }
+
+        System.out.println(stats);
+        for (String error : stats.errors)
+            System.out.println(error);
+    }
+
+    /**
+     * Import all the games of a reader. The method returns once every game is in the sink, or as soon as a stage fails.
+     *
+     * @param reader {@link PgnReader} to read the games from
+     * @param sink {@link GameSink} receiving the valid games, on the calling thread
+     * @return The statistics of the import
+     * @throws IOException If the reader or the sink fail
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    public Stats run(PgnReader reader, GameSink sink) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Stats stats = new Stats();
+        BlockingQueue<GameText> texts = new ArrayBlockingQueue<>(this.queueCapacity);
+        BlockingQueue<PgnGame> games = new ArrayBlockingQueue<>(this.queueCapacity);
+        AtomicReference<IOException> readError = new AtomicReference<>();
+        AtomicLong invalid = new AtomicLong();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        // Read stage
+        threads.add(new Thread(() -> {
+            try {
+                String text;
+                for (long number = 0 ; (text = reader.readGameText()) != null ; number++)
+                    texts.put(new GameText(number, text));
+            } catch (IOException e) {
+                readError.set(e);
+            } catch (InterruptedException e) {
+                return;
+            }
+            // Each worker stops on its own end mark
+            try {
+                for (int i = 0 ; i < this.workers ; i++)
+                    texts.put(END_OF_TEXTS);
+            } catch (InterruptedException ignored) {
+            }
+        }, "pgn-reader"));
+
+        // Parse and validate stage
+        for (int i = 0 ; i < this.workers ; i++) {
+            threads.add(new Thread(() -> {
+                boolean interrupted = false;
+                try {
+                    GameText text;
+                    while ((text = texts.take()) != END_OF_TEXTS) {
+                        PgnGame game = null;
+                        try {
+                            game = PgnReader.parse(text.text);
+                            game.setNumber(text.number);
+                            game.resolve();
+                        } catch (RuntimeException e) {
+                            // Any failure on a game only makes this game invalid
+                            invalid.incrementAndGet();
+                            if (errors.size() < MAX_ERRORS)
+                                errors.add("Game " + text.number + (game != null ? " " + game : "") + " : "
+                                        + (e instanceof IllegalArgumentException ? e.getMessage() : e.toString()));
+                            continue;
+                        }
+                        games.put(game);
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } finally {
+                    // The sink waits for the end mark of every worker : it is sent unless the sink stopped
+                    if (!interrupted) {
+                        try {
+                            games.put(END_OF_GAMES);
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                }
+            }, "pgn-worker-" + i));
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+
+        // Sink stage, on the calling thread
+        try {
+            int finishedWorkers = 0;
+            while (finishedWorkers < this.workers) {
+                PgnGame game = games.take();
+                if (game == END_OF_GAMES) {
+                    finishedWorkers++;
+                } else {
+                    sink.accept(game);
+                    stats.valid++;
+                }
+            }
+            sink.flush();
+        } finally {
+            // Stop the other stages if the sink failed
+            for (Thread thread : threads)
+                thread.interrupt();
+            for (Thread thread : threads)
+                thread.join();
+        }
+
+        if (readError.get() != null)
+            throw readError.get();
+
+        stats.invalid = invalid.get();
+        stats.read = stats.valid + stats.invalid;
+        stats.errors.addAll(errors);
+        stats.timeMillis = (System.nanoTime() - start) / 1_000_000;
+        return stats;
+    }
+}
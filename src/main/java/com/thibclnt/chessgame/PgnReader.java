@@ -0,0 +1,225 @@
+package com.thibclnt.chessgame;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streaming reader of PGN (Portable Game Notation) files. Games are read one at a time, so a file of any size is read
+ * in constant memory.
+ * <p>
+ *     Reading is split in two steps, which the {@link PgnIngest} pipeline runs on different threads :
+ *     {@link #readGameText()} only cuts the next game out of the stream, which is fast, and {@link #parse(String)} turns
+ *     its text into a {@link PgnGame}. {@link #next()} does both, and also resolves the moves against the rules.
+ * </p> <p>
+ *     Comments, variations, numeric annotations (NAGs) and move numbers are skipped : only the tags and the moves of the
+ *     main line are kept. A reader is not thread safe.
+ * </p>
+ * @see PgnWriter
+ * @see PgnGame
+ */
+public class PgnReader implements Closeable {
+
+    private final BufferedReader reader;
+    /** First line of the next game, already read while looking for the end of the previous one */
+    private String pendingLine = null;
+    private long gameNumber = 0;
+
+    /**
+     * Create a reader.
+     *
+     * @param reader Source of the PGN text
+     */
+    public PgnReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader, 1 << 16);
+    }
+
+    /**
+     * Open a PGN file, encoded in UTF-8 (or ASCII). Invalid characters are replaced instead of stopping the reading.
+     *
+     * @param path Path of the file
+     * @return The reader of the file
+     * @throws IOException If the file can't be opened
+     */
+    public static PgnReader open(Path path) throws IOException {
+        return new PgnReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the next game, and resolve its moves.
+     *
+     * @return The next game, or null at the end of the stream
+     * @throws IOException If the stream can't be read
+     * @throws IllegalArgumentException If the game has an illegal move
+     */
+    public PgnGame next() throws IOException {
+        long number = this.gameNumber;
+        String text = this.readGameText();
+        if (text == null)
+            return null;
+
+        PgnGame game = parse(text);
+        game.setNumber(number);
+        game.resolve();
+        return game;
+    }
+
+    /**
+     * Read the text of the next game, without parsing it. A game starts with its tags, and ends when the tags of the
+     * next game start. A line starting with "[" inside a comment spanning several lines doesn't start a game.
+     *
+     * @return The text of the next game, or null at the end of the stream
+     * @throws IOException If the stream can't be read
+     */
+    public String readGameText() throws IOException {
+        StringBuilder text = new StringBuilder();
+        boolean hasMoves = false, inComment = false;
+        String line = this.pendingLine != null ? this.pendingLine : this.reader.readLine();
+        this.pendingLine = null;
+
+        for ( ; line != null ; line = this.reader.readLine()) {
+            String trimmed = line.trim();
+            if (!inComment) {
+                if (trimmed.startsWith("[") && hasMoves) {
+                    this.pendingLine = line;
+                    break;
+                }
+                if (!trimmed.isEmpty() && !trimmed.startsWith("[") && !trimmed.startsWith("%")) {
+                    hasMoves = true;
+                    inComment = endsInComment(line, false);
+                }
+            } else {
+                inComment = endsInComment(line, true);
+            }
+            text.append(line).append('\n');
+        }
+
+        // Skip the blank lines at the end of the file
+        if (text.toString().isBlank())
+            return null;
+        this.gameNumber++;
+        return text.toString();
+    }
+
+    /**
+     * @param line Line of moves
+     * @param inComment Whether the line starts inside a {} comment
+     * @return Whether the line ends inside a {} comment. A "{" after ";" is in a comment ending with the line.
+     */
+    private static boolean endsInComment(String line, boolean inComment) {
+        for (int i = 0 ; i < line.length() ; i++) {
+            char c = line.charAt(i);
+            if (inComment)
+                inComment = c != '}';
+            else if (c == '{')
+                inComment = true;
+            else if (c == ';')
+                break;
+        }
+        return inComment;
+    }
+
+    /**
+     * Parse the text of a game. The moves are not resolved.
+     *
+     * @param text Text of a game, as returned by {@link #readGameText()}
+     * @return The game
+     */
+    public static PgnGame parse(String text) {
+        PgnGame game = new PgnGame();
+        int depth = 0;
+        int i = 0;
+        int length = text.length();
+
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '[' && depth == 0) {
+                // Tag : [Name "Value"]
+                int end = tagEnd(text, i);
+                parseTag(game, text.substring(i + 1, end));
+                i = end + 1;
+            } else if (c == '{') {
+                int end = text.indexOf('}', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == ';' || (c == '%' && (i == 0 || text.charAt(i - 1) == '\n'))) {
+                int end = text.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+                i++;
+            } else if (Character.isWhitespace(c) || c == '[' || c == ']' || c == '}') {
+                i++;
+            } else {
+                int start = i;
+                while (i < length && "{}()[];".indexOf(text.charAt(i)) < 0 && !Character.isWhitespace(text.charAt(i)))
+                    i++;
+                String token = text.substring(start, i);
+
+                // Remove the move number before the move ("12." or "12..."), which may be stuck to it
+                int dot = token.lastIndexOf('.');
+                if (dot >= 0)
+                    token = token.substring(dot + 1);
+                if (depth > 0 || token.isEmpty() || token.startsWith("$"))
+                    continue;
+
+                if (isResult(token)) {
+                    if (game.getTag("Result") == null)
+                        game.setTag("Result", token);
+                } else {
+                    game.getSanMoves().add(token);
+                }
+            }
+        }
+        return game;
+    }
+
+    /** @return The index of the "]" closing the tag starting at start, ignoring the ones in its value */
+    private static int tagEnd(String text, int start) {
+        boolean inValue = false;
+        for (int i = start + 1 ; i < text.length() ; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && inValue)
+                i++;
+            else if (c == '"')
+                inValue = !inValue;
+            else if ((c == ']' && !inValue) || c == '\n')
+                return i;
+        }
+        return text.length();
+    }
+
+    /** Parse the inside of a tag (Name "Value") and add it to a game. */
+    private static void parseTag(PgnGame game, String tag) {
+        tag = tag.trim();
+        int space = tag.indexOf(' ');
+        int quote = tag.indexOf('"');
+        if (space <= 0 || quote < space)
+            return;
+
+        StringBuilder value = new StringBuilder();
+        for (int i = quote + 1 ; i < tag.length() && tag.charAt(i) != '"' ; i++) {
+            if (tag.charAt(i) == '\\' && i + 1 < tag.length())
+                i++;
+            value.append(tag.charAt(i));
+        }
+        game.setTag(tag.substring(0, space), value.toString());
+    }
+
+    /** @return true if a token is a game result */
+    static boolean isResult(String token) {
+        return token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*");
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
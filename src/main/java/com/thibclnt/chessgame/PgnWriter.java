@@ -0,0 +1,137 @@
+package com.thibclnt.chessgame;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming writer of PGN (Portable Game Notation) files. Games are written one at a time, in the export format of the
+ * PGN standard : the seven tag roster first, then the other tags, then the moves with their numbers, in lines of at most
+ * {@link #LINE_LENGTH} characters.
+ * <p>
+ *     A writer is also a {@link GameSink}, so it can be the end of a {@link PgnIngest} pipeline. It is not thread safe.
+ * </p>
+ * @see PgnReader
+ */
+public class PgnWriter implements GameSink, Closeable {
+
+    /** Maximum length of a line of moves */
+    public static final int LINE_LENGTH = 80;
+
+    private final Writer writer;
+
+    /**
+     * Create a writer.
+     *
+     * @param writer Destination of the PGN text
+     */
+    public PgnWriter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 1 << 16);
+    }
+
+    /**
+     * Create (or replace) a PGN file, encoded in UTF-8.
+     *
+     * @param path Path of the file
+     * @return The writer of the file
+     * @throws IOException If the file can't be created
+     */
+    public static PgnWriter create(Path path) throws IOException {
+        return new PgnWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write a game. If its moves are resolved, they are written again from the rules (with the check marks and the
+     * disambiguation of the standard), else they are written as they were read.
+     *
+     * @param game {@link PgnGame} to write
+     * @throws IOException If the game can't be written
+     */
+    public void write(PgnGame game) throws IOException {
+        Map<String, String> tags = game.getTags();
+        for (String name : PgnGame.SEVEN_TAG_ROSTER)
+            this.writeTag(name, tags.getOrDefault(name, name.equals("Result") ? "*" : "?"));
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!List.of(PgnGame.SEVEN_TAG_ROSTER).contains(tag.getKey()))
+                this.writeTag(tag.getKey(), tag.getValue());
+        }
+        this.writer.write('\n');
+
+        Position position = game.getStartPosition();
+        boolean resolved = game.isResolved();
+        List<String> sanMoves = game.getSanMoves();
+        int[] moves = resolved ? game.getMoves() : null;
+        int count = resolved ? moves.length : sanMoves.size();
+
+        int moveNumber = position.getFullmoveNumber();
+        int side = position.getSideToMove();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0 ; i < count ; i++) {
+            StringBuilder token = new StringBuilder();
+            if (side == Position.WHITE)
+                token.append(moveNumber).append(". ");
+            else if (i == 0)
+                token.append(moveNumber).append("... ");
+
+            if (resolved) {
+                token.append(position.toSan(moves[i]));
+                position.make(moves[i]);
+            } else {
+                token.append(sanMoves.get(i));
+            }
+            this.append(line, token.toString());
+
+            if (side == Position.BLACK)
+                moveNumber++;
+            side = 1 - side;
+        }
+        this.append(line, game.getResult());
+        this.writer.write(line.toString());
+        this.writer.write("\n\n");
+    }
+
+    /**
+     * Add a token to the current line of moves, writing the line first if the token doesn't fit in it.
+     */
+    private void append(StringBuilder line, String token) throws IOException {
+        if (!line.isEmpty() && line.length() + 1 + token.length() > LINE_LENGTH) {
+            this.writer.write(line.toString());
+            this.writer.write('\n');
+            line.setLength(0);
+        }
+        if (!line.isEmpty())
+            line.append(' ');
+        line.append(token);
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        this.writer.write("[" + name + " \"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]\n");
+    }
+
+    @Override
+    public void accept(PgnGame game) throws IOException {
+        this.write(game);
+    }
+
+    /**
+     * Write the games still in the buffer.
+     *
+     * @throws IOException If they can't be written
+     */
+    @Override
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+}
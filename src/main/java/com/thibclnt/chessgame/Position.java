@@ -0,0 +1,1302 @@
+package com.thibclnt.chessgame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact representation of a chess position, used by the engine (evaluation, search...) instead of the {@link ChessBoard}
+ * and its {@link ChessPiece} objects, which are far too heavy to be copied or scanned millions of times.
+ * <p>
+ *     Squares are numbered from 0 (A1) to 63 (H8) : <i>square = (y - 1) * 8 + (x - 1)</i> with the coordinates of
+ *     {@link Pos}. Each square contains a piece code, which is the piece type (PAWN to KING) plus {@link #BLACK_PIECE} for
+ *     black pieces, or {@link #EMPTY}. Pawns are also stored as bitboards (one bit per square) for the pawn structure
+ *     evaluation.
+ * </p> <p>
+ *     A position also maintains two Zobrist hashes (see {@link Zobrist}) : the full hash of the position, and the hash of
+ *     the pawns only, which is the key of the {@link PawnHashTable}.
+ * </p> <p>
+ *     Moves are encoded as integers (see {@link #move(int, int, int, int)}) and are done and undone in place with
+ *     {@link #make(int)} and {@link #unmake()}. The information needed to undo a move is kept in primitive arrays, so
+ *     that playing moves never allocates memory. The rules are the same as the ones of {@link ChessBoard} and its pieces.
+ * </p>
+ * @see ChessBoard
+ * @see Evaluation
+ */
+public final class Position {
+
+    /** Code of an empty square */
+    public static final int EMPTY = 0;
+    /** Piece type codes. The code of a black piece is its type + {@link #BLACK_PIECE} */
+    public static final int PAWN = 1, KNIGHT = 2, BISHOP = 3, ROOK = 4, QUEEN = 5, KING = 6;
+    /** Added to the type of a piece to get the code of a black piece */
+    public static final int BLACK_PIECE = 8;
+
+    /** Side codes */
+    public static final int WHITE = 0, BLACK = 1;
+
+    /** Castling rights, as bits of {@link #castling} */
+    public static final int WHITE_SHORT = 1, WHITE_LONG = 2, BLACK_SHORT = 4, BLACK_LONG = 8;
+
+    /** Move flags (see {@link #move(int, int, int, int)}) */
+    public static final int NORMAL = 0, DOUBLE_PUSH = 1, EN_PASSANT = 2, CASTLE = 3;
+    /** Value of "no move". No real move can have this value, as its origin and destination would be the same. */
+    public static final int NO_MOVE = 0;
+    /** Maximum number of pseudo-legal moves in a chess position (the real maximum is 218) */
+    public static final int MAX_MOVES = 256;
+
+    /** FEN of the initial position */
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    /** Size of a snapshot of a position (see {@link #writeSnapshot(ByteBuffer)}), in bytes */
+    public static final int SNAPSHOT_SIZE = 39;
+
+    /** Square offsets of the knight moves, with their file offsets to detect board wrapping */
+    private static final int[][] KNIGHT_STEPS = {{17, 1}, {15, -1}, {10, 2}, {6, -2}, {-6, 2}, {-10, -2}, {-15, 1}, {-17, -1}};
+    /** Square offsets of the king moves, with their file offsets */
+    private static final int[][] KING_STEPS = {{8, 0}, {-8, 0}, {1, 1}, {-1, -1}, {9, 1}, {7, -1}, {-7, 1}, {-9, -1}};
+
+    /** Target squares of a knight on each square */
+    static final int[][] KNIGHT_TARGETS = new int[64][];
+    /** Target squares of a king on each square */
+    static final int[][] KING_TARGETS = new int[64][];
+    /**
+     * Squares met from each square in each direction, in order. Directions 0 to 3 are the ones of the rook (N, S, E, W),
+     * 4 to 7 the ones of the bishop (NE, NW, SE, SW).
+     */
+    static final int[][][] RAYS = new int[64][8][];
+    /** Castling rights kept when a piece leaves or arrives on each square (rooks and kings lose their rights) */
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        int[][] directions = {{0, 1}, {0, -1}, {1, 0}, {-1, 0}, {1, 1}, {-1, 1}, {1, -1}, {-1, -1}};
+
+        for (int square = 0 ; square < 64 ; square++) {
+            KNIGHT_TARGETS[square] = targets(square, KNIGHT_STEPS);
+            KING_TARGETS[square] = targets(square, KING_STEPS);
+
+            for (int direction = 0 ; direction < 8 ; direction++) {
+                int[] ray = new int[7];
+                int length = 0;
+                int x = file(square) + directions[direction][0];
+                int y = rank(square) + directions[direction][1];
+                while (x >= 0 && x < 8 && y >= 0 && y < 8) {
+                    ray[length++] = y * 8 + x;
+                    x += directions[direction][0];
+                    y += directions[direction][1];
+                }
+                RAYS[square][direction] = Arrays.copyOf(ray, length);
+            }
+            CASTLING_MASK[square] = 15;
+        }
+        CASTLING_MASK[0] &= ~WHITE_LONG;
+        CASTLING_MASK[7] &= ~WHITE_SHORT;
+        CASTLING_MASK[4] &= ~(WHITE_SHORT | WHITE_LONG);
+        CASTLING_MASK[56] &= ~BLACK_LONG;
+        CASTLING_MASK[63] &= ~BLACK_SHORT;
+        CASTLING_MASK[60] &= ~(BLACK_SHORT | BLACK_LONG);
+    }
+
+    /** Piece code on each of the 64 squares */
+    final int[] squares = new int[64];
+    /** Bitboards of the pawns of each side */
+    final long[] pawns = new long[2];
+    /** Square of the king of each side, or -1 */
+    final int[] kings = {-1, -1};
+    /** Number of pieces on the board, kings and pawns included */
+    int pieceCount = 0;
+    /** Side to move ({@link #WHITE} or {@link #BLACK}) */
+    int sideToMove = WHITE;
+    /** Castling rights still available (combination of WHITE_SHORT, WHITE_LONG, BLACK_SHORT, BLACK_LONG) */
+    int castling = 0;
+    /** Square on which a pawn can be taken en passant, or -1 */
+    int enPassant = -1;
+    /** Number of half moves since the last capture or pawn move, for the fifty moves rule */
+    int halfmoveClock = 0;
+    /** Number of the move, starting at 1 and incremented after each black move */
+    int fullmoveNumber = 1;
+    /** Full Zobrist hash of the position */
+    long key;
+    /** Zobrist hash of the pawns only */
+    long pawnKey;
+
+    /** Number of moves done with {@link #make(int)} and not undone yet */
+    private int historyLength = 0;
+    /** Undo information of each move done : the move, the captured piece, the castling rights, en passant square and half move clock before the move */
+    private int[] historyMoves = new int[64];
+    private int[] historyCaptured = new int[64];
+    private int[] historyState = new int[64];
+    /** Hashes of the positions before each move done, also used to detect repetitions */
+    private long[] historyKeys = new long[64];
+    private long[] historyPawnKeys = new long[64];
+
+    /**
+     * Create an empty position (no pieces, white to move). Pieces must be added with {@link #put(int, int)}.
+     */
+    public Position() {
+        this.computeKeys();
+    }
+
+    /**
+     * Copy constructor. The history of the moves done is not copied, so the copy can't undo them.
+     *
+     * @param position Position to copy
+     */
+    public Position(Position position) {
+        System.arraycopy(position.squares, 0, this.squares, 0, 64);
+        this.pawns[WHITE] = position.pawns[WHITE];
+        this.pawns[BLACK] = position.pawns[BLACK];
+        this.kings[WHITE] = position.kings[WHITE];
+        this.kings[BLACK] = position.kings[BLACK];
+        this.pieceCount = position.pieceCount;
+        this.sideToMove = position.sideToMove;
+        this.castling = position.castling;
+        this.enPassant = position.enPassant;
+        this.halfmoveClock = position.halfmoveClock;
+        this.fullmoveNumber = position.fullmoveNumber;
+        this.key = position.key;
+        this.pawnKey = position.pawnKey;
+    }
+
+    /**
+     * Create the position of a {@link ChessGame}, from the pieces alive on its {@link ChessBoard}. Castling rights are
+     * deduced from the kings and rooks that never moved, and the en passant square from {@link ChessGame#getLastMove()}.
+     *
+     * @param game {@link ChessGame} whose position is copied
+     * @return The position of the game
+     */
+    public static Position fromGame(ChessGame game) {
+        Position position = new Position();
+
+        for (ChessPiece piece : game.getBoard().getPiecesByState(Piece.PieceState.ALIVE)) {
+            position.put(square(piece.getPos()), pieceCode(piece.getType(), piece.getPlayer().getColor()));
+        }
+
+        position.sideToMove = game.getPlayerTurn().getColor() == Player.COLOR.WHITE ? WHITE : BLACK;
+        position.castling = castlingRights(game.getBoard());
+
+        // En passant is only possible right after a pawn moved of two squares
+        ChessGame.Move lastMove = game.getLastMove();
+        if (lastMove != null && lastMove.piece.getType() == ChessPiece.ChessPieceType.PAWN
+                && Math.abs(lastMove.to.getY() - lastMove.from.getY()) == 2) {
+            position.enPassant = square(new Pos(lastMove.to.getX(), (lastMove.to.getY() + lastMove.from.getY()) / 2));
+        }
+
+        position.computeKeys();
+        return position;
+    }
+
+    /**
+     * Create a position from its FEN (Forsyth-Edwards Notation) description, for example {@link #START_FEN}. The half
+     * move clock and the move number may be omitted.
+     * <p>
+     *     The position must be playable by the move generation : 8 ranks of 8 squares, a single king of each side, no
+     *     pawn on the first or the last rank, and the side which just moved not in check. The castling rights whose king
+     *     and rook are not on their initial squares are dropped, as well as an en passant square no pawn could have
+     *     jumped.
+     * </p>
+     *
+     * @param fen FEN of the position
+     * @return The position described by fen
+     * @throws IllegalArgumentException If the FEN is invalid, or the position can't be played
+     */
+    public static Position fromFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Invalid FEN (" + fen + ") : at least 4 fields are expected");
+        }
+
+        Position position = new Position();
+
+        // Piece placement, from rank 8 to rank 1
+        int rank = 7, file = 0;
+        int[] kings = new int[2];
+        for (char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                if (file != 8 || rank == 0)
+                    throw new IllegalArgumentException("Invalid FEN (" + fen + ") : bad piece placement");
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+                if (file > 8)
+                    throw new IllegalArgumentException("Invalid FEN (" + fen + ") : bad piece placement");
+            } else {
+                int type = "pnbrqk".indexOf(Character.toLowerCase(c)) + 1;
+                if (type == 0 || file > 7) {
+                    throw new IllegalArgumentException("Invalid FEN (" + fen + ") : bad piece placement");
+                }
+                if (type == PAWN && (rank == 0 || rank == 7))
+                    throw new IllegalArgumentException("Invalid FEN (" + fen + ") : pawn on the first or last rank");
+                int color = Character.isLowerCase(c) ? BLACK : WHITE;
+                if (type == KING)
+                    kings[color]++;
+                position.put(rank * 8 + file, type + (color == BLACK ? BLACK_PIECE : 0));
+                file++;
+            }
+        }
+        if (rank != 0 || file != 8)
+            throw new IllegalArgumentException("Invalid FEN (" + fen + ") : 8 ranks of 8 squares are expected");
+        if (kings[WHITE] != 1 || kings[BLACK] != 1)
+            throw new IllegalArgumentException("Invalid FEN (" + fen + ") : each side must have a single king");
+
+        if (!fields[1].equals("w") && !fields[1].equals("b"))
+            throw new IllegalArgumentException("Invalid FEN (" + fen + ") : the side to move must be w or b");
+        position.sideToMove = fields[1].equals("b") ? BLACK : WHITE;
+        if (position.isAttacked(position.kings[1 - position.sideToMove], position.sideToMove))
+            throw new IllegalArgumentException("Invalid FEN (" + fen + ") : the side which just moved is in check");
+
+        for (char c : fields[2].toCharArray()) {
+            switch (c) {
+                case 'K' -> position.castling |= WHITE_SHORT;
+                case 'Q' -> position.castling |= WHITE_LONG;
+                case 'k' -> position.castling |= BLACK_SHORT;
+                case 'q' -> position.castling |= BLACK_LONG;
+                default -> {}
+            }
+        }
+
+        // The rights are only kept if the king and the rook haven't obviously moved
+        int white = KING, black = KING + BLACK_PIECE;
+        if (position.squares[4] != white || position.squares[7] != ROOK)
+            position.castling &= ~WHITE_SHORT;
+        if (position.squares[4] != white || position.squares[0] != ROOK)
+            position.castling &= ~WHITE_LONG;
+        if (position.squares[60] != black || position.squares[63] != ROOK + BLACK_PIECE)
+            position.castling &= ~BLACK_SHORT;
+        if (position.squares[60] != black || position.squares[56] != ROOK + BLACK_PIECE)
+            position.castling &= ~BLACK_LONG;
+
+        position.enPassant = fields[3].equals("-") ? -1 : parseSquare(fields[3]);
+        if (position.enPassant >= 0) {
+            // The square must be behind a pawn of the side which just moved, on the 3rd rank of this side
+            int pawn = position.sideToMove == WHITE ? position.enPassant - 8 : position.enPassant + 8;
+            int expectedRank = position.sideToMove == WHITE ? 5 : 2;
+            if (rank(position.enPassant) != expectedRank
+                    || position.squares[pawn] != PAWN + (position.sideToMove == WHITE ? BLACK_PIECE : 0))
+                position.enPassant = -1;
+        }
+
+        try {
+            if (fields.length > 4)
+                position.halfmoveClock = Integer.parseInt(fields[4]);
+            if (fields.length > 5)
+                position.fullmoveNumber = Integer.parseInt(fields[5]);
+            if (position.halfmoveClock < 0 || position.fullmoveNumber < 0)
+                throw new NumberFormatException();
+            // Some tools write 0 for the move number of the initial position
+            position.fullmoveNumber = Math.max(1, position.fullmoveNumber);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid FEN (" + fen + ") : bad move counters");
+        }
+
+        position.computeKeys();
+        return position;
+    }
+
+    /**
+     * @return The FEN (Forsyth-Edwards Notation) description of the position
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+
+        for (int rank = 7 ; rank >= 0 ; rank--) {
+            int empty = 0;
+            for (int file = 0 ; file < 8 ; file++) {
+                int piece = this.squares[rank * 8 + file];
+                if (piece == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char c = " pnbrqk".charAt(type(piece));
+                fen.append(color(piece) == WHITE ? Character.toUpperCase(c) : c);
+            }
+            if (empty > 0)
+                fen.append(empty);
+            if (rank > 0)
+                fen.append('/');
+        }
+
+        fen.append(this.sideToMove == WHITE ? " w " : " b ");
+
+        if (this.castling == 0)
+            fen.append('-');
+        if ((this.castling & WHITE_SHORT) != 0) fen.append('K');
+        if ((this.castling & WHITE_LONG) != 0) fen.append('Q');
+        if ((this.castling & BLACK_SHORT) != 0) fen.append('k');
+        if ((this.castling & BLACK_LONG) != 0) fen.append('q');
+
+        fen.append(' ').append(this.enPassant < 0 ? "-" : squareName(this.enPassant));
+        fen.append(' ').append(this.halfmoveClock).append(' ').append(this.fullmoveNumber);
+        return fen.toString();
+    }
+
+    /**
+     * Write a compact snapshot of the position : the pieces, two squares by byte (32 bytes), then the side to move, the
+     * castling rights, the en passant square, the half move clock and the move number ({@link #SNAPSHOT_SIZE} bytes in
+     * all). The history of the moves is not written.
+     *
+     * @param buffer Buffer where the snapshot is written
+     */
+    public void writeSnapshot(ByteBuffer buffer) {
+        for (int square = 0 ; square < 64 ; square += 2)
+            buffer.put((byte) (this.squares[square] << 4 | this.squares[square + 1]));
+        buffer.put((byte) this.sideToMove);
+        buffer.put((byte) this.castling);
+        buffer.put((byte) this.enPassant);
+        buffer.putShort((short) this.halfmoveClock);
+        buffer.putShort((short) this.fullmoveNumber);
+    }
+
+    /**
+     * Read a snapshot written by {@link #writeSnapshot(ByteBuffer)}.
+     *
+     * @param buffer Buffer positioned on the snapshot
+     * @return The position of the snapshot, without history
+     */
+    public static Position readSnapshot(ByteBuffer buffer) {
+        Position position = new Position();
+        position.loadSnapshot(buffer);
+        return position;
+    }
+
+    /**
+     * Replace this position by a snapshot written by {@link #writeSnapshot(ByteBuffer)}, without allocating. The history
+     * of the moves done is forgotten.
+     *
+     * @param buffer Buffer positioned on the snapshot
+     */
+    void loadSnapshot(ByteBuffer buffer) {
+        for (int square = 0 ; square < 64 ; square += 2) {
+            int pieces = buffer.get() & 0xFF;
+            this.put(square, pieces >>> 4);
+            this.put(square + 1, pieces & 0xF);
+        }
+        this.sideToMove = buffer.get();
+        this.castling = buffer.get();
+        this.enPassant = buffer.get();
+        this.halfmoveClock = buffer.getShort() & 0xFFFF;
+        this.fullmoveNumber = buffer.getShort() & 0xFFFF;
+        this.computeKeys();
+        this.historyLength = 0;
+    }
+
+    /**
+     * Forget the history of the moves done, which can't be undone anymore. The position itself is unchanged.
+     */
+    void clearHistory() {
+        this.historyLength = 0;
+    }
+
+    /**
+     * Compute the castling rights from the kings and rooks of a board that never moved.
+     *
+     * @param board {@link ChessBoard} to check
+     * @return The castling rights, as a combination of WHITE_SHORT, WHITE_LONG, BLACK_SHORT and BLACK_LONG
+     */
+    private static int castlingRights(ChessBoard board) {
+        int rights = 0;
+
+        for (int y : new int[] {1, 8}) {
+            ChessPiece king = board.getPieceAt(new Pos(5, y));
+            if (!(king instanceof King) || ((King) king).hasAlreadyMoved())
+                continue;
+
+            ChessPiece rookShort = board.getPieceAt(new Pos(8, y));
+            ChessPiece rookLong = board.getPieceAt(new Pos(1, y));
+            if (rookShort instanceof Rook && rookShort.getPlayer() == king.getPlayer() && !((Rook) rookShort).hasAlreadyMoved())
+                rights |= (y == 1) ? WHITE_SHORT : BLACK_SHORT;
+            if (rookLong instanceof Rook && rookLong.getPlayer() == king.getPlayer() && !((Rook) rookLong).hasAlreadyMoved())
+                rights |= (y == 1) ? WHITE_LONG : BLACK_LONG;
+        }
+        return rights;
+    }
+
+    /**
+     * Compute the squares reached from a square with single steps (knight or king moves), without leaving the board.
+     *
+     * @param square Origin square
+     * @param steps Square offsets of the steps, with their file offsets
+     * @return The squares reached
+     */
+    private static int[] targets(int square, int[][] steps) {
+        int[] targets = new int[steps.length];
+        int count = 0;
+
+        for (int[] step : steps) {
+            int to = square + step[0];
+            int file = file(square) + step[1];
+            if (to >= 0 && to < 64 && file >= 0 && file < 8)
+                targets[count++] = to;
+        }
+        return Arrays.copyOf(targets, count);
+    }
+
+    /**
+     * Put a piece on a square, replacing any piece already there. The hashes are not updated : call
+     * {@link #computeKeys()} once the position is set up.
+     *
+     * @param square Square between 0 (A1) and 63 (H8)
+     * @param piece Piece code (type + {@link #BLACK_PIECE} for black pieces), or {@link #EMPTY}
+     */
+    public void put(int square, int piece) {
+        int old = this.squares[square];
+        if (type(old) == PAWN)
+            this.pawns[color(old)] &= ~(1L << square);
+        else if (type(old) == KING && this.kings[color(old)] == square)
+            this.kings[color(old)] = -1;
+        if (old != EMPTY)
+            this.pieceCount--;
+
+        this.squares[square] = piece;
+        if (piece != EMPTY)
+            this.pieceCount++;
+        if (type(piece) == PAWN)
+            this.pawns[color(piece)] |= 1L << square;
+        else if (type(piece) == KING)
+            this.kings[color(piece)] = square;
+    }
+
+    /**
+     * Compute from scratch the full hash and the pawn hash of the position.
+     */
+    public void computeKeys() {
+        this.key = 0;
+        this.pawnKey = 0;
+
+        for (int square = 0 ; square < 64 ; square++) {
+            int piece = this.squares[square];
+            if (piece == EMPTY)
+                continue;
+
+            this.key ^= Zobrist.PIECE_SQUARE[piece][square];
+            if (type(piece) == PAWN)
+                this.pawnKey ^= Zobrist.PIECE_SQUARE[piece][square];
+        }
+
+        if (this.sideToMove == BLACK)
+            this.key ^= Zobrist.SIDE;
+        this.key ^= Zobrist.CASTLING[this.castling] ^ this.enPassantKey();
+    }
+
+    /**
+     * The en passant file is only hashed when a pawn of the side to move stands next to the pawn which just moved by two
+     * squares, as in the Polyglot hashing : otherwise the same position reached with or without a double push, as
+     * 1.e4 Nf6 2.Nc3 and 1.Nc3 Nf6 2.e4, would have different keys.
+     *
+     * @return The part of the hash given by the en passant square, or 0
+     */
+    private long enPassantKey() {
+        if (this.enPassant < 0)
+            return 0;
+
+        int file = file(this.enPassant);
+        // The capturing pawns stand one rank behind the en passant square, seen from the side to move
+        int behind = this.enPassant + (this.sideToMove == WHITE ? -8 : 8);
+        int pawn = this.sideToMove == WHITE ? PAWN : PAWN + BLACK_PIECE;
+        if ((file > 0 && this.squares[behind - 1] == pawn) || (file < 7 && this.squares[behind + 1] == pawn))
+            return Zobrist.EN_PASSANT_FILE[file];
+        return 0;
+    }
+
+    /**
+     * Encode a move as an integer : the origin square on bits 0-5, the destination square on bits 6-11, the promotion
+     * type on bits 12-14 and the flag on bits 15-16.
+     *
+     * @param from Origin square
+     * @param to Destination square
+     * @param promotion Type of the piece a pawn is promoted to (KNIGHT to QUEEN), or EMPTY
+     * @param flag NORMAL, DOUBLE_PUSH, EN_PASSANT or CASTLE
+     * @return The encoded move
+     */
+    public static int move(int from, int to, int promotion, int flag) {
+        return from | (to << 6) | (promotion << 12) | (flag << 15);
+    }
+
+    /** @return The origin square of an encoded move */
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    /** @return The destination square of an encoded move */
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    /** @return The promotion type of an encoded move, or EMPTY */
+    public static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    /** @return The flag of an encoded move (NORMAL, DOUBLE_PUSH, EN_PASSANT or CASTLE) */
+    public static int flag(int move) {
+        return (move >>> 15) & 3;
+    }
+
+    /**
+     * Generate the pseudo-legal moves of the side to move, i.e. the moves that follow the rules of the pieces but may
+     * leave the king in check. Such moves are refused by {@link #make(int)}. Castling moves are only generated when
+     * they are fully legal.
+     *
+     * @param moves Array in which moves are written, of at least {@link #MAX_MOVES} elements
+     * @return The number of moves written in moves
+     */
+    public int generateMoves(int[] moves) {
+        return this.generateMoves(moves, false);
+    }
+
+    /**
+     * Generate the pseudo-legal captures and promotions of the side to move (see {@link #generateMoves(int[])}).
+     * These are the moves explored by the quiescence search.
+     *
+     * @param moves Array in which moves are written, of at least {@link #MAX_MOVES} elements
+     * @return The number of moves written in moves
+     */
+    public int generateCaptures(int[] moves) {
+        return this.generateMoves(moves, true);
+    }
+
+    /**
+     * Generate pseudo-legal moves.
+     *
+     * @param moves Array in which moves are written
+     * @param capturesOnly true to generate only captures and promotions
+     * @return The number of moves written in moves
+     */
+    private int generateMoves(int[] moves, boolean capturesOnly) {
+        int count = 0;
+        int side = this.sideToMove;
+
+        for (int from = 0 ; from < 64 ; from++) {
+            int piece = this.squares[from];
+            if (piece == EMPTY || color(piece) != side)
+                continue;
+
+            switch (type(piece)) {
+                case PAWN -> count = this.generatePawnMoves(moves, count, from, capturesOnly);
+                case KNIGHT -> count = this.generateSteps(moves, count, from, KNIGHT_TARGETS[from], capturesOnly);
+                case BISHOP -> count = this.generateSlides(moves, count, from, 4, 8, capturesOnly);
+                case ROOK -> count = this.generateSlides(moves, count, from, 0, 4, capturesOnly);
+                case QUEEN -> count = this.generateSlides(moves, count, from, 0, 8, capturesOnly);
+                case KING -> {
+                    count = this.generateSteps(moves, count, from, KING_TARGETS[from], capturesOnly);
+                    if (!capturesOnly)
+                        count = this.generateCastles(moves, count, from);
+                }
+                default -> {}
+            }
+        }
+        return count;
+    }
+
+    private int generatePawnMoves(int[] moves, int count, int from, boolean capturesOnly) {
+        int side = this.sideToMove;
+        int forward = side == WHITE ? 8 : -8;
+        int rank = rank(from);
+        int lastRank = side == WHITE ? 6 : 1;
+        int startRank = side == WHITE ? 1 : 6;
+        int to = from + forward;
+
+        // Moves forward (promotions are generated even for captures only)
+        if (this.squares[to] == EMPTY) {
+            if (rank == lastRank) {
+                count = addPromotions(moves, count, from, to);
+            } else if (!capturesOnly) {
+                moves[count++] = move(from, to, EMPTY, NORMAL);
+                if (rank == startRank && this.squares[to + forward] == EMPTY)
+                    moves[count++] = move(from, to + forward, EMPTY, DOUBLE_PUSH);
+            }
+        }
+
+        // Captures in diagonal, including en passant
+        for (int fileStep = -1 ; fileStep <= 1 ; fileStep += 2) {
+            int file = file(from) + fileStep;
+            if (file < 0 || file > 7)
+                continue;
+
+            int target = to + fileStep;
+            int captured = this.squares[target];
+            if (captured != EMPTY && color(captured) != side) {
+                if (rank == lastRank)
+                    count = addPromotions(moves, count, from, target);
+                else
+                    moves[count++] = move(from, target, EMPTY, NORMAL);
+            } else if (target == this.enPassant) {
+                moves[count++] = move(from, target, EMPTY, EN_PASSANT);
+            }
+        }
+        return count;
+    }
+
+    private static int addPromotions(int[] moves, int count, int from, int to) {
+        moves[count++] = move(from, to, QUEEN, NORMAL);
+        moves[count++] = move(from, to, KNIGHT, NORMAL);
+        moves[count++] = move(from, to, ROOK, NORMAL);
+        moves[count++] = move(from, to, BISHOP, NORMAL);
+        return count;
+    }
+
+    private int generateSteps(int[] moves, int count, int from, int[] targets, boolean capturesOnly) {
+        for (int to : targets) {
+            int target = this.squares[to];
+            if (target == EMPTY ? !capturesOnly : color(target) != this.sideToMove)
+                moves[count++] = move(from, to, EMPTY, NORMAL);
+        }
+        return count;
+    }
+
+    private int generateSlides(int[] moves, int count, int from, int firstDirection, int lastDirection, boolean capturesOnly) {
+        for (int direction = firstDirection ; direction < lastDirection ; direction++) {
+            for (int to : RAYS[from][direction]) {
+                int target = this.squares[to];
+                if (target == EMPTY) {
+                    if (!capturesOnly)
+                        moves[count++] = move(from, to, EMPTY, NORMAL);
+                    continue;
+                }
+                if (color(target) != this.sideToMove)
+                    moves[count++] = move(from, to, EMPTY, NORMAL);
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Generate castling moves. As with {@link King#canCastleShort()}, the king and the rook must not have moved, the
+     * squares between them must be free and the squares the king goes through must not be attacked.
+     */
+    private int generateCastles(int[] moves, int count, int from) {
+        int side = this.sideToMove;
+        int home = side == WHITE ? 4 : 60;
+        if (from != home || this.castling == 0)
+            return count;
+
+        int enemy = 1 - side;
+        int rook = ROOK + (side == BLACK ? BLACK_PIECE : 0);
+        int shortRight = side == WHITE ? WHITE_SHORT : BLACK_SHORT;
+        int longRight = side == WHITE ? WHITE_LONG : BLACK_LONG;
+
+        if ((this.castling & shortRight) != 0 && this.squares[home + 3] == rook
+                && this.squares[home + 1] == EMPTY && this.squares[home + 2] == EMPTY
+                && !this.isAttacked(home, enemy) && !this.isAttacked(home + 1, enemy) && !this.isAttacked(home + 2, enemy)) {
+            moves[count++] = move(home, home + 2, EMPTY, CASTLE);
+        }
+        if ((this.castling & longRight) != 0 && this.squares[home - 4] == rook
+                && this.squares[home - 1] == EMPTY && this.squares[home - 2] == EMPTY && this.squares[home - 3] == EMPTY
+                && !this.isAttacked(home, enemy) && !this.isAttacked(home - 1, enemy) && !this.isAttacked(home - 2, enemy)) {
+            moves[count++] = move(home, home - 2, EMPTY, CASTLE);
+        }
+        return count;
+    }
+
+    /**
+     * Generate the legal moves of the side to move.
+     *
+     * @return The legal moves, encoded as with {@link #move(int, int, int, int)}
+     */
+    public int[] legalMoves() {
+        int[] moves = new int[MAX_MOVES];
+        int count = this.generateMoves(moves);
+        int legal = 0;
+
+        for (int i = 0 ; i < count ; i++) {
+            if (this.make(moves[i])) {
+                this.unmake();
+                moves[legal++] = moves[i];
+            }
+        }
+        return Arrays.copyOf(moves, legal);
+    }
+
+    /**
+     * Return if a square is attacked by a side, i.e. if a piece of this side could take a piece on this square.
+     *
+     * @param square Square that could be under attack
+     * @param by Side that could attack the square
+     * @return true if the square is attacked
+     */
+    public boolean isAttacked(int square, int by) {
+        int offset = by == BLACK ? BLACK_PIECE : 0;
+
+        // Pawns attack in diagonal, towards the enemy
+        int pawnRank = rank(square) + (by == WHITE ? -1 : 1);
+        if (pawnRank >= 0 && pawnRank < 8) {
+            int pawn = PAWN + offset;
+            if (file(square) > 0 && this.squares[pawnRank * 8 + file(square) - 1] == pawn)
+                return true;
+            if (file(square) < 7 && this.squares[pawnRank * 8 + file(square) + 1] == pawn)
+                return true;
+        }
+
+        for (int from : KNIGHT_TARGETS[square]) {
+            if (this.squares[from] == KNIGHT + offset)
+                return true;
+        }
+        for (int from : KING_TARGETS[square]) {
+            if (this.squares[from] == KING + offset)
+                return true;
+        }
+
+        // Sliding pieces : the first piece met in each direction
+        for (int direction = 0 ; direction < 8 ; direction++) {
+            int slider = direction < 4 ? ROOK + offset : BISHOP + offset;
+            for (int from : RAYS[square][direction]) {
+                int piece = this.squares[from];
+                if (piece == EMPTY)
+                    continue;
+                if (piece == slider || piece == QUEEN + offset)
+                    return true;
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the king of the side to move is in check
+     */
+    public boolean isInCheck() {
+        int king = this.kings[this.sideToMove];
+        return king >= 0 && this.isAttacked(king, 1 - this.sideToMove);
+    }
+
+    /**
+     * Do a pseudo-legal move (see {@link #generateMoves(int[])}). If the move leaves the king of the moving side in
+     * check, it is undone and false is returned. Otherwise, the move can be undone later with {@link #unmake()}.
+     *
+     * @param move Move to do
+     * @return true if the move was legal and is done, false if it was refused
+     */
+    public boolean make(int move) {
+        int from = from(move);
+        int to = to(move);
+        int flag = flag(move);
+        int side = this.sideToMove;
+        int piece = this.squares[from];
+        int capturedSquare = flag == EN_PASSANT ? to + (side == WHITE ? -8 : 8) : to;
+        int captured = this.squares[capturedSquare];
+
+        // Save what is needed to undo the move
+        this.ensureHistoryCapacity();
+        this.historyMoves[this.historyLength] = move;
+        this.historyCaptured[this.historyLength] = captured;
+        this.historyState[this.historyLength] = this.castling | ((this.enPassant + 1) << 4) | (this.halfmoveClock << 11);
+        this.historyKeys[this.historyLength] = this.key;
+        this.historyPawnKeys[this.historyLength] = this.pawnKey;
+        this.historyLength++;
+
+        this.key ^= Zobrist.CASTLING[this.castling] ^ this.enPassantKey();
+
+        if (captured != EMPTY)
+            this.removePiece(capturedSquare);
+        this.removePiece(from);
+        this.addPiece(to, promotion(move) != EMPTY ? promotion(move) + (piece & BLACK_PIECE) : piece);
+
+        // The rook follows the king when castling
+        if (flag == CASTLE) {
+            boolean isShort = to > from;
+            int rookFrom = isShort ? from + 3 : from - 4;
+            int rookTo = isShort ? from + 1 : from - 1;
+            this.addPiece(rookTo, this.removePiece(rookFrom));
+        }
+
+        this.castling &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        this.enPassant = flag == DOUBLE_PUSH ? (from + to) / 2 : -1;
+        this.halfmoveClock = (type(piece) == PAWN || captured != EMPTY) ? 0 : this.halfmoveClock + 1;
+        if (side == BLACK)
+            this.fullmoveNumber++;
+        this.sideToMove = 1 - side;
+
+        this.key ^= Zobrist.SIDE ^ Zobrist.CASTLING[this.castling] ^ this.enPassantKey();
+
+        // Refuse the move if it leaves the king in check
+        if (this.kings[side] >= 0 && this.isAttacked(this.kings[side], this.sideToMove)) {
+            this.unmake();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Pass the turn to the enemy without moving ("null move"), which is illegal in chess but used by the search to
+     * prove that a position is so good that even passing keeps it good. It is undone with {@link #unmake()}.
+     * The half move clock is reset, so that no repetition is detected through a null move.
+     */
+    public void makeNullMove() {
+        this.ensureHistoryCapacity();
+        this.historyMoves[this.historyLength] = NO_MOVE;
+        this.historyCaptured[this.historyLength] = EMPTY;
+        this.historyState[this.historyLength] = this.castling | ((this.enPassant + 1) << 4) | (this.halfmoveClock << 11);
+        this.historyKeys[this.historyLength] = this.key;
+        this.historyPawnKeys[this.historyLength] = this.pawnKey;
+        this.historyLength++;
+
+        this.key ^= this.enPassantKey();
+        this.enPassant = -1;
+        this.halfmoveClock = 0;
+        this.sideToMove = 1 - this.sideToMove;
+        this.key ^= Zobrist.SIDE;
+    }
+
+    /**
+     * Undo the last move done with {@link #make(int)} or {@link #makeNullMove()}.
+     */
+    public void unmake() {
+        if (this.historyLength == 0) {
+            throw new RuntimeException("No move to undo");
+        }
+
+        this.historyLength--;
+        int move = this.historyMoves[this.historyLength];
+        int captured = this.historyCaptured[this.historyLength];
+        int state = this.historyState[this.historyLength];
+        int from = from(move);
+        int to = to(move);
+        int flag = flag(move);
+
+        this.sideToMove = 1 - this.sideToMove;
+        if (move == NO_MOVE) {
+            this.enPassant = ((state >>> 4) & 127) - 1;
+            this.halfmoveClock = state >>> 11;
+            this.key = this.historyKeys[this.historyLength];
+            return;
+        }
+        if (this.sideToMove == BLACK)
+            this.fullmoveNumber--;
+
+        int piece = this.removePiece(to);
+        if (promotion(move) != EMPTY)
+            piece = PAWN + (piece & BLACK_PIECE);
+        this.addPiece(from, piece);
+
+        if (captured != EMPTY)
+            this.addPiece(flag == EN_PASSANT ? to + (this.sideToMove == WHITE ? -8 : 8) : to, captured);
+
+        if (flag == CASTLE) {
+            boolean isShort = to > from;
+            this.addPiece(isShort ? from + 3 : from - 4, this.removePiece(isShort ? from + 1 : from - 1));
+        }
+
+        this.castling = state & 15;
+        this.enPassant = ((state >>> 4) & 127) - 1;
+        this.halfmoveClock = state >>> 11;
+        this.key = this.historyKeys[this.historyLength];
+        this.pawnKey = this.historyPawnKeys[this.historyLength];
+    }
+
+    /**
+     * Remove the piece of a square, updating the hashes.
+     *
+     * @param square Square of the piece
+     * @return The code of the removed piece
+     */
+    private int removePiece(int square) {
+        int piece = this.squares[square];
+        this.key ^= Zobrist.PIECE_SQUARE[piece][square];
+        if (type(piece) == PAWN)
+            this.pawnKey ^= Zobrist.PIECE_SQUARE[piece][square];
+        this.put(square, EMPTY);
+        return piece;
+    }
+
+    /**
+     * Add a piece on an empty square, updating the hashes.
+     *
+     * @param square Square of the piece
+     * @param piece Code of the piece
+     */
+    private void addPiece(int square, int piece) {
+        this.key ^= Zobrist.PIECE_SQUARE[piece][square];
+        if (type(piece) == PAWN)
+            this.pawnKey ^= Zobrist.PIECE_SQUARE[piece][square];
+        this.put(square, piece);
+    }
+
+    private void ensureHistoryCapacity() {
+        if (this.historyLength < this.historyMoves.length)
+            return;
+
+        int capacity = this.historyMoves.length * 2;
+        this.historyMoves = Arrays.copyOf(this.historyMoves, capacity);
+        this.historyCaptured = Arrays.copyOf(this.historyCaptured, capacity);
+        this.historyState = Arrays.copyOf(this.historyState, capacity);
+        this.historyKeys = Arrays.copyOf(this.historyKeys, capacity);
+        this.historyPawnKeys = Arrays.copyOf(this.historyPawnKeys, capacity);
+    }
+
+    /**
+     * Return if the position is a draw by the fifty moves rule or by repetition. A position is considered repeated as
+     * soon as it occurred once before, which is enough for the search.
+     *
+     * @return true if the position is a draw
+     */
+    public boolean isDrawByRule() {
+        if (this.halfmoveClock >= 100)
+            return true;
+
+        // Only positions since the last capture or pawn move can be the same, with the same side to move
+        int oldest = Math.max(0, this.historyLength - this.halfmoveClock);
+        for (int i = this.historyLength - 2 ; i >= oldest ; i -= 2) {
+            if (this.historyKeys[i] == this.key)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return if a side has other pieces than its king and its pawns. In pawn endgames, passing would often be the best
+     * move (zugzwang), so the search must not use null moves there.
+     *
+     * @param side {@link #WHITE} or {@link #BLACK}
+     * @return true if side has at least a knight, a bishop, a rook or a queen
+     */
+    public boolean hasNonPawnMaterial(int side) {
+        for (int square = 0 ; square < 64 ; square++) {
+            int piece = this.squares[square];
+            if (piece != EMPTY && color(piece) == side && type(piece) != PAWN && type(piece) != KING)
+                return true;
+        }
+        return false;
+    }
+
+    /** @return The number of pieces on the board, kings and pawns included */
+    public int getPieceCount() {
+        return this.pieceCount;
+    }
+
+    /** @return The piece code at a square (see {@link #put(int, int)}) */
+    public int pieceAt(int square) {
+        return this.squares[square];
+    }
+
+    /** @return The bitboard of the pawns of a side */
+    public long getPawns(int side) {
+        return this.pawns[side];
+    }
+
+    /** @return The side to move, {@link #WHITE} or {@link #BLACK} */
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    /** @return The castling rights (combination of WHITE_SHORT, WHITE_LONG, BLACK_SHORT, BLACK_LONG) */
+    public int getCastling() {
+        return castling;
+    }
+
+    /** @return The square on which a pawn can be taken en passant, or -1 */
+    public int getEnPassant() {
+        return enPassant;
+    }
+
+    /** @return The number of half moves since the last capture or pawn move */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /** @return The number of the move, starting at 1 */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /** @return The full Zobrist hash of the position */
+    public long getKey() {
+        return key;
+    }
+
+    /** @return The Zobrist hash of the pawns only */
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    /** @return The number of moves done with {@link #make(int)} which can still be undone */
+    public int getHistoryLength() {
+        return historyLength;
+    }
+
+    /**
+     * Return the square of the king of a side.
+     *
+     * @param side {@link #WHITE} or {@link #BLACK}
+     * @return Square of the king, or -1 if there is no king
+     */
+    public int kingSquare(int side) {
+        return this.kings[side];
+    }
+
+    /** @return The type of a piece code (PAWN to KING), or EMPTY */
+    public static int type(int piece) {
+        return piece & 7;
+    }
+
+    /** @return The side of a piece code ({@link #WHITE} or {@link #BLACK}) */
+    public static int color(int piece) {
+        return piece >> 3;
+    }
+
+    /** @return The file of a square, between 0 (A) and 7 (H) */
+    public static int file(int square) {
+        return square & 7;
+    }
+
+    /** @return The rank of a square, between 0 (rank 1) and 7 (rank 8) */
+    public static int rank(int square) {
+        return square >> 3;
+    }
+
+    /** @return The square of a {@link Pos} */
+    public static int square(Pos pos) {
+        return (pos.getY() - 1) * 8 + pos.getX() - 1;
+    }
+
+    /** @return The {@link Pos} of a square */
+    public static Pos toPos(int square) {
+        return new Pos(file(square) + 1, rank(square) + 1);
+    }
+
+    /** @return The name of a square in algebraic notation, for example "e4" */
+    public static String squareName(int square) {
+        return "" + (char) ('a' + file(square)) + (char) ('1' + rank(square));
+    }
+
+    /**
+     * Parse the name of a square in algebraic notation, for example "e4".
+     *
+     * @param name Name of the square
+     * @return The square, between 0 and 63
+     */
+    public static int parseSquare(String name) {
+        if (name.length() != 2 || name.charAt(0) < 'a' || name.charAt(0) > 'h' || name.charAt(1) < '1' || name.charAt(1) > '8') {
+            throw new IllegalArgumentException("Invalid square : " + name);
+        }
+        return (name.charAt(1) - '1') * 8 + name.charAt(0) - 'a';
+    }
+
+    /**
+     * Write a move in coordinate notation (the notation of the UCI protocol), for example "e2e4" or "e7e8q".
+     *
+     * @param move Encoded move
+     * @return The move in coordinate notation, or "0000" for {@link #NO_MOVE}
+     */
+    public static String moveToString(int move) {
+        if (move == NO_MOVE)
+            return "0000";
+
+        String result = squareName(from(move)) + squareName(to(move));
+        if (promotion(move) != EMPTY)
+            result += " pnbrqk".charAt(promotion(move));
+        return result;
+    }
+
+    /**
+     * Find the legal move of the side to move matching a move in coordinate notation (see {@link #moveToString(int)}).
+     *
+     * @param move Move in coordinate notation
+     * @return The encoded move, or {@link #NO_MOVE} if no legal move matches
+     */
+    public int parseMove(String move) {
+        for (int legal : this.legalMoves()) {
+            if (moveToString(legal).equals(move))
+                return legal;
+        }
+        return NO_MOVE;
+    }
+
+    /**
+     * Encode a move of the side to move from its squares, reading its flag from the board instead of generating the
+     * legal moves. The move is only checked to be plausible (a piece of the side to move, not taking a piece of its side,
+     * promoting on the last rank, castling with the right to), and {@link #make(int)} still refuses it if it leaves the
+     * king in check.
+     *
+     * @param from Origin square
+     * @param to Destination square
+     * @param promotion Type of the piece a pawn is promoted to (KNIGHT to QUEEN), or EMPTY
+     * @return The encoded move, or {@link #NO_MOVE} if it can't be a move of this position
+     */
+    public int encodeMove(int from, int to, int promotion) {
+        int piece = this.squares[from], target = this.squares[to];
+        if (piece == EMPTY || color(piece) != this.sideToMove || from == to
+                || (target != EMPTY && color(target) == this.sideToMove))
+            return NO_MOVE;
+
+        int flag = NORMAL;
+        if (type(piece) == PAWN) {
+            boolean lastRank = rank(to) == (this.sideToMove == WHITE ? 7 : 0);
+            if (lastRank != (promotion >= KNIGHT && promotion <= QUEEN))
+                return NO_MOVE;
+            if (Math.abs(to - from) == 16)
+                flag = DOUBLE_PUSH;
+            else if (to == this.enPassant && file(to) != file(from) && target == EMPTY)
+                flag = EN_PASSANT;
+        } else if (promotion != EMPTY) {
+            return NO_MOVE;
+        } else if (type(piece) == KING && Math.abs(to - from) == 2) {
+            int right = this.sideToMove == WHITE ? (to > from ? WHITE_SHORT : WHITE_LONG)
+                    : (to > from ? BLACK_SHORT : BLACK_LONG);
+            if ((this.castling & right) == 0)
+                return NO_MOVE;
+            flag = CASTLE;
+        }
+        return move(from, to, promotion, flag);
+    }
+
+    /**
+     * Write a legal move of the side to move in standard algebraic notation (SAN, the notation of PGN files), for
+     * example "Nf3", "exd5", "O-O", "e8=Q+" or "Rad1#".
+     *
+     * @param move Encoded legal move
+     * @return The move in standard algebraic notation
+     */
+    public String toSan(int move) {
+        int from = from(move), to = to(move);
+        int type = type(this.squares[from]);
+        StringBuilder san = new StringBuilder();
+
+        if (flag(move) == CASTLE) {
+            san.append(file(to) == 6 ? "O-O" : "O-O-O");
+        } else if (type == PAWN) {
+            if (file(from) != file(to))
+                san.append((char) ('a' + file(from))).append('x');
+            san.append(squareName(to));
+            if (promotion(move) != EMPTY)
+                san.append('=').append(" PNBRQK".charAt(promotion(move)));
+        } else {
+            san.append(" PNBRQK".charAt(type));
+
+            // Disambiguation, when another piece of the same type can go to the same square
+            boolean ambiguous = false, sameFile = false, sameRank = false;
+            for (int other : this.legalMoves()) {
+                int otherFrom = from(other);
+                if (to(other) == to && otherFrom != from && this.squares[otherFrom] == this.squares[from]) {
+                    ambiguous = true;
+                    sameFile |= file(otherFrom) == file(from);
+                    sameRank |= rank(otherFrom) == rank(from);
+                }
+            }
+            if (ambiguous) {
+                if (!sameFile)
+                    san.append((char) ('a' + file(from)));
+                else if (!sameRank)
+                    san.append((char) ('1' + rank(from)));
+                else
+                    san.append(squareName(from));
+            }
+
+            if (this.squares[to] != EMPTY)
+                san.append('x');
+            san.append(squareName(to));
+        }
+
+        if (this.make(move)) {
+            if (this.isInCheck())
+                san.append(this.legalMoves().length == 0 ? '#' : '+');
+            this.unmake();
+        }
+        return san.toString();
+    }
+
+    /**
+     * Find the legal move of the side to move matching a move in standard algebraic notation (see {@link #toSan(int)}).
+     * Check marks and annotations ("+", "#", "!", "?") are ignored, as well as the "=" of promotions, and castling may be
+     * written with zeros.
+     *
+     * @param san Move in standard algebraic notation
+     * @return The encoded move, or {@link #NO_MOVE} if no legal move matches
+     */
+    public int parseSan(String san) {
+        String text = normalizeSan(san);
+        int[] legalMoves = this.legalMoves();
+
+        if (text.startsWith("O-O")) {
+            int castleFile = text.startsWith("O-O-O") ? 2 : 6;
+            for (int legal : legalMoves) {
+                if (flag(legal) == CASTLE && file(to(legal)) == castleFile)
+                    return legal;
+            }
+            return NO_MOVE;
+        }
+
+        int type = PAWN;
+        int start = 0;
+        if (!text.isEmpty() && "NBRQK".indexOf(text.charAt(0)) >= 0) {
+            type = "PNBRQK".indexOf(text.charAt(0)) + 1;
+            start = 1;
+        }
+
+        int end = text.length();
+        int promotion = EMPTY;
+        if (type == PAWN && end >= 3 && Character.isDigit(text.charAt(end - 2))
+                && "NBRQnbrq".indexOf(text.charAt(end - 1)) >= 0) {
+            promotion = "PNBRQK".indexOf(Character.toUpperCase(text.charAt(end - 1))) + 1;
+            end--;
+        }
+        if (end - start < 2)
+            return NO_MOVE;
+
+        int to;
+        try {
+            to = parseSquare(text.substring(end - 2, end));
+        } catch (IllegalArgumentException e) {
+            return NO_MOVE;
+        }
+
+        // What remains between the piece and the destination is the disambiguation (file and/or rank) and the capture
+        int fromFile = -1, fromRank = -1;
+        for (int i = start ; i < end - 2 ; i++) {
+            char c = text.charAt(i);
+            if (c >= 'a' && c <= 'h')
+                fromFile = c - 'a';
+            else if (c >= '1' && c <= '8')
+                fromRank = c - '1';
+            else if (c != 'x' && c != '-' && c != ':')
+                return NO_MOVE;
+        }
+
+        for (int legal : legalMoves) {
+            int from = from(legal);
+            if (to(legal) == to && type(this.squares[from]) == type && promotion(legal) == promotion
+                    && flag(legal) != CASTLE
+                    && (fromFile < 0 || file(from) == fromFile) && (fromRank < 0 || rank(from) == fromRank))
+                return legal;
+        }
+        return NO_MOVE;
+    }
+
+    /**
+     * @return A move in standard algebraic notation without its check marks, annotations and "=", and with castling
+     * written with letters
+     */
+    private static String normalizeSan(String san) {
+        StringBuilder result = new StringBuilder(san.length());
+        for (int i = 0 ; i < san.length() ; i++) {
+            char c = san.charAt(i);
+            if (c == '0')
+                result.append('O');
+            else if (c != '+' && c != '#' && c != '!' && c != '?' && c != '=')
+                result.append(c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return the piece code of a {@link ChessPiece.ChessPieceType} of a given color.
+     *
+     * @param type Type of the piece
+     * @param color Color of the piece
+     * @return The piece code
+     */
+    public static int pieceCode(ChessPiece.ChessPieceType type, Player.COLOR color) {
+        int code = switch (type) {
+            case PAWN -> PAWN;
+            case KNIGHT -> KNIGHT;
+            case BISHOP -> BISHOP;
+            case ROOK -> ROOK;
+            case QUEEN -> QUEEN;
+            case KING -> KING;
+        };
+        return code + (color == Player.COLOR.BLACK ? BLACK_PIECE : 0);
+    }
+}
@@ -0,0 +1,215 @@
+package com.thibclnt.chessgame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of the positions reached by the games of a {@link GameArchive} : for a position, it gives the games which
+ * reached it and at which ply, without replaying any game. Indexes are created by {@link PositionIndexBuilder}.
+ * <p>
+ *     The file is a header (magic number {@link #MAGIC}, version {@link #VERSION}) followed by segments. Each segment
+ *     is made of :
+ * </p>
+ * <ul>
+ *     <li> A header : number of entries (int), number of longs of the Bloom filter (int) </li>
+ *     <li> A Bloom filter of the position hashes of the segment (longs) </li>
+ *     <li> The entries, sorted by position hash : hash ({@link Position#getKey()}, long), game number (int), ply
+ *     (int) </li>
+ * </ul>
+ * <p>
+ *     Each segment is mapped in memory with {@link FileChannel#map}. A query first checks the Bloom filter of each
+ *     segment, which tells for sure when a position is not in the segment, and only binary searches the segments which
+ *     may contain it.
+ * </p> <p>
+ *     An index is read only, and may be shared between threads.
+ * </p>
+ * @see PositionIndexBuilder
+ */
+public class PositionIndex {
+
+    /** Magic number at the beginning of an index file ("JBPI") */
+    public static final int MAGIC = 0x4A425049;
+    /** Version of the file format */
+    public static final int VERSION = 1;
+    /** Size of the header of the file, in bytes */
+    public static final int HEADER_SIZE = 8;
+    /** Size of the header of a segment, in bytes */
+    public static final int SEGMENT_HEADER_SIZE = 8;
+    /** Size of an entry, in bytes */
+    public static final int ENTRY_SIZE = 16;
+    /** Number of hash functions of the Bloom filters */
+    public static final int BLOOM_HASHES = 7;
+    /** Number of bits of the Bloom filters by entry, giving about 1% of false positives */
+    public static final int BLOOM_BITS_PER_ENTRY = 10;
+
+    /**
+     * Struct-like class to store a game which reached a position.
+     */
+    public static class Match {
+        /** Number of the game in the archive */
+        public final int game;
+        /** Number of half moves played in the game before the position was reached */
+        public final int ply;
+
+        public Match(int game, int ply) {
+            this.game = game;
+            this.ply = ply;
+        }
+
+        @Override
+        public String toString() {
+            return "game " + game + " ply " + ply;
+        }
+    }
+
+    /**
+     * A segment of the index.
+     */
+    private static class Segment {
+        final long[] bloom;
+        final ByteBuffer entries;
+        final int size;
+
+        Segment(long[] bloom, ByteBuffer entries, int size) {
+            this.bloom = bloom;
+            this.entries = entries;
+            this.size = size;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private long size = 0;
+
+    /**
+     * Open an index file.
+     *
+     * @param path Path of the index file
+     * @throws IOException If the file can't be read or is not an index
+     */
+    public PositionIndex(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                throw new IOException("Not a position index of version " + VERSION + " : " + path);
+
+            long position = HEADER_SIZE;
+            while (position + SEGMENT_HEADER_SIZE <= channel.size()) {
+                ByteBuffer segmentHeader = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+                channel.read(segmentHeader, position);
+                int entries = segmentHeader.getInt(0);
+                int bloomLongs = segmentHeader.getInt(4);
+                long entriesStart = position + SEGMENT_HEADER_SIZE + 8L * bloomLongs;
+                long end = entriesStart + (long) ENTRY_SIZE * entries;
+                // A segment which was not completely written is ignored, as well as the ones after it
+                if (end > channel.size())
+                    break;
+
+                // The Bloom filter is read on the heap, as every query reads it
+                ByteBuffer bloomBytes = channel.map(FileChannel.MapMode.READ_ONLY, position + SEGMENT_HEADER_SIZE, 8L * bloomLongs);
+                long[] bloom = new long[bloomLongs];
+                bloomBytes.asLongBuffer().get(bloom);
+
+                ByteBuffer entryBytes = channel.map(FileChannel.MapMode.READ_ONLY, entriesStart, (long) ENTRY_SIZE * entries);
+                this.segments.add(new Segment(bloom, entryBytes, entries));
+                this.size += entries;
+                position = end;
+            }
+        }
+    }
+
+    /**
+     * Find the games which reached a position.
+     *
+     * @param key Hash of the position ({@link Position#getKey()})
+     * @return The games and plies where the position was reached, sorted by game and ply
+     */
+    public List<Match> find(long key) {
+        List<Match> matches = new ArrayList<>();
+        for (Segment segment : this.segments) {
+            if (!mayContain(segment.bloom, key))
+                continue;
+
+            int low = 0, high = segment.size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (segment.entries.getLong(middle * ENTRY_SIZE) < key)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            for (int i = low ; i < segment.size && segment.entries.getLong(i * ENTRY_SIZE) == key ; i++)
+                matches.add(new Match(segment.entries.getInt(i * ENTRY_SIZE + 8), segment.entries.getInt(i * ENTRY_SIZE + 12)));
+        }
+        // Segments are written in the order they were built, which is not the order of the games
+        matches.sort(Comparator.comparingInt((Match match) -> match.game).thenComparingInt(match -> match.ply));
+        return matches;
+    }
+
+    /**
+     * Find the games which reached a position.
+     *
+     * @param position {@link Position} to look for
+     * @return The games and plies where the position was reached
+     */
+    public List<Match> find(Position position) {
+        return this.find(position.getKey());
+    }
+
+    /**
+     * Add a position hash to a Bloom filter.
+     *
+     * @param bloom Bits of the filter. Its length must be a power of two.
+     * @param key Hash of the position
+     */
+    static void addToBloom(long[] bloom, long key) {
+        long hash = mix(key);
+        long step = (hash >>> 32) | 1;
+        long mask = bloom.length * 64L - 1;
+        for (int i = 0 ; i < BLOOM_HASHES ; i++) {
+            long bit = (hash + i * step) & mask;
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if a position hash is certainly not in a Bloom filter, true if it may be
+     */
+    static boolean mayContain(long[] bloom, long key) {
+        long hash = mix(key);
+        long step = (hash >>> 32) | 1;
+        long mask = bloom.length * 64L - 1;
+        for (int i = 0 ; i < BLOOM_HASHES ; i++) {
+            long bit = (hash + i * step) & mask;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Mix the bits of a hash (finalizer of splitmix64), so that the bits of the filter don't depend on the low bits
+     * of the Zobrist hash only.
+     */
+    private static long mix(long key) {
+        key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+        key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+        return key ^ (key >>> 31);
+    }
+
+    /** @return The number of segments of the index */
+    public int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    /** @return The number of entries (game and ply) of the index */
+    public long getSize() {
+        return this.size;
+    }
+}
@@ -0,0 +1,205 @@
+package com.thibclnt.chessgame;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Offline tool creating a {@link PositionIndex} from a {@link GameArchive}.
+ * <p>
+ *     The archive is cut in ranges of {@link #DEFAULT_GAMES_BY_SEGMENT} games, which are replayed in parallel. Each range
+ *     gives a segment of the index : the (position hash, game, ply) entries of its games, sorted by hash, with the Bloom
+ *     filter of its hashes. Segments are appended to the file as soon as they are ready, so only one segment by thread
+ *     is held in memory.
+ * </p> <p>
+ *     Usage : {@code PositionIndexBuilder [-games n] archive index.jpi}
+ * </p>
+ * @see PositionIndex
+ */
+public class PositionIndexBuilder {
+
+    /** Default number of games of each segment */
+    public static final int DEFAULT_GAMES_BY_SEGMENT = 20000;
+
+    private final GameArchive archive;
+    private final int gamesBySegment;
+
+    /**
+     * Create a builder.
+     *
+     * @param archive {@link GameArchive} to index
+     * @param gamesBySegment Number of games of each segment
+     */
+    public PositionIndexBuilder(GameArchive archive, int gamesBySegment) {
+        if (gamesBySegment <= 0)
+            throw new IllegalArgumentException("The number of games by segment must be positive");
+        this.archive = archive;
+        this.gamesBySegment = gamesBySegment;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int gamesBySegment = DEFAULT_GAMES_BY_SEGMENT;
+        int first = 0;
+        if (args.length > 1 && args[0].equals("-games")) {
+            gamesBySegment = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        if (args.length - first != 2) {
+            System.err.println("Usage : PositionIndexBuilder [-games n] archive index.jpi");
+            System.exit(1);
+        }
+
+        long start = System.currentTimeMillis();
+        GameArchive archive = new GameArchive(Path.of(args[first]));
+        long entries = new PositionIndexBuilder(archive, gamesBySegment).write(Path.of(args[first + 1]));
+        System.out.println(archive.getSize() + " games, " + entries + " positions indexed in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Replay the games of the archive and write the index.
+     *
+     * @param path Path of the index file
+     * @return The number of entries written
+     * @throws IOException If the file can't be written
+     */
+    public long write(Path path) throws IOException {
+        AtomicLong entries = new AtomicLong();
+        int segments = (this.archive.getSize() + this.gamesBySegment - 1) / this.gamesBySegment;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(PositionIndex.HEADER_SIZE);
+            header.putInt(PositionIndex.MAGIC).putInt(PositionIndex.VERSION).flip();
+            writeFully(channel, header);
+
+            try {
+                IntStream.range(0, segments).parallel().forEach(segment -> {
+                    int from = segment * this.gamesBySegment;
+                    int to = Math.min(this.archive.getSize(), from + this.gamesBySegment);
+                    ByteBuffer bytes = this.buildSegment(from, to);
+                    entries.addAndGet(bytes.getInt(0));
+                    synchronized (channel) {
+                        try {
+                            writeFully(channel, bytes);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return entries.get();
+    }
+
+    /**
+     * Replay a range of games and build their segment.
+     *
+     * @param from First game of the segment
+     * @param to Game after the last game of the segment
+     * @return The bytes of the segment, ready to be written
+     */
+    private ByteBuffer buildSegment(int from, int to) {
+        long[] keys = new long[1024];
+        long[] values = new long[1024];
+        int count = 0;
+
+        for (int game = from ; game < to ; game++) {
+            GameArchive.Header header = this.archive.getHeader(game);
+            Position position = header.getStartPosition();
+            int[] moves = this.archive.getMoves(game);
+
+            if (count + moves.length + 1 > keys.length) {
+                int length = Math.max(2 * keys.length, count + moves.length + 1);
+                keys = Arrays.copyOf(keys, length);
+                values = Arrays.copyOf(values, length);
+            }
+            for (int ply = 0 ; ply <= moves.length ; ply++) {
+                keys[count] = position.getKey();
+                values[count] = (long) game << 32 | ply;
+                count++;
+                if (ply < moves.length)
+                    position.make(moves[ply]);
+            }
+        }
+        sort(keys, values, 0, count - 1);
+
+        // Smallest power of two of at least BLOOM_BITS_PER_ENTRY bits by entry, in longs
+        long bits = Math.max(64, (long) count * PositionIndex.BLOOM_BITS_PER_ENTRY);
+        int bloomLongs = (int) (Long.highestOneBit(bits - 1) << 1 >>> 6);
+        long[] bloom = new long[Math.max(1, bloomLongs)];
+        for (int i = 0 ; i < count ; i++)
+            PositionIndex.addToBloom(bloom, keys[i]);
+
+        ByteBuffer bytes = ByteBuffer.allocate(PositionIndex.SEGMENT_HEADER_SIZE + 8 * bloom.length
+                + PositionIndex.ENTRY_SIZE * count);
+        bytes.putInt(count).putInt(bloom.length);
+        for (long word : bloom)
+            bytes.putLong(word);
+        for (int i = 0 ; i < count ; i++)
+            bytes.putLong(keys[i]).putInt((int) (values[i] >>> 32)).putInt((int) values[i]);
+        return bytes.flip();
+    }
+
+    /**
+     * Sort entries by hash, and by game and ply for equal hashes (quicksort of two arrays at once).
+     *
+     * @param keys Position hashes
+     * @param values Game and ply of each entry
+     * @param low First index to sort
+     * @param high Last index to sort
+     */
+    private static void sort(long[] keys, long[] values, int low, int high) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle], pivotValue = values[middle];
+            int i = low, j = high;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pivotKey, pivotValue) < 0)
+                    i++;
+                while (compare(keys[j], values[j], pivotKey, pivotValue) > 0)
+                    j--;
+                if (i <= j)
+                    swap(keys, values, i++, j--);
+            }
+            // Recursion on the smallest part, so that the depth stays logarithmic
+            if (j - low < high - i) {
+                sort(keys, values, low, j);
+                low = i;
+            } else {
+                sort(keys, values, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1 ; i <= high ; i++) {
+            for (int j = i ; j > low && compare(keys[j - 1], values[j - 1], keys[j], values[j]) > 0 ; j--)
+                swap(keys, values, j - 1, j);
+        }
+    }
+
+    private static int compare(long key1, long value1, long key2, long value2) {
+        return key1 != key2 ? Long.compare(key1, key2) : Long.compare(value1, value2);
+    }
+
+    private static void swap(long[] keys, long[] values, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,103 @@
+package com.thibclnt.chessgame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable snapshot of the position of a {@link ChessGame}, published after each move (see
+ * {@link ChessGame#getSnapshot()}).
+ * <p>
+ *     The pieces of a game are modified in place by the thread playing it, so another thread reading them may see a
+ *     move half done (a castling with the king moved but not the rook, a promoted pawn and its new piece both on the
+ *     board...). A snapshot is never modified once created : any thread may read it without lock, and always sees the
+ *     position between two moves. It is stored in the compact format of {@link Position#writeSnapshot(ByteBuffer)}.
+ * </p>
+ */
+public final class PositionSnapshot {
+
+    private final byte[] data;
+    private final int ply;
+    private final int lastMove;
+    private final int whiteScore;
+    private final int blackScore;
+
+    /**
+     * Create a snapshot.
+     *
+     * @param data Position, written by {@link Position#writeSnapshot(ByteBuffer)}. It must not be modified anymore.
+     * @param ply Number of moves played in the game
+     * @param lastMove Last move played, encoded as with {@link Position#move(int, int, int, int)}, or
+     *                 {@link Position#NO_MOVE}
+     * @param whiteScore Score of the white player
+     * @param blackScore Score of the black player
+     */
+    PositionSnapshot(byte[] data, int ply, int lastMove, int whiteScore, int blackScore) {
+        if (data.length != Position.SNAPSHOT_SIZE)
+            throw new IllegalArgumentException("A position snapshot is " + Position.SNAPSHOT_SIZE + " bytes long");
+        this.data = data;
+        this.ply = ply;
+        this.lastMove = lastMove;
+        this.whiteScore = whiteScore;
+        this.blackScore = blackScore;
+    }
+
+    /**
+     * @param square Square, from 0 (a1) to 63 (h8)
+     * @return The piece on the square, coded as in {@link Position}, or {@link Position#EMPTY}
+     */
+    public int pieceAt(int square) {
+        int pieces = this.data[square >> 1] & 0xFF;
+        return (square & 1) == 0 ? pieces >>> 4 : pieces & 0xF;
+    }
+
+    /** @return The color to move, {@link Position#WHITE} or {@link Position#BLACK} */
+    public int getSideToMove() {
+        return this.data[32];
+    }
+
+    /** @return The castling rights, a combination of {@link Position#WHITE_SHORT}... */
+    public int getCastling() {
+        return this.data[33];
+    }
+
+    /** @return The en passant square, or -1 if there is none */
+    public int getEnPassant() {
+        return this.data[34];
+    }
+
+    /** @return A new {@link Position}, without history, which may be searched or modified */
+    public Position toPosition() {
+        return Position.readSnapshot(ByteBuffer.wrap(this.data));
+    }
+
+    /** @return The FEN of the position */
+    public String toFen() {
+        return this.toPosition().toFen();
+    }
+
+    /** @return The number of moves played in the game */
+    public int getPly() {
+        return this.ply;
+    }
+
+    /** @return The last move played, or {@link Position#NO_MOVE} if it is unknown or if no move was played */
+    public int getLastMove() {
+        return this.lastMove;
+    }
+
+    /**
+     * @param color {@link Position#WHITE} or {@link Position#BLACK}
+     * @return The score of the player of this color
+     */
+    public int getScore(int color) {
+        return color == Position.WHITE ? this.whiteScore : this.blackScore;
+    }
+
+    @Override
+    public String toString() {
+        return "PositionSnapshot{" +
+                "fen=" + toFen() +
+                ", ply=" + ply +
+                ", lastMove=" + Position.moveToString(lastMove) +
+                '}';
+    }
+}
@@ -0,0 +1,41 @@
+package com.thibclnt.chessgame;
+
+/**
+ * {@link MoveCodec} storing each move on 3 bytes (the 17 bits of {@link Position#move(int, int, int, int)}). It is the
+ * fastest codec, as it doesn't need the rules, but also the largest.
+ * @see LegalIndexMoveCodec
+ */
+public class RawMoveCodec implements MoveCodec {
+
+    /** Id of the codec */
+    public static final int ID = 0;
+    /** The codec has no state, so a single instance is used */
+    public static final RawMoveCodec INSTANCE = new RawMoveCodec();
+
+    private RawMoveCodec() {
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] encode(Position start, int[] moves) {
+        byte[] bytes = new byte[moves.length * 3];
+        for (int i = 0 ; i < moves.length ; i++) {
+            bytes[3 * i] = (byte) (moves[i] >>> 16);
+            bytes[3 * i + 1] = (byte) (moves[i] >>> 8);
+            bytes[3 * i + 2] = (byte) moves[i];
+        }
+        return bytes;
+    }
+
+    @Override
+    public int[] decode(Position start, byte[] data, int plies) {
+        int[] moves = new int[plies];
+        for (int i = 0 ; i < plies ; i++)
+            moves[i] = (data[3 * i] & 0xFF) << 16 | (data[3 * i + 1] & 0xFF) << 8 | (data[3 * i + 2] & 0xFF);
+        return moves;
+    }
+}
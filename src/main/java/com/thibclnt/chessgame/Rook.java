@@ -45,6 +45,15 @@ public class Rook extends ChessPiece{
         return this.hasAlreadyMoved;
     }
 
+    /**
+     * Set if the piece has already moved, when a move is undone or redone by {@link ChessGame#undo()} and
+     * {@link ChessGame#redo()}.
+     * @param hasAlreadyMoved New value of {@link Rook#hasAlreadyMoved}
+     */
+    void setAlreadyMoved(boolean hasAlreadyMoved) {
+        this.hasAlreadyMoved = hasAlreadyMoved;
+    }
+
     @Override
     protected Set<Pos> getLegalMoves(boolean ignoreKing) {
         HashSet<Pos> legal_moves = new HashSet<>();
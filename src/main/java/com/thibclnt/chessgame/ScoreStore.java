@@ -0,0 +1,491 @@
+package com.thibclnt.chessgame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store of the results of the players, giving a leaderboard which survives the application.
+ * <p>
+ *     The store is a directory containing two files :
+ * </p>
+ * <ul>
+ *     <li> The log ({@link #LOG_FILE}) : the results recorded since the last snapshot, one after the other. Each record is
+ *     its length (int), the CRC32 of its content (int), then its content : sequence number (long), name of the player,
+ *     outcome, score, number of moves and time of the game </li>
+ *     <li> The snapshot ({@link #SNAPSHOT_FILE}) : the standings of all the players (magic number {@link #MAGIC}, version
+ *     {@link #VERSION}, sequence number of the last record included, then the standings and a CRC32) </li>
+ * </ul>
+ * <p>
+ *     When opened, the store reads the snapshot and replays the records of the log which are not in it. A record which
+ *     was not completely written (the application stopped in the middle) is dropped with the rest of the log.
+ * </p> <p>
+ *     {@link #record(String, Outcome, int, int)} never blocks : the record is put in a queue and written by a background
+ *     thread, which writes all the records waiting at once and forces them to the disk with a single fsync. The
+ *     standings are updated by this thread once the record is written, so they may lag a few milliseconds behind. Every
+ *     {@link #DEFAULT_COMPACTION_RECORDS} records, the same thread writes a new snapshot and empties the log.
+ * </p> <p>
+ *     A store may be shared between threads, but a directory must only be opened by one store at a time.
+ * </p>
+ */
+public class ScoreStore implements Closeable {
+
+    /** Names of the files of the store */
+    public static final String LOG_FILE = "scores.log", SNAPSHOT_FILE = "scores.snap";
+    /** Magic number of the snapshot ("JBSS") */
+    public static final int MAGIC = 0x4A425353;
+    /** Version of the file formats */
+    public static final int VERSION = 1;
+    /** Default number of records of the log after which a snapshot is written */
+    public static final int DEFAULT_COMPACTION_RECORDS = 1000;
+    /** Points given by a win and by a draw in the leaderboard */
+    public static final int WIN_POINTS = 2, DRAW_POINTS = 1;
+    /** Maximum length of the name of a player */
+    public static final int MAX_NAME_LENGTH = 256;
+
+    /** Outcome of a game for a player */
+    public enum Outcome {WIN, DRAW, LOSS}
+
+    /**
+     * Struct-like class to store the results of a player over all its games. Standings are immutable : a new one is
+     * created when a result is recorded.
+     */
+    public static class Standing {
+        public final String name;
+        public final int wins;
+        public final int draws;
+        public final int losses;
+        /** Sum of the scores of the player (value of the pieces captured) */
+        public final long totalScore;
+        /** Sum of the numbers of moves played by the player */
+        public final long totalMoves;
+
+        public Standing(String name, int wins, int draws, int losses, long totalScore, long totalMoves) {
+            this.name = name;
+            this.wins = wins;
+            this.draws = draws;
+            this.losses = losses;
+            this.totalScore = totalScore;
+            this.totalMoves = totalMoves;
+        }
+
+        /**
+         * @return The standing after a game
+         */
+        Standing with(Outcome outcome, int score, int moves) {
+            return new Standing(this.name, this.wins + (outcome == Outcome.WIN ? 1 : 0),
+                    this.draws + (outcome == Outcome.DRAW ? 1 : 0), this.losses + (outcome == Outcome.LOSS ? 1 : 0),
+                    this.totalScore + score, this.totalMoves + moves);
+        }
+
+        /** @return The number of games of the player */
+        public int getGames() {
+            return this.wins + this.draws + this.losses;
+        }
+
+        /** @return The points of the player in the leaderboard */
+        public int getPoints() {
+            return WIN_POINTS * this.wins + DRAW_POINTS * this.draws;
+        }
+
+        @Override
+        public String toString() {
+            return name + " : " + getPoints() + " points (+" + wins + " =" + draws + " -" + losses + ")";
+        }
+    }
+
+    /**
+     * Struct-like class to store a result waiting to be written.
+     */
+    private static class Record {
+        final String name;
+        final Outcome outcome;
+        final int score;
+        final int moves;
+        final long time;
+        /** Not null for a marker put by {@link #flush()}, counted down once the records before it are written */
+        final CountDownLatch written;
+
+        Record(String name, Outcome outcome, int score, int moves, long time) {
+            this(name, outcome, score, moves, time, null);
+        }
+
+        Record(String name, Outcome outcome, int score, int moves, long time, CountDownLatch written) {
+            this.name = name;
+            this.outcome = outcome;
+            this.score = score;
+            this.moves = moves;
+            this.time = time;
+            this.written = written;
+        }
+    }
+
+    /** Put in the queue to stop the writer thread */
+    private static final Record END = new Record("", Outcome.DRAW, 0, 0, 0);
+
+    private final Path directory;
+    private final int compactionRecords;
+    private final Map<String, Standing> standings = new ConcurrentHashMap<>();
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final FileChannel log;
+    /** Sequence number of the last record written, and of the last one in the snapshot */
+    private long sequence = 0, snapshotSequence = 0;
+    private int logRecords = 0;
+    private volatile boolean closed = false;
+    private volatile IOException error = null;
+
+    /**
+     * Open a store, creating it if needed, with {@link #DEFAULT_COMPACTION_RECORDS}.
+     *
+     * @param directory Directory of the store
+     * @throws IOException If the files can't be read or are invalid
+     */
+    public ScoreStore(Path directory) throws IOException {
+        this(directory, DEFAULT_COMPACTION_RECORDS);
+    }
+
+    /**
+     * Open a store, creating it if needed.
+     *
+     * @param directory Directory of the store
+     * @param compactionRecords Number of records of the log after which a snapshot is written
+     * @throws IOException If the files can't be read or are invalid
+     */
+    public ScoreStore(Path directory, int compactionRecords) throws IOException {
+        this.directory = directory;
+        this.compactionRecords = compactionRecords;
+        Files.createDirectories(directory);
+
+        this.readSnapshot();
+        this.log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            this.replayLog();
+        } catch (IOException | RuntimeException e) {
+            // The store is not created : its log must not stay open
+            this.log.close();
+            throw e;
+        }
+
+        this.writer = new Thread(this::writeLoop, "score-store-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Record the result of a game for a player. The record is written in the background : this method never blocks.
+     *
+     * @param name Name of the player
+     * @param outcome Outcome of the game for the player
+     * @param score Score of the player in the game
+     * @param moves Number of moves played by the player in the game
+     * @throws IllegalStateException If the store is closed
+     * @throws IllegalArgumentException If the name is longer than {@link #MAX_NAME_LENGTH}
+     */
+    public void record(String name, Outcome outcome, int score, int moves) {
+        if (this.closed)
+            throw new IllegalStateException("The score store is closed");
+        if (name.length() > MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("The name of a player is limited to " + MAX_NAME_LENGTH + " characters");
+        this.queue.add(new Record(name, outcome, score, moves, System.currentTimeMillis()));
+    }
+
+    /**
+     * Record the result of a game for a player, with its current score and number of moves.
+     *
+     * @param player {@link Player} whose result is recorded
+     * @param outcome Outcome of the game for the player
+     */
+    public void record(Player player, Outcome outcome) {
+        this.record(player.getName(), outcome, player.getScore(), player.getPlayedMoves());
+    }
+
+    /**
+     * @param name Name of a player
+     * @return The standing of the player, or null if it has no recorded game
+     */
+    public Standing getStanding(String name) {
+        return this.standings.get(name);
+    }
+
+    /**
+     * @param count Maximum number of players returned
+     * @return The best players, by decreasing points, then by decreasing total score
+     */
+    public List<Standing> getLeaderboard(int count) {
+        List<Standing> leaderboard = new ArrayList<>(this.standings.values());
+        leaderboard.sort(Comparator.comparingInt(Standing::getPoints).thenComparingLong(standing -> standing.totalScore)
+                .reversed().thenComparing(standing -> standing.name));
+        return leaderboard.subList(0, Math.min(count, leaderboard.size()));
+    }
+
+    /**
+     * Wait until all the results recorded before are written to the disk and applied to the standings.
+     *
+     * @throws IOException If a record could not be written
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void flush() throws IOException, InterruptedException {
+        if (!this.closed) {
+            CountDownLatch written = new CountDownLatch(1);
+            this.queue.add(new Record("", Outcome.DRAW, 0, 0, 0, written));
+            // The writer may have been stopped by a concurrent close
+            while (!written.await(100, TimeUnit.MILLISECONDS)) {
+                if (!this.writer.isAlive())
+                    break;
+            }
+        }
+        if (this.error != null)
+            throw this.error;
+    }
+
+    /**
+     * Write the records waiting, stop the writer thread and close the log.
+     *
+     * @throws IOException If a record could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+        this.queue.add(END);
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.log.close();
+        if (this.error != null)
+            throw this.error;
+    }
+
+    /**
+     * Loop of the writer thread : write the records waiting by batches, with one fsync by batch.
+     */
+    private void writeLoop() {
+        List<Record> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            this.queue.drainTo(batch);
+            // The writer stops after this batch even if it fails, so that close() doesn't wait for it forever
+            running = !batch.contains(END);
+
+            try {
+                this.writeBatch(batch);
+                if (this.logRecords >= this.compactionRecords)
+                    this.compact();
+            } catch (IOException e) {
+                // The records are lost, but the standings stay the ones of the disk
+                this.error = e;
+            }
+            for (Record record : batch) {
+                if (record.written != null)
+                    record.written.countDown();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Write a batch of records, force them to the disk and apply them to the standings. If the batch can't be written,
+     * the log is cut back to its size before the batch, so that no partial record hides the next ones.
+     */
+    private void writeBatch(List<Record> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        List<Record> written = new ArrayList<>();
+        for (Record record : batch) {
+            if (record == END || record.written != null)
+                continue;
+            bytes.write(encode(this.sequence + written.size() + 1, record));
+            written.add(record);
+        }
+        if (written.isEmpty())
+            return;
+
+        long size = this.log.size();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining())
+                this.log.write(buffer, size + buffer.position());
+            this.log.force(false);
+        } catch (IOException e) {
+            try {
+                this.log.truncate(size);
+            } catch (IOException ignored) {
+                // The next replay drops the log from the partial record
+            }
+            throw e;
+        }
+
+        for (Record record : written)
+            this.apply(record.name, record.outcome, record.score, record.moves);
+        this.sequence += written.size();
+        this.logRecords += written.size();
+    }
+
+    /**
+     * Write a snapshot of the standings, then empty the log. The snapshot is written in a temporary file and renamed,
+     * so that a snapshot is always complete. If the application stops before the log is emptied, the records already in
+     * the snapshot are recognized by their sequence number and skipped.
+     */
+    private void compact() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(this.sequence);
+        output.writeInt(this.standings.size());
+        for (Standing standing : this.standings.values()) {
+            output.writeUTF(standing.name);
+            output.writeInt(standing.wins);
+            output.writeInt(standing.draws);
+            output.writeInt(standing.losses);
+            output.writeLong(standing.totalScore);
+            output.writeLong(standing.totalMoves);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        output.writeLong(crc.getValue());
+
+        Path temporary = this.directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, this.directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        this.snapshotSequence = this.sequence;
+        this.log.truncate(0);
+        this.log.force(true);
+        this.logRecords = 0;
+    }
+
+    private void readSnapshot() throws IOException {
+        Path path = this.directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(path))
+            return;
+
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < 8)
+            throw new IOException("Truncated score snapshot : " + path);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, Math.max(0, bytes.length - 8));
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+                throw new IOException("Not a score snapshot of version " + VERSION + " : " + path);
+            if (ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong() != crc.getValue())
+                throw new IOException("Corrupted score snapshot : " + path);
+
+            this.snapshotSequence = this.sequence = input.readLong();
+            int count = input.readInt();
+            for (int i = 0 ; i < count ; i++) {
+                Standing standing = new Standing(input.readUTF(), input.readInt(), input.readInt(), input.readInt(),
+                        input.readLong(), input.readLong());
+                this.standings.put(standing.name, standing);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated score snapshot : " + path, e);
+        }
+    }
+
+    /**
+     * Apply the records of the log which are not in the snapshot, and cut the log after the last complete record.
+     */
+    private void replayLog() throws IOException {
+        long size = this.log.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(8);
+        while (position + 8 <= size) {
+            header.clear();
+            this.log.read(header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || position + 8 + length > size)
+                break;
+
+            ByteBuffer content = ByteBuffer.allocate(length);
+            this.log.read(content, position + 8);
+            CRC32 crc = new CRC32();
+            crc.update(content.array());
+            if ((int) crc.getValue() != header.getInt(4))
+                break;
+
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(content.array()));
+            long sequence = input.readLong();
+            String name = input.readUTF();
+            Outcome outcome = Outcome.values()[input.readByte()];
+            int score = input.readInt();
+            int moves = input.readInt();
+            if (sequence > this.snapshotSequence) {
+                this.apply(name, outcome, score, moves);
+                this.sequence = sequence;
+            }
+            this.logRecords++;
+            position += 8 + length;
+        }
+        if (position < size) {
+            this.log.truncate(position);
+            this.log.force(true);
+        }
+    }
+
+    /**
+     * @return The bytes of a record of the log
+     */
+    private static byte[] encode(long sequence, Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeLong(sequence);
+        output.writeUTF(record.name);
+        output.writeByte(record.outcome.ordinal());
+        output.writeInt(record.score);
+        output.writeInt(record.moves);
+        output.writeLong(record.time);
+        byte[] content = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return ByteBuffer.allocate(8 + content.length).putInt(content.length).putInt((int) crc.getValue())
+                .put(content).array();
+    }
+
+    private void apply(String name, Outcome outcome, int score, int moves) {
+        this.standings.merge(name, new Standing(name, 0, 0, 0, 0, 0).with(outcome, score, moves),
+                (old, ignored) -> old.with(outcome, score, moves));
+    }
+
+    /** @return The number of players with a recorded game */
+    public int getSize() {
+        return this.standings.size();
+    }
+}
@@ -0,0 +1,666 @@
+package com.thibclnt.chessgame;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Search of the best move in a {@link Position}, with a principal variation search (PVS) and iterative deepening : the
+ * position is searched at depth 1, then 2, etc. until the {@link TimeManager} or the maximum depth stops it. The leaves of
+ * the search are extended by a quiescence search, which only explores captures, and are evaluated with an
+ * {@link Evaluation}.
+ * <p>
+ *     On top of the alpha-beta algorithm, the search uses the following techniques, which can each be switched off with
+ *     {@link Options} in order to measure their effect on the number of nodes needed to reach a depth
+ *     (see {@link SearchBenchmark}) :
+ * </p>
+ * <ul>
+ *     <li> Transposition table : the best move of a position already searched is searched first, and its score is
+ *     reused if it was searched deep enough (see {@link TranspositionTable}) </li>
+ *     <li> PVS : only the first move is searched with the full window, the others with a zero window proving they are
+ *     not better, and are re-searched only when they are </li>
+ *     <li> Aspiration windows : each iteration starts with a small window around the score of the previous one, which
+ *     is widened when the score falls outside </li>
+ *     <li> Null move pruning : if the position is still too good after passing, it is cut. It is disabled in check and
+ *     in pawn endgames, where passing would often be the best move (zugzwang) </li>
+ *     <li> Late move reductions : the quiet moves ordered last are searched at a depth reduced by a logarithmic amount,
+ *     and re-searched at full depth only if they beat the best move </li>
+ * </ul>
+ * <p>
+ *     A search is not thread safe : each thread must use its own instance. However {@link #stop()} may be called from
+ *     another thread to abort a running search.
+ * </p>
+ * @see TimeManager
+ * @see Evaluation
+ */
+public class Search {
+
+    /** Score greater than any real score */
+    public static final int INFINITY = 32000;
+    /** Score of a checkmate at the root. A mate in n plies is worth MATE - n */
+    public static final int MATE = 31000;
+    /** Maximum depth of the search, in plies */
+    public static final int MAX_PLY = 128;
+
+    /** Half width of the first aspiration window, in centipawns */
+    private static final int ASPIRATION_WINDOW = 25;
+    /** Late move reductions, indexed by the remaining depth and the number of the move */
+    private static final int[][] REDUCTIONS = new int[64][64];
+
+    static {
+        for (int depth = 1 ; depth < 64 ; depth++) {
+            for (int moveNumber = 1 ; moveNumber < 64 ; moveNumber++) {
+                REDUCTIONS[depth][moveNumber] = (int) (0.75 + Math.log(depth) * Math.log(moveNumber) / 2.25);
+            }
+        }
+    }
+
+    /**
+     * Struct-like class to switch on or off each technique of the search. All of them are enabled by default.
+     */
+    public static class Options {
+        public boolean transpositionTable = true;
+        public boolean principalVariationSearch = true;
+        public boolean aspirationWindows = true;
+        public boolean nullMovePruning = true;
+        public boolean lateMoveReductions = true;
+
+        /** @return Options with every technique disabled, i.e. a plain alpha-beta search */
+        public static Options none() {
+            Options options = new Options();
+            options.transpositionTable = false;
+            options.principalVariationSearch = false;
+            options.aspirationWindows = false;
+            options.nullMovePruning = false;
+            options.lateMoveReductions = false;
+            return options;
+        }
+
+        @Override
+        public String toString() {
+            return "Options{" +
+                    "tt=" + transpositionTable +
+                    ", pvs=" + principalVariationSearch +
+                    ", aspiration=" + aspirationWindows +
+                    ", nullMove=" + nullMovePruning +
+                    ", lmr=" + lateMoveReductions +
+                    '}';
+        }
+    }
+
+    /**
+     * Struct-like class to store the result of a search, with statistics on the time used and on the techniques of
+     * the search.
+     */
+    public static class Result {
+        /** Best move found, or {@link Position#NO_MOVE} if the position has no legal move */
+        public int bestMove;
+        /** Score of the best move, from the point of view of the side to move */
+        public int score;
+        /** Depth of the last completed iteration */
+        public int depth;
+        /** Number of nodes searched */
+        public long nodes;
+        /** Number of nodes searched when each iteration was completed, indexed by depth */
+        public long[] nodesToDepth = new long[MAX_PLY + 1];
+        /** Time used by the search, in milliseconds */
+        public long timeMillis;
+        /** Time and number of nodes of the iteration after which the best move didn't change anymore */
+        public long bestMoveTimeMillis;
+        public long bestMoveNodes;
+        /** Limits given by the {@link TimeManager}, in milliseconds */
+        public long softLimitMillis;
+        public long hardLimitMillis;
+        /** Number of positions found in the transposition table */
+        public long ttHits;
+        /** Number of positions found in the endgame tablebase */
+        public long tablebaseHits;
+        /** Number of cut-offs given by null moves */
+        public long nullMoveCutoffs;
+        /** Number of moves re-searched with a full window after a zero window search */
+        public long pvsResearches;
+        /** Number of iterations re-searched because the score fell outside the aspiration window */
+        public long aspirationResearches;
+
+        /** @return The number of nodes searched per second */
+        public long getNodesPerSecond() {
+            return this.nodes * 1000 / Math.max(1, this.timeMillis);
+        }
+
+        /**
+         * The effective branching factor is the average growth of the number of nodes from one iteration to the next.
+         * The lower it is, the deeper the search goes in a given time.
+         *
+         * @return The effective branching factor of the search, or 0 if less than two iterations were completed
+         */
+        public double getEffectiveBranchingFactor() {
+            if (this.depth < 2 || this.nodesToDepth[1] == 0)
+                return 0;
+            return Math.pow((double) this.nodesToDepth[this.depth] / this.nodesToDepth[1], 1.0 / (this.depth - 1));
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "bestMove=" + Position.moveToString(bestMove) +
+                    ", score=" + score +
+                    ", depth=" + depth +
+                    ", nodes=" + nodes +
+                    ", time=" + timeMillis + "ms" +
+                    " (soft=" + softLimitMillis + "ms, hard=" + hardLimitMillis + "ms)" +
+                    ", nps=" + getNodesPerSecond() +
+                    ", ebf=" + String.format("%.2f", getEffectiveBranchingFactor()) +
+                    '}';
+        }
+    }
+
+    private final Evaluation evaluation;
+    private final TranspositionTable transpositionTable;
+    private final Options options;
+    /** Move lists of each ply, allocated once */
+    private final int[][] moves = new int[MAX_PLY + 1][Position.MAX_MOVES];
+    /** Ordering scores of the moves of each ply */
+    private final int[][] moveScores = new int[MAX_PLY + 1][Position.MAX_MOVES];
+    /** Two quiet moves of each ply which recently caused a cut-off ("killer moves"), tried early in sibling nodes */
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+
+    /** Opening book played before searching, or null */
+    private OpeningBook openingBook = null;
+    /** Endgame tablebase giving the exact score of the positions with few pieces, or null */
+    private Tablebase tablebase = null;
+    private final Random random = new Random();
+
+    private Position position;
+    private TimeManager timeManager;
+    private Result result;
+    private long nodes;
+    private boolean aborted;
+    private volatile boolean stopRequested;
+
+    /**
+     * Create a search with its own {@link Evaluation} and {@link TranspositionTable}, and every technique enabled.
+     */
+    public Search() {
+        this(new Evaluation(), new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB), new Options());
+    }
+
+    /**
+     * Create a search with its own {@link Evaluation} and {@link TranspositionTable}.
+     *
+     * @param options {@link Options} of the search
+     */
+    public Search(Options options) {
+        this(new Evaluation(), new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB), options);
+    }
+
+    /**
+     * Create a search.
+     *
+     * @param evaluation {@link Evaluation} of the leaves. It must not be used by another thread.
+     * @param transpositionTable {@link TranspositionTable} of the search. It may be shared with other searches.
+     * @param options {@link Options} of the search
+     */
+    public Search(Evaluation evaluation, TranspositionTable transpositionTable, Options options) {
+        this.evaluation = evaluation;
+        this.transpositionTable = transpositionTable;
+        this.options = options;
+    }
+
+    /**
+     * Search the best move of a position. The position is modified during the search, but is back to its initial state
+     * when the method returns.
+     *
+     * @param position {@link Position} to search
+     * @param maxDepth Maximum depth of the iterative deepening, in plies
+     * @param timeManager {@link TimeManager} deciding when to stop
+     * @return The {@link Result} of the search
+     */
+    public Result search(Position position, int maxDepth, TimeManager timeManager) {
+        this.position = position;
+        this.timeManager = timeManager;
+        this.nodes = 0;
+        this.aborted = false;
+        this.stopRequested = false;
+        for (int[] killer : this.killers)
+            Arrays.fill(killer, Position.NO_MOVE);
+        this.transpositionTable.newSearch();
+        timeManager.start();
+        long start = System.nanoTime();
+        EngineEvents.SearchEvent event = new EngineEvents.SearchEvent();
+        event.begin();
+
+        Result result = new Result();
+        this.result = result;
+        result.softLimitMillis = timeManager.getSoftLimitMillis();
+        result.hardLimitMillis = timeManager.getHardLimitMillis();
+
+        // A move of the opening book is played without searching
+        int bookMove = this.openingBook != null ? this.openingBook.pickMove(position, this.random) : Position.NO_MOVE;
+        if (bookMove != Position.NO_MOVE)
+            result.bestMove = bookMove;
+        else
+            this.iterativeDeepening(position, maxDepth, timeManager, result);
+
+        result.nodes = this.nodes;
+        result.timeMillis = timeManager.getElapsedMillis();
+        EngineMetrics.get().searchDone(this.nodes, System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.fen = position.toFen();
+            event.depth = result.depth;
+            event.nodes = result.nodes;
+            event.ttHits = result.ttHits;
+            event.bestMove = Position.moveToString(result.bestMove);
+            event.score = result.score;
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Search the root at increasing depths, until the maximum depth, a mate or the time limit, keeping the best move of
+     * the last completed iteration in the result.
+     */
+    private void iterativeDeepening(Position position, int maxDepth, TimeManager timeManager, Result result) {
+        int[] rootMoves = position.legalMoves();
+        if (rootMoves.length == 0) {
+            result.score = position.isInCheck() ? -MATE : 0;
+        } else {
+            result.bestMove = rootMoves[0];
+        }
+
+        for (int depth = 1 ; depth <= Math.min(maxDepth, MAX_PLY) && rootMoves.length > 0 ; depth++) {
+            int score = this.aspirationSearch(rootMoves, depth, result);
+
+            // The moves of an aborted iteration are not all searched, so its result is not reliable
+            if (this.aborted)
+                break;
+
+            if (depth == 1 || rootMoves[0] != result.bestMove) {
+                result.bestMoveTimeMillis = timeManager.getElapsedMillis();
+                result.bestMoveNodes = this.nodes;
+            }
+            result.bestMove = rootMoves[0];
+            result.score = score;
+            result.depth = depth;
+            result.nodesToDepth[depth] = this.nodes;
+
+            if (Math.abs(score) >= MATE - MAX_PLY || !timeManager.canStartIteration(result.bestMove))
+                break;
+        }
+    }
+
+    /**
+     * Abort the running search. The search then returns the best move of its last completed iteration. This method may
+     * be called from any thread.
+     */
+    public void stop() {
+        this.stopRequested = true;
+    }
+
+    /**
+     * Search the root at a given depth, with an aspiration window around the score of the previous iteration. When the
+     * score falls outside the window, the window is widened on that side and the root is searched again.
+     *
+     * @return The score of the root
+     */
+    private int aspirationSearch(int[] rootMoves, int depth, Result result) {
+        if (!this.options.aspirationWindows || depth < 4)
+            return this.searchRoot(rootMoves, depth, -INFINITY, INFINITY);
+
+        int window = ASPIRATION_WINDOW;
+        int alpha = Math.max(-INFINITY, result.score - window);
+        int beta = Math.min(INFINITY, result.score + window);
+
+        while (true) {
+            int score = this.searchRoot(rootMoves, depth, alpha, beta);
+            if (this.aborted || (score > alpha && score < beta))
+                return score;
+
+            result.aspirationResearches++;
+            window *= 2;
+            if (score <= alpha)
+                alpha = window > 500 ? -INFINITY : Math.max(-INFINITY, score - window);
+            else
+                beta = window > 500 ? INFINITY : Math.min(INFINITY, score + window);
+        }
+    }
+
+    /**
+     * Search the moves of the root. The best move found is moved at the beginning of rootMoves, so that it is searched
+     * first by the next iteration.
+     *
+     * @return The score of the root
+     */
+    private int searchRoot(int[] rootMoves, int depth, int alpha, int beta) {
+        int bestScore = -INFINITY;
+
+        for (int i = 0 ; i < rootMoves.length ; i++) {
+            int move = rootMoves[i];
+            this.position.make(move);
+
+            int score;
+            if (i == 0 || !this.options.principalVariationSearch) {
+                score = -this.alphaBeta(depth - 1, -beta, -alpha, 1, true);
+            } else {
+                score = -this.alphaBeta(depth - 1, -alpha - 1, -alpha, 1, true);
+                if (score > alpha && score < beta) {
+                    this.result.pvsResearches++;
+                    score = -this.alphaBeta(depth - 1, -beta, -alpha, 1, true);
+                }
+            }
+            this.position.unmake();
+
+            if (this.aborted)
+                return bestScore;
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    // Move the new best move first
+                    System.arraycopy(rootMoves, 0, rootMoves, 1, i);
+                    rootMoves[0] = move;
+                    alpha = score;
+                }
+                if (score >= beta)
+                    break;
+            }
+        }
+        return bestScore;
+    }
+
+    /**
+     * Principal variation search of the current position.
+     *
+     * @param depth Remaining depth, in plies
+     * @param alpha Score the side to move is already sure to get
+     * @param beta Score above which the enemy will avoid this position
+     * @param ply Distance to the root, in plies
+     * @param nullMoveAllowed false right after a null move, as two null moves in a row would prove nothing
+     * @return The score of the position, from the point of view of the side to move
+     */
+    private int alphaBeta(int depth, int alpha, int beta, int ply, boolean nullMoveAllowed) {
+        if (depth <= 0 || ply >= MAX_PLY)
+            return this.quiescence(alpha, beta, ply);
+
+        this.nodes++;
+        if (this.shouldAbort())
+            return 0;
+        if (this.position.isDrawByRule())
+            return 0;
+
+        // Endings of the tablebase are not searched, as their exact score is known
+        if (this.tablebase != null && this.position.getPieceCount() <= 3) {
+            int value = this.tablebase.probe(this.position);
+            if (value != Tablebase.NOT_FOUND) {
+                this.result.tablebaseHits++;
+                if (Tablebase.isWin(value))
+                    return MATE - ply - Tablebase.distance(value);
+                if (Tablebase.isLoss(value))
+                    return -MATE + ply + Tablebase.distance(value);
+                return 0;
+            }
+        }
+
+        boolean pvNode = beta - alpha > 1;
+        int hashMove = Position.NO_MOVE;
+
+        // The transposition table gives the best move, and maybe the score, of an already searched position
+        if (this.options.transpositionTable) {
+            long entry = this.transpositionTable.probe(this.position.getKey());
+            if (entry != 0) {
+                this.result.ttHits++;
+                hashMove = TranspositionTable.move(entry);
+                int score = TranspositionTable.score(entry, ply);
+                int bound = TranspositionTable.bound(entry);
+                if (!pvNode && TranspositionTable.depth(entry) >= depth
+                        && (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)))
+                    return score;
+            }
+        }
+
+        boolean inCheck = this.position.isInCheck();
+
+        // Null move pruning : if passing still fails high with a reduced search, the position is too good to be reached
+        if (this.options.nullMovePruning && nullMoveAllowed && !pvNode && !inCheck && depth >= 3
+                && Math.abs(beta) < MATE - MAX_PLY
+                && this.position.hasNonPawnMaterial(this.position.getSideToMove())
+                && this.evaluation.evaluate(this.position) >= beta) {
+            int reduction = depth > 6 ? 3 : 2;
+            this.position.makeNullMove();
+            int score = -this.alphaBeta(depth - 1 - reduction, -beta, -beta + 1, ply + 1, false);
+            this.position.unmake();
+
+            if (this.aborted)
+                return 0;
+            if (score >= beta) {
+                this.result.nullMoveCutoffs++;
+                // Don't trust mate scores proven by an illegal move
+                return score >= MATE - MAX_PLY ? beta : score;
+            }
+        }
+
+        int[] moves = this.moves[ply];
+        int[] scores = this.moveScores[ply];
+        int count = this.position.generateMoves(moves);
+        this.scoreMoves(moves, scores, count, hashMove, ply);
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = Position.NO_MOVE;
+        int legalMoves = 0;
+
+        for (int i = 0 ; i < count ; i++) {
+            int move = pickMove(moves, scores, i, count);
+            boolean quiet = this.isQuiet(move);
+            if (!this.position.make(move))
+                continue;
+
+            legalMoves++;
+            boolean givesCheck = this.position.isInCheck();
+            int newDepth = depth - 1;
+            int score;
+
+            if (legalMoves == 1) {
+                score = -this.alphaBeta(newDepth, -beta, -alpha, ply + 1, true);
+            } else {
+                // Late quiet moves are searched at a reduced depth first
+                int reduction = 0;
+                if (this.options.lateMoveReductions && depth >= 3 && legalMoves > 3 && quiet && !inCheck && !givesCheck
+                        && move != this.killers[ply][0] && move != this.killers[ply][1]) {
+                    reduction = Math.min(REDUCTIONS[Math.min(depth, 63)][Math.min(legalMoves, 63)], newDepth - 1);
+                }
+
+                // With PVS, the other moves only have to prove they are not better than alpha
+                int windowBeta = this.options.principalVariationSearch ? alpha + 1 : beta;
+                score = -this.alphaBeta(newDepth - reduction, -windowBeta, -alpha, ply + 1, true);
+                if (reduction > 0 && score > alpha)
+                    score = -this.alphaBeta(newDepth, -windowBeta, -alpha, ply + 1, true);
+                if (this.options.principalVariationSearch && score > alpha && score < beta) {
+                    this.result.pvsResearches++;
+                    score = -this.alphaBeta(newDepth, -beta, -alpha, ply + 1, true);
+                }
+            }
+            this.position.unmake();
+
+            if (this.aborted)
+                return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha)
+                    alpha = score;
+                if (score >= beta) {
+                    if (quiet && move != this.killers[ply][0]) {
+                        this.killers[ply][1] = this.killers[ply][0];
+                        this.killers[ply][0] = move;
+                    }
+                    break;
+                }
+            }
+        }
+
+        // No legal move : checkmate or stalemate
+        if (legalMoves == 0)
+            return inCheck ? -MATE + ply : 0;
+
+        if (this.options.transpositionTable) {
+            int bound = bestScore >= beta ? TranspositionTable.LOWER
+                    : (bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER);
+            this.transpositionTable.store(this.position.getKey(), bestMove, bestScore, depth, bound, ply);
+        }
+        return bestScore;
+    }
+
+    /**
+     * Quiescence search : only captures and promotions are explored, until the position is quiet, so that the
+     * evaluation is never done in the middle of an exchange.
+     *
+     * @param alpha Score the side to move is already sure to get
+     * @param beta Score above which the enemy will avoid this position
+     * @param ply Distance to the root, in plies
+     * @return The score of the position, from the point of view of the side to move
+     */
+    private int quiescence(int alpha, int beta, int ply) {
+        this.nodes++;
+        if (this.shouldAbort())
+            return 0;
+
+        // The side to move can usually avoid capturing, so the evaluation is a lower bound ("stand pat")
+        int standPat = this.evaluation.evaluate(this.position);
+        if (standPat >= beta || ply >= MAX_PLY)
+            return standPat;
+        if (standPat > alpha)
+            alpha = standPat;
+
+        int[] moves = this.moves[ply];
+        int count = this.position.generateCaptures(moves);
+        this.scoreMoves(moves, this.moveScores[ply], count, Position.NO_MOVE, ply);
+
+        for (int i = 0 ; i < count ; i++) {
+            int move = pickMove(moves, this.moveScores[ply], i, count);
+            if (!this.position.make(move))
+                continue;
+
+            int score = -this.quiescence(-beta, -alpha, ply + 1);
+            this.position.unmake();
+
+            if (this.aborted)
+                return 0;
+            if (score >= beta)
+                return score;
+            if (score > alpha)
+                alpha = score;
+        }
+        return alpha;
+    }
+
+    /**
+     * @return true if the search must stop, because of the time limit or because {@link #stop()} was called
+     */
+    private boolean shouldAbort() {
+        if (!this.aborted && (this.stopRequested || this.timeManager.isTimeUp(this.nodes)))
+            this.aborted = true;
+        return this.aborted;
+    }
+
+    /**
+     * @return true if a move is neither a capture nor a promotion
+     */
+    private boolean isQuiet(int move) {
+        return this.position.pieceAt(Position.to(move)) == Position.EMPTY
+                && Position.flag(move) != Position.EN_PASSANT
+                && Position.promotion(move) == Position.EMPTY;
+    }
+
+    /**
+     * Give an ordering score to each move : the move of the transposition table first, then the captures (the most
+     * valuable victims by the least valuable attackers first, MVV-LVA) and promotions, then the killer moves, then the
+     * other moves.
+     */
+    private void scoreMoves(int[] moves, int[] scores, int count, int hashMove, int ply) {
+        for (int i = 0 ; i < count ; i++) {
+            int move = moves[i];
+            int victim = Position.type(this.position.pieceAt(Position.to(move)));
+            int attacker = Position.type(this.position.pieceAt(Position.from(move)));
+
+            int score = 0;
+            if (move == hashMove) {
+                score = 1_000_000;
+            } else if (victim != Position.EMPTY || Position.flag(move) == Position.EN_PASSANT
+                    || Position.promotion(move) != Position.EMPTY) {
+                score = 100_000 + Evaluation.PIECE_VALUES[Math.max(victim, Position.PAWN)] - attacker
+                        + Evaluation.PIECE_VALUES[Position.promotion(move)];
+            } else if (move == this.killers[ply][0]) {
+                score = 90_000;
+            } else if (move == this.killers[ply][1]) {
+                score = 80_000;
+            }
+            scores[i] = score;
+        }
+    }
+
+    /**
+     * Move the best scored move among the moves from index to count at index (selection sort, done lazily as a cut-off
+     * often happens after the first moves).
+     *
+     * @return The move at index after the swap
+     */
+    private static int pickMove(int[] moves, int[] scores, int index, int count) {
+        int best = index;
+        for (int i = index + 1 ; i < count ; i++) {
+            if (scores[i] > scores[best])
+                best = i;
+        }
+
+        int move = moves[best];
+        moves[best] = moves[index];
+        moves[index] = move;
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index] = score;
+        return move;
+    }
+
+    /** @return The number of nodes searched by the current (or last) search */
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    /** @return The {@link Evaluation} used by this search */
+    public Evaluation getEvaluation() {
+        return this.evaluation;
+    }
+
+    /** @return The {@link TranspositionTable} used by this search */
+    public TranspositionTable getTranspositionTable() {
+        return this.transpositionTable;
+    }
+
+    /**
+     * Set the opening book of the search. When the position searched is in the book, a move of the book is returned
+     * immediately, with a depth of 0.
+     *
+     * @param openingBook {@link OpeningBook} to use, or null to always search
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Set the endgame tablebase of the search. The positions of the tablebase are given their exact score instead of
+     * being searched.
+     *
+     * @param tablebase {@link Tablebase} to use, or null
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /** @return The {@link Options} of this search */
+    public Options getOptions() {
+        return this.options;
+    }
+}
@@ -0,0 +1,88 @@
+package com.thibclnt.chessgame;
+
+/**
+ * Benchmark of the techniques of the {@link Search} : a fixed set of positions is searched to a fixed depth with every
+ * technique enabled, then with each one disabled in turn, then with none of them. For each configuration the number of
+ * nodes needed to reach the depth, the time and the effective branching factor are printed, so that the gain of each
+ * technique can be measured, and a change of the search compared to the previous one.
+ * <p>
+ *     Usage : {@code SearchBenchmark [depth]}, the default depth being {@link #DEFAULT_DEPTH}.
+ * </p>
+ * @see Search.Options
+ */
+public class SearchBenchmark {
+
+    /** Depth of the searches when none is given */
+    public static final int DEFAULT_DEPTH = 6;
+
+    /** Positions of the benchmark : opening, middlegames, and endgames where null move pruning is off */
+    private static final String[] POSITIONS = {
+            Position.START_FEN,
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "2r3k1/pp3ppp/2n1p3/3pP3/3P4/P1R2N2/1P3PPP/6K1 w - - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "8/8/4k3/3p4/3P4/4K3/8/8 w - - 0 1",
+    };
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+
+        run("all", new Search.Options(), depth);
+
+        Search.Options options = new Search.Options();
+        options.transpositionTable = false;
+        run("no tt", options, depth);
+
+        options = new Search.Options();
+        options.principalVariationSearch = false;
+        run("no pvs", options, depth);
+
+        options = new Search.Options();
+        options.aspirationWindows = false;
+        run("no aspiration", options, depth);
+
+        options = new Search.Options();
+        options.nullMovePruning = false;
+        run("no null move", options, depth);
+
+        options = new Search.Options();
+        options.lateMoveReductions = false;
+        run("no lmr", options, depth);
+
+        run("none", Search.Options.none(), depth);
+    }
+
+    /**
+     * Search every position of the benchmark with a configuration, and print the totals.
+     *
+     * @param name Name of the configuration
+     * @param options {@link Search.Options} of the configuration
+     * @param depth Depth of the searches
+     */
+    private static void run(String name, Search.Options options, int depth) {
+        long nodes = 0;
+        long time = 0;
+        double branchingFactors = 0;
+        long ttHits = 0, nullMoveCutoffs = 0, pvsResearches = 0, aspirationResearches = 0;
+
+        for (String fen : POSITIONS) {
+            // A fresh search for each position, so that the transposition table doesn't help the next one
+            Search search = new Search(options);
+            Search.Result result = search.search(Position.fromFen(fen), depth, TimeManager.infinite());
+
+            nodes += result.nodes;
+            time += result.timeMillis;
+            branchingFactors += result.getEffectiveBranchingFactor();
+            ttHits += result.ttHits;
+            nullMoveCutoffs += result.nullMoveCutoffs;
+            pvsResearches += result.pvsResearches;
+            aspirationResearches += result.aspirationResearches;
+        }
+
+        System.out.printf("%-14s depth=%d nodes=%,d time=%dms nps=%,d ebf=%.2f tt=%,d null=%,d pvs=%,d aspiration=%d%n",
+                name, depth, nodes, time, nodes * 1000 / Math.max(1, time), branchingFactors / POSITIONS.length,
+                ttHits, nullMoveCutoffs, pvsResearches, aspirationResearches);
+    }
+}
@@ -0,0 +1,200 @@
+package com.thibclnt.chessgame;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the {@link ChessServer} : a server is started (or an external one is used), then many games are played at the same time through a
+ * number of connections, each game with random legal moves, until the end of the test. A finished game (or one longer
+ * than {@link #MAX_PLIES} plies) is replaced by a new one, so the number of games in progress stays the same.
+ * <p>
+ *     Each connection is a virtual thread which plays a move of each of its games in turn. The games are all created
+ *     before the first move is played. The number of moves per second and the latencies of the moves, seen by the
+ *     clients and measured by the server, are printed at the end.
+ * </p> <p>
+ *     Usage : {@code ServerBenchmark [games] [connections] [seconds] [port]}. When a port is given, the server listening
+ *     on this port of localhost is tested, instead of a server started in the same process : the clients and the
+ *     server then don't share the threads running the virtual threads.
+ * </p>
+ */
+public class ServerBenchmark {
+
+    /** Default number of games in progress */
+    public static final int DEFAULT_GAMES = 10000;
+    /** Default number of connections */
+    public static final int DEFAULT_CONNECTIONS = 100;
+    /** Default duration of the test, in seconds */
+    public static final int DEFAULT_SECONDS = 30;
+    /** Number of plies after which a game is replaced */
+    public static final int MAX_PLIES = 200;
+
+    private static final String[] PROMOTIONS = {"", "", "KNIGHT", "BISHOP", "ROOK", "QUEEN"};
+
+    /**
+     * A game played by the benchmark, and its position seen by the client.
+     */
+    private static class ClientGame {
+        long id;
+        Position position;
+    }
+
+    /**
+     * Struct-like class to store what the connections share : when the test starts and ends, and its results.
+     */
+    private static class Run {
+        final int port;
+        final CountDownLatch created;
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile long end;
+        final LatencyRecorder latencies = new LatencyRecorder();
+        final AtomicLong finishedGames = new AtomicLong();
+
+        Run(int port, int connections) {
+            this.port = port;
+            this.created = new CountDownLatch(connections);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONNECTIONS;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SECONDS;
+
+        ChessServer server = args.length > 3 ? null : new ChessServer(0);
+        try {
+            Run run = new Run(server != null ? server.getPort() : Integer.parseInt(args[3]), connections);
+            long start;
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0 ; i < connections ; i++) {
+                    int connectionGames = games / connections + (i < games % connections ? 1 : 0);
+                    long seed = i;
+                    clients.execute(() -> {
+                        try {
+                            play(run, connectionGames, new Random(seed));
+                        } catch (IOException e) {
+                            System.err.println("Connection failed : " + e.getMessage());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                }
+
+                // The moves are measured once every game is created
+                run.created.await();
+                stats(run.port, true);
+                start = System.nanoTime();
+                run.end = start + seconds * 1_000_000_000L;
+                run.started.countDown();
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println(games + " games on " + connections + " connections for " + millis + " ms : "
+                    + run.latencies.getCount() * 1000 / Math.max(1, millis) + " moves/s, " + run.finishedGames.get()
+                    + " games finished");
+            System.out.println("Client latencies : " + run.latencies);
+            System.out.println("Server :" + stats(run.port, false));
+        } finally {
+            if (server != null)
+                server.close();
+        }
+    }
+
+    /**
+     * @param reset true to reset the latencies measured by the server
+     * @return The statistics of the server (answer of the STATS command, without "OK")
+     */
+    private static String stats(int port, boolean reset) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String answer = command(reset ? "STATS RESET" : "STATS", in, out).substring(2);
+            command("QUIT", in, out);
+            return answer;
+        }
+    }
+
+    /**
+     * Play games through a connection until the end of the test.
+     */
+    private static void play(Run run, int games, Random random) throws IOException, InterruptedException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), run.port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            List<ClientGame> clientGames = new ArrayList<>();
+            try {
+                for (int i = 0 ; i < games ; i++) {
+                    ClientGame game = new ClientGame();
+                    newGame(game, in, out);
+                    clientGames.add(game);
+                }
+            } finally {
+                run.created.countDown();
+            }
+            run.started.await();
+
+            while (System.nanoTime() < run.end) {
+                for (ClientGame game : clientGames) {
+                    int[] moves = game.position.legalMoves();
+                    if (moves.length == 0 || game.position.getHistoryLength() >= MAX_PLIES) {
+                        command("CLOSE " + game.id, in, out);
+                        newGame(game, in, out);
+                        run.finishedGames.incrementAndGet();
+                        continue;
+                    }
+
+                    int move = moves[random.nextInt(moves.length)];
+                    long start = System.nanoTime();
+                    String answer = command("MOVE " + game.id + " " + square(Position.from(move)) + " "
+                            + square(Position.to(move)) + " " + PROMOTIONS[Position.promotion(move)], in, out);
+                    run.latencies.record(System.nanoTime() - start);
+
+                    if (answer.startsWith("OK"))
+                        game.position.make(move);
+                    // The rules of the board and of the position may disagree : the client follows the server
+                    else
+                        game.position = Position.fromFen(command("BOARD " + game.id, in, out).substring(3));
+                    if (answer.contains("WIN") || answer.contains("DRAW")) {
+                        command("CLOSE " + game.id, in, out);
+                        newGame(game, in, out);
+                        run.finishedGames.incrementAndGet();
+                    }
+                }
+            }
+            command("QUIT", in, out);
+        }
+    }
+
+    private static void newGame(ClientGame game, BufferedReader in, BufferedWriter out) throws IOException {
+        game.id = Long.parseLong(command("NEW", in, out).substring(3));
+        game.position = Position.fromFen(Position.START_FEN);
+    }
+
+    private static String command(String command, BufferedReader in, BufferedWriter out) throws IOException {
+        out.write(command);
+        out.newLine();
+        out.flush();
+        if (command.equals("QUIT"))
+            return "";
+        String answer = in.readLine();
+        if (answer == null)
+            throw new IOException("Connection closed by the server");
+        return answer;
+    }
+
+    private static String square(int square) {
+        return ChessGame.intToLettersMap.get(Position.file(square) + 1) + (Position.rank(square) + 1);
+    }
+}
@@ -0,0 +1,160 @@
+package com.thibclnt.chessgame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Endgame tablebase : the exact result of every position of some endings with a king and one piece against a lone king
+ * (KQK, KRK and KPK), with the distance to mate. The tables are created offline by {@link TablebaseGenerator} and mapped
+ * in memory with {@link FileChannel#map}, so a probe is a single read at a computed index.
+ * <p>
+ *     A table stores one byte by position, for the side to move :
+ * </p>
+ * <ul>
+ *     <li> {@link #DRAW} (0), or {@link #STALEMATE} if the side to move has no legal move and is not in check </li>
+ *     <li> d (1 to {@link #MAX_DISTANCE}) : the side to move mates in d plies </li>
+ *     <li> -(d + 1) : the side to move is mated in d plies. {@link #CHECKMATED} (-1) means it is already mated </li>
+ *     <li> {@link #ILLEGAL} for the positions which can't happen (pieces on the same square, king in check of the side
+ *     which is not to move, pawn on the first or last rank) </li>
+ * </ul>
+ * <p>
+ *     Tables are computed with the white side having the piece. Positions where black has the piece are probed by
+ *     flipping the board and swapping the colors. The index of a position is
+ *     <i>((sideToMove * 64 + whiteKing) * 64 + blackKing) * 64 + piece</i>.
+ * </p> <p>
+ *     A tablebase is read only, and may be shared between threads.
+ * </p>
+ * @see TablebaseGenerator
+ */
+public class Tablebase {
+
+    /** Magic number at the beginning of a table file ("JBTB") */
+    public static final int MAGIC = 0x4A425442;
+    /** Version of the file format */
+    public static final int VERSION = 1;
+    /** Size of the header of a table file (magic number and version), in bytes */
+    public static final int HEADER_SIZE = 8;
+    /** Number of positions of a table */
+    public static final int SIZE = 2 * 64 * 64 * 64;
+
+    /** Types of the pieces which have a table, with the king */
+    public static final int[] PIECES = {Position.QUEEN, Position.ROOK, Position.PAWN};
+
+    /** Values of a position */
+    public static final byte DRAW = 0, CHECKMATED = -1, STALEMATE = 127, ILLEGAL = -128;
+    /** Greatest distance to mate a table can store, in plies */
+    public static final int MAX_DISTANCE = 125;
+    /** Returned by {@link #probe(Position)} when the position has no table */
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    /** Mapped tables, indexed by the type of the piece */
+    private final ByteBuffer[] tables = new ByteBuffer[Position.KING];
+
+    /**
+     * Open the tables of a directory. Missing tables are ignored : their positions are simply not found.
+     *
+     * @param directory Directory containing the table files (see {@link #fileName(int)})
+     * @throws IOException If a table file can't be read or is invalid
+     */
+    public Tablebase(Path directory) throws IOException {
+        for (int piece : PIECES) {
+            Path path = directory.resolve(fileName(piece));
+            if (!Files.exists(path))
+                continue;
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() != HEADER_SIZE + SIZE)
+                    throw new IOException("Invalid tablebase size : " + path);
+                ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (table.getInt(0) != MAGIC || table.getInt(4) != VERSION)
+                    throw new IOException("Not a tablebase of version " + VERSION + " : " + path);
+                this.tables[piece] = table;
+            }
+        }
+    }
+
+    /**
+     * @param piece Type of the piece of the table
+     * @return The name of the file of the table, for example "KQK.tb"
+     */
+    public static String fileName(int piece) {
+        return "K" + " PNBRQK".charAt(piece) + "K.tb";
+    }
+
+    /**
+     * @return The index of a position in a table, with the white side having the piece
+     */
+    public static int index(int sideToMove, int whiteKing, int blackKing, int piece) {
+        return ((sideToMove * 64 + whiteKing) * 64 + blackKing) * 64 + piece;
+    }
+
+    /**
+     * Find the value of a position. Castling and en passant don't exist in these endings, and the fifty moves rule is
+     * ignored.
+     *
+     * @param position {@link Position} to probe
+     * @return The value of the position for the side to move (see {@link Tablebase}), or {@link #NOT_FOUND} if the
+     * material of the position has no table
+     */
+    public int probe(Position position) {
+        if (position.getPieceCount() != 3)
+            return NOT_FOUND;
+
+        // Find the piece which is not a king
+        int pieceSquare = -1;
+        for (int square = 0 ; square < 64 ; square++) {
+            int piece = position.pieceAt(square);
+            if (piece != Position.EMPTY && Position.type(piece) != Position.KING) {
+                pieceSquare = square;
+                break;
+            }
+        }
+        if (pieceSquare < 0)
+            return NOT_FOUND;
+
+        int piece = position.pieceAt(pieceSquare);
+        ByteBuffer table = this.tables[Position.type(piece)];
+        if (table == null)
+            return NOT_FOUND;
+
+        int whiteKing = position.kingSquare(Position.WHITE);
+        int blackKing = position.kingSquare(Position.BLACK);
+        int sideToMove = position.getSideToMove();
+        if (whiteKing < 0 || blackKing < 0)
+            return NOT_FOUND;
+
+        // Flip the board when black has the piece : squares are mirrored vertically and the colors are swapped
+        if (Position.color(piece) == Position.BLACK) {
+            int king = whiteKing;
+            whiteKing = blackKing ^ 56;
+            blackKing = king ^ 56;
+            pieceSquare ^= 56;
+            sideToMove = 1 - sideToMove;
+        }
+        return table.get(HEADER_SIZE + index(sideToMove, whiteKing, blackKing, pieceSquare));
+    }
+
+    /** @return true if the side to move wins a position of this value */
+    public static boolean isWin(int value) {
+        return value >= 1 && value <= MAX_DISTANCE;
+    }
+
+    /** @return true if the side to move loses a position of this value */
+    public static boolean isLoss(int value) {
+        return value <= CHECKMATED && value >= -MAX_DISTANCE - 1;
+    }
+
+    /** @return The number of plies before the mate of a won or lost position */
+    public static int distance(int value) {
+        return value > 0 ? value : -value - 1;
+    }
+
+    /** @return true if the table of a piece is loaded */
+    public boolean hasTable(int piece) {
+        return this.tables[piece] != null;
+    }
+}
@@ -0,0 +1,262 @@
+package com.thibclnt.chessgame;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Offline tool creating the tables of the {@link Tablebase} by retrograde analysis.
+ * <p>
+ *     The legal moves of every position of a table are generated once with {@link Position}, which follows the rules of
+ *     {@link ChessBoard}. The checkmates and stalemates are found first, then the values are propagated backwards from
+ *     the mates, one ply at a time : at pass n, a position is won in n plies if one of its moves leads to a position lost
+ *     in n - 1 plies, and lost in n plies if all its moves lead to positions won, the longest win being in n - 1 plies.
+ *     When a pass changes nothing, the remaining positions are draws.
+ * </p> <p>
+ *     Every step runs in parallel on all the cores. A position may read a value written by another thread during the
+ *     same pass, but the values of a pass only depend on the values of the previous one, so the result doesn't depend on
+ *     the order the positions are computed in. Moves leaving the table (capture of the piece, promotion) lead to a draw
+ *     or to a table computed before, which is why KPK is computed after KQK and KRK.
+ * </p> <p>
+ *     Usage : {@code TablebaseGenerator directory}
+ * </p>
+ * @see Tablebase
+ */
+public class TablebaseGenerator {
+
+    /** Value of the positions not computed yet */
+    private static final byte UNKNOWN = 126;
+
+    /** Tables already computed, indexed by the type of the piece */
+    private final byte[][] tables = new byte[Position.KING][];
+
+    /** Positions used by each thread to generate the moves */
+    private final ThreadLocal<Position> positions = ThreadLocal.withInitial(Position::new);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage : TablebaseGenerator directory");
+            System.exit(1);
+        }
+
+        Path directory = Path.of(args[0]);
+        Files.createDirectories(directory);
+        TablebaseGenerator generator = new TablebaseGenerator();
+
+        for (int piece : Tablebase.PIECES) {
+            long start = System.nanoTime();
+            byte[] table = generator.generate(piece);
+            generator.write(table, directory.resolve(Tablebase.fileName(piece)));
+
+            int wins = 0, longest = 0;
+            for (byte value : table) {
+                if (Tablebase.isWin(value)) {
+                    wins++;
+                    longest = Math.max(longest, value);
+                }
+            }
+            System.out.println(Tablebase.fileName(piece) + " : " + wins + " won positions, longest mate in "
+                    + longest + " plies, " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
+    }
+
+    /**
+     * Compute the table of a piece. The tables of the pieces a pawn can be promoted to must have been computed before.
+     *
+     * @param piece Type of the piece (see {@link Tablebase#PIECES})
+     * @return The value of each position of the table (see {@link Tablebase})
+     */
+    public byte[] generate(int piece) {
+        byte[] values = new byte[Tablebase.SIZE];
+        int[][] children = new int[Tablebase.SIZE][];
+
+        // Generate the moves of each position, and find the illegal positions, checkmates and stalemates
+        IntStream.range(0, Tablebase.SIZE).parallel().forEach(index -> {
+            children[index] = this.children(piece, index);
+            if (children[index] == null)
+                values[index] = Tablebase.ILLEGAL;
+            else if (children[index].length > 0)
+                values[index] = UNKNOWN;
+            else
+                values[index] = this.isInCheck(piece, index) ? Tablebase.CHECKMATED : Tablebase.STALEMATE;
+        });
+
+        // Propagate the values backwards from the mates
+        for (int ply = 1 ; ; ply++) {
+            if (ply > Tablebase.MAX_DISTANCE)
+                throw new RuntimeException("Mate too long for the table of " + Tablebase.fileName(piece));
+
+            final int distance = ply;
+            int changed = IntStream.range(0, Tablebase.SIZE).parallel()
+                    .map(index -> values[index] == UNKNOWN && this.resolve(values, children[index], index, distance) ? 1 : 0)
+                    .sum();
+            if (changed == 0)
+                break;
+        }
+
+        for (int index = 0 ; index < Tablebase.SIZE ; index++) {
+            if (values[index] == UNKNOWN)
+                values[index] = Tablebase.DRAW;
+        }
+        this.tables[piece] = values;
+        return values;
+    }
+
+    /**
+     * Try to find the value of a position at a given pass.
+     *
+     * @param values Values of the table
+     * @param children Moves of the position (see {@link #children(int, int)})
+     * @param index Index of the position
+     * @param distance Number of the pass
+     * @return true if the position is won or lost in distance plies
+     */
+    private boolean resolve(byte[] values, int[] children, int index, int distance) {
+        boolean allWon = true;
+        int longestWin = 0;
+
+        for (int child : children) {
+            int value = child >= 0 ? values[child] : external(child);
+            if (Tablebase.isLoss(value) && Tablebase.distance(value) == distance - 1) {
+                values[index] = (byte) distance;
+                return true;
+            }
+            if (Tablebase.isWin(value))
+                longestWin = Math.max(longestWin, value);
+            else
+                allWon = false;
+        }
+
+        if (allWon && longestWin == distance - 1) {
+            values[index] = (byte) (-distance - 1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Generate the moves of a position of a table.
+     *
+     * @param piece Type of the piece of the table
+     * @param index Index of the position
+     * @return The index of the position after each legal move, or the value of the position for the moves leaving the
+     * table, encoded with {@link #encodeExternal(int)}. null if the position is illegal.
+     */
+    private int[] children(int piece, int index) {
+        int pieceSquare = index & 63;
+        int blackKing = (index >>> 6) & 63;
+        int whiteKing = (index >>> 12) & 63;
+        int sideToMove = index >>> 18;
+
+        if (pieceSquare == whiteKing || pieceSquare == blackKing || whiteKing == blackKing)
+            return null;
+        if (piece == Position.PAWN && (Position.rank(pieceSquare) == 0 || Position.rank(pieceSquare) == 7))
+            return null;
+
+        Position position = this.setUp(piece, index);
+        try {
+            // The king of the side which is not to move can't be in check
+            if (position.isAttacked(position.kingSquare(1 - sideToMove), sideToMove))
+                return null;
+
+            int[] moves = new int[Position.MAX_MOVES];
+            int count = position.generateMoves(moves);
+            int[] children = new int[count];
+            int legal = 0;
+
+            for (int i = 0 ; i < count ; i++) {
+                if (!position.make(moves[i]))
+                    continue;
+                children[legal++] = this.childOf(position, moves[i]);
+                position.unmake();
+            }
+            return Arrays.copyOf(children, legal);
+        } finally {
+            this.clear(position, index);
+        }
+    }
+
+    /**
+     * @param position Position after a move
+     * @param move Move done
+     * @return The index of the position in the table, or its value if it left the table
+     */
+    private int childOf(Position position, int move) {
+        // The piece was taken : only the kings are left
+        if (position.getPieceCount() == 2)
+            return encodeExternal(Tablebase.DRAW);
+
+        int pieceSquare = -1;
+        for (int square = 0 ; square < 64 && pieceSquare < 0 ; square++) {
+            int type = Position.type(position.pieceAt(square));
+            if (type != Position.EMPTY && type != Position.KING)
+                pieceSquare = square;
+        }
+        int childIndex = Tablebase.index(position.getSideToMove(), position.kingSquare(Position.WHITE),
+                position.kingSquare(Position.BLACK), pieceSquare);
+        if (Position.promotion(move) == Position.EMPTY)
+            return childIndex;
+
+        // A pawn was promoted : the position is in another table, or is a draw if the piece can't mate alone
+        byte[] table = this.tables[Position.promotion(move)];
+        return encodeExternal(table != null ? table[childIndex] : Tablebase.DRAW);
+    }
+
+    /** @return true if the side to move is in check in a position of a table */
+    private boolean isInCheck(int piece, int index) {
+        Position position = this.setUp(piece, index);
+        boolean inCheck = position.isInCheck();
+        this.clear(position, index);
+        return inCheck;
+    }
+
+    /**
+     * Set up the position of an index on the position of the current thread.
+     */
+    private Position setUp(int piece, int index) {
+        Position position = this.positions.get();
+        position.put((index >>> 12) & 63, Position.KING);
+        position.put((index >>> 6) & 63, Position.KING + Position.BLACK_PIECE);
+        position.put(index & 63, piece);
+        position.sideToMove = index >>> 18;
+        return position;
+    }
+
+    /** Remove the pieces of an index from the position of the current thread. */
+    private void clear(Position position, int index) {
+        position.put((index >>> 12) & 63, Position.EMPTY);
+        position.put((index >>> 6) & 63, Position.EMPTY);
+        position.put(index & 63, Position.EMPTY);
+    }
+
+    /** @return The encoding of the value of a position outside of the table, as a negative child */
+    private static int encodeExternal(int value) {
+        return -1 - (value + 128);
+    }
+
+    /** @return The value of a position outside of the table, from its encoding */
+    private static int external(int child) {
+        return -1 - child - 128;
+    }
+
+    /**
+     * Write a table in a file.
+     *
+     * @param table Values of the table
+     * @param path Path of the file
+     * @throws IOException If the file can't be written
+     */
+    public void write(byte[] table, Path path) throws IOException {
+        try (OutputStream file = Files.newOutputStream(path);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file))) {
+            output.writeInt(Tablebase.MAGIC);
+            output.writeInt(Tablebase.VERSION);
+            output.write(table);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.thibclnt.chessgame;
+
+/**
+ * Decide how long a {@link Search} may think about a move, from the remaining time on the clock of the player and its
+ * increment.
+ * <p>
+ *     Two limits are computed : the soft limit is the time the search should normally use, and the hard limit is the
+ *     time after which the search is aborted, even in the middle of an iteration. Between two iterations of the iterative
+ *     deepening, {@link #canStartIteration(int)} tells if a new (and longer) iteration is worth starting : when the best
+ *     move stays the same for several iterations, the search stops before the soft limit, and when it changes, the search
+ *     may go beyond it.
+ * </p> <p>
+ *     During an iteration, {@link #isTimeUp(long)} is called at every node but only reads the clock every
+ *     {@link #CHECK_INTERVAL} nodes, as {@link System#nanoTime()} is slow compared to a node.
+ * </p> <p>
+ *     A time manager may also limit the number of nodes instead of the time ({@link #forNodes(long)}) : the result of
+ *     the search then doesn't depend on the speed or the load of the machine.
+ * </p> <p>
+ *     Another thread may end the search with {@link #stop()}, even before it starts. While the search ponders (it
+ *     thinks on the time of the opponent, see {@link #ponder()}), no limit applies : they start counting when the
+ *     opponent plays the expected move ({@link #ponderHit()}).
+ * </p>
+ * @see Search
+ */
+public final class TimeManager {
+
+    /** Number of moves the remaining time is shared between when the number of moves to the next time control is unknown */
+    public static final int DEFAULT_MOVES_TO_GO = 30;
+    /** Time kept on the clock for the communication between the engine and the player, in milliseconds */
+    public static final long MOVE_OVERHEAD = 30;
+    /** Number of nodes between two readings of the clock. Must be a power of two */
+    public static final int CHECK_INTERVAL = 2048;
+
+    /** Share of the soft limit after which no new iteration is started, as it would not finish in time */
+    private static final double NEW_ITERATION_RATIO = 0.6;
+
+    /** Time the search should normally use, in nanoseconds */
+    private final long softLimit;
+    /** Time after which the search is aborted, in nanoseconds */
+    private final long hardLimit;
+    /** true if the soft limit may be shortened or extended depending on the stability of the best move */
+    private final boolean adaptive;
+    /** Number of nodes after which the search is aborted */
+    private final long nodeLimit;
+
+    private long startTime;
+    /** Time the limits are counted from : the start of the search, or the ponder hit */
+    private long limitStartTime;
+    private boolean timeUp;
+    private volatile boolean stopped = false;
+    private volatile boolean pondering = false;
+    private int lastBestMove = Position.NO_MOVE;
+    private int stableIterations = 0;
+
+    /**
+     * Create a time manager with explicit limits. Consider using {@link #forClock(long, long, int)},
+     * {@link #forMoveTime(long)} or {@link #infinite()} instead.
+     *
+     * @param softLimitMillis Time the search should normally use, in milliseconds
+     * @param hardLimitMillis Time after which the search is aborted, in milliseconds
+     * @param adaptive true if the soft limit depends on the stability of the best move
+     */
+    public TimeManager(long softLimitMillis, long hardLimitMillis, boolean adaptive) {
+        this(softLimitMillis, hardLimitMillis, adaptive, Long.MAX_VALUE);
+    }
+
+    private TimeManager(long softLimitMillis, long hardLimitMillis, boolean adaptive, long nodeLimit) {
+        this.softLimit = softLimitMillis * 1_000_000;
+        this.hardLimit = hardLimitMillis * 1_000_000;
+        this.adaptive = adaptive;
+        this.nodeLimit = nodeLimit;
+        this.start();
+    }
+
+    /**
+     * Create a time manager for a game with a clock.
+     *
+     * @param remainingMillis Time remaining on the clock of the player to move, in milliseconds
+     * @param incrementMillis Time added to the clock after each move, in milliseconds
+     * @param movesToGo Number of moves before the next time control, or 0 if unknown (sudden death)
+     * @return The time manager
+     */
+    public static TimeManager forClock(long remainingMillis, long incrementMillis, int movesToGo) {
+        int moves = movesToGo > 0 ? Math.min(movesToGo, 50) : DEFAULT_MOVES_TO_GO;
+        long available = Math.max(1, remainingMillis - MOVE_OVERHEAD);
+
+        // The hard limit never uses more than three quarters of the clock, so the player never loses on time
+        long soft = available / moves + incrementMillis * 3 / 4;
+        long hard = Math.max(1, Math.min(soft * 5, available * 3 / 4));
+        return new TimeManager(Math.min(soft, hard), hard, true);
+    }
+
+    /**
+     * Create a time manager for a fixed time per move.
+     *
+     * @param millis Time of the search, in milliseconds
+     * @return The time manager
+     */
+    public static TimeManager forMoveTime(long millis) {
+        return new TimeManager(millis, millis, false);
+    }
+
+    /**
+     * Create a time manager for a fixed number of nodes, without time limit. The iteration during which the budget is
+     * exhausted is aborted, so the search returns the result of the last completed iteration.
+     *
+     * @param nodes Maximum number of nodes of the search
+     * @return The time manager
+     */
+    public static TimeManager forNodes(long nodes) {
+        return new TimeManager(Long.MAX_VALUE / 1_000_000, Long.MAX_VALUE / 1_000_000, false, nodes);
+    }
+
+    /**
+     * Create a time manager which never stops the search. The search then stops at its maximum depth, or when it is
+     * asked to (see {@link Search#stop()}).
+     *
+     * @return The time manager
+     */
+    public static TimeManager infinite() {
+        return new TimeManager(Long.MAX_VALUE / 1_000_000, Long.MAX_VALUE / 1_000_000, false);
+    }
+
+    /**
+     * Start (or restart) the clock of the search. It is called by the {@link Search} when it starts.
+     */
+    public void start() {
+        this.startTime = System.nanoTime();
+        this.limitStartTime = this.startTime;
+        this.timeUp = false;
+        this.lastBestMove = Position.NO_MOVE;
+        this.stableIterations = 0;
+    }
+
+    /**
+     * Tell if the hard limit or the node limit is reached, or if the search is stopped. This method is called at every
+     * node of the search, but only reads the clock every {@link #CHECK_INTERVAL} nodes. No limit is reached while
+     * pondering.
+     *
+     * @param nodes Number of nodes searched so far
+     * @return true if the search must be aborted
+     */
+    public boolean isTimeUp(long nodes) {
+        if (this.stopped)
+            this.timeUp = true;
+        else if (this.pondering)
+            return false;
+        else if (nodes >= this.nodeLimit)
+            this.timeUp = true;
+        else if (!this.timeUp && (nodes & (CHECK_INTERVAL - 1)) == 0)
+            this.timeUp = System.nanoTime() - this.limitStartTime >= this.hardLimit;
+        return this.timeUp;
+    }
+
+    /**
+     * Tell if a new iteration of the iterative deepening can be started, knowing the best move found by the last one.
+     * The more iterations agree on the best move, the sooner the search stops.
+     *
+     * @param bestMove Best move found by the last completed iteration
+     * @return true if a new iteration can be started
+     */
+    public boolean canStartIteration(int bestMove) {
+        if (bestMove == this.lastBestMove) {
+            this.stableIterations++;
+        } else {
+            this.stableIterations = 0;
+            this.lastBestMove = bestMove;
+        }
+
+        double scale = 1;
+        if (this.adaptive) {
+            scale = switch (Math.min(this.stableIterations, 3)) {
+                case 0 -> 1.4;
+                case 1 -> 1.0;
+                case 2 -> 0.7;
+                default -> 0.5;
+            };
+        }
+
+        if (this.pondering)
+            return !this.timeUp;
+        double optimum = Math.min(this.softLimit * scale, this.hardLimit);
+        return !this.timeUp && System.nanoTime() - this.limitStartTime < optimum * NEW_ITERATION_RATIO;
+    }
+
+    /**
+     * Abort the search using this time manager, as if its hard limit was reached. Unlike {@link Search#stop()}, it is
+     * not forgotten when the search starts : it may be called from any thread, before or during the search.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /**
+     * Suspend the limits, until {@link #ponderHit()} : the search ponders, and only ends when it is stopped, or at its
+     * maximum depth. It must be called before the search starts.
+     */
+    public void ponder() {
+        this.pondering = true;
+    }
+
+    /**
+     * The opponent played the move the search ponders on : the limits apply from now on, as if the search had just
+     * started. It may be called from any thread.
+     */
+    public void ponderHit() {
+        this.limitStartTime = System.nanoTime();
+        this.pondering = false;
+    }
+
+    /** @return The time elapsed since the start of the search, in nanoseconds */
+    public long getElapsedNanos() {
+        return System.nanoTime() - this.startTime;
+    }
+
+    /** @return The time elapsed since the start of the search, in milliseconds */
+    public long getElapsedMillis() {
+        return this.getElapsedNanos() / 1_000_000;
+    }
+
+    /** @return The soft limit, in milliseconds */
+    public long getSoftLimitMillis() {
+        return this.softLimit / 1_000_000;
+    }
+
+    /** @return The hard limit, in milliseconds */
+    public long getHardLimitMillis() {
+        return this.hardLimit / 1_000_000;
+    }
+
+    /** @return The number of consecutive iterations which found the same best move */
+    public int getStableIterations() {
+        return this.stableIterations;
+    }
+
+    /** @return The number of nodes after which the search is aborted, or Long.MAX_VALUE if it is unlimited */
+    public long getNodeLimit() {
+        return this.nodeLimit;
+    }
+}
@@ -0,0 +1,454 @@
+package com.thibclnt.chessgame;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Self-play tournament between two configurations of the {@link Search}, the base and the test, to measure if a change
+ * makes the engine stronger.
+ * <p>
+ *     The games are played without any {@link ChessGame} or interface, directly on a {@link Position}, one game per
+ *     thread at the same time. Each opening of the suite is played twice, each configuration having the white pieces
+ *     once. A game is played with a clock (a base time and an increment per move, the player whose time runs out losing
+ *     the game) or with a fixed number of nodes per move, and is a draw after {@link #MAX_PLIES} plies.
+ * </p> <p>
+ *     After each game, a sequential probability ratio test (SPRT) compares the hypothesis H0 "the test is elo0 Elo
+ *     stronger than the base" to H1 "the test is elo1 Elo stronger". The tournament stops as soon as one of them is
+ *     accepted, with error rates alpha and beta, which often needs much fewer games than a fixed number. The report gives
+ *     the Elo difference with its 95% error margin, the number of games per hour and the CPU utilisation of the threads.
+ * </p> <p>
+ *     Usage : {@code Tournament [-base options] [-test options] [-tc seconds+increment | -nodes n] [-games n]
+ *     [-threads n] [-elo0 e] [-elo1 e] [-openings file]}. The options are {@code all}, {@code none}, or a technique to
+ *     switch off among {@code no-tt}, {@code no-pvs}, {@code no-aspiration}, {@code no-null-move} and {@code no-lmr}
+ *     (see {@link Search.Options}). The openings file has a FEN or an EPD position per line.
+ * </p>
+ * @see SearchBenchmark
+ */
+public class Tournament {
+
+    /** Number of plies after which a game is a draw */
+    public static final int MAX_PLIES = 300;
+    /** Error rates of the SPRT : probabilities to accept H1 when H0 is true, and H0 when H1 is true */
+    public static final double ALPHA = 0.05, BETA = 0.05;
+    /** Default maximum number of games */
+    public static final int DEFAULT_GAMES = 20000;
+
+    /** Openings played when no file is given : the starting position and usual first moves */
+    private static final String[] OPENINGS = {
+            Position.START_FEN,
+            "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+            "r1bqkbnr/pppp1ppp/2n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 3 3",
+            "rnbqkbnr/pp1ppppp/8/2p5/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2",
+            "rnbqkbnr/ppp2ppp/4p3/3p4/3PP3/8/PPP2PPP/RNBQKBNR w KQkq - 0 3",
+            "rnbqkbnr/pp2pppp/2p5/3p4/3PP3/8/PPP2PPP/RNBQKBNR w KQkq - 0 3",
+            "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2",
+            "rnbqkbnr/ppp1pppp/8/3p4/2PP4/8/PP2PPPP/RNBQKBNR b KQkq - 0 2",
+            "rnbqkb1r/pppppp1p/5np1/8/2PP4/8/PP2PPPP/RNBQKBNR w KQkq - 0 3",
+            "rnbqkbnr/pppp1ppp/8/4p3/2P5/8/PP1PPPPP/RNBQKBNR w KQkq - 0 2",
+    };
+
+    /**
+     * Struct-like class to store the result of a game, from the point of view of the test configuration.
+     */
+    public static class GameResult {
+        /** 1 for a win of the test, 0.5 for a draw, 0 for a loss */
+        public final double score;
+        /** Number of plies played */
+        public final int plies;
+        /** CPU time used by the thread playing the game, in nanoseconds, or 0 if it can't be measured */
+        public final long cpuNanos;
+
+        public GameResult(double score, int plies, long cpuNanos) {
+            this.score = score;
+            this.plies = plies;
+            this.cpuNanos = cpuNanos;
+        }
+    }
+
+    /**
+     * Struct-like class to store the totals of a tournament, from the point of view of the test configuration.
+     */
+    public static class Report {
+        public int wins, losses, draws;
+        /** Log likelihood ratio of the SPRT, and the bounds at which H0 or H1 is accepted */
+        public double llr;
+        public final double lowerBound, upperBound;
+        public long plies;
+        /** Duration of the tournament, in milliseconds, and CPU time used by the games, in nanoseconds */
+        public long wallMillis;
+        public long cpuNanos;
+        public final int threads;
+
+        public Report(int threads) {
+            this.threads = threads;
+            this.lowerBound = Math.log(BETA / (1 - ALPHA));
+            this.upperBound = Math.log((1 - BETA) / ALPHA);
+        }
+
+        /** @return The number of games played */
+        public int getGames() {
+            return this.wins + this.losses + this.draws;
+        }
+
+        /** @return The mean score of the test, from 0 to 1 */
+        public double getScore() {
+            return (this.wins + this.draws / 2.0) / Math.max(1, this.getGames());
+        }
+
+        /** @return The Elo difference between the test and the base */
+        public double getElo() {
+            return elo(this.getScore());
+        }
+
+        /** @return The half width of the 95% confidence interval of {@link #getElo()} */
+        public double getEloMargin() {
+            int games = this.getGames();
+            if (games < 2)
+                return Double.POSITIVE_INFINITY;
+            double score = this.getScore();
+            double variance = (this.wins * Math.pow(1 - score, 2) + this.draws * Math.pow(0.5 - score, 2)
+                    + this.losses * Math.pow(score, 2)) / games;
+            double margin = 1.96 * Math.sqrt(variance / games);
+            return (elo(Math.min(score + margin, 0.999)) - elo(Math.max(score - margin, 0.001))) / 2;
+        }
+
+        /** @return "H1" if the test is accepted as stronger, "H0" if it is rejected, or null if the SPRT is not finished */
+        public String getDecision() {
+            return this.llr >= this.upperBound ? "H1" : this.llr <= this.lowerBound ? "H0" : null;
+        }
+
+        /** @return The number of games played per hour */
+        public double getGamesPerHour() {
+            return this.getGames() * 3_600_000.0 / Math.max(1, this.wallMillis);
+        }
+
+        /** @return The share of the time of the threads spent by the games on a CPU, from 0 to 1 */
+        public double getCpuUtilisation() {
+            return this.cpuNanos / (this.wallMillis * 1_000_000.0 * this.threads);
+        }
+
+        @Override
+        public String toString() {
+            String decision = this.getDecision();
+            return String.format("Games %d : +%d -%d =%d, score %.1f%%, Elo %.1f +- %.1f, LLR %.2f (%.2f, %.2f)%s",
+                    this.getGames(), this.wins, this.losses, this.draws, this.getScore() * 100, this.getElo(),
+                    this.getEloMargin(), this.llr, this.lowerBound, this.upperBound,
+                    decision == null ? "" : ", " + decision + " accepted");
+        }
+    }
+
+    private final Search.Options base;
+    private final Search.Options test;
+    private final long baseMillis;
+    private final long incrementMillis;
+    private final long nodesPerMove;
+    private final int threads;
+    private final double elo0, elo1;
+    private volatile boolean stopped = false;
+
+    /**
+     * Create a tournament.
+     *
+     * @param base {@link Search.Options} of the base configuration
+     * @param test {@link Search.Options} of the configuration tested
+     * @param baseMillis Time on the clock of each player at the start of a game, in milliseconds
+     * @param incrementMillis Time added to the clock after each move, in milliseconds
+     * @param nodesPerMove Number of nodes of each search, or 0 to play with the clock
+     * @param threads Number of games played at the same time
+     * @param elo0 Elo difference of H0
+     * @param elo1 Elo difference of H1, greater than elo0
+     */
+    public Tournament(Search.Options base, Search.Options test, long baseMillis, long incrementMillis, long nodesPerMove,
+                      int threads, double elo0, double elo1) {
+        if (threads <= 0 || (nodesPerMove <= 0 && baseMillis <= 0) || elo1 <= elo0)
+            throw new IllegalArgumentException("The number of threads and the time must be positive, and elo1 greater than elo0");
+        this.base = base;
+        this.test = test;
+        this.baseMillis = baseMillis;
+        this.incrementMillis = incrementMillis;
+        this.nodesPerMove = nodesPerMove;
+        this.threads = threads;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Search.Options base = new Search.Options(), test = new Search.Options();
+        long baseMillis = 10_000, incrementMillis = 100, nodes = 0;
+        int games = DEFAULT_GAMES, threads = Runtime.getRuntime().availableProcessors();
+        double elo0 = 0, elo1 = 5;
+        List<String> openings = List.of(OPENINGS);
+        for (int i = 0 ; i < args.length ; i += 2) {
+            if (i + 1 >= args.length) {
+                System.err.println("Usage : Tournament [-base options] [-test options] [-tc seconds+increment | -nodes n] "
+                        + "[-games n] [-threads n] [-elo0 e] [-elo1 e] [-openings file]");
+                System.exit(1);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-base" -> base = options(value);
+                case "-test" -> test = options(value);
+                case "-tc" -> {
+                    String[] parts = value.split("\\+");
+                    baseMillis = Math.round(Double.parseDouble(parts[0]) * 1000);
+                    incrementMillis = parts.length > 1 ? Math.round(Double.parseDouble(parts[1]) * 1000) : 0;
+                }
+                case "-nodes" -> nodes = Long.parseLong(value);
+                case "-games" -> games = Integer.parseInt(value);
+                case "-threads" -> threads = Integer.parseInt(value);
+                case "-elo0" -> elo0 = Double.parseDouble(value);
+                case "-elo1" -> elo1 = Double.parseDouble(value);
+                case "-openings" -> openings = readOpenings(Path.of(value));
+                default -> {
+                    System.err.println("Unknown option : " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        Tournament tournament = new Tournament(base, test, baseMillis, incrementMillis, nodes, threads, elo0, elo1);
+        Report report = tournament.run(openings, games, System.out);
+        System.out.println(report);
+        System.out.printf("%.0f games/hour, %.1f plies/game, CPU utilisation %.0f%% of %d threads%n",
+                report.getGamesPerHour(), (double) report.plies / Math.max(1, report.getGames()),
+                report.getCpuUtilisation() * 100, report.threads);
+    }
+
+    /**
+     * @param name {@code all}, {@code none}, {@code no-tt}, {@code no-pvs}, {@code no-aspiration}, {@code no-null-move}
+     *             or {@code no-lmr}
+     * @return The options of the search
+     */
+    public static Search.Options options(String name) {
+        Search.Options options = new Search.Options();
+        switch (name) {
+            case "all" -> {}
+            case "none" -> options = Search.Options.none();
+            case "no-tt" -> options.transpositionTable = false;
+            case "no-pvs" -> options.principalVariationSearch = false;
+            case "no-aspiration" -> options.aspirationWindows = false;
+            case "no-null-move" -> options.nullMovePruning = false;
+            case "no-lmr" -> options.lateMoveReductions = false;
+            default -> throw new IllegalArgumentException("Unknown search options : " + name);
+        }
+        return options;
+    }
+
+    /**
+     * Read an opening suite : a position per line, as a FEN or an EPD (whose operations are ignored). Empty lines and
+     * lines starting with # are skipped.
+     *
+     * @param path File of the suite
+     * @return The FEN of the openings
+     * @throws IOException If the file can't be read
+     */
+    public static List<String> readOpenings(Path path) throws IOException {
+        List<String> openings = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields[0].isEmpty() || fields[0].startsWith("#"))
+                continue;
+            if (fields.length < 4)
+                throw new IllegalArgumentException("Invalid opening : " + line);
+            boolean clocks = fields.length >= 6 && fields[4].matches("\\d+") && fields[5].matches("\\d+");
+            String fen = String.join(" ", List.of(fields).subList(0, 4)) + (clocks ? " " + fields[4] + " " + fields[5] : " 0 1");
+            // The position is checked now, rather than in the middle of the tournament
+            Position.fromFen(fen);
+            openings.add(fen);
+        }
+        if (openings.isEmpty())
+            throw new IllegalArgumentException("No opening in " + path);
+        return openings;
+    }
+
+    /**
+     * Play the tournament, until the SPRT accepts a hypothesis or the maximum number of games is reached.
+     *
+     * @param openings FEN of the openings, each played twice in turn
+     * @param maxGames Maximum number of games
+     * @param log Stream where the progress is written, or null
+     * @return The report of the tournament
+     * @throws InterruptedException If the thread is interrupted while waiting for the games
+     */
+    public Report run(List<String> openings, int maxGames, PrintStream log) throws InterruptedException {
+        Report report = new Report(this.threads);
+        long start = System.currentTimeMillis();
+        // Each thread keeps the searches of both configurations, with their own transposition table
+        ThreadLocal<Search[]> searches = ThreadLocal.withInitial(() -> new Search[] {new Search(this.base), new Search(this.test)});
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        CompletionService<GameResult> games = new ExecutorCompletionService<>(executor);
+        this.stopped = false;
+
+        try {
+            int submitted = 0, running = 0;
+            // A few games are queued for each thread, so that no thread waits for the results to be counted
+            while (submitted < maxGames && running < 2 * this.threads) {
+                this.submit(games, searches, openings, submitted++);
+                running++;
+            }
+
+            while (running > 0) {
+                GameResult result = games.take().get();
+                running--;
+                if (result == null)
+                    continue;
+
+                if (result.score == 1)
+                    report.wins++;
+                else if (result.score == 0)
+                    report.losses++;
+                else
+                    report.draws++;
+                report.plies += result.plies;
+                report.cpuNanos += result.cpuNanos;
+                report.llr = llr(report.wins, report.draws, report.losses, this.elo0, this.elo1);
+
+                if (log != null && report.getGames() % 10 == 0)
+                    log.println(report);
+                if (report.getDecision() != null) {
+                    // The games in progress are abandoned
+                    this.stopped = true;
+                } else if (submitted < maxGames) {
+                    this.submit(games, searches, openings, submitted++);
+                    running++;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("A game failed", e.getCause());
+        } finally {
+            this.stopped = true;
+            executor.shutdownNow();
+        }
+
+        report.wallMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    private void submit(CompletionService<GameResult> games, ThreadLocal<Search[]> searches, List<String> openings, int game) {
+        String opening = openings.get(game / 2 % openings.size());
+        boolean testIsWhite = game % 2 == 0;
+        games.submit(() -> {
+            Search[] pair = searches.get();
+            return this.play(opening, testIsWhite ? pair[1] : pair[0], testIsWhite ? pair[0] : pair[1], testIsWhite);
+        });
+    }
+
+    /**
+     * Play a game.
+     *
+     * @return The result of the game, or null if it was abandoned because the tournament is over
+     */
+    private GameResult play(String opening, Search white, Search black, boolean testIsWhite) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        boolean measureCpu = threadBean.isCurrentThreadCpuTimeSupported();
+        long cpuStart = measureCpu ? threadBean.getCurrentThreadCpuTime() : 0;
+
+        // A new game must not use what was learnt in the previous one
+        white.getTranspositionTable().clear();
+        black.getTranspositionTable().clear();
+        Position position = Position.fromFen(opening);
+        long[] clocks = {this.baseMillis, this.baseMillis};
+        double whiteScore = 0.5;
+        int plies = 0;
+
+        while (plies < MAX_PLIES) {
+            if (this.stopped)
+                return null;
+            int side = position.getSideToMove();
+            if (position.legalMoves().length == 0) {
+                // Checkmate, or a draw by stalemate
+                if (position.isInCheck())
+                    whiteScore = side == Position.WHITE ? 0 : 1;
+                break;
+            }
+            if (position.isDrawByRule() || isInsufficientMaterial(position))
+                break;
+
+            TimeManager timeManager = this.nodesPerMove > 0 ? TimeManager.forNodes(this.nodesPerMove)
+                    : TimeManager.forClock(clocks[side], this.incrementMillis, 0);
+            long start = System.nanoTime();
+            int move = (side == Position.WHITE ? white : black).search(position, Search.MAX_PLY, timeManager).bestMove;
+            if (this.nodesPerMove <= 0) {
+                clocks[side] -= (System.nanoTime() - start) / 1_000_000;
+                if (clocks[side] < 0) {
+                    whiteScore = side == Position.WHITE ? 0 : 1;
+                    break;
+                }
+                clocks[side] += this.incrementMillis;
+            }
+            position.make(move);
+            plies++;
+        }
+
+        long cpuNanos = measureCpu ? threadBean.getCurrentThreadCpuTime() - cpuStart : 0;
+        return new GameResult(testIsWhite ? whiteScore : 1 - whiteScore, plies, cpuNanos);
+    }
+
+    /**
+     * @return true if neither side can checkmate : kings alone, or with a single knight or bishop
+     */
+    private static boolean isInsufficientMaterial(Position position) {
+        if (position.getPieceCount() > 3)
+            return false;
+        for (int square = 0 ; square < 64 ; square++) {
+            int type = Position.type(position.pieceAt(square));
+            if (type == Position.PAWN || type == Position.ROOK || type == Position.QUEEN)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param score Mean score, strictly between 0 and 1
+     * @return The Elo difference giving this mean score
+     */
+    public static double elo(double score) {
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * Log likelihood ratio of the SPRT, with the BayesElo model of the draws : the draw rate observed gives the "draw
+     * Elo", from which the probabilities of a win, a draw and a loss are computed for elo0 and elo1.
+     *
+     * @param wins Number of wins of the test
+     * @param draws Number of draws
+     * @param losses Number of losses of the test
+     * @param elo0 Elo difference of H0
+     * @param elo1 Elo difference of H1
+     * @return The log likelihood ratio of H1 against H0, or 0 while there is not at least a win, a draw and a loss
+     */
+    public static double llr(int wins, int draws, int losses, double elo0, double elo1) {
+        if (wins == 0 || draws == 0 || losses == 0)
+            return 0;
+        double games = wins + draws + losses;
+        double w = wins / games, l = losses / games;
+        double drawElo = 200 * Math.log10((1 - l) / l * (1 - w) / w);
+        // elo0 and elo1 are usual (logistic) Elo differences, scaled to the BayesElo model
+        double x = Math.pow(10, -drawElo / 400);
+        double scale = 4 * x / ((1 + x) * (1 + x));
+
+        double[] p0 = probabilities(elo0 / scale, drawElo), p1 = probabilities(elo1 / scale, drawElo);
+        return wins * Math.log(p1[0] / p0[0]) + draws * Math.log(p1[1] / p0[1]) + losses * Math.log(p1[2] / p0[2]);
+    }
+
+    /**
+     * @return The probabilities of a win, a draw and a loss, for an Elo difference and a draw Elo
+     */
+    private static double[] probabilities(double elo, double drawElo) {
+        double win = 1 / (1 + Math.pow(10, (drawElo - elo) / 400));
+        double loss = 1 / (1 + Math.pow(10, (drawElo + elo) / 400));
+        return new double[] {win, 1 - win - loss, loss};
+    }
+}
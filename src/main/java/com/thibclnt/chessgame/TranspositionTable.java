@@ -0,0 +1,141 @@
+package com.thibclnt.chessgame;
+
+/**
+ * Transposition table of the {@link Search} : a fixed-size cache of the results of the positions already searched,
+ * indexed by their Zobrist hash ({@link Position#getKey()}). It gives the best move found for a position, which is
+ * searched first when the position is met again, and may give its score directly if it was searched deep enough.
+ * <p>
+ *     Each entry is packed in a long (see {@link #store(long, int, int, int, int, int)}), and is stored XORed with the
+ *     hash of its position. An entry whose data was overwritten by another thread in the middle of a write does not
+ *     match its hash anymore and is ignored, so a table can be shared by several search threads without any lock.
+ * </p>
+ * @see Search
+ */
+public class TranspositionTable {
+
+    /** Bound of a stored score : the real score is greater (LOWER), lower (UPPER) or equal (EXACT) */
+    public static final int LOWER = 1, UPPER = 2, EXACT = 3;
+    /** Default size of the table, in megabytes */
+    public static final int DEFAULT_SIZE_MB = 16;
+
+    /** Hashes of the entries, XORed with their data */
+    private final long[] keys;
+    /** Data of the entries */
+    private final long[] data;
+    private final int mask;
+    /** Generation of the current search, used to replace the entries of the old searches first */
+    private int generation = 0;
+
+    /**
+     * Create a transposition table.
+     *
+     * @param megabytes Size of the table in megabytes, rounded down to a power of two entries (16 bytes each)
+     */
+    public TranspositionTable(int megabytes) {
+        long entries = Math.max(1024, (long) megabytes * 1024 * 1024 / 16);
+        int capacity = (int) Math.min(Long.highestOneBit(entries), 1 << 30);
+        this.keys = new long[capacity];
+        this.data = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Look for the entry of a position.
+     *
+     * @param key Hash of the position
+     * @return The data of the entry, to read with {@link #move(long)}, {@link #score(long, int)}, {@link #depth(long)}
+     * and {@link #bound(long)}, or 0 if the position is not in the table
+     */
+    public long probe(long key) {
+        int index = (int) key & this.mask;
+        long entry = this.data[index];
+        return (this.keys[index] ^ entry) == key ? entry : 0;
+    }
+
+    /**
+     * Store the result of the search of a position. An entry of the current search is only replaced by an entry of
+     * another position if the new one is searched almost as deep.
+     *
+     * @param key Hash of the position
+     * @param move Best move found, or {@link Position#NO_MOVE}
+     * @param score Score of the position
+     * @param depth Depth of the search, in plies
+     * @param bound LOWER, UPPER or EXACT
+     * @param ply Distance from the root, needed to store mate scores relatively to the position
+     */
+    public void store(long key, int move, int score, int depth, int bound, int ply) {
+        int index = (int) key & this.mask;
+        long old = this.data[index];
+        boolean sameKey = (this.keys[index] ^ old) == key;
+
+        if (!sameKey && old != 0 && generation(old) == this.generation && depth(old) > depth + 2)
+            return;
+        // Keep the best move of the position if the new search did not find one
+        if (move == Position.NO_MOVE && sameKey)
+            move = move(old);
+
+        // Mate scores are stored as a distance from this position, not from the root
+        if (score >= Search.MATE - Search.MAX_PLY)
+            score += ply;
+        else if (score <= -Search.MATE + Search.MAX_PLY)
+            score -= ply;
+
+        long entry = (move & 0x1FFFFL)
+                | ((long) (score + 32768) & 0xFFFF) << 17
+                | ((long) Math.max(0, Math.min(depth, 255))) << 33
+                | ((long) bound) << 41
+                | ((long) (this.generation & 0xFF)) << 43;
+        this.data[index] = entry;
+        this.keys[index] = key ^ entry;
+    }
+
+    /** Start a new search : the entries of the previous searches become the first to be replaced. */
+    public void newSearch() {
+        this.generation = (this.generation + 1) & 0xFF;
+    }
+
+    /** Empty the table. */
+    public void clear() {
+        java.util.Arrays.fill(this.keys, 0);
+        java.util.Arrays.fill(this.data, 0);
+        this.generation = 0;
+    }
+
+    /** @return The best move of an entry, or {@link Position#NO_MOVE} */
+    public static int move(long entry) {
+        return (int) (entry & 0x1FFFF);
+    }
+
+    /**
+     * @param entry Data of an entry
+     * @param ply Distance from the root of the position
+     * @return The score of an entry, with mate scores relative to the root
+     */
+    public static int score(long entry, int ply) {
+        int score = (int) ((entry >>> 17) & 0xFFFF) - 32768;
+        if (score >= Search.MATE - Search.MAX_PLY)
+            return score - ply;
+        if (score <= -Search.MATE + Search.MAX_PLY)
+            return score + ply;
+        return score;
+    }
+
+    /** @return The depth of the search of an entry */
+    public static int depth(long entry) {
+        return (int) ((entry >>> 33) & 0xFF);
+    }
+
+    /** @return The bound of the score of an entry (LOWER, UPPER or EXACT) */
+    public static int bound(long entry) {
+        return (int) ((entry >>> 41) & 3);
+    }
+
+    private static int generation(long entry) {
+        return (int) ((entry >>> 43) & 0xFF);
+    }
+
+    /** @return The number of entries of the table */
+    public int getSize() {
+        return this.keys.length;
+    }
+}
@@ -0,0 +1,479 @@
+package com.thibclnt.chessgame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Front-end of the {@link Search} speaking the UCI protocol (Universal Chess Interface) on the standard input and output,
+ * so that the engine can be played by the usual chess GUIs and tournament managers, against other engines.
+ * <p>
+ *     The commands are read by the main thread, and the searches run on their own thread : the engine answers
+ *     {@code isready} and obeys {@code stop} while it is searching. The commands changing the position or the options
+ *     stop the running search first, which sends its best move : the main thread never waits for an infinite search. The supported commands are {@code uci},
+ *     {@code isready}, {@code setoption} ({@code Hash}, {@code Threads}, {@code BookFile} and
+ *     {@code TablebasePath}), {@code ucinewgame},
+ *     {@code position [startpos | fen ...] [moves ...]}, {@code go} (with {@code depth}, {@code nodes},
+ *     {@code movetime}, {@code wtime}, {@code btime}, {@code winc}, {@code binc}, {@code movestogo}, {@code infinite} and
+ *     {@code ponder}), {@code ponderhit}, {@code stop} and {@code quit}.
+ * </p> <p>
+ *     With several threads, the search is a "lazy SMP" : every thread searches the same position with its own
+ *     {@link Search}, and they share the {@link TranspositionTable}. The helper threads only fill the table, which makes
+ *     the main search go deeper in the same time, and are stopped when the main search ends. The {@link OpeningBook} set
+ *     by the {@code BookFile} option is only given to the main search : its moves are played without searching. The
+ *     {@link Tablebase} set by the {@code TablebasePath} option is shared by all the threads.
+ *     The searches are stopped through their {@link TimeManager}, so that a {@code stop} received before the search
+ *     thread starts searching is not lost.
+ * </p> <p>
+ *     Usage : {@code UciEngine}, or {@code Main --uci}.
+ * </p>
+ */
+public class UciEngine {
+
+    /** Name of the engine, sent to the GUI */
+    public static final String NAME = "JBoardGames";
+    /** Maximum size of the transposition table, in megabytes */
+    public static final int MAX_HASH_MB = 4096;
+    /** Maximum number of search threads */
+    public static final int MAX_THREADS = 256;
+
+    private final PrintStream out;
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "uci-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ExecutorService helperThreads = null;
+
+    private TranspositionTable transpositionTable = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+    private Search[] searches = {new Search(new Evaluation(), this.transpositionTable, new Search.Options())};
+    /** Opening book of the main search, or null */
+    private OpeningBook openingBook = null;
+    /** Endgame tablebase of the searches, or null */
+    private Tablebase tablebase = null;
+
+    /** Position set by the last {@code position} command, and the moves played from it */
+    private String fen = Position.START_FEN;
+    private int[] moves = new int[0];
+
+    /** Running search, or null */
+    private Future<?> search = null;
+    /** Time managers of the threads of the running search, the main one first */
+    private TimeManager[] timeManagers = new TimeManager[0];
+    /** Counted down when the best move of the running search may be sent (at once, unless pondering or infinite) */
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    /**
+     * Create an engine.
+     *
+     * @param out Stream where the answers are written
+     */
+    public UciEngine(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        UciEngine engine = new UciEngine(System.out);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!engine.execute(line))
+                break;
+        }
+        engine.quit();
+    }
+
+    /**
+     * Run a command. It returns at once : a search is run on the search thread.
+     *
+     * @param line Command
+     * @return false if the command is {@code quit}
+     */
+    public boolean execute(String line) {
+        String[] words = line.trim().split("\\s+");
+        try {
+            switch (words[0]) {
+                case "uci" -> {
+                    this.send("id name " + NAME);
+                    this.send("id author ThibClnt");
+                    this.send("option name Hash type spin default " + TranspositionTable.DEFAULT_SIZE_MB + " min 1 max "
+                            + MAX_HASH_MB);
+                    this.send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                    this.send("option name Ponder type check default false");
+                    this.send("option name BookFile type string default <empty>");
+                    this.send("option name TablebasePath type string default <empty>");
+                    this.send("uciok");
+                }
+                case "isready" -> this.send("readyok");
+                case "setoption" -> this.setOption(words);
+                case "ucinewgame" -> {
+                    this.stopSearch();
+                    this.transpositionTable.clear();
+                }
+                case "position" -> this.position(words);
+                case "go" -> this.go(words);
+                case "ponderhit" -> this.ponderHit();
+                case "stop" -> this.stop();
+                case "quit" -> {
+                    return false;
+                }
+                default -> {
+                    // Unknown commands are ignored, as required by the protocol
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            this.send("info string " + e.getMessage());
+        } catch (RuntimeException e) {
+            // A failed command must not end the engine : the GUI would lose it in the middle of a game
+            this.send("info string " + words[0] + " failed : " + e);
+        }
+        return true;
+    }
+
+    /**
+     * Stop the search, and the threads of the engine.
+     */
+    public void quit() {
+        this.stopSearch();
+        this.searchThread.shutdownNow();
+        if (this.helperThreads != null)
+            this.helperThreads.shutdownNow();
+    }
+
+    private void send(String line) {
+        synchronized (this.out) {
+            this.out.println(line);
+            this.out.flush();
+        }
+    }
+
+    /**
+     * {@code setoption name Hash value 64}, {@code setoption name Threads value 4},
+     * {@code setoption name BookFile value <path>} ({@code <empty>} for no book), or
+     * {@code setoption name TablebasePath value <directory>} ({@code <empty>} for no tablebase).
+     */
+    private void setOption(String[] words) {
+        if (words.length < 5 || !words[1].equals("name") || !words[3].equals("value"))
+            throw new IllegalArgumentException("Usage : setoption name <name> value <value>");
+        // A path may contain spaces
+        String value = String.join(" ", List.of(words).subList(4, words.length));
+
+        switch (words[2]) {
+            case "Hash" -> {
+                int megabytes = parseSpin(words[2], value);
+                this.stopSearch();
+                this.transpositionTable = new TranspositionTable(Math.max(1, Math.min(megabytes, MAX_HASH_MB)));
+                this.createSearches(this.searches.length);
+            }
+            case "Threads" -> {
+                int threads = parseSpin(words[2], value);
+                this.stopSearch();
+                this.createSearches(Math.max(1, Math.min(threads, MAX_THREADS)));
+            }
+            case "BookFile" -> {
+                OpeningBook openingBook;
+                try {
+                    openingBook = value.equals("<empty>") ? null : new OpeningBook(Path.of(value));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("The opening book can't be read : " + e.getMessage());
+                }
+                this.stopSearch();
+                this.openingBook = openingBook;
+                this.searches[0].setOpeningBook(openingBook);
+            }
+            case "TablebasePath" -> {
+                Tablebase tablebase;
+                try {
+                    tablebase = value.equals("<empty>") ? null : new Tablebase(Path.of(value));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("The tablebase can't be read : " + e.getMessage());
+                }
+                this.stopSearch();
+                this.tablebase = tablebase;
+                for (Search search : this.searches)
+                    search.setTablebase(tablebase);
+            }
+            default -> {
+                // Options such as Ponder are accepted but change nothing
+            }
+        }
+    }
+
+    private static int parseSpin(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value of " + name + " : " + value);
+        }
+    }
+
+    private void createSearches(int threads) {
+        this.searches = new Search[threads];
+        for (int i = 0 ; i < threads ; i++) {
+            this.searches[i] = new Search(new Evaluation(), this.transpositionTable, new Search.Options());
+            this.searches[i].setTablebase(this.tablebase);
+        }
+        this.searches[0].setOpeningBook(this.openingBook);
+
+        if (this.helperThreads != null)
+            this.helperThreads.shutdownNow();
+        this.helperThreads = threads > 1 ? Executors.newFixedThreadPool(threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "uci-helper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * {@code position startpos moves e2e4 e7e5}, or {@code position fen <fen> moves ...}.
+     */
+    private void position(String[] words) {
+        int movesIndex = words.length;
+        for (int i = 1 ; i < words.length ; i++) {
+            if (words[i].equals("moves")) {
+                movesIndex = i;
+                break;
+            }
+        }
+
+        String fen;
+        if (words.length > 1 && words[1].equals("startpos"))
+            fen = Position.START_FEN;
+        else if (words.length > 2 && words[1].equals("fen"))
+            fen = String.join(" ", List.of(words).subList(2, movesIndex));
+        else
+            throw new IllegalArgumentException("Usage : position [startpos | fen <fen>] [moves <moves>]");
+
+        Position position = Position.fromFen(fen);
+        int[] moves = new int[Math.max(0, words.length - movesIndex - 1)];
+        for (int i = 0 ; i < moves.length ; i++) {
+            moves[i] = position.parseMove(words[movesIndex + 1 + i]);
+            if (moves[i] == Position.NO_MOVE)
+                throw new IllegalArgumentException("Illegal move : " + words[movesIndex + 1 + i]);
+            position.make(moves[i]);
+        }
+
+        this.stopSearch();
+        this.fen = fen;
+        this.moves = moves;
+    }
+
+    /**
+     * @return A new position of the last {@code position} command, with the moves played to reach it (so that the
+     * search sees the repetitions)
+     */
+    private Position buildPosition() {
+        Position position = Position.fromFen(this.fen);
+        for (int move : this.moves)
+            position.make(move);
+        return position;
+    }
+
+    /**
+     * {@code go [depth d] [nodes n] [movetime ms] [wtime ms] [btime ms] [winc ms] [binc ms] [movestogo n] [infinite] [ponder]}.
+     */
+    private void go(String[] words) {
+        int depth = Search.MAX_PLY, movesToGo = 0;
+        long nodes = 0, moveTime = 0, whiteTime = -1, blackTime = -1, whiteIncrement = 0, blackIncrement = 0;
+        boolean infinite = false, ponder = false;
+        try {
+            for (int i = 1 ; i < words.length ; i++) {
+                switch (words[i]) {
+                    case "depth" -> depth = Integer.parseInt(words[++i]);
+                    case "nodes" -> nodes = Long.parseLong(words[++i]);
+                    case "movetime" -> moveTime = Long.parseLong(words[++i]);
+                    case "wtime" -> whiteTime = Long.parseLong(words[++i]);
+                    case "btime" -> blackTime = Long.parseLong(words[++i]);
+                    case "winc" -> whiteIncrement = Long.parseLong(words[++i]);
+                    case "binc" -> blackIncrement = Long.parseLong(words[++i]);
+                    case "movestogo" -> movesToGo = Integer.parseInt(words[++i]);
+                    case "infinite" -> infinite = true;
+                    case "ponder" -> ponder = true;
+                    default -> {}
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid go command : " + String.join(" ", words));
+        }
+
+        this.stopSearch();
+        Position position = this.buildPosition();
+        boolean white = position.getSideToMove() == Position.WHITE;
+        long remainingMillis = white ? whiteTime : blackTime;
+
+        TimeManager timeManager;
+        if (infinite)
+            timeManager = TimeManager.infinite();
+        else if (nodes > 0)
+            timeManager = TimeManager.forNodes(nodes);
+        else if (moveTime > 0)
+            timeManager = TimeManager.forMoveTime(moveTime);
+        else if (remainingMillis >= 0)
+            timeManager = TimeManager.forClock(remainingMillis, white ? whiteIncrement : blackIncrement, movesToGo);
+        else
+            timeManager = TimeManager.infinite();
+        // While pondering, the limits of the move wait for the ponder hit
+        if (ponder)
+            timeManager.ponder();
+
+        // The best move of an infinite search, or of a search pondering, is only sent once it is stopped
+        CountDownLatch release = new CountDownLatch(infinite || ponder ? 1 : 0);
+        this.release = release;
+        TimeManager[] timeManagers = new TimeManager[this.searches.length];
+        timeManagers[0] = timeManager;
+        for (int i = 1 ; i < timeManagers.length ; i++)
+            timeManagers[i] = TimeManager.infinite();
+        this.timeManagers = timeManagers;
+        int maxDepth = Math.max(1, Math.min(depth, Search.MAX_PLY));
+        this.search = this.searchThread.submit(() -> this.search(position, maxDepth, timeManagers, release));
+    }
+
+    /**
+     * Run a search on the search thread, with the helper threads, then send its best move. A best move is always sent,
+     * {@code 0000} if the search failed, so that the GUI never waits for it.
+     */
+    private void search(Position position, int maxDepth, TimeManager[] timeManagers, CountDownLatch release) {
+        Search[] searches = this.searches;
+        List<Future<Search.Result>> helpers = new ArrayList<>();
+        Search.Result result = null;
+        long nodes = 0;
+        try {
+            for (int i = 1 ; i < searches.length ; i++) {
+                Search helper = searches[i];
+                Position helperPosition = this.buildPosition();
+                TimeManager helperTimeManager = timeManagers[i];
+                helpers.add(this.helperThreads.submit(() -> helper.search(helperPosition, maxDepth, helperTimeManager)));
+            }
+            result = searches[0].search(position, maxDepth, timeManagers[0]);
+            nodes = result.nodes;
+        } catch (RuntimeException e) {
+            this.send("info string Search failed : " + e);
+        } finally {
+            for (int i = 1 ; i < timeManagers.length ; i++)
+                timeManagers[i].stop();
+        }
+
+        try {
+            for (Future<Search.Result> helper : helpers) {
+                try {
+                    nodes += helper.get().nodes;
+                } catch (ExecutionException e) {
+                    this.send("info string Helper search failed : " + e.getCause());
+                }
+            }
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (result == null) {
+            this.send("bestmove 0000");
+            return;
+        }
+
+        StringBuilder info = new StringBuilder("info depth ").append(result.depth).append(" score ");
+        if (Math.abs(result.score) >= Search.MATE - Search.MAX_PLY) {
+            int plies = Search.MATE - Math.abs(result.score);
+            info.append("mate ").append(result.score > 0 ? (plies + 1) / 2 : -(plies / 2));
+        } else {
+            info.append("cp ").append(result.score);
+        }
+        info.append(" nodes ").append(nodes).append(" nps ").append(nodes * 1000 / Math.max(1, result.timeMillis))
+                .append(" time ").append(result.timeMillis);
+
+        int[] pv;
+        try {
+            pv = this.principalVariation(position, result.bestMove, Math.max(1, result.depth));
+        } catch (RuntimeException e) {
+            this.send("info string Principal variation failed : " + e);
+            pv = new int[0];
+        }
+        if (pv.length > 0) {
+            info.append(" pv");
+            for (int move : pv)
+                info.append(' ').append(Position.moveToString(move));
+        }
+        this.send(info.toString());
+        this.send("bestmove " + Position.moveToString(result.bestMove)
+                + (pv.length > 1 ? " ponder " + Position.moveToString(pv[1]) : ""));
+    }
+
+    /**
+     * Read the principal variation in the transposition table, from the best move of the root.
+     *
+     * @param position Root of the search. It is back to its initial state when the method returns.
+     * @return The moves of the principal variation, at most maxLength
+     */
+    private int[] principalVariation(Position position, int bestMove, int maxLength) {
+        List<Integer> pv = new ArrayList<>();
+        int move = bestMove;
+        while (move != Position.NO_MOVE && pv.size() < maxLength && position.parseMove(Position.moveToString(move)) == move) {
+            pv.add(move);
+            position.make(move);
+            move = TranspositionTable.move(this.transpositionTable.probe(position.getKey()));
+        }
+        for (int i = 0 ; i < pv.size() ; i++)
+            position.unmake();
+        return pv.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * The ponder move was played : the search goes on as if it had started now, with the soft and hard limits of the
+     * last {@code go}.
+     */
+    private void ponderHit() {
+        CountDownLatch release = this.release;
+        if (this.search == null || this.search.isDone() || release.getCount() == 0)
+            return;
+
+        this.timeManagers[0].ponderHit();
+        release.countDown();
+    }
+
+    /**
+     * Stop the running search, whose best move is sent at once.
+     */
+    private void stop() {
+        if (this.timeManagers.length > 0)
+            this.timeManagers[0].stop();
+        this.release.countDown();
+    }
+
+    /**
+     * Stop the running search, and wait for its end. The commands changing the position or the options must not change
+     * them during a search.
+     */
+    private void stopSearch() {
+        this.stop();
+        this.waitForSearch();
+    }
+
+    /**
+     * Wait for the end of the running search.
+     */
+    private void waitForSearch() {
+        if (this.search == null)
+            return;
+        try {
+            this.search.get();
+        } catch (ExecutionException e) {
+            // The search sends its failure itself : the next commands are run as usual
+            this.send("info string Search failed : " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.search = null;
+        }
+    }
+}
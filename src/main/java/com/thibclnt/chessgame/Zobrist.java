@@ -0,0 +1,58 @@
+package com.thibclnt.chessgame;
+
+/**
+ * Random keys used to compute the Zobrist hash of a {@link Position}. The hash of a position is the XOR of the keys of
+ * every piece on its square, of the side to move, of the castling rights and of the en passant file. As XOR is its own
+ * inverse, a hash can be updated incrementally when a move is done or undone.
+ * <p>
+ *     The keys are generated with a fixed seed, so that a given position always gets the same hash. This matters as soon
+ *     as hashes are written to disk (opening books, indexes...).
+ * </p>
+ * @see Position
+ */
+public final class Zobrist {
+
+    /** Keys of each piece code (see {@link Position}) on each of the 64 squares. */
+    static final long[][] PIECE_SQUARE = new long[16][64];
+    /** Key XORed in the hash when black is to move. */
+    static final long SIDE = nextKey();
+    /** Keys of each combination of the four castling rights. */
+    static final long[] CASTLING = new long[16];
+    /** Keys of the file of the en passant square, if a pawn of the side to move can take on it. */
+    static final long[] EN_PASSANT_FILE = new long[8];
+
+    /** State of the splitmix64 generator used to create the keys. */
+    private static long seed;
+
+    static {
+        for (int piece = 0 ; piece < 16 ; piece++) {
+            for (int square = 0 ; square < 64 ; square++) {
+                PIECE_SQUARE[piece][square] = nextKey();
+            }
+        }
+        for (int i = 0 ; i < 16 ; i++) {
+            CASTLING[i] = nextKey();
+        }
+        for (int i = 0 ; i < 8 ; i++) {
+            EN_PASSANT_FILE[i] = nextKey();
+        }
+    }
+
+    private Zobrist() {}
+
+    /**
+     * Generate the next key with a splitmix64 generator. It is used instead of {@link java.util.Random} so that the keys
+     * never depend on the JDK implementation.
+     *
+     * @return A new pseudo-random 64 bits key
+     */
+    private static long nextKey() {
+        if (seed == 0)
+            seed = 0x4A426F61726447L;   // "JBoardG"
+
+        long z = (seed += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}